@@ -0,0 +1,189 @@
+/**
+ *
+ */
+package org.theseed.memdb.bench;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.genome.survey.QueryGenerateProcessor;
+import org.theseed.memdb.query.QueryDbDefinition;
+import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.proposal.ProposalQuery;
+import org.theseed.models.Model;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.cliftonlabs.json_simple.JsonObject;
+import com.github.cliftonlabs.json_simple.Jsoner;
+
+/**
+ * This class contains the shared fixtures for the benchmarks.  The database definition is taken from
+ * "querydbd.txt" and the reaction data is modeled on "1266996.3.json", both in the project data directory.
+ * (The data directory can be overridden using the "bench.data" system property.)  The standard query
+ * templates cover each kind of proposal query, and include both short and long paths through the database.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class BenchmarkFixtures {
+
+    // FIELDS
+    /** project data directory */
+    public static final File DATA_DIR = new File(System.getProperty("bench.data", "data"));
+    /** seed for the synthetic data generator */
+    public static final long SEED = 1266996L;
+
+    /**
+     * This object describes a query template in the same three-line form used by the "queryGen" command.
+     */
+    public static class Template {
+
+        /** question template string */
+        private final String question;
+        /** path through the entities */
+        private final String path;
+        /** result specification */
+        private final String result;
+
+        /**
+         * Construct a query template.
+         *
+         * @param question		question template string
+         * @param path			path through the entities
+         * @param result		result specification
+         */
+        public Template(String question, String path, String result) {
+            this.question = question;
+            this.path = path;
+            this.result = result;
+        }
+
+        /**
+         * @return a query proposal for this template
+         *
+         * @param maxLimit		maximum intermediate result set size
+         * @param db			database to be queried
+         *
+         * @throws ParseFailureException
+         */
+        public ProposalQuery create(int maxLimit, QueryDbInstance db) throws ParseFailureException {
+            return QueryGenerateProcessor.createProposal(this.question, this.path, this.result, maxLimit, db);
+        }
+
+    }
+
+    /** standard query templates, keyed by the names used in the benchmark parameters */
+    public static final List<String> TEMPLATE_NAMES = List.of("count", "list", "choice", "group", "reaction", "subsystem");
+    /** standard query templates, in the same order as the names */
+    private static final List<Template> TEMPLATES = List.of(
+            new Template("How many {{Feature.feature_type}} features are in {{Genome.genome_name}}?",
+                    "Genome Feature", "count"),
+            new Template("Which genes in {{Genome.genome_name}} have the product {{Feature.product}}?",
+                    "Genome Feature", "Feature.gene"),
+            new Template("What is the product of the gene {{Feature.gene}} in {{Genome.genome_name}}?",
+                    "Genome Feature", "choice Feature.product"),
+            new Template("What are the feature types in {{Genome.genome_name}} and how many of each are there?",
+                    "Genome Feature", "group Feature.feature_type"),
+            new Template("Which genes trigger the reaction {{Reaction.name}} in {{Genome.genome_name}}?",
+                    "Genome Reaction Feature", "Feature.gene"),
+            new Template("How many features in the genus {{Genome.genus}} with product {{Feature.product}} are in subsystems?",
+                    "Genome Feature Role Subsystem", "count"));
+
+    /**
+     * @return the standard query template with the specified name
+     *
+     * @param name		name of the desired template
+     */
+    public static Template getTemplate(String name) {
+        int idx = TEMPLATE_NAMES.indexOf(name);
+        if (idx < 0)
+            throw new IllegalArgumentException("Unknown benchmark template \"" + name + "\".");
+        return TEMPLATES.get(idx);
+    }
+
+    /**
+     * @return the database definition fixture
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    public static QueryDbDefinition loadDefinition() throws IOException, ParseFailureException {
+        return new QueryDbDefinition(new File(DATA_DIR, "querydbd.txt"));
+    }
+
+    /**
+     * @return the metabolic model fixture
+     *
+     * @throws IOException
+     */
+    public static Model loadModel() throws IOException {
+        File modelFile = new File(DATA_DIR, "1266996.3.json");
+        JsonObject modelJson;
+        try (FileReader modelReader = new FileReader(modelFile)) {
+            modelJson = (JsonObject) Jsoner.deserialize(modelReader);
+        } catch (JsonException e) {
+            throw new IOException("Invalid model file " + modelFile + ": " + e.toString());
+        }
+        return new Model(modelJson);
+    }
+
+    /**
+     * Generate a synthetic database dump in a temporary directory.  The reactions are copied from the model fixture.
+     *
+     * @param genomes			number of genomes
+     * @param features			number of features per genome
+     * @param roles				number of distinct roles (attribute cardinality)
+     * @param reactionCopies	number of copies of each model reaction per genome
+     *
+     * @return an array of the genome directories generated; the parent of these is the master directory
+     *
+     * @throws IOException
+     */
+    public static File[] createDump(int genomes, int features, int roles, int reactionCopies) throws IOException {
+        File masterDir = Files.createTempDirectory("bench").toFile();
+        SyntheticDumpGenerator generator = new SyntheticDumpGenerator(genomes, features, roles, SEED);
+        generator.setModel(loadModel(), reactionCopies);
+        return generator.generate(masterDir);
+    }
+
+    /**
+     * Generate a synthetic database and load it into memory.
+     *
+     * @param genomes			number of genomes
+     * @param features			number of features per genome
+     * @param roles				number of distinct roles (attribute cardinality)
+     * @param reactionCopies	number of copies of each model reaction per genome
+     *
+     * @return the loaded database
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    public static QueryDbInstance createDatabase(int genomes, int features, int roles, int reactionCopies)
+            throws IOException, ParseFailureException {
+        File[] dirs = createDump(genomes, features, roles, reactionCopies);
+        try {
+            return (QueryDbInstance) loadDefinition().readDatabase(dirs);
+        } finally {
+            deleteDump(dirs);
+        }
+    }
+
+    /**
+     * Delete a synthetic database dump.
+     *
+     * @param dirs		array of genome directories returned by the generator
+     *
+     * @throws IOException
+     */
+    public static void deleteDump(File[] dirs) throws IOException {
+        if (dirs.length > 0)
+            FileUtils.deleteDirectory(dirs[0].getParentFile());
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ *
+ */
+package org.theseed.memdb.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.query.QueryDbDefinition;
+import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.QueryDbSnapshot;
+
+/**
+ * These benchmarks measure database loading.  A synthetic dump is generated once per trial, and then loaded
+ * either by parsing the dump with "DbDefinition.readDatabase" or by restoring a snapshot of it.
+ *
+ * @author Bruce Parrello
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class LoadBenchmark {
+
+    // FIELDS
+    /** number of genomes */
+    @Param({ "10", "50" })
+    public int genomes;
+    /** number of features per genome */
+    @Param({ "500", "4000" })
+    public int features;
+    /** number of distinct roles */
+    @Param({ "1000" })
+    public int roles;
+    /** number of parsing threads */
+    @Param({ "1", "4" })
+    public int loadThreads;
+    /** database definition */
+    private QueryDbDefinition dbd;
+    /** genome directories of the synthetic dump */
+    private File[] dirs;
+    /** snapshot of the synthetic database */
+    private File snapFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ParseFailureException {
+        this.dirs = BenchmarkFixtures.createDump(this.genomes, this.features, this.roles, 10);
+        this.dbd = BenchmarkFixtures.loadDefinition();
+        this.dbd.setLoadThreads(this.loadThreads);
+        this.snapFile = File.createTempFile("bench", ".ser");
+        QueryDbSnapshot.save((QueryDbInstance) this.dbd.readDatabase(this.dirs), this.snapFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.deleteDump(this.dirs);
+        this.snapFile.delete();
+    }
+
+    @Benchmark
+    public QueryDbInstance readDatabase() throws IOException, ParseFailureException {
+        return (QueryDbInstance) this.dbd.readDatabase(this.dirs);
+    }
+
+    @Benchmark
+    public QueryDbInstance loadSnapshot() throws IOException, ParseFailureException {
+        return QueryDbSnapshot.load(this.dbd, this.snapFile);
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ *
+ */
+package org.theseed.memdb.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.QueryEntityInstance;
+import org.theseed.memdb.query.proposal.Parameterization;
+import org.theseed.memdb.query.proposal.ProposalEntity;
+import org.theseed.memdb.query.proposal.ProposalQuery;
+import org.theseed.memdb.query.proposal.ProposalResponseSet;
+
+/**
+ * These benchmarks measure path expansion.  The synthetic database is loaded once per trial.  The first benchmark
+ * runs "ProposalQuery.computeSets" for a standard template (on one thread or in parallel), and the second parameterizes every instance of the
+ * template's last path entity using "Parameterization.addInstance".
+ *
+ * @author Bruce Parrello
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class PathExpansionBenchmark {
+
+    // FIELDS
+    /** number of genomes */
+    @Param({ "20" })
+    public int genomes;
+    /** number of features per genome */
+    @Param({ "2000" })
+    public int features;
+    /** number of distinct roles */
+    @Param({ "100", "5000" })
+    public int roles;
+    /** name of the query template */
+    @Param({ "count", "list", "choice", "group", "reaction", "subsystem" })
+    public String template;
+    /** maximum intermediate result set size */
+    @Param({ "5000" })
+    public int maxLimit;
+    /** number of threads for path expansion */
+    @Param({ "1", "4" })
+    public int threads;
+    /** thread pool for path expansion, or NULL for single-threaded */
+    private ForkJoinPool pool;
+    /** database to query */
+    private QueryDbInstance db;
+    /** query proposal for the template */
+    private ProposalQuery query;
+    /** proposal entity at the end of the path */
+    private ProposalEntity endEntity;
+    /** instances of the entity type at the end of the path */
+    private List<QueryEntityInstance> endInstances;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ParseFailureException {
+        this.db = BenchmarkFixtures.createDatabase(this.genomes, this.features, this.roles, 10);
+        this.query = BenchmarkFixtures.getTemplate(this.template).create(this.maxLimit, this.db);
+        this.endEntity = this.query.getEndOfPath();
+        this.endInstances = new ArrayList<>();
+        for (EntityInstance instance : this.db.getAllEntities(this.endEntity.getName()))
+            this.endInstances.add((QueryEntityInstance) instance);
+        this.pool = (this.threads > 1 ? new ForkJoinPool(this.threads) : null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (this.pool != null)
+            this.pool.shutdown();
+    }
+
+    @Benchmark
+    public List<ProposalResponseSet> computeSets() {
+        return this.query.computeSets(this.db, this.pool);
+    }
+
+    @Benchmark
+    public void addInstance(Blackhole bh) {
+        Parameterization base = this.query.createParameterization();
+        for (QueryEntityInstance instance : this.endInstances)
+            bh.consume(base.addInstance(instance, this.endEntity));
+    }
+
+}
@@ -0,0 +1,111 @@
+/**
+ *
+ */
+package org.theseed.memdb.bench;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.proposal.ProposalQuery;
+import org.theseed.memdb.query.proposal.ProposalResponseSet;
+import org.theseed.reports.QueryGenReporter;
+
+import com.github.cliftonlabs.json_simple.JsonObject;
+
+/**
+ * This benchmark measures end-to-end question generation for a single template, following the same steps as
+ * the "queryGen" command:  the response sets are computed, the ones over the target size are removed, and
+ * the remainder are shuffled and written to a report until the output limit is reached.  The report output
+ * is discarded.
+ *
+ * @author Bruce Parrello
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class QuestionGenerationBenchmark {
+
+    // FIELDS
+    /** number of genomes */
+    @Param({ "20" })
+    public int genomes;
+    /** number of features per genome */
+    @Param({ "2000" })
+    public int features;
+    /** number of distinct roles */
+    @Param({ "1000" })
+    public int roles;
+    /** name of the query template */
+    @Param({ "count", "list", "choice", "group", "reaction", "subsystem" })
+    public String template;
+    /** output report format */
+    @Param({ "JSON", "TEXT" })
+    public QueryGenReporter.Type format;
+    /** maximum intermediate result set size */
+    @Param({ "5000" })
+    public int maxLimit;
+    /** target result set size */
+    @Param({ "10" })
+    public int targetSize;
+    /** maximum number of questions to output */
+    @Param({ "100" })
+    public int maxOutput;
+    /** database to query */
+    private QueryDbInstance db;
+    /** output report writer */
+    private QueryGenReporter reporter;
+    /** random number generator for shuffling */
+    private Random rand;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ParseFailureException {
+        this.db = BenchmarkFixtures.createDatabase(this.genomes, this.features, this.roles, 10);
+        this.reporter = this.format.create(() -> new JsonObject());
+        this.reporter.open(new PrintWriter(Writer.nullWriter()));
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        this.rand = new Random(BenchmarkFixtures.SEED);
+    }
+
+    @Benchmark
+    public int generateQuestions() throws ParseFailureException {
+        ProposalQuery proposal = BenchmarkFixtures.getTemplate(this.template).create(this.maxLimit, this.db);
+        proposal.setTargetSize(this.targetSize);
+        List<ProposalResponseSet> responses = proposal.computeSets(this.db);
+        responses.removeIf(x -> proposal.getResponseSize(x) > this.targetSize);
+        Collections.shuffle(responses, this.rand);
+        int retVal = 0;
+        Iterator<ProposalResponseSet> outIter = responses.iterator();
+        while (retVal < this.maxOutput && outIter.hasNext())
+            retVal += proposal.writeResponse(outIter.next(), this.reporter, responses);
+        this.reporter.flush();
+        return retVal;
+    }
+
+}
@@ -0,0 +1,268 @@
+/**
+ *
+ */
+package org.theseed.memdb.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.theseed.models.Model;
+import org.theseed.models.Reaction;
+
+import com.github.cliftonlabs.json_simple.JsonArray;
+import com.github.cliftonlabs.json_simple.JsonObject;
+import com.github.cliftonlabs.json_simple.Jsoner;
+
+/**
+ * This object generates a synthetic database dump compatible with the "data/querydbd.txt" database definition.
+ * The dump is a master directory containing one sub-directory per genome, so it can be loaded the same way as a
+ * real recursive dump.  Each genome directory contains a genome file, a feature file, and a subsystem file, plus
+ * reaction, trigger, and linkage files if a metabolic model has been specified as a fixture.
+ *
+ * The size and shape of the database is configurable.  The number of genomes and the number of features per genome
+ * determine the entity counts and the fan-out from genomes to features.  The role count determines the attribute
+ * cardinality: feature products and gene names are drawn from pools of this size, so a small role count produces
+ * highly repetitive attribute values and large response sets, while a large one produces mostly unique values.
+ * The random number generator is seeded, so the same settings always produce the same dump.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SyntheticDumpGenerator {
+
+    // FIELDS
+    /** number of genomes to generate */
+    private int genomeCount;
+    /** number of features per genome */
+    private int featuresPerGenome;
+    /** number of distinct roles (and gene names) */
+    private int roleCount;
+    /** number of distinct subsystems */
+    private int subsystemCount;
+    /** number of contigs per genome */
+    private int contigsPerGenome;
+    /** number of reaction copies per model reaction in each genome */
+    private int reactionCopies;
+    /** metabolic model used as a reaction template, or NULL if there are no reactions */
+    private Model model;
+    /** random number generator */
+    private final Random rand;
+    /** list of genus names */
+    private static final String[] GENERA = new String[] { "Escherichia", "Streptococcus", "Bacillus", "Clostridium",
+            "Pseudomonas", "Mycobacterium" };
+    /** list of feature types, weighted by frequency */
+    private static final String[] FEATURE_TYPES = new String[] { "CDS", "CDS", "CDS", "CDS", "CDS", "CDS", "CDS",
+            "CDS", "rna", "repeat" };
+
+    /**
+     * Construct a synthetic dump generator.
+     *
+     * @param genomes		number of genomes to generate
+     * @param features		number of features per genome
+     * @param roles			number of distinct roles and gene names
+     * @param seed			seed for the random number generator
+     */
+    public SyntheticDumpGenerator(int genomes, int features, int roles, long seed) {
+        this.genomeCount = genomes;
+        this.featuresPerGenome = features;
+        this.roleCount = roles;
+        this.subsystemCount = Math.max(1, roles / 10);
+        this.contigsPerGenome = 10;
+        this.reactionCopies = 1;
+        this.model = null;
+        this.rand = new Random(seed);
+    }
+
+    /**
+     * Specify a metabolic model to use as the template for the reaction data.  Each genome gets a copy
+     * of every reaction in the model, triggered by randomly-chosen features of the genome.
+     *
+     * @param model		metabolic model to use
+     * @param copies	number of copies of each model reaction to put in each genome
+     */
+    public void setModel(Model model, int copies) {
+        this.model = model;
+        this.reactionCopies = copies;
+    }
+
+    /**
+     * Specify the number of distinct subsystems.
+     *
+     * @param subsystems	number of subsystems to use
+     */
+    public void setSubsystemCount(int subsystems) {
+        this.subsystemCount = subsystems;
+    }
+
+    /**
+     * Generate the synthetic dump.
+     *
+     * @param masterDir		master output directory (must exist)
+     *
+     * @return an array of the genome sub-directories generated
+     *
+     * @throws IOException
+     */
+    public File[] generate(File masterDir) throws IOException {
+        File[] retVal = new File[this.genomeCount];
+        for (int g = 0; g < this.genomeCount; g++) {
+            String genomeId = String.format("%d.3", 1000 + g);
+            File genomeDir = new File(masterDir, genomeId);
+            if (! genomeDir.isDirectory() && ! genomeDir.mkdirs())
+                throw new IOException("Could not create genome directory " + genomeDir + ".");
+            this.generateGenome(genomeDir, genomeId);
+            retVal[g] = genomeDir;
+        }
+        return retVal;
+    }
+
+    /**
+     * Generate the data files for a single genome.
+     *
+     * @param genomeDir		output directory for the genome
+     * @param genomeId		ID of the genome
+     *
+     * @throws IOException
+     */
+    private void generateGenome(File genomeDir, String genomeId) throws IOException {
+        // Create the genome record.
+        String genus = GENERA[this.rand.nextInt(GENERA.length)];
+        String species = genus + " species" + this.rand.nextInt(20);
+        JsonObject genome = new JsonObject();
+        genome.put("genome_id", genomeId);
+        genome.put("genome_name", species + " strain " + genomeId);
+        genome.put("genus", genus);
+        genome.put("species", species);
+        genome.put("family", genus.substring(0, 4) + "aceae");
+        genome.put("gc_content", 30.0 + this.rand.nextInt(400) / 10.0);
+        genome.put("genome_length", 1000 * this.featuresPerGenome + this.rand.nextInt(100000));
+        genome.put("patric_cds", this.featuresPerGenome);
+        genome.put("hypothetical_cds", this.rand.nextInt(this.featuresPerGenome / 5 + 1));
+        genome.put("trna", 40 + this.rand.nextInt(40));
+        genome.put("rrna", 3 + this.rand.nextInt(12));
+        JsonArray genomeJson = new JsonArray();
+        genomeJson.add(genome);
+        writeJson(new File(genomeDir, "genome.json"), genomeJson);
+        // Create the features and their subsystem cells.
+        JsonArray featureJson = new JsonArray();
+        JsonArray subsystemJson = new JsonArray();
+        List<String> fids = new ArrayList<>(this.featuresPerGenome);
+        for (int f = 1; f <= this.featuresPerGenome; f++) {
+            String fid = "fig|" + genomeId + ".peg." + f;
+            fids.add(fid);
+            int roleIdx = this.rand.nextInt(this.roleCount);
+            String role = "Synthetic role " + roleIdx;
+            JsonObject feature = new JsonObject();
+            feature.put("patric_id", fid);
+            feature.put("feature_type", FEATURE_TYPES[this.rand.nextInt(FEATURE_TYPES.length)]);
+            int aaLength = 50 + this.rand.nextInt(950);
+            feature.put("aa_length", aaLength);
+            feature.put("na_length", aaLength * 3 + 3);
+            feature.put("product", role);
+            feature.put("gene", "gen" + this.rand.nextInt(this.roleCount));
+            feature.put("accession", genomeId + ".con." + this.rand.nextInt(this.contigsPerGenome));
+            feature.put("genome_id", genomeId);
+            featureJson.add(feature);
+            JsonObject cell = new JsonObject();
+            cell.put("genome_id", genomeId);
+            cell.put("subsystem_name", "Synthetic subsystem " + (roleIdx % this.subsystemCount));
+            cell.put("patric_id", fid);
+            cell.put("role_name", role);
+            subsystemJson.add(cell);
+        }
+        writeJson(new File(genomeDir, "genome_feature.json"), featureJson);
+        writeJson(new File(genomeDir, "subsystem.json"), subsystemJson);
+        // Create the reactions from the model, if any.
+        if (this.model != null)
+            this.generateReactions(genomeDir, genomeId, fids);
+    }
+
+    /**
+     * Generate the reaction, trigger, and linkage files for a genome from the model fixture.  This mirrors the
+     * output of the "modelFix" command.
+     *
+     * @param genomeDir		output directory for the genome
+     * @param genomeId		ID of the genome
+     * @param fids			list of the genome's feature IDs
+     *
+     * @throws IOException
+     */
+    private void generateReactions(File genomeDir, String genomeId, List<String> fids) throws IOException {
+        JsonArray reactionJson = new JsonArray();
+        JsonArray triggerJson = new JsonArray();
+        JsonArray linkageJson = new JsonArray();
+        Collection<Reaction> reactions = this.model.getReactions().values();
+        for (int copy = 0; copy < this.reactionCopies; copy++) {
+            for (Reaction reaction : reactions) {
+                String reactionId = (copy == 0 ? reaction.getId() : reaction.getId() + "." + copy);
+                String reactionName = reaction.getName();
+                JsonObject reactionObject = reaction.toJson();
+                reactionObject.put("id", reactionId);
+                reactionObject.put("genome_id", genomeId);
+                reactionJson.add(reactionObject);
+                // Each triggering feature in the model is replaced by a random feature in this genome.
+                Collection<String> modelFids = reaction.getFeatures();
+                boolean simple = (modelFids.size() <= 1);
+                for (int i = 0; i < modelFids.size(); i++) {
+                    JsonObject trigger = new JsonObject();
+                    trigger.put("reaction_id", reactionId);
+                    trigger.put("patric_id", fids.get(this.rand.nextInt(fids.size())));
+                    trigger.put("name", reactionName);
+                    trigger.put("genome_id", genomeId);
+                    trigger.put("gene_rule", reaction.getGeneRule());
+                    trigger.put("simple", simple);
+                    triggerJson.add(trigger);
+                }
+                this.addLinkages(linkageJson, genomeId, reactionId, reactionName, reaction.getReactants(), false);
+                this.addLinkages(linkageJson, genomeId, reactionId, reactionName, reaction.getProducts(), true);
+            }
+        }
+        writeJson(new File(genomeDir, "reactions.json"), reactionJson);
+        writeJson(new File(genomeDir, "triggers.json"), triggerJson);
+        writeJson(new File(genomeDir, "linkages.json"), linkageJson);
+    }
+
+    /**
+     * Add the linkages from a reaction to a list of compounds.
+     *
+     * @param linkageJson	output list of linkages
+     * @param genomeId		ID of the genome containing the reaction
+     * @param reactionId	ID of the reaction
+     * @param reactionName	name of the reaction
+     * @param compounds		list of compound names
+     * @param isProduct		TRUE if the compounds are products, FALSE if they are reactants
+     */
+    private void addLinkages(JsonArray linkageJson, String genomeId, String reactionId, String reactionName,
+            List<String> compounds, boolean isProduct) {
+        for (String compound : compounds) {
+            JsonObject linkage = new JsonObject();
+            linkage.put("genome_id", genomeId);
+            linkage.put("reaction_id", reactionId);
+            linkage.put("reaction_name", reactionName);
+            linkage.put("product", isProduct);
+            linkage.put("cname", compound);
+            linkageJson.add(linkage);
+        }
+    }
+
+    /**
+     * Write a JSON list to a file.
+     *
+     * @param outFile	output file
+     * @param list		list of records to write
+     *
+     * @throws IOException
+     */
+    private static void writeJson(File outFile, JsonArray list) throws IOException {
+        try (PrintWriter writer = new PrintWriter(outFile, StandardCharsets.UTF_8)) {
+            Jsoner.serialize(list, writer);
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ *
+ */
+package org.theseed.memdb.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.RelationshipInstance;
+import org.theseed.memdb.query.QueryDbInstance;
+
+/**
+ * This benchmark measures raw relationship traversal.  The synthetic database is loaded once per trial, and each
+ * invocation walks from every genome to its features and from every feature to its roles, counting the instances
+ * reached.  No proposal fields are evaluated, so the time is dominated by crossing the relationships.  With the
+ * default parameters there are 400,000 features and 1.6 million connections.
+ *
+ * There are three variants of the walk, so that the ways of crossing a relationship can be compared in the same
+ * run.  The lookup variant scans each instance's connection list and resolves every target through the database
+ * by type name and ID, which is how targets were found before relationship instances held direct references.
+ * The reference variant scans the same connection list but uses the target references.  The frozen variant uses
+ * the per-type adjacency groups, which is what the query engine does now.
+ *
+ * @author Bruce Parrello
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+public class TraversalBenchmark {
+
+    // FIELDS
+    /** number of genomes */
+    @Param({ "200" })
+    public int genomes;
+    /** number of features per genome */
+    @Param({ "2000" })
+    public int features;
+    /** number of distinct roles */
+    @Param({ "1" })
+    public int roles;
+    /** database to traverse */
+    private QueryDbInstance db;
+    /** genome instances from which to start */
+    private List<EntityInstance> origins;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ParseFailureException {
+        this.db = BenchmarkFixtures.createDatabase(this.genomes, this.features, this.roles, 0);
+        this.origins = new ArrayList<>(this.db.getAllEntities("Genome"));
+    }
+
+    @Benchmark
+    public long walkByLookup() {
+        long retVal = 0;
+        for (EntityInstance genome : this.origins) {
+            for (RelationshipInstance toFeature : genome.getRelationships()) {
+                if (toFeature.getTargetType().equals("Feature")) {
+                    EntityInstance feature = this.db.getEntity("Feature", toFeature.getTarget().getId());
+                    for (RelationshipInstance toRole : feature.getRelationships()) {
+                        if (toRole.getTargetType().equals("Role")) {
+                            EntityInstance role = this.db.getEntity("Role", toRole.getTarget().getId());
+                            if (role != null)
+                                retVal++;
+                        }
+                    }
+                }
+            }
+        }
+        return retVal;
+    }
+
+    @Benchmark
+    public long walkByReference() {
+        long retVal = 0;
+        for (EntityInstance genome : this.origins) {
+            for (RelationshipInstance toFeature : genome.getRelationships()) {
+                if (toFeature.getTargetType().equals("Feature")) {
+                    EntityInstance feature = toFeature.getTarget();
+                    for (RelationshipInstance toRole : feature.getRelationships()) {
+                        if (toRole.getTargetType().equals("Role")) {
+                            EntityInstance role = toRole.getTarget();
+                            if (role != null)
+                                retVal++;
+                        }
+                    }
+                }
+            }
+        }
+        return retVal;
+    }
+
+    @Benchmark
+    public long walkFrozen() {
+        long retVal = 0;
+        for (EntityInstance genome : this.origins) {
+            for (EntityInstance feature : genome.getTargetsOfType("Feature")) {
+                for (EntityInstance role : feature.getTargetsOfType("Role")) {
+                    if (role != null)
+                        retVal++;
+                }
+            }
+        }
+        return retVal;
+    }
+
+}
@@ -32,6 +32,7 @@ import org.theseed.basic.BaseProcessor;
  * qprocess     build a JSON file for driving model testing from a question list
  * qsummary     summarize the results in a model-testing JSON file
  * qformat      extract the results from a JSON question results file and format them for easier analysis
+ * dbSnapshot   load a query-generation database and save it to a binary snapshot file
  */
 
 public class App
@@ -62,7 +63,8 @@ public class App
              "qselect", "select random questions from model-testing question files and write them to a JSON file",
              "qprocess", "build a JSON file for driving model testing from a question list",
              "qsummary", "summarize the results in a model-testing JSON file",
-             "qformat", "extract the results from a JSON question results file and format them for easier analysis"
+             "qformat", "extract the results from a JSON question results file and format them for easier analysis",
+             "dbSnapshot", "load a query-generation database and save it to a binary snapshot file"
     };
 
     public static void main( String[] args )
@@ -98,6 +100,7 @@ public class App
         case "qprocess" -> processor = new QuestionAnalysisProcessor();
         case "qsummary" -> processor = new QuestionSummaryProcessor();
         case "qformat" -> processor = new QuestionFormatProcessor();
+        case "dbSnapshot" -> processor = new DbSnapshotProcessor();
         case "-h", "--help" -> processor = null;
         default -> throw new RuntimeException("Invalid command " + command + ".");
         }
@@ -0,0 +1,127 @@
+/**
+ *
+ */
+package org.theseed.genome.survey;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.time.Duration;
+
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.basic.BaseProcessor;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.query.QueryDbDefinition;
+import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.QueryDbSnapshot;
+
+/**
+ * This command loads a query-generation database and saves it to a binary snapshot file.  The snapshot can
+ * then be specified on the "queryGen" command using the "--snapshot" option, which skips the expensive parsing
+ * of the database dump.
+ *
+ * The positional parameters are the name of the database definition file, the name of the input directory
+ * containing the data files, and the name of the output snapshot file.  As with "queryGen", the input directory
+ * can be a master directory with multiple sub-directories containing more-or-less identical file sets.
+ *
+ * The command-line options are
+ * -h	display command-line usage
+ * -v	display more frequent log messages
+ * -R	if specified, the input data directory contains multiple sub-directories with identical
+ * 		file structures
+ *
+ * --loadThreads	number of threads to use for parsing the input directories (default 1)
+ * --loadReport	output file for a load metrics report (JSON if the name ends in ".json", else tab-delimited)
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class DbSnapshotProcessor extends BaseProcessor {
+
+    // FIELDS
+    /** logging facility */
+    private static final Logger log = LoggerFactory.getLogger(DbSnapshotProcessor.class);
+    /** array of input data directories to scan */
+    private File[] dataDirs;
+    /** filter for data subdirectories */
+    private static final FileFilter SUB_DIR_FILTER = (File pathname) -> pathname.isDirectory();
+
+    // COMMAND-LINE OPTIONS
+
+    /** if specified, the input directory is a master directory with multiple sub-directories containing data */
+    @Option(name = "--recursive", aliases = { "-R" }, usage = "if specified, data is in subdirectories of the input data dir")
+    private boolean recursive;
+
+    /** number of threads for parsing input directories */
+    @Option(name = "--loadThreads", metaVar = "8", usage = "number of threads to use for parsing input directories")
+    private int loadThreads;
+
+    /** output file for load metrics report */
+    @Option(name = "--loadReport", metaVar = "load.tbl", usage = "output file for a load metrics report")
+    private File loadReportFile;
+
+    /** database definition file */
+    @Argument(index = 0, metaVar = "dbdFile.txt", usage = "database definition file", required = true)
+    private File dbdFile;
+
+    /** input data directory */
+    @Argument(index = 1, metaVar = "dataDir", usage = "input data directory", required = true)
+    private File dataDir;
+
+    /** output snapshot file */
+    @Argument(index = 2, metaVar = "snapshot.ser", usage = "output snapshot file", required = true)
+    private File outFile;
+
+    @Override
+    protected void setDefaults() {
+        this.recursive = false;
+        this.loadThreads = 1;
+        this.loadReportFile = null;
+    }
+
+    @Override
+    protected void validateParms() throws IOException, ParseFailureException {
+        // Verify the input files.
+        if (! this.dbdFile.canRead())
+            throw new FileNotFoundException("Database definition file " + this.dbdFile + " is not found or unreadable.");
+        if (! this.dataDir.isDirectory())
+            throw new FileNotFoundException("Data directory " + this.dataDir + " is not found or invalid.");
+        if (this.loadThreads < 1)
+            throw new ParseFailureException("Invalid number of load threads: must be positive.");
+        // Assemble the list of input directories.
+        if (! this.recursive) {
+            this.dataDirs = new File[] { this.dataDir };
+            log.info("Data will be loaded from {}.", this.dataDir);
+        } else {
+            this.dataDirs = this.dataDir.listFiles(SUB_DIR_FILTER);
+            if (this.dataDirs.length == 0)
+                throw new FileNotFoundException("No subdirectories found for " + this.dataDir + ".");
+            log.info("{} data directories found in {}.", this.dataDirs.length, this.dataDir);
+        }
+    }
+
+    @Override
+    protected void runCommand() throws Exception {
+        long start = System.currentTimeMillis();
+        // Load the definition.
+        log.info("Loading database definition from {}.", this.dbdFile);
+        QueryDbDefinition dbd = new QueryDbDefinition(this.dbdFile);
+        dbd.setLoadThreads(this.loadThreads);
+        // Use the definition to load the data.
+        log.info("Loading data directories.");
+        QueryDbInstance db = (QueryDbInstance) dbd.readDatabase(this.dataDirs);
+        log.info("{} to load database.", Duration.ofMillis(System.currentTimeMillis() - start));
+        if (this.loadReportFile != null) {
+            log.info("Writing load metrics to {}.", this.loadReportFile);
+            dbd.getLoadMetrics().save(this.loadReportFile);
+        }
+        // Save the snapshot.
+        QueryDbSnapshot.save(db, this.outFile);
+        log.info("Snapshot written to {}: {} bytes.", this.outFile, this.outFile.length());
+    }
+
+}
@@ -3,12 +3,14 @@
  */
 package org.theseed.genome.survey;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.theseed.basic.ParseFailureException;
 import org.theseed.counters.CountMap;
+import org.theseed.memdb.query.QueryEntityInstance;
 import org.theseed.memdb.query.proposal.ExactProposalField;
 import org.theseed.memdb.query.proposal.ListProposalQuery;
 import org.theseed.memdb.query.proposal.ProposalResponse;
@@ -83,15 +85,53 @@ public class GroupProposalQuery extends ListProposalQuery {
      * @return a table of field values and counts for the response set
      */
     private CountMap<String> getCountMap(ProposalResponseSet responseSet) {
-        CountMap<String> retVal = new CountMap<>();
-        // Get the key attribute name and entity type.
+        // If the responses were tallied, the counts are already computed.
+        CountMap<String> retVal = responseSet.getValueCounts();
+        if (retVal == null) {
+            retVal = new CountMap<>();
+            // Get the key attribute name and entity type.
+            String entityType = this.getOutputEntityType();
+            String attrName = this.getOutputAttrName();
+            // Loop through the responses in the response set.
+            for (ProposalResponse response : responseSet) {
+                List<String> outputValue = response.getValue(entityType, attrName);
+                for (String value : outputValue)
+                    retVal.count(value);
+            }
+        }
+        return retVal;
+    }
+
+    @Override
+    protected int getSizeLowerBound(ProposalResponseSet responseSet, int limit) {
+        // If the responses were tallied, we have the exact answer. Otherwise, we count the distinct values.
+        int retVal;
+        CountMap<String> valueCounts = responseSet.getValueCounts();
+        if (valueCounts != null)
+            retVal = valueCounts.size();
+        else
+            retVal = super.getSizeLowerBound(responseSet, limit);
+        return retVal;
+    }
+
+    @Override
+    protected boolean isAggregateOnly() {
+        // Only the output value counts are needed, so the responses do not have to be stored.
+        return true;
+    }
+
+    @Override
+    protected List<String> getAggregateValues(ProposalResponse prefix, QueryEntityInstance instance) {
+        // The output value comes from the last instance of the output entity type in the path.
+        List<String> retVal;
         String entityType = this.getOutputEntityType();
         String attrName = this.getOutputAttrName();
-        // Loop through the responses in the response set.
-        for (ProposalResponse response : responseSet) {
-            List<String> outputValue = response.getValue(entityType, attrName);
-            outputValue.forEach(x -> retVal.count(x));
-        }
+        if (entityType.equals(instance.getType()))
+            retVal = instance.getAttribute(attrName).getList();
+        else if (prefix == null)
+            retVal = Collections.emptyList();
+        else
+            retVal = prefix.getValue(entityType, attrName);
         return retVal;
     }
 
@@ -0,0 +1,489 @@
+/**
+ *
+ */
+package org.theseed.genome.survey;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.basic.ParseFailureException;
+
+/**
+ * A query-generation checkpoint records the templates completed by a "queryGen" run, so that an interrupted run
+ * can be resumed without recomputing them.  The checkpoint file begins with a header line containing the master
+ * random number seed, the output format, and a string describing the run settings that affect the output (such
+ * as the result set limits).  Each template's random number generator is seeded from the master seed in input
+ * order, so the seed is all that is needed to restore the random number state of the remaining templates.  The
+ * output of the completed templates is only valid if the format and settings are the same, so a run cannot be
+ * resumed if either has changed.
+ *
+ * After the header, there is a record for each completed template.  The record begins with a line containing
+ * "template", the template's position in the input, the number of questions written, the number of output
+ * elements that follow, the question template string, the path string, and the result string, all tab-delimited.
+ * When a run is resumed, each completed template must match the input template in the same position.  Next come
+ * the output elements
+ * (JSON strings or text lines, depending on the format), one per line, and then a line containing "end" and the
+ * template position.  A text element can span several output lines, so in each element, backslashes are
+ * doubled and line breaks are stored as "\n" or "\r", keeping the element on one line of the file.  A record
+ * without its end line was interrupted, and is ignored.
+ *
+ * When a run is resumed, the checkpoint file is rewritten with only the complete records, and new records are
+ * appended as templates finish.  Only the position of each complete record is kept in memory; its output
+ * elements are read back from the rewritten file when they are replayed.  The file is written in UTF-8, so
+ * the positions are byte offsets.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class QueryGenCheckpoint implements AutoCloseable {
+
+    // FIELDS
+    /** logging facility */
+    private static final Logger log = LoggerFactory.getLogger(QueryGenCheckpoint.class);
+    /** checkpoint file name */
+    private final File ckptFile;
+    /** master random number seed */
+    private final long seed;
+    /** output format name */
+    private final String format;
+    /** description of the run settings that affect the output */
+    private final String settings;
+    /** map of template positions to completed templates from the previous run */
+    private final Map<Integer, Entry> entryMap;
+    /** output writer for the checkpoint file */
+    private Writer writer;
+
+    /**
+     * This object describes a template completed in a previous run.  The output elements are not kept in
+     * memory:  instead, we remember where the template's record is in the checkpoint file.
+     */
+    public static class Entry {
+
+        /** question template string */
+        private final String template;
+        /** path string */
+        private final String path;
+        /** result string */
+        private final String result;
+        /** number of questions written */
+        private final int questions;
+        /** number of output elements written */
+        private final int count;
+        /** checkpoint file containing the record */
+        private final File file;
+        /** byte offset of the record in the checkpoint file */
+        private final long offset;
+
+        /**
+         * Create a completed-template descriptor.
+         *
+         * @param template		question template string
+         * @param path			path string
+         * @param result		result string
+         * @param questions		number of questions written
+         * @param count			number of output elements written
+         * @param file			checkpoint file containing the record
+         * @param offset		byte offset of the record's first line in the file
+         */
+        protected Entry(String template, String path, String result, int questions, int count, File file, long offset) {
+            this.template = template;
+            this.path = path;
+            this.result = result;
+            this.questions = questions;
+            this.count = count;
+            this.file = file;
+            this.offset = offset;
+        }
+
+        /**
+         * @return the question template string
+         */
+        public String getTemplate() {
+            return this.template;
+        }
+
+        /**
+         * @return the path string
+         */
+        public String getPath() {
+            return this.path;
+        }
+
+        /**
+         * @return the result string
+         */
+        public String getResult() {
+            return this.result;
+        }
+
+        /**
+         * @return the number of questions written
+         */
+        public int getQuestions() {
+            return this.questions;
+        }
+
+        /**
+         * @return the output elements written, read back from the checkpoint file
+         *
+         * @throws IOException
+         */
+        public List<String> getElements() throws IOException {
+            List<String> retVal = new ArrayList<>(this.count);
+            if (this.count > 0) {
+                try (FileInputStream inStream = new FileInputStream(this.file)) {
+                    inStream.getChannel().position(this.offset);
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(inStream, StandardCharsets.UTF_8));
+                    // Skip the record's header line.
+                    reader.readLine();
+                    for (int i = 0; i < this.count; i++) {
+                        String line = reader.readLine();
+                        if (line == null)
+                            throw new IOException("Checkpoint file " + this.file + " is truncated.");
+                        retVal.add(unescape(line));
+                    }
+                }
+            }
+            return retVal;
+        }
+
+    }
+
+    /**
+     * Create a checkpoint object.
+     *
+     * @param ckptFile	checkpoint file name
+     * @param seed		master random number seed
+     * @param format	output format name
+     * @param settings	description of the run settings that affect the output
+     */
+    private QueryGenCheckpoint(File ckptFile, long seed, String format, String settings) {
+        this.ckptFile = ckptFile;
+        this.seed = seed;
+        this.format = format;
+        this.settings = clean(settings);
+        this.entryMap = new TreeMap<>();
+        this.writer = null;
+    }
+
+    /**
+     * Create a new checkpoint file for a run.  Any existing file is replaced.
+     *
+     * @param ckptFile	checkpoint file name
+     * @param seed		master random number seed
+     * @param format	output format name
+     * @param settings	description of the run settings that affect the output
+     *
+     * @return the checkpoint object for the run
+     *
+     * @throws IOException
+     */
+    public static QueryGenCheckpoint create(File ckptFile, long seed, String format, String settings) throws IOException {
+        QueryGenCheckpoint retVal = new QueryGenCheckpoint(ckptFile, seed, format, settings);
+        File tempFile = retVal.getTempFile();
+        try (Writer tempWriter = openWriter(tempFile, false)) {
+            retVal.writeHeader(tempWriter);
+        }
+        retVal.install(tempFile);
+        return retVal;
+    }
+
+    /**
+     * Read the checkpoint file from a previous run so that the run can be resumed.
+     *
+     * @param ckptFile	checkpoint file name
+     * @param format	output format name for the resumed run
+     * @param settings	description of the run settings for the resumed run
+     *
+     * @return the checkpoint object for the resumed run
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    public static QueryGenCheckpoint resume(File ckptFile, String format, String settings)
+            throws IOException, ParseFailureException {
+        if (! ckptFile.canRead())
+            throw new FileNotFoundException("Checkpoint file " + ckptFile + " is not found or unreadable.");
+        QueryGenCheckpoint retVal;
+        File tempFile;
+        try (BufferedReader ckptStream = new BufferedReader(new InputStreamReader(new FileInputStream(ckptFile),
+                StandardCharsets.UTF_8))) {
+            // Read the header.
+            String line = ckptStream.readLine();
+            if (line == null)
+                throw new IOException("Checkpoint file " + ckptFile + " is empty.");
+            String[] header = StringUtils.splitPreserveAllTokens(line, '\t');
+            if (header.length < 3 || ! header[0].equals("seed"))
+                throw new IOException("Checkpoint file " + ckptFile + " has an invalid header.");
+            if (! header[2].equals(format))
+                throw new ParseFailureException("Checkpoint file " + ckptFile + " was written for format " + header[2]
+                        + ", not " + format + ".");
+            retVal = new QueryGenCheckpoint(ckptFile, Long.parseLong(header[1]), format, settings);
+            String oldSettings = (header.length < 4 ? "" : header[3]);
+            if (! oldSettings.equals(retVal.settings))
+                throw new ParseFailureException("Checkpoint file " + ckptFile + " was written with settings \""
+                        + oldSettings + "\", not \"" + retVal.settings + "\".");
+            // The complete records are copied to a new file under a temporary name, which is then moved into
+            // place, so a failure here does not destroy the old checkpoint.  Only one record's elements are in
+            // memory at a time.
+            tempFile = retVal.getTempFile();
+            try (Writer tempWriter = openWriter(tempFile, false)) {
+                long position = retVal.writeHeader(tempWriter);
+                // Now read the template records.
+                int badCount = 0;
+                line = ckptStream.readLine();
+                while (line != null) {
+                    String[] fields = StringUtils.splitPreserveAllTokens(line, '\t');
+                    if (fields.length < 7 || ! fields[0].equals("template")) {
+                        // Here we have the remains of an interrupted record.
+                        badCount++;
+                        line = ckptStream.readLine();
+                    } else {
+                        int idx = Integer.parseInt(fields[1]);
+                        int questions = Integer.parseInt(fields[2]);
+                        int n = Integer.parseInt(fields[3]);
+                        List<String> elements = new ArrayList<>(n);
+                        line = ckptStream.readLine();
+                        while (elements.size() < n && line != null) {
+                            elements.add(line);
+                            line = ckptStream.readLine();
+                        }
+                        if (elements.size() == n && line != null && line.equals("end\t" + idx)) {
+                            // The elements are still escaped, so they are copied as they are.
+                            retVal.entryMap.put(idx, new Entry(fields[4], fields[5], fields[6], questions, n, ckptFile,
+                                    position));
+                            position += writeRecord(tempWriter, idx, fields[4], fields[5], fields[6], questions, elements);
+                            line = ckptStream.readLine();
+                        } else
+                            badCount++;
+                    }
+                }
+                if (badCount > 0)
+                    log.warn("{} incomplete records skipped in checkpoint file {}.", badCount, ckptFile);
+            }
+        }
+        log.info("{} completed templates found in checkpoint file {}.", retVal.entryMap.size(), ckptFile);
+        retVal.install(tempFile);
+        return retVal;
+    }
+
+    /**
+     * @return the temporary file used to build a new checkpoint file
+     */
+    private File getTempFile() {
+        return new File(this.ckptFile.getAbsoluteFile().getParentFile(), this.ckptFile.getName() + ".tmp");
+    }
+
+    /**
+     * @return a UTF-8 writer for a checkpoint file
+     *
+     * @param file		checkpoint file to open
+     * @param append	TRUE to add to the end of the file, FALSE to replace it
+     *
+     * @throws IOException
+     */
+    private static Writer openWriter(File file, boolean append) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Move a newly-built checkpoint file into place, and leave it open for more records.
+     *
+     * @param tempFile	temporary file containing the header and the complete records
+     *
+     * @throws IOException
+     */
+    private void install(File tempFile) throws IOException {
+        Files.move(tempFile.toPath(), this.ckptFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        this.writer = openWriter(this.ckptFile, true);
+    }
+
+    /**
+     * Write the header line to a checkpoint file.
+     *
+     * @param outWriter		output writer for the checkpoint file
+     *
+     * @return the number of bytes written
+     *
+     * @throws IOException
+     */
+    private long writeHeader(Writer outWriter) throws IOException {
+        return writeLine(outWriter, "seed\t" + this.seed + "\t" + this.format + "\t" + this.settings);
+    }
+
+    /**
+     * Write a template record to a checkpoint file.
+     *
+     * @param outWriter		output writer for the checkpoint file
+     * @param idx			position of the template in the input
+     * @param template		question template string
+     * @param path			path string
+     * @param result		result string
+     * @param questions		number of questions written
+     * @param elements		list of output elements written, already escaped
+     *
+     * @return the number of bytes written
+     *
+     * @throws IOException
+     */
+    private static long writeRecord(Writer outWriter, int idx, String template, String path, String result,
+            int questions, List<String> elements) throws IOException {
+        long retVal = writeLine(outWriter, "template\t" + idx + "\t" + questions + "\t" + elements.size() + "\t"
+                + clean(template) + "\t" + clean(path) + "\t" + clean(result));
+        for (String element : elements)
+            retVal += writeLine(outWriter, element);
+        retVal += writeLine(outWriter, "end\t" + idx);
+        return retVal;
+    }
+
+    /**
+     * Write a line to a checkpoint file.  The lines are always terminated by a single new-line character, so
+     * that the byte offsets of the records can be computed.
+     *
+     * @param outWriter		output writer for the checkpoint file
+     * @param line			line to write
+     *
+     * @return the number of bytes written
+     *
+     * @throws IOException
+     */
+    private static long writeLine(Writer outWriter, String line) throws IOException {
+        outWriter.write(line);
+        outWriter.write('\n');
+        return line.getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+
+    /**
+     * @return a string with its tabs and line breaks converted to spaces, so it can be stored in a tab-delimited field
+     *
+     * @param string	string to convert
+     */
+    private static String clean(String string) {
+        return StringUtils.replaceChars(string, "\t\n\r", "   ");
+    }
+
+    /**
+     * @return an output element encoded so that it fits on a single line
+     *
+     * @param element	output element to encode
+     */
+    protected static String escape(String element) {
+        return StringUtils.replaceEach(element, new String[] { "\\", "\n", "\r" },
+                new String[] { "\\\\", "\\n", "\\r" });
+    }
+
+    /**
+     * @return the output element encoded in a checkpoint line
+     *
+     * @param line		encoded output element
+     */
+    protected static String unescape(String line) {
+        String retVal = line;
+        if (line.indexOf('\\') >= 0) {
+            final int n = line.length();
+            StringBuilder buffer = new StringBuilder(n);
+            for (int i = 0; i < n; i++) {
+                char c = line.charAt(i);
+                if (c == '\\' && i + 1 < n) {
+                    i++;
+                    c = line.charAt(i);
+                    if (c == 'n')
+                        c = '\n';
+                    else if (c == 'r')
+                        c = '\r';
+                }
+                buffer.append(c);
+            }
+            retVal = buffer.toString();
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the master random number seed
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * @return the number of completed templates from the previous run
+     */
+    public int size() {
+        return this.entryMap.size();
+    }
+
+    /**
+     * Find a template completed in a previous run.  The question template, path, and result must all match the
+     * checkpoint record.
+     *
+     * @param idx			position of the template in the input
+     * @param template		question template string
+     * @param path			path string
+     * @param result		result string
+     *
+     * @return the descriptor for the completed template, or NULL if it was not completed
+     *
+     * @throws ParseFailureException
+     */
+    public Entry get(int idx, String template, String path, String result) throws ParseFailureException {
+        Entry retVal = this.entryMap.get(idx);
+        if (retVal != null) {
+            String input = clean(template) + "\t" + clean(path) + "\t" + clean(result);
+            String saved = retVal.template + "\t" + retVal.path + "\t" + retVal.result;
+            if (! input.equals(saved))
+                throw new ParseFailureException("Template " + (idx + 1) + " does not match the checkpoint: input has \""
+                        + input.replace('\t', '|') + "\" and checkpoint has \"" + saved.replace('\t', '|') + "\".");
+        }
+        return retVal;
+    }
+
+    /**
+     * Record a completed template.  The record is flushed immediately, so it survives if the run is interrupted.
+     *
+     * @param idx			position of the template in the input
+     * @param template		question template string
+     * @param path			path string
+     * @param result		result string
+     * @param questions		number of questions written
+     * @param elements		list of output elements written
+     *
+     * @throws IOException
+     */
+    public void save(int idx, String template, String path, String result, int questions, List<String> elements)
+            throws IOException {
+        List<String> encoded = (elements == null ? Collections.emptyList()
+                : elements.stream().map(x -> escape(x)).collect(Collectors.toList()));
+        writeRecord(this.writer, idx, template, path, result, questions, encoded);
+        this.writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.writer != null) {
+            this.writer.close();
+            this.writer = null;
+        }
+    }
+
+}
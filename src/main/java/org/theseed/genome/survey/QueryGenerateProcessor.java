@@ -9,10 +9,25 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.Strings;
 import org.kohsuke.args4j.Argument;
@@ -22,13 +37,17 @@ import org.slf4j.LoggerFactory;
 import org.theseed.basic.ParseFailureException;
 import org.theseed.io.LineReader;
 import org.theseed.io.LineReaderCommentSkipper;
+import org.theseed.memdb.query.QueryDbCache;
 import org.theseed.memdb.query.QueryDbDefinition;
 import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.QueryDbSnapshot;
 import org.theseed.memdb.query.proposal.ChoiceProposalQuery;
 import org.theseed.memdb.query.proposal.CountProposalQuery;
 import org.theseed.memdb.query.proposal.ListProposalQuery;
+import org.theseed.memdb.query.proposal.ProposalBatch;
 import org.theseed.memdb.query.proposal.ProposalQuery;
 import org.theseed.memdb.query.proposal.ProposalResponseSet;
+import org.theseed.memdb.query.proposal.QueryMetrics;
 import org.theseed.reports.QueryGenReporter;
 import org.theseed.utils.BaseTextProcessor;
 
@@ -45,7 +64,10 @@ import com.github.cliftonlabs.json_simple.JsonObject;
  * The positional parameters are the name of the database definition file and the name of
  * the input directory containing the data files. The input directory can potentially be
  * a master directory with multiple sub-directories containing more-or-less identical file
- * sets.
+ * sets.  If a database snapshot (produced by the "dbSnapshot" command) is specified, the
+ * database is loaded from the snapshot and the input directory can be omitted.  If a cache
+ * directory is specified, a snapshot fragment is kept for each input directory, and only
+ * directories whose files have changed since the last run are re-parsed.
  *
  * The queries are described in the standard input with three lines of information per query.  The
  * first line contains a text question with embedded field names. The second line contains a path
@@ -67,6 +89,49 @@ import com.github.cliftonlabs.json_simple.JsonObject;
  * entity instance set is too big, we pare it down by selecting random elements. Both of these measures may cause us to
  * lose acceptable results, but it is a concession to what we can do with limited memory.
  *
+ * Response sets whose output is already known to exceed the target size are pruned as soon as this is
+ * discovered.  This is always possible at the end of the path, and for count and list queries it is often
+ * possible earlier, when the rest of the path can neither split the set nor lose responses.  Pruning does
+ * not change the output, and can be turned off for comparison purposes.
+ *
+ * Each query path is normally traversed forward, from the first entity to the last.  If "--plan" is specified,
+ * a path planner uses the entity instance counts, the relationship fan-out statistics, and the selectivity of the
+ * query fields to decide whether it is cheaper to start from the last entity instead.  The response sets are the
+ * same either way, except that the intermediate result set limits are applied to different sets, and when the
+ * starting entity type has more instances than the limit, the random sample is taken from a different type.  So
+ * planning can change the output whenever the limit is reached, and it is only done on request.
+ *
+ * In batch mode, all the query templates are read before any questions are generated.  The templates are
+ * grouped by entity path and result set limit (group templates have no limit, so they are batched apart from
+ * the others), and each path is traversed only once for all the templates in a group, with
+ * every template's fields evaluated during the traversal.  The output is still written in the original
+ * template order.  In batch mode, the intermediate result set limit only applies to the final response sets,
+ * and the paths are always traversed forward.
+ *
+ * Templates (or batches, in batch mode) can be evaluated concurrently on a pool of worker threads.  The
+ * results are written in the original template order, and a limited number of templates are kept in flight
+ * so the pending results do not overwhelm memory.  Each template has its own random number generator, seeded
+ * from the master seed in input order, so the output for a given seed is the same no matter how many threads
+ * are used.
+ *
+ * If a checkpoint file is specified, each template's output is recorded in it as soon as the template is
+ * written, along with the master seed.  An interrupted run can then be resumed with "--resume".  The output of
+ * the completed templates is copied from the checkpoint file, and only the unfinished templates are evaluated.
+ * Because the template random number generators are seeded from the master seed in input order, the output is
+ * the same as it would have been for an uninterrupted run.  The database must still be loaded, and the input
+ * templates must be the same as in the interrupted run.  The output format and the options that affect the
+ * output ("--target", "--limit", "--max", "--choices", "--batch", "--plan", and "--noPrune") must also be the
+ * same, and the run is refused if they are not.  In batch mode, the batches are formed from all the
+ * templates, including the completed ones, because a batch traversal depends on every template in the batch.  A
+ * batch is only skipped if all its templates were completed, so a partly-completed batch is computed in full.
+ *
+ * If a profile report is requested, the cost of each template is recorded: the time spent on each step of the
+ * path traversal, the numbers of responses created, rejected, and discarded for belonging to response sets that
+ * were too big, the peak number of response sets, the heap in use, and the number of questions written.  This
+ * can be used to find the templates that dominate the run.  In batch mode, the traversal time is shared by the
+ * templates in a batch, so the report includes the batch size of each template.  Templates restored from a
+ * checkpoint are not included.
+ *
  * The command-line options are
  * -h	display command-line usage
  * -v	display more frequent log messages
@@ -82,6 +147,19 @@ import com.github.cliftonlabs.json_simple.JsonObject;
  * --domain		question domains to list in JSON output (may occur multiple times)
  * --support	support string to include in JSON output
  * --choices    number of multiple-choice responses to generate (default 4)
+ * --loadThreads	number of threads to use for parsing the input directories (default 1)
+ * --loadReport	output file for a load metrics report (JSON if the name ends in ".json", else tab-delimited)
+ * --snapshot	database snapshot file to load instead of the input directory
+ * --cache		cache directory for incremental database loading
+ * --para		number of threads to use for expanding response sets (default 1)
+ * --noPrune	if specified, response sets that exceed the target size will not be pruned early
+ * --plan		if specified, a path planner chooses the direction in which to traverse each query path
+ * --batch		if specified, templates sharing the same entity path and limit are evaluated together
+ * --threads	number of templates to evaluate concurrently (default 1)
+ * --seed		random number seed (default 0, which chooses a seed at random)
+ * --checkpoint	checkpoint file for recording completed templates
+ * --resume		if specified, resume an interrupted run from the checkpoint file
+ * --profile	output file for a per-template cost report (JSON if the name ends in ".json", else tab-delimited)
  *
  * @author Bruce Parrello
  *
@@ -99,9 +177,61 @@ public class QueryGenerateProcessor extends BaseTextProcessor implements QueryGe
     private QueryGenReporter reporter;
     /** list of failed templates */
     private List<String> failedTemplates;
+    /** thread pool for parallel path expansion, or NULL for single-threaded expansion */
+    private ForkJoinPool threadPool;
+    /** total number of response sets pruned */
+    private int totalPruned;
+    /** total number of response sets pruned before the end of the path */
+    private int totalEarlyPruned;
+    /** total number of responses discarded by pruning */
+    private long totalPrunedResponses;
+    /** total number of questions written */
+    private int totalCount;
+    /** worker pool for evaluating templates, or NULL to evaluate them on the main thread */
+    private ExecutorService templatePool;
+    /** queue of template evaluations in progress, in input order */
+    private Deque<PendingWork> pending;
+    /** queue of templates whose questions have not yet been written, in input order */
+    private Deque<ProposalQuery> outputQueue;
+    /** map of evaluated templates to their response sets, for templates waiting to be written */
+    private Map<ProposalQuery, List<ProposalResponseSet>> resultMap;
+    /** checkpoint for completed templates, or NULL if there is none */
+    private QueryGenCheckpoint checkpoint;
+    /** map of templates completed in a previous run to their checkpoint records, for templates waiting to be written */
+    private Map<ProposalQuery, QueryGenCheckpoint.Entry> replayMap;
+    /** number of templates written so far, which is also the input position of the next one */
+    private int outputIndex;
+    /** number of templates restored from the checkpoint */
+    private int restoredCount;
+    /** cost metrics for the templates, or NULL if no profile report was requested */
+    private QueryMetrics queryMetrics;
     /** filter for data subdirectories */
     private static final FileFilter SUB_DIR_FILTER = (File pathname) -> pathname.isDirectory();
 
+    /**
+     * This object describes a template evaluation in progress on the worker pool.  An evaluation computes the
+     * response sets for one or more templates.
+     */
+    private static class PendingWork {
+
+        /** list of templates being evaluated */
+        private final List<ProposalQuery> proposals;
+        /** future for the response set lists, one per template */
+        private final Future<List<List<ProposalResponseSet>>> future;
+
+        /**
+         * Create a pending template evaluation.
+         *
+         * @param proposals		list of templates being evaluated
+         * @param future		future for the response set lists
+         */
+        protected PendingWork(List<ProposalQuery> proposals, Future<List<List<ProposalResponseSet>>> future) {
+            this.proposals = proposals;
+            this.future = future;
+        }
+
+    }
+
     // COMMAND-LINE OPTIONS
 
     /** if specified, the input directory is a master directory with multiple sub-directories containing data */
@@ -136,12 +266,64 @@ public class QueryGenerateProcessor extends BaseTextProcessor implements QueryGe
     @Option(name = "--choices", metaVar = "6", usage = "number of multiple-choice responses to generate")
     private int numChoices;
 
+    /** number of threads for parsing input directories */
+    @Option(name = "--loadThreads", metaVar = "8", usage = "number of threads to use for parsing input directories")
+    private int loadThreads;
+
+    /** output file for load metrics report */
+    @Option(name = "--loadReport", metaVar = "load.tbl", usage = "output file for a load metrics report")
+    private File loadReportFile;
+
+    /** database snapshot file */
+    @Option(name = "--snapshot", metaVar = "snapshot.ser", usage = "database snapshot file to load instead of the data directory")
+    private File snapshotFile;
+
+    /** database cache directory */
+    @Option(name = "--cache", metaVar = "dbCache", usage = "cache directory for incremental database loading")
+    private File cacheDir;
+
+    /** number of threads for path expansion */
+    @Option(name = "--para", metaVar = "8", usage = "number of threads to use for expanding response sets")
+    private int maxThreads;
+
+    /** if specified, early pruning of response sets is turned off */
+    @Option(name = "--noPrune", usage = "if specified, do not prune response sets that exceed the target size early")
+    private boolean noPrune;
+
+    /** if specified, the path planner chooses the traversal direction */
+    @Option(name = "--plan", usage = "if specified, choose the cheaper direction in which to traverse each query path")
+    private boolean planMode;
+
+    /** if specified, templates with the same path are evaluated together */
+    @Option(name = "--batch", usage = "if specified, evaluate templates sharing an entity path and limit in a single traversal")
+    private boolean batchMode;
+
+    /** number of templates to evaluate concurrently */
+    @Option(name = "--threads", metaVar = "4", usage = "number of templates to evaluate concurrently")
+    private int templateThreads;
+
+    /** random number seed */
+    @Option(name = "--seed", metaVar = "12345", usage = "random number seed (0 to choose one at random)")
+    private long seed;
+
+    /** checkpoint file */
+    @Option(name = "--checkpoint", metaVar = "queryGen.ckpt", usage = "checkpoint file for recording completed templates")
+    private File ckptFile;
+
+    /** if specified, an interrupted run will be resumed */
+    @Option(name = "--resume", usage = "if specified, resume an interrupted run from the checkpoint file")
+    private boolean resume;
+
+    /** output file for the template cost report */
+    @Option(name = "--profile", metaVar = "profile.tbl", usage = "output file for a per-template cost report")
+    private File profileFile;
+
     /** database definition file */
     @Argument(index = 0, metaVar = "dbdFile.txt", usage = "database definition file", required = true)
     private File dbdFile;
 
     /** input data directory */
-    @Argument(index = 1, metaVar = "dataDir", usage = "input data directory", required = true)
+    @Argument(index = 1, metaVar = "dataDir", usage = "input data directory (if no snapshot)")
     private File dataDir;
 
     @Override
@@ -154,6 +336,20 @@ public class QueryGenerateProcessor extends BaseTextProcessor implements QueryGe
         this.domains = new ArrayList<>();
         this.support = "";
         this.numChoices = 4;
+        this.loadThreads = 1;
+        this.loadReportFile = null;
+        this.snapshotFile = null;
+        this.cacheDir = null;
+        this.maxThreads = 1;
+        this.noPrune = false;
+        this.planMode = false;
+        this.batchMode = false;
+        this.templateThreads = 1;
+        this.seed = 0;
+        this.ckptFile = null;
+        this.resume = false;
+        this.profileFile = null;
+        this.dataDir = null;
     }
 
     @Override
@@ -161,7 +357,14 @@ public class QueryGenerateProcessor extends BaseTextProcessor implements QueryGe
         // Verify the input files.
         if (! this.dbdFile.canRead())
             throw new FileNotFoundException("Database definition file " + this.dbdFile + " is not found or unreadable.");
-        if (! this.dataDir.isDirectory())
+        if (this.snapshotFile != null) {
+            if (this.cacheDir != null)
+                throw new ParseFailureException("Cannot specify both a snapshot and a cache directory.");
+            if (! this.snapshotFile.canRead())
+                throw new FileNotFoundException("Snapshot file " + this.snapshotFile + " is not found or unreadable.");
+        } else if (this.dataDir == null)
+            throw new ParseFailureException("A data directory is required if no snapshot is specified.");
+        else if (! this.dataDir.isDirectory())
             throw new FileNotFoundException("Data directory " + this.dataDir + " is not found or invalid.");
         // Validate the limit parameters.
         if (this.targetSize < 1)
@@ -172,10 +375,36 @@ public class QueryGenerateProcessor extends BaseTextProcessor implements QueryGe
             throw new ParseFailureException("Invalid output limit: must be positive.");
         if (this.numChoices < 2)
             throw new ParseFailureException("Invalid number of choices: must be at least 2.");
+        if (this.loadThreads < 1)
+            throw new ParseFailureException("Invalid number of load threads: must be positive.");
+        if (this.maxThreads < 1)
+            throw new ParseFailureException("Invalid number of expansion threads: must be positive.");
+        int maxCores = Runtime.getRuntime().availableProcessors();
+        if (this.maxThreads > maxCores) {
+            log.warn("Too many threads specified:  reducing from {} to {}.", this.maxThreads, maxCores);
+            this.maxThreads = maxCores;
+        }
+        if (this.templateThreads < 1)
+            throw new ParseFailureException("Invalid number of template threads: must be positive.");
+        if (this.templateThreads == 1)
+            this.templatePool = null;
+        else {
+            this.templatePool = Executors.newFixedThreadPool(this.templateThreads);
+            log.info("{} templates will be evaluated concurrently.", this.templateThreads);
+        }
+        if (this.maxThreads == 1)
+            this.threadPool = null;
+        else {
+            this.threadPool = new ForkJoinPool(this.maxThreads);
+            log.info("Parallel path expansion selected with {} threads.", this.maxThreads);
+        }
         // Set the number of choices in the choice query class.
         ChoiceProposalQuery.setNumResponses(this.numChoices);
         // Assemble the list of input directories.
-        if (! this.recursive) {
+        if (this.snapshotFile != null) {
+            this.dataDirs = new File[0];
+            log.info("Data will be loaded from snapshot {}.", this.snapshotFile);
+        } else if (! this.recursive) {
             // Here we are just reading data from one directory.
             this.dataDirs = new File[] { this.dataDir };
             log.info("Data will be loaded from {}.", this.dataDir);
@@ -188,18 +417,82 @@ public class QueryGenerateProcessor extends BaseTextProcessor implements QueryGe
         // Create the output report writer.
         log.info("Initializing report type {}.", this.reportType);
         this.reporter = this.reportType.create(this);
+        // Set up the random number seed and the checkpoint.
+        if (this.resume) {
+            if (this.ckptFile == null)
+                throw new ParseFailureException("A checkpoint file is required to resume a run.");
+            this.checkpoint = QueryGenCheckpoint.resume(this.ckptFile, this.reportType.name(),
+                    this.getSettings());
+            if (this.seed != 0 && this.seed != this.checkpoint.getSeed())
+                log.warn("Specified seed {} ignored:  the seed from the checkpoint will be used.", this.seed);
+            this.seed = this.checkpoint.getSeed();
+            log.info("Resuming with random number seed {}.", this.seed);
+        } else {
+            if (this.seed == 0) {
+                this.seed = new Random().nextLong();
+                log.info("Random number seed is {}.", this.seed);
+            }
+            if (this.ckptFile == null)
+                this.checkpoint = null;
+            else {
+                log.info("Completed templates will be recorded in {}.", this.ckptFile);
+                this.checkpoint = QueryGenCheckpoint.create(this.ckptFile, this.seed, this.reportType.name(),
+                        this.getSettings());
+            }
+        }
         // Initialize the failed-template list.
         this.failedTemplates = new ArrayList<>();
+        // Set up the cost metrics.
+        this.queryMetrics = (this.profileFile == null ? null : new QueryMetrics());
     }
 
     @Override
     protected void runPipeline(LineReader inputStream, PrintWriter writer) throws Exception {
+        try {
+            this.generateQuestions(inputStream, writer);
+        } finally {
+            if (this.threadPool != null)
+                this.threadPool.shutdown();
+            if (this.templatePool != null)
+                this.templatePool.shutdownNow();
+            if (this.checkpoint != null)
+                this.checkpoint.close();
+        }
+    }
+
+    /**
+     * Load the database and generate the questions for each query template in the input.
+     *
+     * @param inputStream	input stream containing the query templates
+     * @param writer		output writer for the questions
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    private void generateQuestions(LineReader inputStream, PrintWriter writer) throws IOException, ParseFailureException {
         // Load the database.
         this.loadDatabase();
         // Start the output report.
         this.reporter.open(writer);
         // Count the number of queries written.
-        int totalCount = 0;
+        this.totalCount = 0;
+        // Count the response sets and responses pruned.
+        this.totalPruned = 0;
+        this.totalEarlyPruned = 0;
+        this.totalPrunedResponses = 0;
+        // Set up the output ordering.
+        this.pending = new ArrayDeque<>();
+        this.outputQueue = new ArrayDeque<>();
+        this.resultMap = new HashMap<>();
+        this.replayMap = new HashMap<>();
+        this.outputIndex = 0;
+        this.restoredCount = 0;
+        int inputIndex = 0;
+        // Each template gets its own random number generator, seeded in input order.
+        Random seeder = new Random(this.seed);
+        // In batch mode, we save the query proposals here, along with the ones completed in a previous run.
+        List<ProposalQuery> proposals = new ArrayList<>();
+        Set<ProposalQuery> restored = new HashSet<>();
         // Loop through the input file, reading query specifications.
         Iterator<String> inputIter = new LineReaderCommentSkipper(inputStream);
         while (inputIter.hasNext()) {
@@ -208,59 +501,256 @@ public class QueryGenerateProcessor extends BaseTextProcessor implements QueryGe
             String pathString = this.safeGet(inputIter);
             String resultString = this.safeGet(inputIter);
             // Create the query proposal.
-            ProposalQuery proposal;
-            if (Strings.CI.compare(resultString, "count") == 0)
-                proposal = new CountProposalQuery(qString, pathString, this.maxLimit);
-            else if (Strings.CI.startsWith(resultString, "choice"))
-                proposal = new ChoiceProposalQuery(qString, pathString, this.maxLimit, resultString, this.db);
-            else if (Strings.CI.startsWith(resultString, "group"))
-                proposal = new GroupProposalQuery(qString, pathString, 0, resultString);
-            else
-                proposal = new ListProposalQuery(qString, pathString, this.maxLimit, resultString);
-            log.info("Computing responses for query: {}", qString);
-            List<ProposalResponseSet> responses = proposal.computeSets(this.db);
-            log.info("{} response sets found.", responses.size());
-            // Loop through the response sets, removing bad sets.
-            int skipCount = 0;
-            int outCount = 0;
-            Iterator<ProposalResponseSet> iter = responses.iterator();
-            while (iter.hasNext()) {
-                ProposalResponseSet response = iter.next();
-                if (proposal.getResponseSize(response) <= this.targetSize)
-                    outCount++;
-                else {
-                    iter.remove();
-                    skipCount++;
-                }
+            ProposalQuery proposal = createProposal(qString, pathString, resultString, this.maxLimit, this.db);
+            if (! this.noPrune)
+                proposal.setTargetSize(this.targetSize);
+            proposal.setPlanning(this.planMode);
+            proposal.setSeed(seeder.nextLong());
+            this.outputQueue.add(proposal);
+            // Check for a template completed in a previous run.
+            QueryGenCheckpoint.Entry completed = (this.checkpoint == null ? null
+                    : this.checkpoint.get(inputIndex, proposal.getRawQuestion(), proposal.getPathKey(),
+                            proposal.getResult()));
+            inputIndex++;
+            if (completed != null) {
+                this.replayMap.put(proposal, completed);
+                this.writeReady();
             }
-            // Shuffle the response sets. We'll only output some of them, but we want to randomly select the ones
-            // chosen. Some of the response sets may end up being rejected even now, so we shuffle the entire set
-            // and write them in order until we reach our output limit.
-            Collections.shuffle(responses);
-            // Finally, write the responses.
-            int writeCount = 0;
-            Iterator<ProposalResponseSet> outIter = responses.iterator();
-            while (writeCount < this.maxOutput && outIter.hasNext()) {
-                ProposalResponseSet response = outIter.next();
-                writeCount += proposal.writeResponse(response, this.reporter, responses);
+            // A completed template still belongs to its batch, since the batch traversal depends on all its members.
+            if (this.batchMode) {
+                proposals.add(proposal);
+                if (completed != null)
+                    restored.add(proposal);
+            } else if (completed == null) {
+                this.schedule(List.of(proposal), () -> {
+                    log.info("Computing responses for query: {}", qString);
+                    return List.of(proposal.computeSets(this.db, this.threadPool));
+                });
+            }
+        }
+        if (this.batchMode) {
+            // Group the proposals by path and compute the response sets for each group.
+            List<ProposalBatch> batches = ProposalBatch.group(proposals);
+            log.info("{} query templates organized into {} batches.", proposals.size(), batches.size());
+            for (ProposalBatch batch : batches) {
+                // The batch is computed in full unless all its templates were completed in a previous run, but we
+                // only deliver the results for the templates that still need them.
+                List<ProposalQuery> queries = batch.getQueries();
+                List<ProposalQuery> needed = queries.stream().filter(x -> ! restored.contains(x)).collect(Collectors.toList());
+                if (! needed.isEmpty()) {
+                    this.schedule(needed, () -> {
+                        log.info("Computing responses for {} queries on path {}.", batch.size(), queries.get(0).getPathKey());
+                        List<List<ProposalResponseSet>> results = batch.computeSets(this.db, this.threadPool);
+                        List<List<ProposalResponseSet>> retVal = new ArrayList<>(needed.size());
+                        for (int i = 0; i < queries.size(); i++) {
+                            if (! restored.contains(queries.get(i)))
+                                retVal.add(results.get(i));
+                        }
+                        return retVal;
+                    });
+                }
             }
-            log.info("{} responses kept, {} skipped, {} written.", outCount, skipCount, writeCount);
-            totalCount += writeCount;
-            // If we wrote nothing, remember this template as a failure.
-            if (writeCount == 0)
-                this.failedTemplates.add(qString);
-            // Flush the output.
-            this.reporter.flush();
         }
+        // Wait for the evaluations still in progress.
+        while (! this.pending.isEmpty())
+            this.completeOldest();
         // Log any failed templates.
         if (! this.failedTemplates.isEmpty()) {
             log.warn("{} templates failed to generate any output.", this.failedTemplates.size());
             for (String template : this.failedTemplates)
                 log.warn("    {}", template);
         }
-        log.info("{} total questions generated.", totalCount);
+        log.info("{} total questions generated.", this.totalCount);
+        if (this.restoredCount > 0)
+            log.info("{} templates were restored from the checkpoint.", this.restoredCount);
+        if (this.totalPruned > 0)
+            log.info("{} response sets pruned ({} before the end of the path), {} responses discarded.", this.totalPruned,
+                    this.totalEarlyPruned, this.totalPrunedResponses);
         // Insure our output is complete.
         this.reporter.close();
+        if (this.queryMetrics != null) {
+            log.info("Writing template cost report to {}.", this.profileFile);
+            this.queryMetrics.save(this.profileFile);
+        }
+    }
+
+    /**
+     * Schedule the evaluation of one or more templates.  If there is a worker pool, the evaluation is submitted
+     * to it, and if too many evaluations are in progress, we wait for the oldest one.  Otherwise, the
+     * evaluation is performed immediately.
+     *
+     * @param proposals		list of templates to evaluate
+     * @param task			task to compute the response set lists, one per template
+     *
+     * @throws IOException
+     */
+    private void schedule(List<ProposalQuery> proposals, Supplier<List<List<ProposalResponseSet>>> task) throws IOException {
+        if (this.templatePool == null)
+            this.deliver(proposals, task.get());
+        else {
+            this.pending.add(new PendingWork(proposals, this.templatePool.submit(() -> task.get())));
+            final int lookAhead = this.templateThreads * 2;
+            while (this.pending.size() > lookAhead)
+                this.completeOldest();
+        }
+    }
+
+    /**
+     * Wait for the oldest template evaluation in progress and deliver its results.
+     *
+     * @throws IOException
+     */
+    private void completeOldest() throws IOException {
+        PendingWork work = this.pending.remove();
+        List<List<ProposalResponseSet>> results;
+        try {
+            results = work.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Query generation interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runError)
+                throw runError;
+            else
+                throw new IOException("Error evaluating query template: " + cause.toString(), cause);
+        }
+        this.deliver(work.proposals, results);
+    }
+
+    /**
+     * Store the results of a template evaluation, and write the questions for all the templates whose
+     * turn has come.
+     *
+     * @param proposals		list of templates evaluated
+     * @param results		list of response set lists, one per template
+     *
+     * @throws IOException
+     */
+    private void deliver(List<ProposalQuery> proposals, List<List<ProposalResponseSet>> results) throws IOException {
+        for (int i = 0; i < proposals.size(); i++)
+            this.resultMap.put(proposals.get(i), results.get(i));
+        this.writeReady();
+    }
+
+    /**
+     * Write the output for all the templates whose turn has come.  A template is ready if its response sets
+     * have been computed or it was completed in a previous run.  If there is a checkpoint, each computed
+     * template's output is recorded in it after being written.
+     *
+     * @throws IOException
+     */
+    private void writeReady() throws IOException {
+        boolean ready = true;
+        while (ready && ! this.outputQueue.isEmpty()) {
+            ProposalQuery proposal = this.outputQueue.peek();
+            List<ProposalResponseSet> responses = this.resultMap.remove(proposal);
+            QueryGenCheckpoint.Entry completed = this.replayMap.remove(proposal);
+            if (responses != null) {
+                if (this.checkpoint != null)
+                    this.reporter.startRecording();
+                long start = System.nanoTime();
+                int count = this.writeQuestions(proposal, responses);
+                this.totalCount += count;
+                QueryMetrics.TemplateMetrics metrics = proposal.getMetrics();
+                if (this.queryMetrics != null && metrics != null) {
+                    metrics.setOutput(this.outputIndex + 1, count, System.nanoTime() - start);
+                    this.queryMetrics.record(metrics);
+                }
+                if (this.checkpoint != null)
+                    this.checkpoint.save(this.outputIndex, proposal.getRawQuestion(), proposal.getPathKey(),
+                            proposal.getResult(), count, this.reporter.stopRecording());
+            } else if (completed != null) {
+                log.info("Restoring {} questions for query: {}", completed.getQuestions(), proposal.getRawQuestion());
+                this.reporter.replay(completed.getElements());
+                this.reporter.flush();
+                this.totalCount += completed.getQuestions();
+                if (completed.getQuestions() == 0)
+                    this.failedTemplates.add(proposal.getRawQuestion());
+                this.restoredCount++;
+            } else
+                ready = false;
+            if (ready) {
+                this.outputQueue.remove();
+                this.outputIndex++;
+            }
+        }
+    }
+
+    /**
+     * Write the questions for a query proposal from its computed response sets.
+     *
+     * @param proposal		query proposal whose responses were computed
+     * @param responses		list of response sets computed for the proposal
+     *
+     * @return the number of questions written
+     */
+    private int writeQuestions(ProposalQuery proposal, List<ProposalResponseSet> responses) {
+        log.info("{} response sets found for query: {}", responses.size(), proposal.getRawQuestion());
+        this.totalPruned += proposal.getPrunedSets();
+        this.totalEarlyPruned += proposal.getEarlyPrunedSets();
+        this.totalPrunedResponses += proposal.getPrunedResponses();
+        // Loop through the response sets, removing bad sets.
+        int skipCount = 0;
+        int outCount = 0;
+        Iterator<ProposalResponseSet> iter = responses.iterator();
+        while (iter.hasNext()) {
+            ProposalResponseSet response = iter.next();
+            if (proposal.getResponseSize(response) <= this.targetSize)
+                outCount++;
+            else {
+                iter.remove();
+                skipCount++;
+            }
+        }
+        // Shuffle the response sets. We'll only output some of them, but we want to randomly select the ones
+        // chosen. Some of the response sets may end up being rejected even now, so we shuffle the entire set
+        // and write them in order until we reach our output limit. The sets are sorted first so that the
+        // result depends only on the template's random number generator.
+        responses.sort(Comparator.comparing(ProposalResponseSet::getParameters));
+        Collections.shuffle(responses, proposal.getRandom());
+        // Finally, write the responses.
+        int retVal = 0;
+        Iterator<ProposalResponseSet> outIter = responses.iterator();
+        while (retVal < this.maxOutput && outIter.hasNext()) {
+            ProposalResponseSet response = outIter.next();
+            retVal += proposal.writeResponse(response, this.reporter, responses);
+        }
+        proposal.finishResponses();
+        log.info("{} responses kept, {} skipped, {} written.", outCount, skipCount, retVal);
+        // If we wrote nothing, remember this template as a failure.
+        if (retVal == 0)
+            this.failedTemplates.add(proposal.getRawQuestion());
+        // Flush the output.
+        this.reporter.flush();
+        return retVal;
+    }
+
+    /**
+     * Create a query proposal from its three specification lines.
+     *
+     * @param qString			question template string
+     * @param pathString		path through the entities
+     * @param resultString		result specification ("count", "choice" or "group" followed by a field, or a field)
+     * @param maxLimit			maximum intermediate result set size
+     * @param db				database instance to be queried
+     *
+     * @return the query proposal described by the specification
+     *
+     * @throws ParseFailureException
+     */
+    public static ProposalQuery createProposal(String qString, String pathString, String resultString, int maxLimit,
+            QueryDbInstance db) throws ParseFailureException {
+        ProposalQuery retVal;
+        if (Strings.CI.compare(resultString, "count") == 0)
+            retVal = new CountProposalQuery(qString, pathString, maxLimit);
+        else if (Strings.CI.startsWith(resultString, "choice"))
+            retVal = new ChoiceProposalQuery(qString, pathString, maxLimit, resultString, db);
+        else if (Strings.CI.startsWith(resultString, "group"))
+            retVal = new GroupProposalQuery(qString, pathString, 0, resultString);
+        else
+            retVal = new ListProposalQuery(qString, pathString, maxLimit, resultString);
+        return retVal;
     }
 
     /**
@@ -274,10 +764,26 @@ public class QueryGenerateProcessor extends BaseTextProcessor implements QueryGe
         // Load the definition.
         log.info("Loading database definition from {}.", this.dbdFile);
         QueryDbDefinition dbd = new QueryDbDefinition(this.dbdFile);
-        // Use the definition to load the data.
-        log.info("Loading data directories.");
-        this.db = (QueryDbInstance) dbd.readDatabase(this.dataDirs);
+        dbd.setLoadThreads(this.loadThreads);
+        if (this.snapshotFile != null) {
+            // Here we can restore the database directly from a snapshot.
+            log.info("Loading database snapshot {}.", this.snapshotFile);
+            this.db = QueryDbSnapshot.load(dbd, this.snapshotFile);
+        } else if (this.cacheDir != null) {
+            // Here we load incrementally, only parsing the directories that have changed.
+            log.info("Loading data directories using cache {}.", this.cacheDir);
+            QueryDbCache cache = new QueryDbCache(this.dbdFile, dbd, this.cacheDir);
+            this.db = cache.load(this.dataDirs);
+        } else {
+            // Use the definition to load the data.
+            log.info("Loading data directories.");
+            this.db = (QueryDbInstance) dbd.readDatabase(this.dataDirs);
+        }
         log.info("{} to load database.", Duration.ofMillis(System.currentTimeMillis() - start));
+        if (this.loadReportFile != null) {
+            log.info("Writing load metrics to {}.", this.loadReportFile);
+            dbd.getLoadMetrics().save(this.loadReportFile);
+        }
     }
 
     /**
@@ -295,6 +801,15 @@ public class QueryGenerateProcessor extends BaseTextProcessor implements QueryGe
         return inputIter.next();
     }
 
+    /**
+     * @return a string describing the run settings that affect the output, for the checkpoint file
+     */
+    private String getSettings() {
+        return "target=" + this.targetSize + " limit=" + this.maxLimit + " max=" + this.maxOutput
+                + " choices=" + this.numChoices + " batch=" + this.batchMode + " plan=" + this.planMode
+                + " noPrune=" + this.noPrune;
+    }
+
     @Override
     public JsonObject getConstantJson() {
         JsonObject retVal = new JsonObject();
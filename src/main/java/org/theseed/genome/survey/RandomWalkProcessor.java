@@ -36,6 +36,8 @@ import org.theseed.memdb.walk.WalkType;
  * -R	if specified, the input directory is considered a master directory, and all subdirectories will be processed
  * 
  * --type    type of walk to perform (default is TEXT)
+ * --loadThreads	number of threads to use for parsing the input directories (default 1)
+ * --loadReport	output file for a load metrics report (JSON if the name ends in ".json", else tab-delimited)
  *
  * @author Bruce Parrello
  *
@@ -60,6 +62,14 @@ public class RandomWalkProcessor extends BaseReportProcessor {
     @Option(name = "--type", usage = "type of walk to perform")
     private WalkType walkType;
 
+    /** number of threads for parsing input directories */
+    @Option(name = "--loadThreads", metaVar = "8", usage = "number of threads to use for parsing input directories")
+    private int loadThreads;
+
+    /** output file for load metrics report */
+    @Option(name = "--loadReport", metaVar = "load.tbl", usage = "output file for a load metrics report")
+    private File loadReportFile;
+
     /** name of the database definition file */
     @Argument(index = 0, metaVar = "definition.txt", usage = "database definition file", required = true)
     private File dbdFile;
@@ -72,6 +82,8 @@ public class RandomWalkProcessor extends BaseReportProcessor {
     protected void setReporterDefaults() {
         this.recursive = false;
         this.walkType = WalkType.TEXT;
+        this.loadThreads = 1;
+        this.loadReportFile = null;
     }
 
     @Override
@@ -91,6 +103,8 @@ public class RandomWalkProcessor extends BaseReportProcessor {
         // Now we process the database definition.
         if (! this.dbdFile.canRead())
             throw new FileNotFoundException("Database definition file " + this.dbdFile + " is not found or unreadable.");
+        if (this.loadThreads < 1)
+            throw new ParseFailureException("Invalid number of load threads: must be positive.");
     }
 
     @Override
@@ -98,6 +112,7 @@ public class RandomWalkProcessor extends BaseReportProcessor {
         // Create the database definition.
         long start = System.currentTimeMillis();
         DbDefinition dbd = this.walkType.getDbDefinition(this.dbdFile);
+        dbd.setLoadThreads(this.loadThreads);
         Duration d = Duration.ofMillis(System.currentTimeMillis() - start);
         log.info("{} to compile database definition.", d);
         // Read in the data.
@@ -106,6 +121,10 @@ public class RandomWalkProcessor extends BaseReportProcessor {
         WalkDbInstance db = (WalkDbInstance) dbd.readDatabase(this.inDirs);
         d = Duration.ofMillis(System.currentTimeMillis() - start);
         log.info("{} to read in database.", d);
+        if (this.loadReportFile != null) {
+            log.info("Writing load metrics to {}.", this.loadReportFile);
+            dbd.getLoadMetrics().save(this.loadReportFile);
+        }
         // Now perform the random walk.
         log.info("Writing output.");
         start = System.currentTimeMillis();
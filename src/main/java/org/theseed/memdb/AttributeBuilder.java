@@ -3,8 +3,6 @@
  */
 package org.theseed.memdb;
 
-import org.theseed.io.FieldInputStream;
-
 /**
  * This is a helper class for processing attributes. Each builder represents a single attribute for the entity type.
  *
@@ -19,7 +17,9 @@ public abstract class AttributeBuilder {
      * @param db		relevant database instance
      * @param record	input record for the entity instance
      * @param instance	parent entity instance into which attribute will be stored
+     *
+     * @return the number of attribute values stored
      */
-    protected abstract void processAttribute(DbInstance db, FieldInputStream.Record record, EntityInstance instance);
+    protected abstract int processAttribute(DbInstance db, InputRecord record, EntityInstance instance);
 
 }
@@ -5,12 +5,19 @@ package org.theseed.memdb;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
@@ -71,6 +78,121 @@ public abstract class DbDefinition {
     private int relCount;
     /** iterator through the definition file */
     private Iterator<String> iter;
+    /** number of threads to use for parsing input directories */
+    private int loadThreads;
+    /** performance metrics for the database loads */
+    private final LoadMetrics loadMetrics;
+
+    /**
+     * This object contains the records parsed from a single entity file, along with the builder used
+     * to convert them into entity and relationship instances.
+     */
+    private static class ParsedFile {
+
+        /** entity type for the file */
+        private final EntityType type;
+        /** input file name */
+        private final File file;
+        /** entity builder for the file's records */
+        private final EntityBuilder builder;
+        /** records parsed from the file */
+        private final List<InputRecord> records;
+        /** nanoseconds spent parsing the file */
+        private final long parseNanos;
+
+        /**
+         * Create a parsed-file descriptor.
+         *
+         * @param type		entity type for the file
+         * @param file		input file name
+         * @param builder	entity builder for the file's records
+         * @param records	list of records parsed
+         * @param parseNanos	nanoseconds spent parsing the file
+         */
+        protected ParsedFile(EntityType type, File file, EntityBuilder builder, List<InputRecord> records,
+                long parseNanos) {
+            this.type = type;
+            this.file = file;
+            this.builder = builder;
+            this.records = records;
+            this.parseNanos = parseNanos;
+        }
+
+        /**
+         * @return the entity type
+         */
+        protected EntityType getType() {
+            return this.type;
+        }
+
+        /**
+         * @return the input file
+         */
+        protected File getFile() {
+            return this.file;
+        }
+
+        /**
+         * @return the entity builder
+         */
+        protected EntityBuilder getBuilder() {
+            return this.builder;
+        }
+
+        /**
+         * @return the parsed records
+         */
+        protected List<InputRecord> getRecords() {
+            return this.records;
+        }
+
+        /**
+         * @return the nanoseconds spent parsing the file
+         */
+        protected long getParseNanos() {
+            return this.parseNanos;
+        }
+
+    }
+
+    /**
+     * This interface processes the parsed files for an input directory.  It is always called on the thread that
+     * requested the load, in directory order.
+     */
+    private interface DirectoryHandler {
+
+        /**
+         * Build the parsed files for an input directory into a database instance.
+         *
+         * @param inDir			input directory that was parsed
+         * @param parsedFiles	list of parsed files for the directory, in entity type order
+         *
+         * @return the number of records processed
+         *
+         * @throws IOException
+         * @throws ParseFailureException
+         */
+        int handle(File inDir, List<ParsedFile> parsedFiles) throws IOException, ParseFailureException;
+
+    }
+
+    /**
+     * This interface receives the database fragments built by "readFragments".
+     */
+    public interface FragmentHandler {
+
+        /**
+         * Process the database fragment for an input directory.
+         *
+         * @param inDir		input directory that was loaded
+         * @param fragment	database instance containing only the data from that directory
+         *
+         * @throws IOException
+         * @throws ParseFailureException
+         */
+        void accept(File inDir, DbInstance fragment) throws IOException, ParseFailureException;
+
+    }
 
     /**
      * Create a database definition from a definition file.
@@ -84,6 +206,8 @@ public abstract class DbDefinition {
         log.info("Reading database definition from {}.", fileName);
         // Create the entity map.
         this.entityMap = new TreeMap<>();
+        this.loadThreads = 1;
+        this.loadMetrics = new LoadMetrics();
         // Open up the input file and read the definition lines.
         try (LineReader inStream = new LineReader(fileName)) {
             // Prepare an iterator through the file.
@@ -104,6 +228,10 @@ public abstract class DbDefinition {
             // Release the memory for the iterator.
             this.iter = null;
         }
+        // Assign the dense type indices. These match the positions in the entity name list.
+        List<EntityType> types = this.getSortedTypes();
+        for (int i = 0; i < types.size(); i++)
+            types.get(i).setTypeIdx(i);
         log.info("{} lines read from {}.  {} entities, {} relationships, and {} attributes found.", this.lineCount, fileName,
                 this.entityMap.size(), this.relCount, this.attrCount);
     }
@@ -262,15 +390,55 @@ public abstract class DbDefinition {
      * @return a sorted list of entity names, in priority order
      */
     public List<String> getEntityNameList() {
-        List<EntityType> types = new ArrayList<>(this.entityMap.values());
-        Collections.sort(types);
+        List<EntityType> types = this.getSortedTypes();
         return types.stream().map(x -> x.getName()).collect(Collectors.toList());
     }
 
+    /**
+     * @return a list of the entity types, in priority order
+     */
+    protected List<EntityType> getSortedTypes() {
+        List<EntityType> retVal = new ArrayList<>(this.entityMap.values());
+        Collections.sort(retVal);
+        return retVal;
+    }
+
+    /**
+     * Specify the number of threads to use when parsing the input directories.
+     *
+     * @param threads	number of parser threads (1 for a purely sequential load)
+     */
+    public void setLoadThreads(int threads) {
+        this.loadThreads = (threads < 1 ? 1 : threads);
+    }
+
+    /**
+     * @return the number of threads used to parse input directories
+     */
+    public int getLoadThreads() {
+        return this.loadThreads;
+    }
+
+    /**
+     * @return the performance metrics for all the database loads performed with this definition
+     */
+    public LoadMetrics getLoadMetrics() {
+        return this.loadMetrics;
+    }
+
     /**
      * Read the database data from a set of directories.  Each directory should contain instances of the
      * files named in the entity type definitions.  A missing file is not an error.
      *
+     * When an entity type can name all the columns it uses (see "EntityType.getRequiredColumns"), its JSON
+     * files are read with a projecting reader that skips all the other fields without building objects for them.
+     *
+     * If more than one load thread is specified, the files for several directories are parsed concurrently,
+     * but the parsed records are always applied to the database instance on the calling thread in directory
+     * order. Thus, the resulting database instance is identical regardless of the thread count.
+     *
+     * The performance metrics for each file processed are added to the definition's load metrics.
+     *
      * @param inDirs		list of input directories
      *
      * @return a database instance containing all the data in the database
@@ -284,56 +452,304 @@ public abstract class DbDefinition {
         DbInstance retVal = this.createDbInstance(typeNames);
         // Initialize the subclass tracking structures.
         retVal.preProcess();
-        // Set up the file and directory counters.
-        int dirCount = 0;
-        int fileCount = 0;
-        int recordCount = 0;
-        // Loop through the input directories.
-        for (File inDir : inDirs) {
-            dirCount++;
-            log.info("Reading input directory {}: {}.", dirCount, inDir);
-            // Loop through the entity types, processing the specified files.
-            for (EntityType type : this.entityMap.values()) {
-                String typeFileName = type.getFileName();
-                if (typeFileName != null) {
-                    File inFile = new File(inDir, typeFileName);
-                    if (inFile.exists()) {
+        if (this.loadThreads <= 1) {
+            // Set up the file and directory counters.
+            int dirCount = 0;
+            int fileCount = 0;
+            int recordCount = 0;
+            // Loop through the input directories.
+            for (File inDir : inDirs) {
+                dirCount++;
+                log.info("Reading input directory {}: {}.", dirCount, inDir);
+                // Loop through the entity types, processing the specified files.
+                for (EntityType type : this.entityMap.values()) {
+                    File inFile = getEntityFile(inDir, type);
+                    if (inFile != null) {
                         // Here we can read the entities.
-                        try (FieldInputStream inStream = FieldInputStream.create(inFile)) {
+                        try (RecordSource inStream = openRecords(type, inFile)) {
                             fileCount++;
                             // The builder creates all the line templates for this entity.  Each record
                             // is applied to every template.  Setting up the templates also tells the
                             // input stream the columns we are using.
                             log.info("Processing instance data from {}.", inFile);
+                            long heapStart = LoadMetrics.usedHeap();
+                            long start = System.nanoTime();
                             EntityBuilder builder = new EntityBuilder(type, inStream);
-                            // Loop through the records, executing the builder.  This creates all the
-                            // entity and relationship instances and compiles the attributes.
-                            log.info("Reading instances for {} from {}.", type.getName(), inFile);
-                            long lastMsg = System.currentTimeMillis();
-                            int inCount = 0;
-                            for (var record : inStream) {
-                                inCount++;
-                                builder.build(record, retVal);
-                                long now = System.currentTimeMillis();
-                                if (now - lastMsg >= 5000) {
-                                    log.info("{} records processed in {}.", inCount, inFile);
-                                    lastMsg = now;
-                                }
-                            }
-                            log.info("{} total records processed in {}: new totals are {} entity instances, {} relationship instances.",
-                                    inCount, inFile, retVal.getEntityCount(), retVal.getRelCount());
-                            recordCount += inCount;
+                            recordCount += this.buildInstances(type, inFile, builder, inStream, retVal);
+                            // Parsing is interleaved with building here, so the parse time is whatever the
+                            // builder did not use.
+                            long parseNanos = System.nanoTime() - start - builder.getBuildNanos();
+                            this.loadMetrics.record(inFile, builder, parseNanos, LoadMetrics.usedHeap() - heapStart);
                         }
                     }
                 }
             }
+            log.info("{} directories and {} files processed.  {} total records processed.", dirCount, fileCount, recordCount);
+        } else {
+            // Here we parse the directories in parallel, but the records are applied to the database on this thread.
+            this.parseDirectories(inDirs, (inDir, parsedFiles) -> this.buildFiles(parsedFiles, retVal));
         }
-        log.info("{} directories and {} files processed.  {} total records processed.", dirCount, fileCount, recordCount);
-        retVal.postProcessEntities(this.entityMap.values());
+        this.finishDatabase(retVal);
         // Return the built database.
         return retVal;
     }
 
+    /**
+     * Read each of a set of input directories into its own database instance.  Each fragment contains exactly
+     * what "readDatabase" would produce for its directory alone.  If more than one load thread is specified, the
+     * directories are parsed concurrently in a single pass, as they are for "readDatabase".  The fragments are
+     * passed to the handler on the calling thread in directory order as soon as each one is built, so only the
+     * fragments in flight are kept in memory.
+     *
+     * @param inDirs	list of input directories
+     * @param handler	handler to receive each fragment
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    public void readFragments(File[] inDirs, FragmentHandler handler) throws IOException, ParseFailureException {
+        if (this.loadThreads <= 1) {
+            for (File inDir : inDirs)
+                handler.accept(inDir, this.readDatabase(inDir));
+        } else {
+            List<String> typeNames = this.getEntityNameList();
+            this.parseDirectories(inDirs, (inDir, parsedFiles) -> {
+                DbInstance fragment = this.createDbInstance(typeNames);
+                fragment.preProcess();
+                int retVal = this.buildFiles(parsedFiles, fragment);
+                this.finishDatabase(fragment);
+                handler.accept(inDir, fragment);
+                return retVal;
+            });
+        }
+    }
+
+    /**
+     * Parse a set of input directories in parallel.  A limited number of directories are kept in flight so
+     * that the parsed records do not overwhelm memory.  The handler is called for each directory on the calling
+     * thread, in directory order.
+     *
+     * @param inDirs	list of input directories
+     * @param handler	handler to build each directory's parsed files
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    private void parseDirectories(File[] inDirs, DirectoryHandler handler) throws IOException, ParseFailureException {
+        log.info("Parsing input directories using {} threads.", this.loadThreads);
+        int dirCount = 0;
+        int fileCount = 0;
+        int recordCount = 0;
+        final int lookAhead = this.loadThreads * 2;
+        ExecutorService executor = Executors.newFixedThreadPool(this.loadThreads);
+        try {
+            Deque<Future<List<ParsedFile>>> pending = new ArrayDeque<>(lookAhead);
+            int nextDir = 0;
+            while (nextDir < inDirs.length || ! pending.isEmpty()) {
+                // Fill the queue of directories being parsed.
+                while (nextDir < inDirs.length && pending.size() < lookAhead) {
+                    final File inDir = inDirs[nextDir];
+                    pending.add(executor.submit(() -> this.parseDirectory(inDir)));
+                    nextDir++;
+                }
+                // Wait for the oldest directory and build its records.
+                List<ParsedFile> parsedFiles = waitForDirectory(pending.remove());
+                log.info("Building input directory {} of {}.", dirCount + 1, inDirs.length);
+                recordCount += handler.handle(inDirs[dirCount], parsedFiles);
+                fileCount += parsedFiles.size();
+                dirCount++;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("{} directories and {} files processed.  {} total records processed.", dirCount, fileCount, recordCount);
+    }
+
+    /**
+     * Apply the parsed files for an input directory to a database instance.
+     *
+     * @param parsedFiles	list of parsed files for the directory, in entity type order
+     * @param db			database instance to update
+     *
+     * @return the number of records processed
+     */
+    private int buildFiles(List<ParsedFile> parsedFiles, DbInstance db) {
+        int retVal = 0;
+        for (ParsedFile parsedFile : parsedFiles) {
+            long heapStart = LoadMetrics.usedHeap();
+            retVal += this.buildInstances(parsedFile.getType(), parsedFile.getFile(), parsedFile.getBuilder(),
+                    parsedFile.getRecords(), db);
+            this.loadMetrics.record(parsedFile.getFile(), parsedFile.getBuilder(), parsedFile.getParseNanos(),
+                    LoadMetrics.usedHeap() - heapStart);
+        }
+        return retVal;
+    }
+
+    /**
+     * Finish a database instance after all its input directories have been built.
+     *
+     * @param db	database instance to finish
+     */
+    private void finishDatabase(DbInstance db) {
+        db.postProcessEntities(this.entityMap.values());
+        // The symbol dictionaries are no longer needed, since the shared values live on in the instances.
+        SymbolTable symbols = db.getSymbols();
+        symbols.logStatistics();
+        symbols.release();
+    }
+
+    /**
+     * Compute the list of input files that would be read from a directory during a database load.
+     *
+     * @param inDir		input directory to check
+     *
+     * @return a list of the entity instance files in the directory, in load order
+     */
+    public List<File> getEntityFiles(File inDir) {
+        List<File> retVal = new ArrayList<>(this.entityMap.size());
+        for (EntityType type : this.entityMap.values()) {
+            File inFile = getEntityFile(inDir, type);
+            if (inFile != null)
+                retVal.add(inFile);
+        }
+        return retVal;
+    }
+
+    /**
+     * Open an entity instance file for reading.  If the file is a JSON list and the entity type knows exactly which
+     * columns it needs, only those columns are materialized; otherwise, the file is read as a field input stream.
+     *
+     * @param type		entity type whose instances are in the file
+     * @param inFile	input file to open
+     *
+     * @return a record source for the file
+     *
+     * @throws IOException
+     */
+    private static RecordSource openRecords(EntityType type, File inFile) throws IOException {
+        RecordSource retVal;
+        Set<String> columns = type.getRequiredColumns();
+        if (columns != null && inFile.getName().endsWith(".json")) {
+            log.debug("Reading columns {} from {}.", columns, inFile);
+            retVal = new JsonRecordSource(inFile, columns);
+        } else
+            retVal = new StreamRecordSource(FieldInputStream.create(inFile));
+        return retVal;
+    }
+
+    /**
+     * Compute the file containing the instances of an entity type in a specified input directory.
+     *
+     * @param inDir		input directory to check
+     * @param type		entity type of interest
+     *
+     * @return the input file for the entity type, or NULL if there is none in the directory
+     */
+    private static File getEntityFile(File inDir, EntityType type) {
+        File retVal = null;
+        String typeFileName = type.getFileName();
+        if (typeFileName != null) {
+            File inFile = new File(inDir, typeFileName);
+            if (inFile.exists())
+                retVal = inFile;
+        }
+        return retVal;
+    }
+
+    /**
+     * Apply the records from an entity file to the database instance.
+     *
+     * @param type		entity type being built
+     * @param inFile	file from which the records were read
+     * @param builder	entity builder for the file
+     * @param records	records to process
+     * @param db		database instance to update
+     *
+     * @return the number of records processed
+     */
+    private int buildInstances(EntityType type, File inFile, EntityBuilder builder, Iterable<InputRecord> records,
+            DbInstance db) {
+        // Loop through the records, executing the builder.  This creates all the
+        // entity and relationship instances and compiles the attributes.
+        log.info("Reading instances for {} from {}.", type.getName(), inFile);
+        long lastMsg = System.currentTimeMillis();
+        int retVal = 0;
+        for (var record : records) {
+            retVal++;
+            builder.build(record, db);
+            long now = System.currentTimeMillis();
+            if (now - lastMsg >= 5000) {
+                log.info("{} records processed in {}.", retVal, inFile);
+                lastMsg = now;
+            }
+        }
+        log.info("{} total records processed in {}: new totals are {} entity instances, {} relationship instances.",
+                retVal, inFile, db.getEntityCount(), db.getRelCount());
+        return retVal;
+    }
+
+    /**
+     * Parse all the entity files in an input directory. This is called from the loader threads, and does
+     * not touch the database instance.
+     *
+     * @param inDir		input directory to parse
+     *
+     * @return a list of the parsed entity files, in entity type order
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    private List<ParsedFile> parseDirectory(File inDir) throws IOException, ParseFailureException {
+        List<ParsedFile> retVal = new ArrayList<>(this.entityMap.size());
+        for (EntityType type : this.entityMap.values()) {
+            File inFile = getEntityFile(inDir, type);
+            if (inFile != null) {
+                long start = System.nanoTime();
+                try (RecordSource inStream = openRecords(type, inFile)) {
+                    log.info("Parsing instance data from {}.", inFile);
+                    EntityBuilder builder = new EntityBuilder(type, inStream);
+                    List<InputRecord> records = new ArrayList<>();
+                    for (var record : inStream)
+                        records.add(record);
+                    retVal.add(new ParsedFile(type, inFile, builder, records, System.nanoTime() - start));
+                }
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Wait for a directory parse to complete and return the result. Exceptions thrown by the parser
+     * are unwrapped and rethrown.
+     *
+     * @param future	future for the directory parse
+     *
+     * @return the list of parsed files for the directory
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    private static List<ParsedFile> waitForDirectory(Future<List<ParsedFile>> future) throws IOException, ParseFailureException {
+        List<ParsedFile> retVal;
+        try {
+            retVal = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Database load interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioError)
+                throw ioError;
+            else if (cause instanceof ParseFailureException parseError)
+                throw parseError;
+            else if (cause instanceof RuntimeException runError)
+                throw runError;
+            else
+                throw new IOException("Error parsing database directory: " + cause.toString(), cause);
+        }
+        return retVal;
+    }
+
     /**
      * Create a new, empty database instance.
      *
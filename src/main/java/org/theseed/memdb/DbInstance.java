@@ -3,19 +3,31 @@
  */
 package org.theseed.memdb;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import java.util.TreeMap;
-
-import org.theseed.stats.Shuffler;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * A database instance contains the data described by a DbDefinition.  The data is stored in a
- * massive two-level hash keyed on entity type name, each consisting of a hash of entity instances
- * keyed by ID.
+ * A database instance contains the data described by a DbDefinition.  The data is stored in an
+ * entity store, which contains one concurrent hash of entity instances keyed by ID for each entity
+ * type.  The hashes are indexed by the entity type index, so lookups from an entity type object do
+ * not require a search on the type name.  Entity creation and lookup are safe to perform from
+ * multiple threads.
+ *
+ * When the database is frozen, the instances of each entity type are also saved in an array sorted by ID.
+ * This allows random samples to be taken by position, in time proportional to the sample size, and makes
+ * the samples reproducible for a seeded random number generator regardless of the order in which the
+ * instances were loaded.
  *
  * @author Bruce Parrello
  *
@@ -24,13 +36,17 @@ public abstract class DbInstance {
 
     // FIELDS
     /** master entity instance table */
-    private final Map<String, Map<String, EntityInstance>> masterMap;
+    private final EntityStore masterMap;
     /** list of entity type names in priority order */
     private final List<String> typeNames;
     /** entity instance count */
-    private int entityCount;
+    private final AtomicInteger entityCount;
     /** relationship instance count */
-    private int relCount;
+    private final AtomicInteger relCount;
+    /** symbol table for sharing duplicate values during the load */
+    private final SymbolTable symbols;
+    /** map of entity type names to instance arrays sorted by ID, built when the database is frozen */
+    private final Map<String, EntityInstance[]> frozenArrays;
 
     /**
      * Create a blank, empty database instance.
@@ -39,7 +55,11 @@ public abstract class DbInstance {
      */
     public DbInstance(List<String> types) {
         this.typeNames = types;
-        this.masterMap = new TreeMap<>();
+        this.masterMap = new EntityStore(types);
+        this.entityCount = new AtomicInteger();
+        this.relCount = new AtomicInteger();
+        this.symbols = new SymbolTable();
+        this.frozenArrays = new ConcurrentHashMap<>();
     }
 
     /**
@@ -56,11 +76,19 @@ public abstract class DbInstance {
      * @return the desired entity instance, or NULL if it is exhausted
      */
     public EntityInstance getEntity(String type, String id) {
-        EntityInstance retVal = null;
-        var entityMap = this.masterMap.get(type);
-        if (entityMap != null)
-            retVal = entityMap.get(id);
-        return retVal;
+        return this.masterMap.get(type, id);
+    }
+
+    /**
+     * Find the specified entity instance.
+     *
+     * @param type		entity type
+     * @param id		entity instance ID
+     *
+     * @return the desired entity instance, or NULL if it is exhausted
+     */
+    public EntityInstance getEntity(EntityType type, String id) {
+        return this.masterMap.get(this.masterMap.getTypeIdx(type), id);
     }
 
     /**
@@ -71,9 +99,7 @@ public abstract class DbInstance {
      * @param entityInstance	instance to store
      */
     public void putEntity(EntityType entityType, String entityId, EntityInstance entityInstance) {
-        var entityMap = this.masterMap.computeIfAbsent(entityType.getName(),
-                x -> new HashMap<String, EntityInstance>());
-        entityMap.put(entityId, entityInstance);
+        this.masterMap.put(entityType, entityId, entityInstance);
     }
 
     /**
@@ -83,10 +109,7 @@ public abstract class DbInstance {
      * @param entityId			ID of new entity
      */
     public EntityInstance findEntity(EntityType entityType, String entityId) {
-        var entityMap = this.masterMap.computeIfAbsent(entityType.getName(),
-                x -> new HashMap<String, EntityInstance>());
-        EntityInstance retVal = entityMap.computeIfAbsent(entityId, x -> this.createEntity(entityType, entityId));
-        return retVal;
+        return this.masterMap.findOrCreate(entityType, entityId, this);
     }
 
     /**
@@ -107,12 +130,27 @@ public abstract class DbInstance {
      * @return a collection of the entity instances from the entity map
      */
     public Collection<EntityInstance> getAllEntities(String typeName) {
-        Collection<EntityInstance> retVal;
-        Map<String, EntityInstance> entityMap = this.masterMap.get(typeName);
-        if (entityMap == null)
-            retVal = Collections.emptyList();
-        else
-            retVal = entityMap.values();
+        return this.masterMap.getIdMap(typeName).values();
+    }
+
+    /**
+     * Return a list of the entity instances for a given entity type, sorted by ID.  Unlike the entity map,
+     * this order does not depend on how the instances were loaded.  If the database is frozen, the sorted
+     * instance array saved by the freeze is used; otherwise, the instances are copied and sorted.
+     *
+     * @param typeName	entity type name
+     *
+     * @return a list of the entity instances in ID order
+     */
+    public List<EntityInstance> getSortedEntities(String typeName) {
+        List<EntityInstance> retVal;
+        EntityInstance[] frozen = this.frozenArrays.get(typeName);
+        if (frozen != null && frozen.length == this.getTypeCount(typeName))
+            retVal = Collections.unmodifiableList(Arrays.asList(frozen));
+        else {
+            retVal = new ArrayList<>(this.getAllEntities(typeName));
+            retVal.sort(Comparator.comparing(EntityInstance::getId));
+        }
         return retVal;
     }
 
@@ -125,8 +163,73 @@ public abstract class DbInstance {
      * @return a collection of the entity instances from the entity map
      */
     public Collection<EntityInstance> getSomeEntities(String typeName, int limit) {
-        Collection<EntityInstance> retVal = this.getAllEntities(typeName);
-        if (limit > 0) retVal = Shuffler.selectPart(retVal, limit);
+        return this.getSomeEntities(typeName, limit, new Random());
+    }
+
+    /**
+     * Return a collection of randomly-selected entity instances for a given entity type, using the specified
+     * random number generator.  If the database is frozen, the sample is taken by position from the sorted
+     * instance array, so the time required is proportional to the limit, and the same seed always produces
+     * the same sample.  Otherwise, a reservoir sample is taken from the entity map.
+     *
+     * @param typeName		entity type name
+     * @param limit			maximum number of instances to return (or 0 to return all)
+     * @param rand			random number generator to use
+     *
+     * @return a collection of the entity instances from the entity map
+     */
+    public Collection<EntityInstance> getSomeEntities(String typeName, int limit, Random rand) {
+        Collection<EntityInstance> retVal;
+        EntityInstance[] frozen = this.frozenArrays.get(typeName);
+        // We can only use the frozen array if no instances were added after the freeze.
+        if (frozen != null && frozen.length == this.getTypeCount(typeName))
+            retVal = selectSample(Collections.unmodifiableList(Arrays.asList(frozen)), limit, rand);
+        else {
+            retVal = this.getAllEntities(typeName);
+            if (limit > 0 && retVal.size() > limit) {
+                // Here we do a reservoir sample.
+                List<EntityInstance> sample = new ArrayList<>(limit);
+                int seen = 0;
+                for (EntityInstance instance : retVal) {
+                    if (seen < limit)
+                        sample.add(instance);
+                    else {
+                        int idx = rand.nextInt(seen + 1);
+                        if (idx < limit)
+                            sample.set(idx, instance);
+                    }
+                    seen++;
+                }
+                retVal = sample;
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Select a random sample from a random-access list.  The sample positions are chosen using Floyd's
+     * algorithm, so the time required is proportional to the sample size rather than the list size.
+     *
+     * @param items		list of items to sample
+     * @param limit		maximum number of items to select, or 0 for all of them
+     * @param rand		random number generator to use
+     *
+     * @return the original list if it is within the limit, else a list of randomly-selected items
+     */
+    public static <T> List<T> selectSample(List<T> items, int limit, Random rand) {
+        List<T> retVal = items;
+        final int n = items.size();
+        if (limit > 0 && n > limit) {
+            Set<Integer> positions = new LinkedHashSet<>(limit * 4 / 3 + 1);
+            for (int j = n - limit; j < n; j++) {
+                int t = rand.nextInt(j + 1);
+                if (! positions.add(t))
+                    positions.add(j);
+            }
+            retVal = new ArrayList<>(limit);
+            for (int pos : positions)
+                retVal.add(items.get(pos));
+        }
         return retVal;
     }
 
@@ -136,11 +239,7 @@ public abstract class DbInstance {
      * @param typeName	name of the relevant type
      */
     public int getTypeCount(String typeName) {
-        int retVal = 0;
-        Map<String, EntityInstance> entityMap = this.masterMap.get(typeName);
-        if (entityMap != null)
-            retVal = entityMap.size();
-        return retVal;
+        return this.masterMap.size(typeName);
     }
 
     /**
@@ -157,12 +256,38 @@ public abstract class DbInstance {
      */
     public Map<String, EntityInstance> getEntityMap(String type) {
         // The only tricky part is returning an empty map if no entity instances exist for the type.
-        var retVal = this.masterMap.get(type);
-        if (retVal == null)
+        Map<String, EntityInstance> retVal;
+        if (this.masterMap.getTypeIdx(type) < 0)
             retVal = new TreeMap<>();
+        else
+            retVal = this.masterMap.getIdMap(type);
         return retVal;
     }
 
+    /**
+     * Freeze all the entity instances in this database.  This reorganizes the connections for fast
+     * typed traversal and prevents further connections from being added, so it should only be used for
+     * databases that are not modified after loading.
+     */
+    public void freeze() {
+        for (String typeName : this.typeNames) {
+            Collection<EntityInstance> instances = this.getAllEntities(typeName);
+            for (EntityInstance instance : instances)
+                instance.freeze();
+            // Save the sorted instance array for sampling.
+            EntityInstance[] frozen = instances.toArray(new EntityInstance[instances.size()]);
+            Arrays.sort(frozen, Comparator.comparing(EntityInstance::getId));
+            this.frozenArrays.put(typeName, frozen);
+        }
+    }
+
+    /**
+     * @return the symbol table used to share duplicate values during the load
+     */
+    public SymbolTable getSymbols() {
+        return this.symbols;
+    }
+
     /**
      * Post-process all the entity types after a load to perform final cleanup and compute totals.
      *
@@ -174,7 +299,7 @@ public abstract class DbInstance {
      * @return the number of entity instances created
      */
     public int getEntityCount() {
-        return this.entityCount;
+        return this.entityCount.get();
     }
 
     /**
@@ -183,14 +308,14 @@ public abstract class DbInstance {
      * @param entityCount 	amount to increment
      */
     protected void addEntityCount(int entityCount) {
-        this.entityCount += entityCount;
+        this.entityCount.addAndGet(entityCount);
     }
 
     /**
      * @return the number of relationship instances created
      */
     protected int getRelCount() {
-        return this.relCount;
+        return this.relCount.get();
     }
 
     /**
@@ -199,7 +324,7 @@ public abstract class DbInstance {
      * @param relCount 	amount to increment
      */
     protected void addRelCount(int relCount) {
-        this.relCount += relCount;
+        this.relCount.addAndGet(relCount);
     }
 
 }
@@ -8,10 +8,10 @@ import java.util.Collection;
 
 import org.apache.commons.lang3.StringUtils;
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.FieldInputStream;
 
 /**
- * This is a helper class for building an entity instance from an entity type.
+ * This is a helper class for building an entity instance from an entity type.  It also counts the records
+ * processed and the objects created, and the time spent building, for the load metrics.
  */
 public class EntityBuilder {
 
@@ -23,6 +23,16 @@ public class EntityBuilder {
     private final Collection<? extends RelationBuilder> relationBuilders;
     /** attribute builders */
     private final Collection<? extends AttributeBuilder> attributeBuilders;
+    /** number of records processed */
+    private int recordCount;
+    /** number of entity instance records built */
+    private int instanceCount;
+    /** number of attribute values stored */
+    private int attributeCount;
+    /** number of relationship instances created */
+    private int relCount;
+    /** nanoseconds spent building */
+    private long buildNanos;
 
     /**
      * Create an instance builder for this entity type on a given input stream.
@@ -33,7 +43,7 @@ public class EntityBuilder {
      * @throws IOException
      * @throws ParseFailureException
      */
-    public EntityBuilder(EntityType entityType, FieldInputStream instanceStream) throws IOException, ParseFailureException {
+    public EntityBuilder(EntityType entityType, RecordSource instanceStream) throws IOException, ParseFailureException {
         this.entityType = entityType;
         this.attributeBuilders = this.entityType.getAttributeBuilders(instanceStream);
         this.relationBuilders = this.entityType.getRelationBuilders(instanceStream);
@@ -49,7 +59,7 @@ public class EntityBuilder {
      *
      * @param record	instance input record
      */
-    protected String computeId(FieldInputStream.Record record) {
+    protected String computeId(InputRecord record) {
          String retVal;
          if (this.idColIdx < 0) {
              // Here we have a connector record with no ID.
@@ -69,7 +79,9 @@ public class EntityBuilder {
      *
      * @return the new entity instance, or NULL if there is none in this record
      */
-    public EntityInstance build(FieldInputStream.Record record, DbInstance db) {
+    public EntityInstance build(InputRecord record, DbInstance db) {
+        final long start = System.nanoTime();
+        this.recordCount++;
         EntityInstance retVal = null;
         // Get the entity ID.
         String entityId = this.computeId(record);
@@ -81,7 +93,8 @@ public class EntityBuilder {
                 retVal = db.findEntity(this.entityType, entityId);
                 // Loop through the attribute builders, creating the attributes.
                 for (AttributeBuilder template : this.attributeBuilders)
-                    template.processAttribute(db, record, retVal);
+                    this.attributeCount += template.processAttribute(db, record, retVal);
+                this.instanceCount++;
                 db.addEntityCount(1);
             }
             // Loop through the relationship builders, creating the relationship instances
@@ -95,11 +108,55 @@ public class EntityBuilder {
                     sourceInstance.addConnection(forward);
                     RelationshipInstance reverse = builder.getReverseInstance(db, record, sourceInstance, targetInstance);
                     targetInstance.addConnection(reverse);
+                    this.relCount += 2;
                 }
                 db.addRelCount(2);
             }
         }
+        this.buildNanos += System.nanoTime() - start;
         return retVal;
     }
 
+    /**
+     * @return the entity type whose instances are being built
+     */
+    public EntityType getEntityType() {
+        return this.entityType;
+    }
+
+    /**
+     * @return the number of records processed
+     */
+    public int getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * @return the number of entity instance records built
+     */
+    public int getInstanceCount() {
+        return this.instanceCount;
+    }
+
+    /**
+     * @return the number of attribute values stored
+     */
+    public int getAttributeCount() {
+        return this.attributeCount;
+    }
+
+    /**
+     * @return the number of relationship instances created
+     */
+    public int getRelCount() {
+        return this.relCount;
+    }
+
+    /**
+     * @return the nanoseconds spent building
+     */
+    public long getBuildNanos() {
+        return this.buildNanos;
+    }
+
 }
@@ -3,14 +3,22 @@
  */
 package org.theseed.memdb;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.RandomAccess;
 
 /**
  * An entity instance describes a single entity occurrence.  It contains all of the relationship
  * instances that describe the connections. The sublass adds any attribute data.
  *
+ * Once a database is fully loaded and will no longer be modified, the instance can be frozen.  This
+ * groups the connections by target entity type and stores the targets in a single array, with an
+ * offset array marking where each target type's group starts.  After freezing, typed neighbor lookups
+ * only touch the matching edges and do not build new lists.
+ *
  * @author Bruce Parrello
  *
  */
@@ -22,9 +30,17 @@ public abstract class EntityInstance {
     /** type name of this entity */
     private final String entityType;
     /** list of relationship instances */
-    private final List<RelationshipInstance> connections;
+    private List<RelationshipInstance> connections;
     /** parent database instance */
     private final DbInstance parentDb;
+    /** target entity instances grouped by target type, or NULL if this instance is not frozen */
+    private EntityInstance[] adjacency;
+    /** target type name for each group in the adjacency array */
+    private String[] groupTypes;
+    /** offset of each group in the adjacency array, followed by the array length */
+    private int[] groupOffsets;
+    /** empty array for instances with no connections */
+    private static final String[] NO_TYPES = new String[0];
 
     /**
      * Create a new, empty entity instance.
@@ -38,6 +54,7 @@ public abstract class EntityInstance {
         this.entityType = type.getName();
         this.connections = new ArrayList<>();
         this.parentDb = db;
+        this.adjacency = null;
     }
 
     /**
@@ -60,6 +77,8 @@ public abstract class EntityInstance {
      * @param connection	new connection to add
      */
     public void addConnection(RelationshipInstance rel) {
+        if (this.adjacency != null)
+            throw new IllegalStateException("Cannot add a connection to frozen entity instance " + this + ".");
         this.connections.add(rel);
     }
 
@@ -73,18 +92,147 @@ public abstract class EntityInstance {
     /**
      * @return the list of related entity instances of the specified type
      *
-     * @param db		relevant database instance
      * @param typeName	name of the desired target entity type
      */
-    public List<EntityInstance> getTargetsOfType(DbInstance db, String typeName) {
-        List<EntityInstance> retVal = new ArrayList<>();
-        for (RelationshipInstance connection : this.connections) {
-            if (typeName.equals(connection.getTargetType()))
-                retVal.add(connection.getTarget(db));
+    public List<EntityInstance> getTargetsOfType(String typeName) {
+        List<EntityInstance> retVal;
+        if (this.adjacency != null) {
+            // Here we are frozen, and we can return a view of the group for the target type.
+            int groupIdx = this.findGroup(typeName);
+            if (groupIdx < 0)
+                retVal = Collections.emptyList();
+            else
+                retVal = new TargetView(this.adjacency, this.groupOffsets[groupIdx], this.groupOffsets[groupIdx + 1]);
+        } else {
+            // Here we must scan all the connections.
+            retVal = new ArrayList<>();
+            for (RelationshipInstance connection : this.connections) {
+                if (typeName.equals(connection.getTargetType())) {
+                    EntityInstance target = connection.getTarget();
+                    if (target != null)
+                        retVal.add(target);
+                }
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the index of the adjacency group for the specified target type, or -1 if there is none
+     *
+     * @param typeName	name of the desired target entity type
+     */
+    private int findGroup(String typeName) {
+        // There are very few groups, so a linear search is fastest.  Type names are usually the
+        // same string object, so we check identity first.
+        final int n = this.groupTypes.length;
+        int retVal = -1;
+        for (int i = 0; retVal < 0 && i < n; i++) {
+            String groupType = this.groupTypes[i];
+            if (groupType == typeName || groupType.equals(typeName))
+                retVal = i;
         }
         return retVal;
     }
 
+    /**
+     * Freeze this entity instance.  The connections are grouped by target type and the targets are
+     * copied into a single adjacency array.  Within each group, the original connection order is preserved.
+     * Once this is done, no new connections can be added.  Only databases that are not modified after
+     * loading should be frozen.
+     */
+    public void freeze() {
+        if (this.adjacency == null) {
+            final int n = this.connections.size();
+            // Compute the target type groups in order of first appearance, and count the members of each.
+            List<String> types = new ArrayList<>(4);
+            List<int[]> counts = new ArrayList<>(4);
+            for (RelationshipInstance connection : this.connections) {
+                String targetType = connection.getTargetType();
+                int idx = types.indexOf(targetType);
+                if (idx < 0) {
+                    types.add(targetType);
+                    counts.add(new int[] { 1 });
+                } else
+                    counts.get(idx)[0]++;
+            }
+            // Compute the group offsets.
+            final int groups = types.size();
+            int[] offsets = new int[groups + 1];
+            for (int i = 0; i < groups; i++)
+                offsets[i + 1] = offsets[i] + counts.get(i)[0];
+            // Fill in the adjacency array and the grouped relationship array.
+            int[] fill = new int[groups];
+            System.arraycopy(offsets, 0, fill, 0, groups);
+            EntityInstance[] targets = new EntityInstance[n];
+            RelationshipInstance[] rels = new RelationshipInstance[n];
+            for (RelationshipInstance connection : this.connections) {
+                int idx = types.indexOf(connection.getTargetType());
+                int pos = fill[idx]++;
+                targets[pos] = connection.getTarget();
+                rels[pos] = connection;
+            }
+            // Save the frozen structures.
+            this.groupTypes = (groups == 0 ? NO_TYPES : types.toArray(new String[groups]));
+            this.groupOffsets = offsets;
+            this.adjacency = targets;
+            this.connections = List.of(rels);
+        }
+    }
+
+    /**
+     * @return TRUE if this entity instance has been frozen
+     */
+    public boolean isFrozen() {
+        return (this.adjacency != null);
+    }
+
+    /**
+     * This is a read-only list view of a range in an adjacency array.
+     */
+    private static class TargetView extends AbstractList<EntityInstance> implements RandomAccess {
+
+        /** underlying adjacency array */
+        private final EntityInstance[] targets;
+        /** index of first element in view */
+        private final int start;
+        /** index past the last element in view */
+        private final int end;
+
+        /**
+         * Create a view of a section of an adjacency array.
+         *
+         * @param targets	adjacency array
+         * @param start		index of first target in the view
+         * @param end		index past the last target in the view
+         */
+        protected TargetView(EntityInstance[] targets, int start, int end) {
+            this.targets = targets;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public EntityInstance get(int index) {
+            if (index < 0 || index >= this.end - this.start)
+                throw new IndexOutOfBoundsException(index);
+            return this.targets[this.start + index];
+        }
+
+        @Override
+        public int size() {
+            return this.end - this.start;
+        }
+
+    }
+
+    /**
+     * @return TRUE if this entity instance has been deleted from the database, else FALSE
+     */
+    public boolean isDeleted() {
+        return false;
+    }
+
     @Override
     public String toString() {
         return this.entityType + "[" + this.entityId + "]";
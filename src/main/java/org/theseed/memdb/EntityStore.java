@@ -0,0 +1,171 @@
+/**
+ *
+ */
+package org.theseed.memdb;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The entity store holds the entity instances of a database instance.  There is one concurrent ID map per
+ * entity type, and the maps are kept in an array indexed by the dense entity type index assigned by the
+ * database definition.  This means a lookup from an entity type object costs a single array access plus a
+ * hash lookup on the ID, rather than a tree lookup on the type name.  The ID maps are concurrent hash maps,
+ * which lock at the level of individual hash bins, so multiple threads can create and find instances
+ * without contending on a single lock.
+ *
+ * Lookups by type name are still supported, but require an extra hash lookup to resolve the type index.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class EntityStore {
+
+    // FIELDS
+    /** list of entity type names, in index order */
+    private final List<String> typeNames;
+    /** map of entity type names to type indices */
+    private final Map<String, Integer> typeIdxMap;
+    /** array of ID maps, one per entity type */
+    private final Map<String, EntityInstance>[] idMaps;
+    /** empty map to return for unknown types */
+    private static final Map<String, EntityInstance> EMPTY_MAP = Collections.emptyMap();
+
+    /**
+     * Create an empty entity store for the specified entity types.
+     *
+     * @param types		list of entity type names, in type index order
+     */
+    @SuppressWarnings("unchecked")
+    public EntityStore(List<String> types) {
+        this.typeNames = types;
+        final int n = types.size();
+        this.typeIdxMap = new HashMap<>(n * 4 / 3 + 1);
+        this.idMaps = new Map[n];
+        for (int i = 0; i < n; i++) {
+            this.typeIdxMap.put(types.get(i), i);
+            this.idMaps[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Compute the index of an entity type in this store.  The index cached in the entity type is used
+     * if it is valid; otherwise, we fall back to the name.
+     *
+     * @param type		entity type of interest
+     *
+     * @return the index of the entity type, or -1 if it is not in this store
+     */
+    public int getTypeIdx(EntityType type) {
+        int retVal = type.getTypeIdx();
+        if (retVal < 0 || retVal >= this.idMaps.length || ! type.getName().equals(this.typeNames.get(retVal)))
+            retVal = this.getTypeIdx(type.getName());
+        return retVal;
+    }
+
+    /**
+     * @return the index of the named entity type, or -1 if it is not in this store
+     *
+     * @param typeName	name of the entity type of interest
+     */
+    public int getTypeIdx(String typeName) {
+        Integer retVal = this.typeIdxMap.get(typeName);
+        return (retVal == null ? -1 : retVal);
+    }
+
+    /**
+     * Compute the index of an entity type that must be in this store.
+     *
+     * @param type		entity type of interest
+     *
+     * @return the index of the entity type
+     *
+     * @throws IllegalArgumentException if the entity type is not in this store
+     */
+    private int requireTypeIdx(EntityType type) {
+        int retVal = this.getTypeIdx(type);
+        if (retVal < 0)
+            throw new IllegalArgumentException("Entity type " + type.getName() + " is not in this database.");
+        return retVal;
+    }
+
+    /**
+     * Find an entity instance.
+     *
+     * @param typeIdx	index of the entity type
+     * @param id		ID of the desired instance
+     *
+     * @return the entity instance, or NULL if it does not exist
+     */
+    public EntityInstance get(int typeIdx, String id) {
+        EntityInstance retVal = null;
+        if (typeIdx >= 0 && typeIdx < this.idMaps.length)
+            retVal = this.idMaps[typeIdx].get(id);
+        return retVal;
+    }
+
+    /**
+     * Find an entity instance.
+     *
+     * @param typeName	name of the entity type
+     * @param id		ID of the desired instance
+     *
+     * @return the entity instance, or NULL if it does not exist
+     */
+    public EntityInstance get(String typeName, String id) {
+        return this.get(this.getTypeIdx(typeName), id);
+    }
+
+    /**
+     * Store an entity instance, replacing any existing instance with the same ID.
+     *
+     * @param type		entity type of the instance
+     * @param id		ID of the instance
+     * @param instance	instance to store
+     */
+    public void put(EntityType type, String id, EntityInstance instance) {
+        this.idMaps[this.requireTypeIdx(type)].put(id, instance);
+    }
+
+    /**
+     * Find an entity instance, creating it if it does not exist.  This is atomic, so only one
+     * instance will ever be created for a given type and ID.
+     *
+     * @param type		entity type of the instance
+     * @param id		ID of the instance
+     * @param db		database instance used to create new entity instances
+     *
+     * @return the found or created entity instance
+     */
+    public EntityInstance findOrCreate(EntityType type, String id, DbInstance db) {
+        Map<String, EntityInstance> idMap = this.idMaps[this.requireTypeIdx(type)];
+        // Check for an existing instance first, to avoid locking in the common case.
+        EntityInstance retVal = idMap.get(id);
+        if (retVal == null)
+            retVal = idMap.computeIfAbsent(id, x -> db.createEntity(type, x));
+        return retVal;
+    }
+
+    /**
+     * @return the ID map for the specified entity type, or an empty map if the type is not in this store
+     *
+     * @param typeName	name of the entity type of interest
+     */
+    public Map<String, EntityInstance> getIdMap(String typeName) {
+        int typeIdx = this.getTypeIdx(typeName);
+        return (typeIdx < 0 ? EMPTY_MAP : this.idMaps[typeIdx]);
+    }
+
+    /**
+     * @return the number of instances of the specified entity type
+     *
+     * @param typeName	name of the entity type of interest
+     */
+    public int size(String typeName) {
+        return this.getIdMap(typeName).size();
+    }
+
+}
@@ -7,10 +7,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.FieldInputStream;
-
 
 /**
  * An entity type contains instructions for reading an entity.  To read an entity, we need to know the
@@ -42,6 +42,8 @@ public abstract class EntityType implements Comparable<EntityType> {
     private final List<RelationshipType> relationships;
     /** priority */
     private int priority;
+    /** dense index of this type in the database definition, or -1 if none has been assigned */
+    private int typeIdx;
     /** special ID for connector records */
     protected static final String NULL_ID = "<connector>";
 
@@ -56,6 +58,7 @@ public abstract class EntityType implements Comparable<EntityType> {
         this.idColName = null;
         this.relationships = new ArrayList<>();
         this.priority = 0;
+        this.typeIdx = -1;
     }
 
     @Override
@@ -138,6 +141,23 @@ public abstract class EntityType implements Comparable<EntityType> {
         return this.name;
     }
 
+    /**
+     * @return the dense index of this entity type in its database definition, or -1 if none has been assigned
+     */
+    public int getTypeIdx() {
+        return this.typeIdx;
+    }
+
+    /**
+     * Specify the dense index of this entity type.  The index is the entity type's position in the
+     * definition's priority-ordered type list.
+     *
+     * @param idx	new type index
+     */
+    protected void setTypeIdx(int idx) {
+        this.typeIdx = idx;
+    }
+
     /**
      * @return the name of the file containing this entity's instances
      */
@@ -162,7 +182,7 @@ public abstract class EntityType implements Comparable<EntityType> {
      * @throws ParseFailureException
      * @throws IOException
      */
-    public Collection<RelationBuilder> getRelationBuilders(FieldInputStream inStream)
+    public Collection<RelationBuilder> getRelationBuilders(RecordSource inStream)
             throws IOException, ParseFailureException {
         List<RelationBuilder> retVal = new ArrayList<>(this.relationships.size());
         for (RelationshipType relType : this.relationships) {
@@ -189,7 +209,39 @@ public abstract class EntityType implements Comparable<EntityType> {
      * @throws ParseFailureException
      * @throws IOException
      */
-    protected abstract Collection<? extends AttributeBuilder> getAttributeBuilders(FieldInputStream instanceStream) throws IOException, ParseFailureException;
+    protected abstract Collection<? extends AttributeBuilder> getAttributeBuilders(RecordSource instanceStream) throws IOException, ParseFailureException;
+
+    /**
+     * @return the names of the input columns read by this entity type's attribute builders, or NULL if they
+     * 		   cannot be determined in advance
+     */
+    protected Collection<String> getAttributeColumns() {
+        return null;
+    }
+
+    /**
+     * Compute the exact set of input columns needed to build this entity type's instances, attributes, and
+     * relationships.  This allows the loader to skip all the other fields in the input file.
+     *
+     * @return the names of the required input columns, or NULL if they cannot be determined in advance
+     */
+    public Set<String> getRequiredColumns() {
+        Collection<String> attrColumns = this.getAttributeColumns();
+        Set<String> retVal = null;
+        if (attrColumns != null) {
+            retVal = new TreeSet<>(attrColumns);
+            if (this.idColName != null)
+                retVal.add(this.idColName);
+            for (int i = 0; retVal != null && i < this.relationships.size(); i++) {
+                Collection<String> relColumns = this.relationships.get(i).getRequiredColumns();
+                if (relColumns == null)
+                    retVal = null;
+                else
+                    retVal.addAll(relColumns);
+            }
+        }
+        return retVal;
+    }
 
 
 }
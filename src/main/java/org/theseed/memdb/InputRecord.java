@@ -0,0 +1,39 @@
+/**
+ *
+ */
+package org.theseed.memdb;
+
+import java.util.List;
+
+import org.theseed.io.FieldInputStream;
+
+/**
+ * This interface represents an input record from an entity instance file.  The fields are accessed by the
+ * column indices returned from the record source's "findField" method.  A record read through a field input
+ * stream also makes the underlying stream record available, for builders that use line templates.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public interface InputRecord {
+
+    /**
+     * @return the string value of a field, or an empty string if the field is missing
+     *
+     * @param idx	column index of the field
+     */
+    String get(int idx);
+
+    /**
+     * @return the value of a field as a list of strings (empty if the field is missing)
+     *
+     * @param idx	column index of the field
+     */
+    List<String> getList(int idx);
+
+    /**
+     * @return the underlying field input stream record, or NULL if this record was not read from a field input stream
+     */
+    FieldInputStream.Record getRecord();
+
+}
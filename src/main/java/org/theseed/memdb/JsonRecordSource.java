@@ -0,0 +1,563 @@
+/**
+ *
+ */
+package org.theseed.memdb;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.theseed.io.FieldInputStream;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.cliftonlabs.json_simple.Jsoner;
+
+/**
+ * This record source reads a JSON list of records and materializes only a fixed set of columns (the projection).
+ * The file is streamed a record at a time, and the values of fields outside the projection are skipped in place
+ * without building any objects for them.  Values are returned in the string form that FieldInputStream reports for
+ * the same JSON, which is the string form of the parsed JSON object:  strings and booleans as they appear, numbers
+ * in decimal canonical form (so "1.0e3" is "1.0E+3" and "-0" is "0"), and nulls as empty strings.  Array values are
+ * returned as lists of element strings, and as a bracketed list when asked for as a single string.  Nested objects
+ * are parsed only when they are projected.
+ *
+ * A field in the projection that is missing from a record has an empty value.  Asking for a field outside the
+ * projection is an error.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class JsonRecordSource implements RecordSource {
+
+    // FIELDS
+    /** input file name */
+    private final File inFile;
+    /** input reader */
+    private final Reader reader;
+    /** names of the projected columns */
+    private final List<String> columns;
+    /** projected column names as character arrays, for matching keys without building strings */
+    private final char[][] columnChars;
+    /** input buffer */
+    private final char[] buffer;
+    /** number of characters in the buffer */
+    private int bufferLen;
+    /** position of the next character in the buffer */
+    private int pos;
+    /** buffer for the current key */
+    private char[] keyBuffer;
+    /** length of the current key */
+    private int keyLen;
+    /** buffer for building string values */
+    private final StringBuilder valueBuffer;
+    /** TRUE if the end of the record list has been reached */
+    private boolean done;
+    /** number of records read */
+    private int recordCount;
+    /** input buffer size */
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * This object is a projected record.  It contains the values of the projected columns in projection order.
+     */
+    protected static class JsonRecord implements InputRecord {
+
+        /** array of column values; each is a string, a list of strings, or NULL if missing */
+        private final Object[] values;
+
+        /**
+         * Create a projected record.
+         *
+         * @param values	array of column values
+         */
+        protected JsonRecord(Object[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public String get(int idx) {
+            String retVal;
+            Object value = this.values[idx];
+            if (value == null)
+                retVal = "";
+            else if (value instanceof String string)
+                retVal = string;
+            else {
+                retVal = value.toString();
+            }
+            return retVal;
+        }
+
+        @Override
+        public List<String> getList(int idx) {
+            List<String> retVal;
+            Object value = this.values[idx];
+            if (value == null)
+                retVal = Collections.emptyList();
+            else if (value instanceof String string)
+                retVal = (string.isEmpty() ? Collections.emptyList() : List.of(string));
+            else {
+                @SuppressWarnings("unchecked")
+                List<String> list = (List<String>) value;
+                retVal = list;
+            }
+            return retVal;
+        }
+
+        @Override
+        public FieldInputStream.Record getRecord() {
+            return null;
+        }
+
+    }
+
+    /**
+     * Open a JSON file for projected reading.
+     *
+     * @param inFile	input file containing a JSON list of records
+     * @param columns	names of the columns to materialize
+     *
+     * @throws IOException
+     */
+    public JsonRecordSource(File inFile, Collection<String> columns) throws IOException {
+        this.inFile = inFile;
+        this.columns = new ArrayList<>(columns);
+        this.columnChars = new char[this.columns.size()][];
+        for (int i = 0; i < this.columnChars.length; i++)
+            this.columnChars[i] = this.columns.get(i).toCharArray();
+        this.reader = new InputStreamReader(new FileInputStream(inFile), StandardCharsets.UTF_8);
+        this.buffer = new char[BUFFER_SIZE];
+        this.bufferLen = 0;
+        this.pos = 0;
+        this.keyBuffer = new char[64];
+        this.valueBuffer = new StringBuilder(80);
+        this.recordCount = 0;
+        // Position on the first record. If the file is not a JSON list, we must close the reader before failing.
+        try {
+            this.expect('[');
+            this.done = (this.peek() == ']');
+        } catch (IOException | RuntimeException e) {
+            this.reader.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int findField(String name) throws IOException {
+        int retVal = this.columns.indexOf(name);
+        if (retVal < 0)
+            throw new IOException("Field \"" + name + "\" is not in the column projection for " + this.inFile + ".");
+        return retVal;
+    }
+
+    @Override
+    public FieldInputStream getStream() {
+        return null;
+    }
+
+    @Override
+    public Iterator<InputRecord> iterator() {
+        return new Iterator<InputRecord>() {
+
+            @Override
+            public boolean hasNext() {
+                return ! JsonRecordSource.this.done;
+            }
+
+            @Override
+            public InputRecord next() {
+                if (JsonRecordSource.this.done)
+                    throw new NoSuchElementException("No more records in " + JsonRecordSource.this.inFile + ".");
+                try {
+                    return JsonRecordSource.this.readRecord();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+        };
+    }
+
+    /**
+     * @return the number of records read so far
+     */
+    public int getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * Read the next record from the input.  On exit, the input is positioned on the following record, or
+     * the end-of-list flag is set.
+     *
+     * @return the projected record read
+     *
+     * @throws IOException
+     */
+    private InputRecord readRecord() throws IOException {
+        Object[] values = new Object[this.columnChars.length];
+        this.expect('{');
+        boolean more = (this.peek() != '}');
+        if (! more)
+            this.pos++;
+        while (more) {
+            // Read the key and find its column index.
+            this.expect('"');
+            this.readKey();
+            int colIdx = this.findKey();
+            this.expect(':');
+            if (colIdx < 0)
+                this.skipValue(null);
+            else
+                values[colIdx] = this.readValue();
+            more = this.nextSeparator('}');
+        }
+        this.recordCount++;
+        // Position on the next record.
+        char sep = this.nextToken();
+        if (sep == ']')
+            this.done = true;
+        else if (sep != ',')
+            throw this.syntaxError("',' or ']'");
+        return new JsonRecord(values);
+    }
+
+    /**
+     * @return the index of the current key in the projection, or -1 if it is not projected
+     */
+    private int findKey() {
+        int retVal = -1;
+        for (int i = 0; i < this.columnChars.length && retVal < 0; i++) {
+            char[] colChars = this.columnChars[i];
+            if (colChars.length == this.keyLen && Arrays.equals(colChars, 0, this.keyLen, this.keyBuffer, 0, this.keyLen))
+                retVal = i;
+        }
+        return retVal;
+    }
+
+    /**
+     * Read a key string into the key buffer.  The opening quote has already been consumed.
+     *
+     * @throws IOException
+     */
+    private void readKey() throws IOException {
+        this.keyLen = 0;
+        char c = this.nextChar();
+        while (c != '"') {
+            if (c == '\\')
+                c = this.readEscape();
+            if (this.keyLen >= this.keyBuffer.length)
+                this.keyBuffer = Arrays.copyOf(this.keyBuffer, this.keyBuffer.length * 2);
+            this.keyBuffer[this.keyLen++] = c;
+            c = this.nextChar();
+        }
+    }
+
+    /**
+     * Read a projected value.
+     *
+     * @return a string for a scalar or nested object, a list of strings for an array, or NULL for a JSON null
+     *
+     * @throws IOException
+     */
+    private Object readValue() throws IOException {
+        Object retVal;
+        char c = this.peek();
+        if (c == '[') {
+            this.pos++;
+            List<String> list = new ArrayList<>();
+            boolean more = (this.peek() != ']');
+            if (! more)
+                this.pos++;
+            while (more) {
+                Object element = this.readValue();
+                if (element != null)
+                    list.add(element.toString());
+                more = this.nextSeparator(']');
+            }
+            retVal = list;
+        } else {
+            retVal = this.readScalar();
+        }
+        return retVal;
+    }
+
+    /**
+     * Read a scalar value (or a nested object, which is returned as raw text).
+     *
+     * @return the string form of the value, or NULL for a JSON null
+     *
+     * @throws IOException
+     */
+    private String readScalar() throws IOException {
+        String retVal;
+        this.valueBuffer.setLength(0);
+        char c = this.peek();
+        if (c == '"') {
+            this.pos++;
+            c = this.nextChar();
+            while (c != '"') {
+                if (c == '\\')
+                    c = this.readEscape();
+                this.valueBuffer.append(c);
+                c = this.nextChar();
+            }
+            retVal = this.valueBuffer.toString();
+        } else if (c == '{') {
+            this.skipValue(this.valueBuffer);
+            try {
+                retVal = Jsoner.deserialize(this.valueBuffer.toString()).toString();
+            } catch (JsonException e) {
+                throw this.syntaxError("a valid object");
+            }
+        } else {
+            // Here we have a number or a literal.
+            this.skipValue(this.valueBuffer);
+            retVal = this.valueBuffer.toString();
+            if (retVal.equals("null"))
+                retVal = null;
+            else if (c != 't' && c != 'f')
+                retVal = canonicalNumber(retVal);
+        }
+        return retVal;
+    }
+
+    /**
+     * Convert a number to the form the JSON parser reports.  The parser reads numbers as big decimals, so this is
+     * the big decimal string form.  Most numbers are already in that form, and are returned unchanged.
+     *
+     * @param number	number text from the file
+     *
+     * @return the canonical string form of the number
+     *
+     * @throws IOException
+     */
+    private String canonicalNumber(String number) throws IOException {
+        String retVal = number;
+        // A number needs conversion if it has an exponent, or if it is a zero or fraction whose canonical form
+        // might drop a sign or switch to scientific notation.
+        int start = (number.startsWith("-") ? 1 : 0);
+        boolean convert = (start < number.length() && number.charAt(start) == '0');
+        for (int i = start; i < number.length() && ! convert; i++) {
+            char c = number.charAt(i);
+            convert = (c == 'e' || c == 'E');
+        }
+        if (convert) {
+            try {
+                retVal = new BigDecimal(number).toString();
+            } catch (NumberFormatException e) {
+                throw this.syntaxError("a number");
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Skip over a value without interpreting it.
+     *
+     * @param capture	if not NULL, a string builder to receive the raw text of the value
+     *
+     * @throws IOException
+     */
+    private void skipValue(StringBuilder capture) throws IOException {
+        char c = this.peek();
+        if (c == '"') {
+            this.skipString(capture);
+        } else if (c == '{' || c == '[') {
+            // Skip a nested structure.  Only strings can contain unbalanced brackets, so we track depth
+            // and skip strings whole.
+            int depth = 0;
+            do {
+                c = this.peekRaw();
+                if (c == '"')
+                    this.skipString(capture);
+                else {
+                    this.pos++;
+                    if (capture != null)
+                        capture.append(c);
+                    if (c == '{' || c == '[')
+                        depth++;
+                    else if (c == '}' || c == ']')
+                        depth--;
+                }
+            } while (depth > 0);
+        } else {
+            // Skip a number or literal.
+            c = this.peekRaw();
+            while (c != ',' && c != '}' && c != ']' && ! Character.isWhitespace(c)) {
+                this.pos++;
+                if (capture != null)
+                    capture.append(c);
+                c = this.peekRaw();
+            }
+        }
+    }
+
+    /**
+     * Skip over a string, including its quotes.
+     *
+     * @param capture	if not NULL, a string builder to receive the raw text of the string
+     *
+     * @throws IOException
+     */
+    private void skipString(StringBuilder capture) throws IOException {
+        this.pos++;
+        if (capture != null)
+            capture.append('"');
+        char c = this.nextChar();
+        while (c != '"') {
+            if (capture != null)
+                capture.append(c);
+            if (c == '\\') {
+                c = this.nextChar();
+                if (capture != null)
+                    capture.append(c);
+            }
+            c = this.nextChar();
+        }
+        if (capture != null)
+            capture.append('"');
+    }
+
+    /**
+     * Decode an escape sequence.  The backslash has already been consumed.
+     *
+     * @return the character represented by the escape
+     *
+     * @throws IOException
+     */
+    private char readEscape() throws IOException {
+        char c = this.nextChar();
+        char retVal = switch (c) {
+            case 'b' -> '\b';
+            case 'f' -> '\f';
+            case 'n' -> '\n';
+            case 'r' -> '\r';
+            case 't' -> '\t';
+            case 'u' -> {
+                int code = 0;
+                for (int i = 0; i < 4; i++)
+                    code = code * 16 + Character.digit(this.nextChar(), 16);
+                yield (char) code;
+            }
+            default -> c;
+        };
+        return retVal;
+    }
+
+    /**
+     * Consume the next non-whitespace character, which must be the one specified.
+     *
+     * @param expected	expected character
+     *
+     * @throws IOException
+     */
+    private void expect(char expected) throws IOException {
+        if (this.peek() != expected)
+            throw this.syntaxError("'" + expected + "'");
+        this.pos++;
+    }
+
+    /**
+     * Consume the separator after a member of a structure.
+     *
+     * @param closer	character that closes the structure
+     *
+     * @return TRUE if there are more members, FALSE if the structure is closed
+     *
+     * @throws IOException
+     */
+    private boolean nextSeparator(char closer) throws IOException {
+        char c = this.nextToken();
+        if (c != ',' && c != closer)
+            throw this.syntaxError("',' or '" + closer + "'");
+        return (c == ',');
+    }
+
+    /**
+     * @return the next non-whitespace character, which is consumed
+     *
+     * @throws IOException
+     */
+    private char nextToken() throws IOException {
+        char retVal = this.peek();
+        this.pos++;
+        return retVal;
+    }
+
+    /**
+     * @return the next non-whitespace character, without consuming it
+     *
+     * @throws IOException
+     */
+    private char peek() throws IOException {
+        char retVal = this.peekRaw();
+        while (Character.isWhitespace(retVal)) {
+            this.pos++;
+            retVal = this.peekRaw();
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the next character, without consuming it
+     *
+     * @throws IOException
+     */
+    private char peekRaw() throws IOException {
+        if (this.pos >= this.bufferLen)
+            this.fill();
+        return this.buffer[this.pos];
+    }
+
+    /**
+     * @return the next character, which is consumed
+     *
+     * @throws IOException
+     */
+    private char nextChar() throws IOException {
+        char retVal = this.peekRaw();
+        this.pos++;
+        return retVal;
+    }
+
+    /**
+     * Refill the input buffer.
+     *
+     * @throws IOException
+     */
+    private void fill() throws IOException {
+        int n = this.reader.read(this.buffer, 0, this.buffer.length);
+        if (n <= 0)
+            throw new IOException("Unexpected end of file in " + this.inFile + " after " + this.recordCount + " records.");
+        this.bufferLen = n;
+        this.pos = 0;
+    }
+
+    /**
+     * @return an exception for a syntax error
+     *
+     * @param expected	description of what was expected
+     */
+    private IOException syntaxError(String expected) {
+        return new IOException("Invalid JSON in " + this.inFile + " near record " + (this.recordCount + 1)
+                + ": expected " + expected + ".");
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+}
@@ -0,0 +1,319 @@
+/**
+ *
+ */
+package org.theseed.memdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.github.cliftonlabs.json_simple.JsonArray;
+import com.github.cliftonlabs.json_simple.JsonObject;
+import com.github.cliftonlabs.json_simple.Jsoner;
+
+/**
+ * This object collects performance metrics for database loads.  There is one set of metrics for each input
+ * file processed, and these are rolled up by entity type and for the load as a whole.  The metrics can be
+ * written as a tab-delimited report or a JSON report.
+ *
+ * Parse time is the time spent reading records from the file, and build time is the time spent by the entity
+ * builder creating instances, attributes, and relationships.  The heap delta is the change in used heap memory
+ * across the file, and is only approximate, since it is affected by garbage collection (and, when the input is
+ * parsed in parallel, by the other loader threads).  The attribute count is the number of attribute values
+ * stored:  each element of a list-valued attribute is counted, and an empty attribute is not counted at all.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class LoadMetrics {
+
+    // FIELDS
+    /** list of metrics for the individual files */
+    private final List<FileMetrics> files;
+    /** column headers for the tab-delimited report */
+    private static final String TSV_HEADER = "level\tentity_type\tfile\trecords\tinstances\tattributes\trelationships\t"
+            + "parse_ms\tbuild_ms\trecords_per_sec\theap_delta";
+
+    /**
+     * This object contains the metrics for an input file or a group of input files.
+     */
+    public static class FileMetrics {
+
+        /** name of the entity type */
+        private final String typeName;
+        /** input file, or NULL for a group */
+        private final File file;
+        /** number of records processed */
+        private int records;
+        /** number of entity instance records built */
+        private int instances;
+        /** number of attribute values stored */
+        private int attributes;
+        /** number of relationship instances created */
+        private int relationships;
+        /** nanoseconds spent parsing */
+        private long parseNanos;
+        /** nanoseconds spent building */
+        private long buildNanos;
+        /** change in used heap bytes */
+        private long heapDelta;
+
+        /**
+         * Create the metrics for an input file.
+         *
+         * @param file			input file processed
+         * @param builder		entity builder used for the file
+         * @param parseNanos	nanoseconds spent parsing the file
+         * @param heapDelta		change in used heap bytes while processing the file
+         */
+        protected FileMetrics(File file, EntityBuilder builder, long parseNanos, long heapDelta) {
+            this.typeName = builder.getEntityType().getName();
+            this.file = file;
+            this.records = builder.getRecordCount();
+            this.instances = builder.getInstanceCount();
+            this.attributes = builder.getAttributeCount();
+            this.relationships = builder.getRelCount();
+            this.parseNanos = parseNanos;
+            this.buildNanos = builder.getBuildNanos();
+            this.heapDelta = heapDelta;
+        }
+
+        /**
+         * Create empty metrics for a group of input files.
+         *
+         * @param typeName		name of the entity type for the group, or NULL for all types
+         */
+        protected FileMetrics(String typeName) {
+            this.typeName = typeName;
+            this.file = null;
+        }
+
+        /**
+         * Add the metrics for another file to this group.
+         *
+         * @param other		metrics to add
+         */
+        protected void add(FileMetrics other) {
+            this.records += other.records;
+            this.instances += other.instances;
+            this.attributes += other.attributes;
+            this.relationships += other.relationships;
+            this.parseNanos += other.parseNanos;
+            this.buildNanos += other.buildNanos;
+            this.heapDelta += other.heapDelta;
+        }
+
+        /**
+         * @return the name of the entity type, or NULL for a group of all types
+         */
+        public String getTypeName() {
+            return this.typeName;
+        }
+
+        /**
+         * @return the input file, or NULL for a group
+         */
+        public File getFile() {
+            return this.file;
+        }
+
+        /**
+         * @return the number of records processed
+         */
+        public int getRecords() {
+            return this.records;
+        }
+
+        /**
+         * @return the number of entity instance records built
+         */
+        public int getInstances() {
+            return this.instances;
+        }
+
+        /**
+         * @return the number of attribute values stored
+         */
+        public int getAttributes() {
+            return this.attributes;
+        }
+
+        /**
+         * @return the number of relationship instances created
+         */
+        public int getRelationships() {
+            return this.relationships;
+        }
+
+        /**
+         * @return the milliseconds spent parsing
+         */
+        public double getParseMs() {
+            return this.parseNanos / 1e6;
+        }
+
+        /**
+         * @return the milliseconds spent building
+         */
+        public double getBuildMs() {
+            return this.buildNanos / 1e6;
+        }
+
+        /**
+         * @return the number of records processed per second
+         */
+        public double getRecordsPerSec() {
+            long nanos = this.parseNanos + this.buildNanos;
+            return (nanos <= 0 ? 0.0 : this.records * 1e9 / nanos);
+        }
+
+        /**
+         * @return the change in used heap bytes
+         */
+        public long getHeapDelta() {
+            return this.heapDelta;
+        }
+
+        /**
+         * @return a tab-delimited report line for these metrics
+         *
+         * @param level		level of the metrics (file, type, or total)
+         */
+        protected String toLine(String level) {
+            return String.format("%s\t%s\t%s\t%d\t%d\t%d\t%d\t%.1f\t%.1f\t%.1f\t%d", level,
+                    (this.typeName == null ? "" : this.typeName), (this.file == null ? "" : this.file.toString()),
+                    this.records, this.instances, this.attributes, this.relationships, this.getParseMs(),
+                    this.getBuildMs(), this.getRecordsPerSec(), this.heapDelta);
+        }
+
+        /**
+         * @return a JSON object for these metrics
+         */
+        protected JsonObject toJson() {
+            JsonObject retVal = new JsonObject();
+            if (this.typeName != null)
+                retVal.put("entity_type", this.typeName);
+            if (this.file != null)
+                retVal.put("file", this.file.toString());
+            retVal.put("records", this.records);
+            retVal.put("instances", this.instances);
+            retVal.put("attributes", this.attributes);
+            retVal.put("relationships", this.relationships);
+            retVal.put("parse_ms", this.getParseMs());
+            retVal.put("build_ms", this.getBuildMs());
+            retVal.put("records_per_sec", this.getRecordsPerSec());
+            retVal.put("heap_delta", this.heapDelta);
+            return retVal;
+        }
+
+    }
+
+    /**
+     * Create an empty metrics collection.
+     */
+    public LoadMetrics() {
+        this.files = new ArrayList<>();
+    }
+
+    /**
+     * Record the metrics for an input file.
+     *
+     * @param file			input file processed
+     * @param builder		entity builder used for the file
+     * @param parseNanos	nanoseconds spent parsing the file
+     * @param heapDelta		change in used heap bytes while processing the file
+     */
+    protected synchronized void record(File file, EntityBuilder builder, long parseNanos, long heapDelta) {
+        this.files.add(new FileMetrics(file, builder, parseNanos, heapDelta));
+    }
+
+    /**
+     * @return the list of metrics for the individual files
+     */
+    public synchronized List<FileMetrics> getFiles() {
+        return new ArrayList<>(this.files);
+    }
+
+    /**
+     * @return the metrics rolled up by entity type, sorted by type name
+     */
+    public Map<String, FileMetrics> getTypeTotals() {
+        Map<String, FileMetrics> retVal = new TreeMap<>();
+        for (FileMetrics fileMetrics : this.getFiles())
+            retVal.computeIfAbsent(fileMetrics.getTypeName(), x -> new FileMetrics(x)).add(fileMetrics);
+        return retVal;
+    }
+
+    /**
+     * @return the metrics rolled up for the whole load
+     */
+    public FileMetrics getTotals() {
+        FileMetrics retVal = new FileMetrics((String) null);
+        for (FileMetrics fileMetrics : this.getFiles())
+            retVal.add(fileMetrics);
+        return retVal;
+    }
+
+    /**
+     * @return the current number of bytes in use on the heap
+     */
+    public static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Write the metrics as a tab-delimited report.  There is one line per file, followed by one line per
+     * entity type and a line for the totals.
+     *
+     * @param writer	output print writer
+     */
+    public void writeTsv(PrintWriter writer) {
+        writer.println(TSV_HEADER);
+        for (FileMetrics fileMetrics : this.getFiles())
+            writer.println(fileMetrics.toLine("file"));
+        for (FileMetrics typeMetrics : this.getTypeTotals().values())
+            writer.println(typeMetrics.toLine("type"));
+        writer.println(this.getTotals().toLine("total"));
+    }
+
+    /**
+     * @return the metrics as a JSON object
+     */
+    public JsonObject toJson() {
+        JsonObject retVal = new JsonObject();
+        JsonArray fileList = new JsonArray();
+        for (FileMetrics fileMetrics : this.getFiles())
+            fileList.add(fileMetrics.toJson());
+        retVal.put("files", fileList);
+        JsonArray typeList = new JsonArray();
+        for (FileMetrics typeMetrics : this.getTypeTotals().values())
+            typeList.add(typeMetrics.toJson());
+        retVal.put("types", typeList);
+        retVal.put("total", this.getTotals().toJson());
+        return retVal;
+    }
+
+    /**
+     * Write the metrics report to a file.  If the file name ends in ".json", a JSON report is written;
+     * otherwise, the report is tab-delimited.
+     *
+     * @param outFile	output file for the report
+     *
+     * @throws IOException
+     */
+    public void save(File outFile) throws IOException {
+        try (PrintWriter writer = new PrintWriter(outFile, StandardCharsets.UTF_8)) {
+            if (outFile.getName().endsWith(".json"))
+                writer.println(Jsoner.prettyPrint(Jsoner.serialize(this.toJson())));
+            else
+                this.writeTsv(writer);
+        }
+    }
+
+}
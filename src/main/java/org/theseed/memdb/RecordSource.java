@@ -0,0 +1,34 @@
+/**
+ *
+ */
+package org.theseed.memdb;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.theseed.io.FieldInputStream;
+
+/**
+ * This interface represents a source of input records for an entity type.  Normally the source is a field input
+ * stream, but for JSON files it can be a projecting reader that only materializes the columns the entity type uses.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public interface RecordSource extends Closeable, Iterable<InputRecord> {
+
+    /**
+     * @return the column index of a field
+     *
+     * @param name	name of the desired field
+     *
+     * @throws IOException	if the field is not available
+     */
+    int findField(String name) throws IOException;
+
+    /**
+     * @return the underlying field input stream, or NULL if this source does not use one
+     */
+    FieldInputStream getStream();
+
+}
@@ -7,7 +7,6 @@ import java.io.IOException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.FieldInputStream;
 
 /**
  * A relationship builder contains the information we need to build relationship instances.  Each builder will
@@ -40,7 +39,7 @@ public abstract class RelationBuilder {
      * @throws ParseFailureException
      * @throws IOException
      */
-    public RelationBuilder(RelationshipType relType, FieldInputStream inStream) throws IOException, ParseFailureException {
+    public RelationBuilder(RelationshipType relType, RecordSource inStream) throws IOException, ParseFailureException {
         this.targetIdColIdx = inStream.findField(relType.getTargetColName());
         this.targetType = relType.getTargetType();
         this.sourceIdColIdx = inStream.findField(relType.getSourceColName());
@@ -57,7 +56,7 @@ public abstract class RelationBuilder {
      *
      * @return the target entity instance, or NULL if there is none
      */
-    public EntityInstance getTarget(FieldInputStream.Record record, DbInstance db) {
+    public EntityInstance getTarget(InputRecord record, DbInstance db) {
         return getInstance(record, db, this.targetType, this.targetIdColIdx);
     }
 
@@ -70,7 +69,7 @@ public abstract class RelationBuilder {
      *
      * @return the target entity instance, or NULL if there is none
      */
-    public EntityInstance getSource(FieldInputStream.Record record, DbInstance db) {
+    public EntityInstance getSource(InputRecord record, DbInstance db) {
         return getInstance(record, db, this.sourceType, this.sourceIdColIdx);
     }
 
@@ -84,7 +83,7 @@ public abstract class RelationBuilder {
      *
      * @return the desired instance, or NULL if there is none
      */
-    private static EntityInstance getInstance(FieldInputStream.Record record, DbInstance db, EntityType type, int idColIdx) {
+    private static EntityInstance getInstance(InputRecord record, DbInstance db, EntityType type, int idColIdx) {
         EntityInstance retVal;
         // Get the entity ID.
         String id = record.get(idColIdx);
@@ -112,7 +111,7 @@ public abstract class RelationBuilder {
      * @param targetInstance
      * @return
      */
-    protected abstract RelationshipInstance getForwardInstance(DbInstance db, FieldInputStream.Record record, EntityInstance sourceInstance,
+    protected abstract RelationshipInstance getForwardInstance(DbInstance db, InputRecord record, EntityInstance sourceInstance,
             EntityInstance targetInstance);
 
     /**
@@ -121,7 +120,7 @@ public abstract class RelationBuilder {
      * @param targetInstance
      * @return
      */
-    protected abstract RelationshipInstance getReverseInstance(DbInstance db, FieldInputStream.Record record, EntityInstance sourceInstance,
+    protected abstract RelationshipInstance getReverseInstance(DbInstance db, InputRecord record, EntityInstance sourceInstance,
             EntityInstance targetInstance);
 
 
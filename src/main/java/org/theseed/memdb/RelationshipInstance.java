@@ -5,8 +5,11 @@ package org.theseed.memdb;
 
 /**
  * A relationship describes a unidirectional crossing between two entity instances.
- * It contains data used to find the target entity instance and is stored in the
- * source entity instance.
+ * It contains a direct reference to the target entity instance and is stored in the
+ * source entity instance.  Because the target is held directly, crossing a relationship
+ * requires no lookups in the database instance.  If the target entity instance has been
+ * deleted (which happens during a random walk), the relationship is treated as having
+ * no target.
  *
  * @author Bruce Parrello
  *
@@ -14,22 +17,8 @@ package org.theseed.memdb;
 public abstract class RelationshipInstance {
 
     // FIELDS
-    /** target entity type */
-    private final String targetType;
-    /** target entity ID */
-    private final String targetId;
-
-
-    /**
-     * Create a new relationship instance.
-     *
-     * @param destType		target entity type name
-     * @param id			target instance ID
-     */
-    public RelationshipInstance(String destType, String id) {
-        this.targetType = destType;
-        this.targetId = id;
-    }
+    /** target entity instance */
+    private final EntityInstance target;
 
     /**
      * Convstruct a relationship instance with the specified target entity instance
@@ -37,26 +26,23 @@ public abstract class RelationshipInstance {
      * @param targetInstance	target entity instance
      */
     public RelationshipInstance(EntityInstance targetInstance) {
-        this.targetType = targetInstance.getType();
-        this.targetId = targetInstance.getId();
+        this.target = targetInstance;
     }
 
     /**
      * Find the target entity instance for this relationship instance.
      *
-     * @param db	controlling database instance containing the entity map
-     *
      * @return the target instance, or NULL if it has been exhausted
      */
-    public EntityInstance getTarget(DbInstance db) {
-        return db.getEntity(this.targetType, this.targetId);
+    public EntityInstance getTarget() {
+        return (this.target.isDeleted() ? null : this.target);
     }
 
     /**
      * @return the target entity type
      */
     public String getTargetType() {
-        return this.targetType;
+        return this.target.getType();
     }
 
 }
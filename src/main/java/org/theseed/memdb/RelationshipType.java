@@ -4,9 +4,9 @@
 package org.theseed.memdb;
 
 import java.io.IOException;
+import java.util.Collection;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.FieldInputStream;
 
 /**
  * A relationship type describes a connection between two entity types.  It only exists
@@ -85,7 +85,15 @@ public abstract class RelationshipType {
      * @throws ParseFailureException
      * @throws IOException
      */
-    protected abstract RelationBuilder createRelationBuilder(FieldInputStream inStream) throws IOException, ParseFailureException;
+    protected abstract RelationBuilder createRelationBuilder(RecordSource inStream) throws IOException, ParseFailureException;
+
+    /**
+     * @return the names of the input columns read by this relationship type's builders, or NULL if they
+     * 		   cannot be determined in advance
+     */
+    public Collection<String> getRequiredColumns() {
+        return null;
+    }
 
     /**
      * The string representation is the two entity type names, in order.
@@ -0,0 +1,102 @@
+/**
+ *
+ */
+package org.theseed.memdb;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.theseed.io.Attribute;
+import org.theseed.io.FieldInputStream;
+
+/**
+ * This record source reads all the records from a field input stream.  It is used for tab-delimited files and for
+ * entity types whose column requirements are not known in advance (such as those driven by line templates).
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class StreamRecordSource implements RecordSource {
+
+    // FIELDS
+    /** underlying field input stream */
+    private final FieldInputStream stream;
+
+    /**
+     * This object is an input record that wraps a field input stream record.
+     */
+    protected static class StreamRecord implements InputRecord {
+
+        /** underlying stream record */
+        private final FieldInputStream.Record record;
+
+        /**
+         * Wrap a stream record.
+         *
+         * @param record	field input stream record to wrap
+         */
+        protected StreamRecord(FieldInputStream.Record record) {
+            this.record = record;
+        }
+
+        @Override
+        public String get(int idx) {
+            return this.record.get(idx);
+        }
+
+        @Override
+        public List<String> getList(int idx) {
+            return new Attribute(this.record, idx).getList();
+        }
+
+        @Override
+        public FieldInputStream.Record getRecord() {
+            return this.record;
+        }
+
+    }
+
+    /**
+     * Create a record source for a field input stream.
+     *
+     * @param stream	field input stream to read
+     */
+    public StreamRecordSource(FieldInputStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public Iterator<InputRecord> iterator() {
+        final Iterator<FieldInputStream.Record> iter = this.stream.iterator();
+        return new Iterator<InputRecord>() {
+
+            @Override
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+
+            @Override
+            public InputRecord next() {
+                return new StreamRecord(iter.next());
+            }
+
+        };
+    }
+
+    @Override
+    public int findField(String name) throws IOException {
+        return this.stream.findField(name);
+    }
+
+    @Override
+    public FieldInputStream getStream() {
+        return this.stream;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.stream.close();
+    }
+
+}
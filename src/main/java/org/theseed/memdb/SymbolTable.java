@@ -0,0 +1,253 @@
+/**
+ *
+ */
+package org.theseed.memdb;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The symbol table is used during a database load to remove duplicate copies of strings and attribute values.
+ * The input records produce a new string object for every field of every record, so the same genome ID or role
+ * name can end up stored thousands of times.  The symbol table maps each value to a single canonical copy.
+ *
+ * There are two kinds of dictionaries.  The string dictionary holds plain strings, and is used for values
+ * (such as IDs in relationship text) that are known to repeat.  The value dictionaries hold immutable value objects
+ * built from a string, and are organized by category (usually an entity type and attribute name).  Many attributes
+ * are not categorical (for example, a product name or a sequence length), and interning these would only waste
+ * memory on the dictionary itself.  Each value dictionary therefore samples its lookups, and if too many distinct
+ * values are found, the dictionary is discarded and values in that category are no longer interned.
+ *
+ * The dictionaries are only needed while loading, and should be released afterward.  The canonical copies remain
+ * in the entity instances.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SymbolTable {
+
+    // FIELDS
+    /** logging facility */
+    private static final Logger log = LoggerFactory.getLogger(SymbolTable.class);
+    /** canonical string dictionary */
+    private final Map<String, String> strings;
+    /** value dictionaries by category */
+    private final Map<String, ValueDictionary<?>> categories;
+    /** number of string lookups */
+    private final LongAdder stringLookups;
+    /** number of string lookups satisfied by an existing copy */
+    private final LongAdder stringHits;
+    /** estimated number of bytes saved by sharing strings */
+    private final LongAdder stringBytesSaved;
+    /** number of lookups to sample before deciding whether a category is worth interning */
+    private static final int SAMPLE_SIZE = 10000;
+    /** maximum fraction of distinct values for a category to be considered categorical */
+    private static final double MAX_DISTINCT_FRACTION = 0.5;
+    /** estimated overhead in bytes for a value object wrapping a string */
+    private static final int VALUE_OVERHEAD = 16;
+
+    /**
+     * This object is a dictionary of value objects for a single category.
+     *
+     * @param <T>	type of value object
+     */
+    private static class ValueDictionary<T> {
+
+        /** map of value strings to value objects */
+        private final Map<String, T> values;
+        /** number of lookups */
+        private final LongAdder lookups;
+        /** number of lookups satisfied by an existing object */
+        private final LongAdder hits;
+        /** estimated number of bytes saved */
+        private final LongAdder bytesSaved;
+        /** TRUE if this category has been rejected as non-categorical */
+        private volatile boolean rejected;
+
+        /**
+         * Create an empty value dictionary.
+         */
+        protected ValueDictionary() {
+            this.values = new ConcurrentHashMap<>();
+            this.lookups = new LongAdder();
+            this.hits = new LongAdder();
+            this.bytesSaved = new LongAdder();
+            this.rejected = false;
+        }
+
+        /**
+         * Find the canonical value object for a value string.
+         *
+         * @param value		value string
+         * @param creator	function to create a new value object from the string
+         *
+         * @return the canonical value object
+         */
+        protected T intern(String value, Function<String, T> creator) {
+            T retVal;
+            if (this.rejected)
+                retVal = creator.apply(value);
+            else {
+                this.lookups.increment();
+                retVal = this.values.get(value);
+                if (retVal != null) {
+                    this.hits.increment();
+                    this.bytesSaved.add(estimateBytes(value) + VALUE_OVERHEAD);
+                } else {
+                    retVal = this.values.computeIfAbsent(value, creator);
+                    // Periodically check to see if this category is worth keeping.
+                    long n = this.lookups.sum();
+                    if (n >= SAMPLE_SIZE && n % SAMPLE_SIZE == 0 && this.values.size() > n * MAX_DISTINCT_FRACTION)
+                        this.reject();
+                }
+            }
+            return retVal;
+        }
+
+        /**
+         * Denote this category is not worth interning, and release the dictionary.
+         */
+        private void reject() {
+            this.rejected = true;
+            this.values.clear();
+        }
+
+        /**
+         * @return TRUE if this category was rejected as non-categorical
+         */
+        protected boolean isRejected() {
+            return this.rejected;
+        }
+
+        /**
+         * @return the number of distinct values in this dictionary
+         */
+        protected int size() {
+            return this.values.size();
+        }
+
+        /**
+         * Release the memory for this dictionary.
+         */
+        protected void release() {
+            this.values.clear();
+        }
+
+    }
+
+    /**
+     * Create a new, empty symbol table.
+     */
+    public SymbolTable() {
+        this.strings = new ConcurrentHashMap<>();
+        this.categories = new ConcurrentHashMap<>();
+        this.stringLookups = new LongAdder();
+        this.stringHits = new LongAdder();
+        this.stringBytesSaved = new LongAdder();
+    }
+
+    /**
+     * Estimate the number of bytes of heap occupied by a string.  This assumes compressed object
+     * pointers and a compact (one byte per character) string.
+     *
+     * @param value		string to check
+     *
+     * @return the estimated heap size of the string, in bytes
+     */
+    public static long estimateBytes(String value) {
+        // The string object itself is 24 bytes; the backing array has a 16-byte header, and
+        // arrays are aligned on 8-byte boundaries.
+        return 24 + ((16 + value.length() + 7) & ~7);
+    }
+
+    /**
+     * Return the canonical copy of a string.
+     *
+     * @param value		string to intern
+     *
+     * @return the canonical copy of the string (which may be the string itself)
+     */
+    public String intern(String value) {
+        String retVal = value;
+        if (value != null) {
+            this.stringLookups.increment();
+            retVal = this.strings.putIfAbsent(value, value);
+            if (retVal == null)
+                retVal = value;
+            else {
+                this.stringHits.increment();
+                this.stringBytesSaved.add(estimateBytes(value));
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Return the canonical value object for a value string in a particular category.  If the category
+     * has been found to be non-categorical, a new value object will be returned every time.
+     *
+     * @param <T>		type of value object
+     * @param category	category name (generally entity type and attribute name)
+     * @param value		value string
+     * @param creator	function to create a value object from the string
+     *
+     * @return the canonical value object
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T internValue(String category, String value, Function<String, T> creator) {
+        T retVal;
+        if (value == null)
+            retVal = creator.apply(value);
+        else {
+            ValueDictionary<T> dictionary = (ValueDictionary<T>) this.categories.computeIfAbsent(category,
+                    x -> new ValueDictionary<T>());
+            retVal = dictionary.intern(value, creator);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the estimated number of bytes saved by interning
+     */
+    public long getBytesSaved() {
+        long retVal = this.stringBytesSaved.sum();
+        for (ValueDictionary<?> dictionary : this.categories.values())
+            retVal += dictionary.bytesSaved.sum();
+        return retVal;
+    }
+
+    /**
+     * Write the interning statistics to the log.
+     */
+    public void logStatistics() {
+        if (log.isInfoEnabled()) {
+            log.info("String dictionary: {} lookups, {} shared, {} distinct, {} bytes saved.", this.stringLookups.sum(),
+                    this.stringHits.sum(), this.strings.size(), this.stringBytesSaved.sum());
+            for (Map.Entry<String, ValueDictionary<?>> entry : this.categories.entrySet()) {
+                ValueDictionary<?> dictionary = entry.getValue();
+                if (dictionary.isRejected())
+                    log.info("Value dictionary {} was not categorical after {} lookups.", entry.getKey(),
+                            dictionary.lookups.sum());
+                else
+                    log.info("Value dictionary {}: {} lookups, {} shared, {} distinct, {} bytes saved.", entry.getKey(),
+                            dictionary.lookups.sum(), dictionary.hits.sum(), dictionary.size(), dictionary.bytesSaved.sum());
+            }
+            log.info("Total estimated memory saved by interning is {} bytes.", this.getBytesSaved());
+        }
+    }
+
+    /**
+     * Release the memory used by the dictionaries.  The statistics are retained.
+     */
+    public void release() {
+        this.strings.clear();
+        for (ValueDictionary<?> dictionary : this.categories.values())
+            dictionary.release();
+    }
+
+}
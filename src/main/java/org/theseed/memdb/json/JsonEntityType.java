@@ -6,9 +6,9 @@ import java.util.Collection;
 import java.util.List;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.FieldInputStream;
 import org.theseed.memdb.AttributeBuilder;
 import org.theseed.memdb.EntityType;
+import org.theseed.memdb.RecordSource;
 
 public class JsonEntityType extends EntityType {
 
@@ -28,7 +28,7 @@ public class JsonEntityType extends EntityType {
     }
 
     @Override
-    protected Collection<? extends AttributeBuilder> getAttributeBuilders(FieldInputStream instanceStream)
+    protected Collection<? extends AttributeBuilder> getAttributeBuilders(RecordSource instanceStream)
             throws IOException, ParseFailureException {
         return this.attributes;
     }
@@ -0,0 +1,212 @@
+/**
+ *
+ */
+package org.theseed.memdb.query;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An attribute table holds the attribute values for all the instances of a single entity type in columnar form.
+ * Each attribute is assigned a slot, and each entity instance is assigned a row.  A column contains the attribute
+ * value holders for its slot, in row order, and a parallel array of numeric values parsed once when the attribute
+ * is stored.  A non-numeric value is stored as NaN in the numeric array.
+ *
+ * The slots are assigned from the entity type's attribute names when the table is created.  Other attributes
+ * (such as ones copied in by relationships) get a new slot the first time they are stored.  Code that evaluates
+ * the same attribute repeatedly should resolve the slot once and use the slot-based accessors.
+ *
+ * Rows and attribute values are added during the load, and the table is read-only afterward.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class AttributeTable {
+
+    // FIELDS
+    /** name of the entity type */
+    private final String typeName;
+    /** map of attribute names to slot numbers */
+    private final Map<String, Integer> slotMap;
+    /** array of columns, by slot */
+    private Column[] columns;
+    /** number of rows assigned */
+    private int rowCount;
+    /** initial capacity of a column */
+    private static final int INITIAL_ROWS = 16;
+
+    /**
+     * This object contains the values for a single attribute.
+     */
+    private static class Column {
+
+        /** name of the attribute */
+        private final String name;
+        /** attribute value holders, by row; missing values are NULL */
+        private AttributeValue[] values;
+        /** numeric values, by row; missing or non-numeric values are NaN */
+        private double[] numbers;
+
+        /**
+         * Create an empty column.
+         *
+         * @param name		name of the attribute
+         * @param capacity	initial number of rows
+         */
+        protected Column(String name, int capacity) {
+            this.name = name;
+            this.values = new AttributeValue[capacity];
+            this.numbers = new double[capacity];
+            Arrays.fill(this.numbers, Double.NaN);
+        }
+
+        /**
+         * Insure this column has room for the specified row.
+         *
+         * @param row		row index to store
+         */
+        protected void ensureRow(int row) {
+            final int oldLen = this.values.length;
+            if (row >= oldLen) {
+                int newLen = Math.max(oldLen * 2, row + 1);
+                this.values = Arrays.copyOf(this.values, newLen);
+                this.numbers = Arrays.copyOf(this.numbers, newLen);
+                Arrays.fill(this.numbers, oldLen, newLen, Double.NaN);
+            }
+        }
+
+    }
+
+    /**
+     * Create an attribute table for an entity type.
+     *
+     * @param typeName		name of the entity type
+     * @param attrNames		names of the attributes known in advance
+     */
+    public AttributeTable(String typeName, Collection<String> attrNames) {
+        this.typeName = typeName;
+        this.slotMap = new ConcurrentHashMap<>();
+        this.columns = new Column[0];
+        this.rowCount = 0;
+        for (String attrName : attrNames)
+            this.findSlot(attrName);
+    }
+
+    /**
+     * @return the name of the entity type
+     */
+    public String getTypeName() {
+        return this.typeName;
+    }
+
+    /**
+     * Assign a row for a new entity instance.
+     *
+     * @return the row index of the new instance
+     */
+    protected synchronized int addRow() {
+        return this.rowCount++;
+    }
+
+    /**
+     * @return the number of rows in this table
+     */
+    public synchronized int size() {
+        return this.rowCount;
+    }
+
+    /**
+     * @return the slot for an attribute, or -1 if the attribute is not in this table
+     *
+     * @param attrName	name of the attribute
+     */
+    public int getSlot(String attrName) {
+        Integer retVal = this.slotMap.get(attrName);
+        return (retVal == null ? -1 : retVal);
+    }
+
+    /**
+     * Find the slot for an attribute, creating it if necessary.
+     *
+     * @param attrName	name of the attribute
+     *
+     * @return the slot number for the attribute
+     */
+    protected synchronized int findSlot(String attrName) {
+        Integer retVal = this.slotMap.get(attrName);
+        if (retVal == null) {
+            retVal = this.columns.length;
+            Column[] newColumns = Arrays.copyOf(this.columns, retVal + 1);
+            newColumns[retVal] = new Column(attrName, Math.max(this.rowCount, INITIAL_ROWS));
+            this.columns = newColumns;
+            this.slotMap.put(attrName, retVal);
+        }
+        return retVal;
+    }
+
+    /**
+     * Store an attribute value.  If the value is numeric, it is parsed here.
+     *
+     * @param row		row index of the entity instance
+     * @param slot		slot number of the attribute
+     * @param value		attribute value holder to store
+     */
+    protected synchronized void set(int row, int slot, AttributeValue value) {
+        Column column = this.columns[slot];
+        column.ensureRow(row);
+        column.values[row] = value;
+        column.numbers[row] = (value.isNumeric() ? value.getDouble() : Double.NaN);
+    }
+
+    /**
+     * @return the value of an attribute, or the empty value if it is not present
+     *
+     * @param row		row index of the entity instance
+     * @param slot		slot number of the attribute, or -1 if it is not in this table
+     */
+    public AttributeValue get(int row, int slot) {
+        AttributeValue retVal = null;
+        if (slot >= 0) {
+            AttributeValue[] values = this.columns[slot].values;
+            if (row < values.length)
+                retVal = values[row];
+        }
+        return (retVal == null ? AttributeValue.NULL : retVal);
+    }
+
+    /**
+     * @return the numeric value of an attribute, or NaN if it is missing or not numeric
+     *
+     * @param row		row index of the entity instance
+     * @param slot		slot number of the attribute, or -1 if it is not in this table
+     */
+    public double getDouble(int row, int slot) {
+        double retVal = Double.NaN;
+        if (slot >= 0) {
+            double[] numbers = this.columns[slot].numbers;
+            if (row < numbers.length)
+                retVal = numbers[row];
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the attribute name/value pairs present in a row, in slot order
+     *
+     * @param row		row index of the entity instance
+     */
+    protected List<Map.Entry<String, AttributeValue>> getEntries(int row) {
+        List<Map.Entry<String, AttributeValue>> retVal = new ArrayList<>(this.columns.length);
+        for (Column column : this.columns) {
+            if (row < column.values.length && column.values[row] != null)
+                retVal.add(new AbstractMap.SimpleImmutableEntry<>(column.name, column.values[row]));
+        }
+        return retVal;
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ *
+ */
+package org.theseed.memdb.query;
+
+import java.util.List;
+
+import org.theseed.io.Attribute;
+import org.theseed.io.FieldInputStream;
+import org.theseed.memdb.InputRecord;
+
+/**
+ * This object holds the value of an attribute in a query-generation entity instance.  Normally, the value
+ * is an attribute holder built from an input record, and all requests are passed through to it.  A value
+ * restored from a database snapshot has no input record, so it is stored in its interpreted form:  the list
+ * of strings and the numeric value (if any).
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class AttributeValue {
+
+    // FIELDS
+    /** attribute holder from the input record, or NULL if this value was restored from a snapshot */
+    private final Attribute source;
+    /** list form of a restored value */
+    private final List<String> list;
+    /** numeric form of a restored value */
+    private final double number;
+    /** TRUE if a restored value is numeric */
+    private final boolean numeric;
+    /** default value (always false and empty) */
+    public static final AttributeValue NULL = new AttributeValue(new Attribute());
+
+    /**
+     * Create an attribute value from an attribute holder.
+     *
+     * @param attr		attribute holder built from an input record
+     */
+    public AttributeValue(Attribute attr) {
+        this.source = attr;
+        this.list = null;
+        this.number = Double.NaN;
+        this.numeric = false;
+    }
+
+    /**
+     * Create an attribute value from its interpreted form.
+     *
+     * @param list		list of strings in the value
+     * @param number	numeric form of the value
+     * @param numeric	TRUE if the value has a numeric form, else FALSE
+     */
+    public AttributeValue(List<String> list, double number, boolean numeric) {
+        this.source = null;
+        this.list = list;
+        this.number = number;
+        this.numeric = numeric;
+    }
+
+    /**
+     * Create an attribute value from a field in an input record.  If the record came from a field input stream,
+     * the stream's attribute holder is used; otherwise, the value is interpreted here.  A value is numeric if it
+     * consists of a single string that parses as a number.
+     *
+     * @param record	input record containing the value
+     * @param idx		column index of the value
+     *
+     * @return the attribute value for the field
+     */
+    public static AttributeValue create(InputRecord record, int idx) {
+        AttributeValue retVal;
+        FieldInputStream.Record streamRecord = record.getRecord();
+        if (streamRecord != null)
+            retVal = new AttributeValue(new Attribute(streamRecord, idx));
+        else {
+            List<String> list = record.getList(idx);
+            double number = Double.NaN;
+            boolean numeric = false;
+            if (list.size() == 1) {
+                try {
+                    number = Double.parseDouble(list.get(0));
+                    numeric = true;
+                } catch (NumberFormatException e) {
+                    // Here the value is not numeric.
+                }
+            }
+            retVal = new AttributeValue(list, number, numeric);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the value as a list of strings
+     */
+    public List<String> getList() {
+        return (this.source != null ? this.source.getList() : this.list);
+    }
+
+    /**
+     * @return the value as a number
+     *
+     * @throws NumberFormatException if the value is not numeric
+     */
+    public double getDouble() {
+        double retVal;
+        if (this.source != null)
+            retVal = this.source.getDouble();
+        else if (! this.numeric)
+            throw new NumberFormatException("Attribute value " + this.list + " is not numeric.");
+        else
+            retVal = this.number;
+        return retVal;
+    }
+
+    /**
+     * @return TRUE if the value has a numeric form (that is, if getDouble will not fail)
+     */
+    public boolean isNumeric() {
+        boolean retVal;
+        if (this.source == null)
+            retVal = this.numeric;
+        else {
+            try {
+                this.source.getDouble();
+                retVal = true;
+            } catch (RuntimeException e) {
+                retVal = false;
+            }
+        }
+        return retVal;
+    }
+
+}
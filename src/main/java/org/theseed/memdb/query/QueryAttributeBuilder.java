@@ -6,14 +6,16 @@ package org.theseed.memdb.query;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 
-import org.theseed.io.Attribute;
-import org.theseed.io.FieldInputStream;
 import org.theseed.memdb.AttributeBuilder;
 import org.theseed.memdb.DbInstance;
 import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.InputRecord;
+import org.theseed.memdb.RecordSource;
 
 /**
- * The query attribute builder memorizes the column number and name of an attribute.
+ * The query attribute builder memorizes the column number and name of an attribute.  Attribute values are
+ * shared through the database's symbol table, so that entity instances with the same value for an attribute
+ * (such as a genome's taxonomy or a feature's role) point to a single attribute object.
  *
  * @author Bruce Parrello
  *
@@ -25,15 +27,19 @@ public class QueryAttributeBuilder extends AttributeBuilder {
     private String attrName;
     /** attribute column index */
     private int attrColIdx;
+    /** symbol table category for this attribute */
+    private String category;
 
     /**
      * Create a new query attribute builder.
      *
      * @param stream	input stream containing the entity instance records
+     * @param typeName	name of the entity type containing the attribute
      * @param colName	name of the attribute (which is also the column name)
      */
-    public QueryAttributeBuilder(FieldInputStream stream, String colName) {
+    public QueryAttributeBuilder(RecordSource stream, String typeName, String colName) {
         this.attrName = colName;
+        this.category = typeName + "." + colName;
         try {
             this.attrColIdx = stream.findField(colName);
         } catch (IOException e) {
@@ -43,12 +49,14 @@ public class QueryAttributeBuilder extends AttributeBuilder {
     }
 
     @Override
-    protected void processAttribute(DbInstance db, FieldInputStream.Record record, EntityInstance instance) {
+    protected int processAttribute(DbInstance db, InputRecord record, EntityInstance instance) {
         QueryEntityInstance qInstance = (QueryEntityInstance) instance;
-        // Create the attribute holder.
-        Attribute attr = new Attribute(record, attrColIdx);
+        // Find or create the attribute holder.
+        AttributeValue attr = db.getSymbols().internValue(this.category, record.get(this.attrColIdx),
+                x -> AttributeValue.create(record, this.attrColIdx));
         // Store it in the entity instance.
         qInstance.addAttribute(this.attrName, attr);
+        return attr.getList().size();
     }
 
 }
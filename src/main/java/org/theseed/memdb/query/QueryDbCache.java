@@ -0,0 +1,388 @@
+/**
+ *
+ */
+package org.theseed.memdb.query;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.io.LineReader;
+
+/**
+ * The query database cache supports incremental loading of a query-generation database.  The cache directory
+ * contains a snapshot fragment for each input directory, holding the entity instances, attributes, and connections
+ * built from that directory alone, plus a manifest listing the size, modification time, and content hash of each
+ * input file that went into each fragment.
+ *
+ * When the database is loaded, an input directory whose files all match the manifest is not parsed; its fragment
+ * is used instead.  A file whose modification time has changed but whose size and hash are the same is treated as
+ * unchanged.  Directories that are new or changed are re-parsed and their fragments replaced.  The changed
+ * directories are parsed in a single pass, so they are parsed concurrently if the database definition specifies
+ * more than one load thread.  Fragments for directories that are no longer being loaded are deleted, which retracts
+ * everything that came from them.  Finally, the fragments are merged in input directory order, which produces the
+ * same database as a full load.
+ *
+ * The manifest also contains a hash of the database definition.  If the definition changes, all the fragments are
+ * rebuilt.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class QueryDbCache {
+
+    // FIELDS
+    /** logging facility */
+    private static final Logger log = LoggerFactory.getLogger(QueryDbCache.class);
+    /** database definition */
+    private final QueryDbDefinition dbd;
+    /** hash of the database definition file */
+    private final String dbdHash;
+    /** cache directory */
+    private final File cacheDir;
+    /** number of directories loaded from fragments in the last load */
+    private int reuseCount;
+    /** number of directories parsed in the last load */
+    private int parseCount;
+    /** name of the manifest file */
+    private static final String MANIFEST_NAME = "manifest.tbl";
+    /** header marker for the definition hash line in the manifest */
+    private static final String DBD_MARKER = "#dbd";
+    /** manifest column headers */
+    private static final String MANIFEST_HEADER = "dir_name\tfragment\tfile_name\tsize\tmodified\thash";
+    /** buffer size for computing file hashes */
+    private static final int HASH_BUFFER_SIZE = 65536;
+
+    /**
+     * This object describes the state of a single input file when it was loaded.
+     */
+    private static class FileStamp {
+
+        /** file name */
+        private final String name;
+        /** file size in bytes */
+        private final long size;
+        /** last-modified time */
+        private final long modified;
+        /** content hash */
+        private final String hash;
+
+        /**
+         * Create a file stamp for the current state of a file.
+         *
+         * @param file		file of interest
+         *
+         * @throws IOException
+         */
+        protected FileStamp(File file) throws IOException {
+            this(file.getName(), file.length(), file.lastModified(), hashFile(file));
+        }
+
+        /**
+         * Create a file stamp from its components.
+         *
+         * @param name		file name
+         * @param size		file size in bytes
+         * @param modified	last-modified time
+         * @param hash		content hash
+         */
+        protected FileStamp(String name, long size, long modified, String hash) {
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        /**
+         * Determine whether a file is unchanged since this stamp was taken.  The hash is only computed if the
+         * size is the same and the modification time is different.
+         *
+         * @param file		file to check
+         *
+         * @return a stamp for the file if it is unchanged, else NULL
+         *
+         * @throws IOException
+         */
+        protected FileStamp check(File file) throws IOException {
+            FileStamp retVal = null;
+            if (file.getName().equals(this.name) && file.length() == this.size) {
+                long fileModified = file.lastModified();
+                if (fileModified == this.modified)
+                    retVal = this;
+                else if (hashFile(file).equals(this.hash))
+                    retVal = new FileStamp(this.name, this.size, fileModified, this.hash);
+            }
+            return retVal;
+        }
+
+    }
+
+    /**
+     * This object describes the state of an input directory when its fragment was built.
+     */
+    private static class DirStamp {
+
+        /** name of the fragment file in the cache directory */
+        private final String fragment;
+        /** stamps for the input files, in load order */
+        private final List<FileStamp> files;
+
+        /**
+         * Create an empty directory stamp.
+         *
+         * @param fragment	name of the fragment file
+         */
+        protected DirStamp(String fragment) {
+            this.fragment = fragment;
+            this.files = new ArrayList<>();
+        }
+
+        /**
+         * Determine whether a directory is unchanged since this stamp was taken.
+         *
+         * @param inFiles	current list of input files for the directory
+         *
+         * @return a stamp for the directory if it is unchanged, else NULL
+         *
+         * @throws IOException
+         */
+        protected DirStamp check(List<File> inFiles) throws IOException {
+            DirStamp retVal = null;
+            if (inFiles.size() == this.files.size()) {
+                retVal = new DirStamp(this.fragment);
+                final int n = inFiles.size();
+                for (int i = 0; retVal != null && i < n; i++) {
+                    FileStamp stamp = this.files.get(i).check(inFiles.get(i));
+                    if (stamp == null)
+                        retVal = null;
+                    else
+                        retVal.files.add(stamp);
+                }
+            }
+            return retVal;
+        }
+
+    }
+
+    /**
+     * Create a query database cache.
+     *
+     * @param dbdFile	database definition file
+     * @param dbd		database definition
+     * @param cacheDir	cache directory
+     *
+     * @throws IOException
+     */
+    public QueryDbCache(File dbdFile, QueryDbDefinition dbd, File cacheDir) throws IOException {
+        this.dbd = dbd;
+        this.dbdHash = hashFile(dbdFile);
+        this.cacheDir = cacheDir;
+        if (! cacheDir.isDirectory()) {
+            log.info("Creating database cache directory {}.", cacheDir);
+            if (! cacheDir.mkdirs())
+                throw new IOException("Could not create database cache directory " + cacheDir + ".");
+        }
+    }
+
+    /**
+     * Load the database from a list of input directories, using cached fragments for directories that
+     * have not changed.
+     *
+     * @param inDirs	list of input directories
+     *
+     * @return the loaded database instance
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    public QueryDbInstance load(File... inDirs) throws IOException, ParseFailureException {
+        long start = System.currentTimeMillis();
+        Map<String, DirStamp> oldManifest = this.readManifest();
+        Map<String, DirStamp> newManifest = new LinkedHashMap<>(inDirs.length * 4 / 3 + 1);
+        this.reuseCount = 0;
+        this.parseCount = 0;
+        // Find the directories that must be parsed.  Each gets a new, empty stamp in the manifest.
+        List<File> changedDirs = new ArrayList<>();
+        for (File inDir : inDirs) {
+            String dirName = inDir.getAbsolutePath();
+            DirStamp oldStamp = oldManifest.get(dirName);
+            DirStamp stamp = null;
+            if (oldStamp != null && new File(this.cacheDir, oldStamp.fragment).exists())
+                stamp = oldStamp.check(this.dbd.getEntityFiles(inDir));
+            if (stamp != null)
+                this.reuseCount++;
+            else {
+                log.info("Input directory {} must be parsed.", inDir);
+                stamp = new DirStamp(fragmentName(dirName));
+                changedDirs.add(inDir);
+            }
+            newManifest.put(dirName, stamp);
+        }
+        // Parse the changed directories in a single pass, which uses all the load threads, and build their
+        // fragments.
+        if (! changedDirs.isEmpty()) {
+            this.dbd.readFragments(changedDirs.toArray(new File[changedDirs.size()]), (inDir, fragment) -> {
+                DirStamp stamp = newManifest.get(inDir.getAbsolutePath());
+                QueryDbSnapshot.save((QueryDbInstance) fragment, new File(this.cacheDir, stamp.fragment));
+                for (File inFile : this.dbd.getEntityFiles(inDir))
+                    stamp.files.add(new FileStamp(inFile));
+                this.parseCount++;
+            });
+        }
+        // Delete the fragments for directories no longer in the load.
+        int deleteCount = 0;
+        for (Map.Entry<String, DirStamp> oldEntry : oldManifest.entrySet()) {
+            if (! newManifest.containsKey(oldEntry.getKey())) {
+                File oldFile = new File(this.cacheDir, oldEntry.getValue().fragment);
+                if (oldFile.exists() && ! oldFile.delete())
+                    log.warn("Could not delete obsolete fragment {}.", oldFile);
+                deleteCount++;
+            }
+        }
+        this.writeManifest(newManifest);
+        log.info("{} directories loaded from cache, {} parsed, {} retracted.", this.reuseCount, this.parseCount, deleteCount);
+        // Merge the fragments.
+        QueryDbInstance retVal = new QueryDbInstance(this.dbd.getEntityNameList());
+        for (DirStamp stamp : newManifest.values())
+            QueryDbSnapshot.loadInto(retVal, this.dbd, new File(this.cacheDir, stamp.fragment));
+        retVal.freeze();
+        log.info("{} entity instances loaded in {} ms.", retVal.getEntityCount(), System.currentTimeMillis() - start);
+        return retVal;
+    }
+
+    /**
+     * Read the manifest from the cache directory.  If there is no manifest or it was built using a different
+     * database definition, an empty manifest is returned.
+     *
+     * @return a map from input directory names to directory stamps
+     *
+     * @throws IOException
+     */
+    private Map<String, DirStamp> readManifest() throws IOException {
+        Map<String, DirStamp> retVal = new LinkedHashMap<>();
+        File manifestFile = new File(this.cacheDir, MANIFEST_NAME);
+        if (! manifestFile.exists())
+            log.info("No manifest found in {}.  All directories will be parsed.", this.cacheDir);
+        else try (LineReader inStream = new LineReader(manifestFile)) {
+            String dbdLine = (inStream.hasNext() ? inStream.next() : "");
+            if (! dbdLine.equals(DBD_MARKER + "\t" + this.dbdHash))
+                log.info("Database definition has changed.  All directories will be parsed.");
+            else {
+                // Skip the header line.
+                if (inStream.hasNext())
+                    inStream.next();
+                while (inStream.hasNext()) {
+                    String line = inStream.next();
+                    String[] fields = line.split("\t", -1);
+                    if (fields.length != 6)
+                        throw new IOException("Invalid line in database cache manifest " + manifestFile + ".");
+                    DirStamp stamp = retVal.computeIfAbsent(fields[0], x -> new DirStamp(fields[1]));
+                    if (! fields[2].isEmpty()) {
+                        try {
+                            stamp.files.add(new FileStamp(fields[2], Long.parseLong(fields[3]), Long.parseLong(fields[4]),
+                                    fields[5]));
+                        } catch (NumberFormatException e) {
+                            throw new IOException("Invalid number in database cache manifest " + manifestFile + ".");
+                        }
+                    }
+                }
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Write the manifest to the cache directory.
+     *
+     * @param manifest	map from input directory names to directory stamps
+     *
+     * @throws IOException
+     */
+    private void writeManifest(Map<String, DirStamp> manifest) throws IOException {
+        File manifestFile = new File(this.cacheDir, MANIFEST_NAME);
+        try (PrintWriter writer = new PrintWriter(manifestFile, StandardCharsets.UTF_8)) {
+            writer.println(DBD_MARKER + "\t" + this.dbdHash);
+            writer.println(MANIFEST_HEADER);
+            for (Map.Entry<String, DirStamp> entry : manifest.entrySet()) {
+                String dirName = entry.getKey();
+                DirStamp stamp = entry.getValue();
+                // A directory with no input files still needs a line, so its fragment is remembered.
+                if (stamp.files.isEmpty())
+                    writer.println(dirName + "\t" + stamp.fragment + "\t\t0\t0\t");
+                for (FileStamp file : stamp.files)
+                    writer.println(dirName + "\t" + stamp.fragment + "\t" + file.name + "\t" + file.size + "\t"
+                            + file.modified + "\t" + file.hash);
+            }
+        }
+    }
+
+    /**
+     * @return the number of directories loaded from cached fragments in the last load
+     */
+    public int getReuseCount() {
+        return this.reuseCount;
+    }
+
+    /**
+     * @return the number of directories parsed in the last load
+     */
+    public int getParseCount() {
+        return this.parseCount;
+    }
+
+    /**
+     * @return the name of the fragment file for an input directory
+     *
+     * @param dirName	absolute name of the input directory
+     */
+    private static String fragmentName(String dirName) {
+        byte[] digest = newDigest().digest(dirName.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest, 0, 8) + ".ser";
+    }
+
+    /**
+     * @return the content hash of a file, as a hex string
+     *
+     * @param file		file to hash
+     *
+     * @throws IOException
+     */
+    protected static String hashFile(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        try (InputStream inStream = new FileInputStream(file)) {
+            int n = inStream.read(buffer);
+            while (n >= 0) {
+                digest.update(buffer, 0, n);
+                n = inStream.read(buffer);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return a new message digest for computing hashes
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required in every Java implementation.
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -4,21 +4,105 @@
 package org.theseed.memdb.query;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.theseed.memdb.DbInstance;
 import org.theseed.memdb.EntityInstance;
 import org.theseed.memdb.EntityType;
+import org.theseed.memdb.RelationshipInstance;
 
 /**
- * The query-generation database contains no private data at the current time, just
- * entities full of populated attributes and connections.
+ * The query-generation database contains entities full of populated attributes and connections.
+ * Once the database is frozen, it also contains fan-out statistics for each pair of connected entity
+ * types.  These are used to plan query traversals.  Finally, indexes on individual attributes can be
+ * built on request, to find the instances satisfying a query condition without a full scan.
  *
  * @author Bruce Parrello
  *
  */
 public class QueryDbInstance extends DbInstance {
 
+    // FIELDS
+    /** logging facility */
+    private static final Logger log = LoggerFactory.getLogger(QueryDbInstance.class);
+    /** fan-out statistics, keyed by source and target type names */
+    private final Map<String, FanOut> fanOuts;
+    /** value indexes, keyed by entity type and attribute names */
+    private final Map<String, ValueIndex> valueIndexes;
+    /** range indexes, keyed by entity type and attribute names */
+    private final Map<String, RangeIndex> rangeIndexes;
+    /** attribute tables, keyed by entity type name */
+    private final Map<String, AttributeTable> attributeTables;
+
+    /**
+     * This object contains the fan-out statistics from one entity type to another.  The fan-out of
+     * an instance is the number of instances of the target type connected to it.
+     */
+    public static class FanOut {
+
+        /** number of source instances */
+        private final int sourceCount;
+        /** number of source instances with at least one connection */
+        private int connectedCount;
+        /** total number of connections */
+        private long total;
+        /** minimum fan-out for a connected instance */
+        private int minConnected;
+
+        /**
+         * Create a blank fan-out statistics object.
+         *
+         * @param sourceCount	number of source instances
+         */
+        protected FanOut(int sourceCount) {
+            this.sourceCount = sourceCount;
+            this.connectedCount = 0;
+            this.total = 0;
+            this.minConnected = Integer.MAX_VALUE;
+        }
+
+        /**
+         * Record the fan-out of a connected source instance.
+         *
+         * @param n		number of target instances connected to the source instance
+         */
+        protected void count(int n) {
+            this.connectedCount++;
+            this.total += n;
+            if (n < this.minConnected)
+                this.minConnected = n;
+        }
+
+        /**
+         * @return the minimum fan-out over all the source instances
+         */
+        public int getMin() {
+            int retVal;
+            if (this.connectedCount == 0 || this.connectedCount < this.sourceCount)
+                retVal = 0;
+            else
+                retVal = this.minConnected;
+            return retVal;
+        }
+
+        /**
+         * @return the mean fan-out over all the source instances
+         */
+        public double getMean() {
+            double retVal = 0.0;
+            if (this.sourceCount > 0)
+                retVal = (double) this.total / this.sourceCount;
+            return retVal;
+        }
+
+    }
+
     /**
      * Construct a query-generation database instance.
      *
@@ -26,6 +110,10 @@ public class QueryDbInstance extends DbInstance {
      */
     public QueryDbInstance(List<String> types) {
         super(types);
+        this.fanOuts = new HashMap<>();
+        this.valueIndexes = new ConcurrentHashMap<>();
+        this.rangeIndexes = new ConcurrentHashMap<>();
+        this.attributeTables = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -38,9 +126,133 @@ public class QueryDbInstance extends DbInstance {
         return new QueryEntityInstance(entityType, entityId, this);
     }
 
+    /**
+     * Get the attribute table for an entity type, creating it if necessary.  A new table has slots for all
+     * the attributes declared in the entity type's definition.
+     *
+     * @param entityType	entity type of interest
+     *
+     * @return the attribute table for the entity type
+     */
+    protected AttributeTable getAttributeTable(EntityType entityType) {
+        return this.attributeTables.computeIfAbsent(entityType.getName(), x -> new AttributeTable(x,
+                (entityType instanceof QueryEntityType ? ((QueryEntityType) entityType).getAttributeNames()
+                        : Collections.emptyList())));
+    }
+
     @Override
     protected void postProcessEntities(Collection<EntityType> entityTypes) {
-        // No post-processing is needed.
+        // The query database is read-only once loaded, so we freeze the entity instances to speed up
+        // the path traversals.
+        log.info("Freezing {} entity instances.", this.getEntityCount());
+        this.freeze();
+    }
+
+    @Override
+    public void freeze() {
+        super.freeze();
+        this.computeFanOuts();
+    }
+
+    /**
+     * Compute the fan-out statistics for every pair of connected entity types.  This is done in a single pass
+     * through the frozen connection lists, in which the connections for each target type are contiguous.
+     */
+    private void computeFanOuts() {
+        long start = System.currentTimeMillis();
+        this.fanOuts.clear();
+        for (String sourceType : this.getTypeNames()) {
+            Collection<EntityInstance> instances = this.getAllEntities(sourceType);
+            final int sourceCount = instances.size();
+            for (EntityInstance instance : instances) {
+                List<RelationshipInstance> rels = instance.getRelationships();
+                final int n = rels.size();
+                int i = 0;
+                while (i < n) {
+                    // Count the connections to this target type.
+                    String targetType = rels.get(i).getTargetType();
+                    int j = i + 1;
+                    while (j < n && targetType.equals(rels.get(j).getTargetType())) j++;
+                    FanOut fanOut = this.fanOuts.computeIfAbsent(sourceType + "\t" + targetType,
+                            x -> new FanOut(sourceCount));
+                    fanOut.count(j - i);
+                    i = j;
+                }
+            }
+        }
+        log.info("{} fan-out statistics computed in {} ms.", this.fanOuts.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return the fan-out statistics from one entity type to another
+     *
+     * @param sourceType	name of the source entity type
+     * @param targetType	name of the target entity type
+     */
+    public FanOut getFanOut(String sourceType, String targetType) {
+        FanOut retVal = this.fanOuts.get(sourceType + "\t" + targetType);
+        if (retVal == null)
+            retVal = new FanOut(this.getTypeCount(sourceType));
+        return retVal;
+    }
+
+    /**
+     * Compute the minimum fan-out from one entity type to another, that is, the smallest number of
+     * target-type instances connected to a single source-type instance.
+     *
+     * @param sourceType	name of the source entity type
+     * @param targetType	name of the target entity type
+     *
+     * @return the minimum number of connected target instances over all the source instances
+     */
+    public int getMinFanOut(String sourceType, String targetType) {
+        return this.getFanOut(sourceType, targetType).getMin();
+    }
+
+    /**
+     * Get the value index for an attribute of an entity type.  The index is built the first time it is requested,
+     * from the instances in ID order, so each value's instance list is in ID order.
+     *
+     * @param typeName		name of the entity type
+     * @param attrName		name of the attribute
+     *
+     * @return a case-insensitive index of the entity instances by attribute value
+     */
+    public ValueIndex getValueIndex(String typeName, String attrName) {
+        return this.valueIndexes.computeIfAbsent(typeName + "." + attrName, x -> {
+            ValueIndex retVal = new ValueIndex(this.getSortedEntities(typeName), attrName);
+            log.info("Value index built for {} with {} distinct values.", x, retVal.size());
+            return retVal;
+        });
+    }
+
+    /**
+     * Get the range index for an attribute of an entity type.  The index is built the first time it is requested,
+     * from the instances in ID order, so instances with the same value are in ID order.
+     *
+     * @param typeName		name of the entity type
+     * @param attrName		name of the attribute
+     *
+     * @return an index of the entity instances sorted by numeric attribute value
+     */
+    public RangeIndex getRangeIndex(String typeName, String attrName) {
+        return this.rangeIndexes.computeIfAbsent(typeName + "." + attrName, x -> {
+            RangeIndex retVal = new RangeIndex(this.getSortedEntities(typeName), attrName);
+            log.info("Range index built for {} with {} numeric values.", x, retVal.size());
+            return retVal;
+        });
+    }
+
+    /**
+     * Record the counts for entity and relationship instances that were loaded directly rather than
+     * through the entity builders (for example, from a snapshot).
+     *
+     * @param entities		number of entity instances loaded
+     * @param rels			number of relationship instances loaded
+     */
+    protected void addLoadCounts(int entities, int rels) {
+        this.addEntityCount(entities);
+        this.addRelCount(rels);
     }
 
 }
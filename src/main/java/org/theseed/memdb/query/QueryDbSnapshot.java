@@ -0,0 +1,546 @@
+/**
+ *
+ */
+package org.theseed.memdb.query;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.EntityType;
+import org.theseed.memdb.RelationshipInstance;
+
+/**
+ * This class saves a loaded query-generation database to a compact binary snapshot file and restores it.  Loading
+ * a snapshot is much faster than parsing the original dump, since there is no record parsing and every string is
+ * only decoded once.
+ *
+ * The snapshot is dictionary-encoded.  All the strings (IDs, attribute names, and value list elements) are stored
+ * once in a string pool, and all the distinct attribute values are stored once in a value pool.  Integers are
+ * stored as variable-length quantities, seven bits per byte with the high bit indicating a continuation.  The file
+ * layout is
+ *
+ *  1.	the magic number and the format version
+ *  2.	the list of entity type names, in type-index order
+ *  3.	the string pool
+ *  4.	the value pool; each value is a list of string indices followed by a flag byte, which is 1 if the value
+ *		has a numeric form (followed by the eight-byte number) and 0 otherwise
+ *  5.	for each entity type, the number of instances, followed by each instance's ID index and its list of attribute
+ *		name and value indices
+ *  6.	for each entity type, for each instance in the same order, the list of connections; each connection is
+ *		the type index and instance position of the target
+ *
+ * The snapshot is read through a series of memory-mapped windows, each at most a gigabyte, so there is no limit on
+ * the file size.  The mapping is only a fast way to read the file sequentially:  the whole snapshot is decoded into
+ * ordinary heap objects, so the database takes the same memory as one loaded from the dump.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class QueryDbSnapshot {
+
+    // FIELDS
+    /** logging facility */
+    private static final Logger log = LoggerFactory.getLogger(QueryDbSnapshot.class);
+    /** magic number identifying a snapshot file ("QDBS") */
+    private static final int MAGIC = 0x51444253;
+    /** current format version */
+    private static final int VERSION = 1;
+    /** maximum number of bytes mapped at one time */
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    /**
+     * This object reads a snapshot file sequentially through memory-mapped windows.  When the current window
+     * does not have enough bytes left for the next item, the next window is mapped starting at the item.
+     */
+    private static class SnapshotInput {
+
+        /** channel for the snapshot file */
+        private final FileChannel channel;
+        /** snapshot file name (for error messages) */
+        private final File inFile;
+        /** total size of the file */
+        private final long size;
+        /** maximum window size */
+        private final long windowSize;
+        /** file position of the current window */
+        private long windowStart;
+        /** buffer for the current window */
+        private MappedByteBuffer buffer;
+
+        /**
+         * Open a snapshot file for sequential input.
+         *
+         * @param channel		channel for the snapshot file
+         * @param inFile		snapshot file name
+         * @param windowSize	maximum number of bytes to map at one time
+         *
+         * @throws IOException
+         */
+        protected SnapshotInput(FileChannel channel, File inFile, long windowSize) throws IOException {
+            this.channel = channel;
+            this.inFile = inFile;
+            this.size = channel.size();
+            this.windowSize = windowSize;
+            this.map(0);
+        }
+
+        /**
+         * Map the window beginning at the specified file position.
+         *
+         * @param start		file position for the new window
+         *
+         * @throws IOException
+         */
+        private void map(long start) throws IOException {
+            this.windowStart = start;
+            long len = Math.min(this.windowSize, this.size - start);
+            this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, start, len);
+        }
+
+        /**
+         * Insure the current window contains the specified number of bytes, moving to a new window if necessary.
+         *
+         * @param n		number of bytes required (no more than the window size)
+         *
+         * @throws IOException
+         */
+        private void require(int n) throws IOException {
+            if (this.buffer.remaining() < n) {
+                long position = this.windowStart + this.buffer.position();
+                if (this.size - position < n)
+                    throw new IOException("Snapshot file " + this.inFile + " is truncated.");
+                this.map(position);
+            }
+        }
+
+        /**
+         * @return the next byte
+         *
+         * @throws IOException
+         */
+        protected byte get() throws IOException {
+            this.require(1);
+            return this.buffer.get();
+        }
+
+        /**
+         * @return the next four-byte integer
+         *
+         * @throws IOException
+         */
+        protected int getInt() throws IOException {
+            this.require(4);
+            return this.buffer.getInt();
+        }
+
+        /**
+         * @return the next eight-byte floating-point number
+         *
+         * @throws IOException
+         */
+        protected double getDouble() throws IOException {
+            this.require(8);
+            return this.buffer.getDouble();
+        }
+
+        /**
+         * Fill a byte array from the input.  The array can span several windows.
+         *
+         * @param bytes		array to fill
+         *
+         * @throws IOException
+         */
+        protected void get(byte[] bytes) throws IOException {
+            int done = 0;
+            while (done < bytes.length) {
+                this.require(1);
+                int n = Math.min(this.buffer.remaining(), bytes.length - done);
+                this.buffer.get(bytes, done, n);
+                done += n;
+            }
+        }
+
+    }
+
+    /**
+     * This object tracks the string and value pools while a snapshot is being written.
+     */
+    private static class Pools {
+
+        /** map of strings to pool indices */
+        private final Map<String, Integer> stringIdx;
+        /** list of strings in pool order */
+        private final List<String> strings;
+        /** map of attribute values to pool indices */
+        private final Map<AttributeValue, Integer> valueIdx;
+        /** list of attribute values in pool order */
+        private final List<AttributeValue> values;
+
+        /**
+         * Create empty pools.
+         */
+        protected Pools() {
+            this.stringIdx = new HashMap<>();
+            this.strings = new ArrayList<>();
+            // Identical values are shared by the symbol table, so we pool values by identity.
+            this.valueIdx = new IdentityHashMap<>();
+            this.values = new ArrayList<>();
+        }
+
+        /**
+         * @return the pool index for a string, adding it if necessary
+         *
+         * @param string	string of interest
+         */
+        protected int addString(String string) {
+            Integer retVal = this.stringIdx.get(string);
+            if (retVal == null) {
+                retVal = this.strings.size();
+                this.stringIdx.put(string, retVal);
+                this.strings.add(string);
+            }
+            return retVal;
+        }
+
+        /**
+         * @return the pool index for an attribute value, adding it if necessary
+         *
+         * @param value		attribute value of interest
+         */
+        protected int addValue(AttributeValue value) {
+            Integer retVal = this.valueIdx.get(value);
+            if (retVal == null) {
+                retVal = this.values.size();
+                this.valueIdx.put(value, retVal);
+                this.values.add(value);
+                for (String element : value.getList())
+                    this.addString(element);
+            }
+            return retVal;
+        }
+
+        /**
+         * @return the pool index of a string already in the pool
+         *
+         * @param string	string of interest
+         */
+        protected int getString(String string) {
+            return this.stringIdx.get(string);
+        }
+
+        /**
+         * @return the pool index of an attribute value already in the pool
+         *
+         * @param value		attribute value of interest
+         */
+        protected int getValue(AttributeValue value) {
+            return this.valueIdx.get(value);
+        }
+
+    }
+
+    /**
+     * Save a query-generation database to a snapshot file.
+     *
+     * @param db		database to save
+     * @param outFile	output snapshot file
+     *
+     * @throws IOException
+     */
+    public static void save(QueryDbInstance db, File outFile) throws IOException {
+        long start = System.currentTimeMillis();
+        List<String> typeNames = db.getTypeNames();
+        final int nTypes = typeNames.size();
+        Map<String, Integer> typeIdxMap = new HashMap<>(nTypes * 4 / 3 + 1);
+        for (int t = 0; t < nTypes; t++)
+            typeIdxMap.put(typeNames.get(t), t);
+        // Fix the order of the instances and build the pools.
+        List<List<EntityInstance>> instances = new ArrayList<>(nTypes);
+        Map<EntityInstance, Integer> positions = new IdentityHashMap<>();
+        Pools pools = new Pools();
+        for (String typeName : typeNames) {
+            List<EntityInstance> typeInstances = new ArrayList<>(db.getAllEntities(typeName));
+            instances.add(typeInstances);
+            final int n = typeInstances.size();
+            for (int i = 0; i < n; i++) {
+                QueryEntityInstance instance = (QueryEntityInstance) typeInstances.get(i);
+                positions.put(instance, i);
+                pools.addString(instance.getId());
+                for (Map.Entry<String, AttributeValue> attrEntry : instance.getAttributeEntries()) {
+                    pools.addString(attrEntry.getKey());
+                    pools.addValue(attrEntry.getValue());
+                }
+            }
+        }
+        log.info("Writing snapshot to {}: {} strings and {} attribute values in pools.", outFile,
+                pools.strings.size(), pools.values.size());
+        try (DataOutputStream outStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile)))) {
+            outStream.writeInt(MAGIC);
+            writeVar(outStream, VERSION);
+            writeVar(outStream, nTypes);
+            for (String typeName : typeNames)
+                writeString(outStream, typeName);
+            // Write the string pool.
+            writeVar(outStream, pools.strings.size());
+            for (String string : pools.strings)
+                writeString(outStream, string);
+            // Write the value pool.
+            writeVar(outStream, pools.values.size());
+            for (AttributeValue value : pools.values) {
+                List<String> list = value.getList();
+                writeVar(outStream, list.size());
+                for (String element : list)
+                    writeVar(outStream, pools.getString(element));
+                if (! value.isNumeric())
+                    outStream.writeByte(0);
+                else {
+                    outStream.writeByte(1);
+                    outStream.writeDouble(value.getDouble());
+                }
+            }
+            // Write the entity instances.
+            for (List<EntityInstance> typeInstances : instances) {
+                writeVar(outStream, typeInstances.size());
+                for (EntityInstance instance : typeInstances) {
+                    writeVar(outStream, pools.getString(instance.getId()));
+                    var attrEntries = ((QueryEntityInstance) instance).getAttributeEntries();
+                    writeVar(outStream, attrEntries.size());
+                    for (Map.Entry<String, AttributeValue> attrEntry : attrEntries) {
+                        writeVar(outStream, pools.getString(attrEntry.getKey()));
+                        writeVar(outStream, pools.getValue(attrEntry.getValue()));
+                    }
+                }
+            }
+            // Write the connections.
+            int relCount = 0;
+            for (List<EntityInstance> typeInstances : instances) {
+                for (EntityInstance instance : typeInstances) {
+                    List<RelationshipInstance> rels = instance.getRelationships();
+                    writeVar(outStream, rels.size());
+                    for (RelationshipInstance rel : rels) {
+                        EntityInstance target = rel.getTarget();
+                        writeVar(outStream, typeIdxMap.get(target.getType()));
+                        writeVar(outStream, positions.get(target));
+                    }
+                    relCount += rels.size();
+                }
+            }
+            log.info("{} entity instances and {} connections written to snapshot in {} ms.", positions.size(), relCount,
+                    System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Load a query-generation database from a snapshot file.
+     *
+     * @param dbd		definition of the database
+     * @param inFile	input snapshot file
+     *
+     * @return the database instance restored from the snapshot
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    public static QueryDbInstance load(QueryDbDefinition dbd, File inFile) throws IOException, ParseFailureException {
+        long start = System.currentTimeMillis();
+        QueryDbInstance retVal = new QueryDbInstance(dbd.getEntityNameList());
+        loadInto(retVal, dbd, inFile);
+        // Finish the database the same way a normal load does.
+        retVal.freeze();
+        log.info("{} entity instances loaded from snapshot {} in {} ms.", retVal.getEntityCount(), inFile,
+                System.currentTimeMillis() - start);
+        return retVal;
+    }
+
+    /**
+     * Merge the contents of a snapshot file into an existing database.  Entity instances already in the database
+     * are updated:  attributes in the snapshot replace attributes with the same name, and connections are added
+     * to the end of the existing connections.  This is the same thing that happens when a directory is added to a
+     * normal database load, so merging the snapshots of several directories in order produces the same result as
+     * loading the directories themselves.  The database must not be frozen.
+     *
+     * @param db		database to update
+     * @param dbd		definition of the database
+     * @param inFile	input snapshot file
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    public static void loadInto(QueryDbInstance db, QueryDbDefinition dbd, File inFile) throws IOException, ParseFailureException {
+        loadInto(db, dbd, inFile, WINDOW_SIZE);
+    }
+
+    /**
+     * Merge the contents of a snapshot file into an existing database, mapping the file in windows of the
+     * specified size.
+     *
+     * @param db			database to update
+     * @param dbd			definition of the database
+     * @param inFile		input snapshot file
+     * @param windowSize	maximum number of bytes to map at one time
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    static void loadInto(QueryDbInstance db, QueryDbDefinition dbd, File inFile, long windowSize)
+            throws IOException, ParseFailureException {
+        try (FileChannel channel = FileChannel.open(inFile.toPath(), StandardOpenOption.READ)) {
+            restore(db, dbd, new SnapshotInput(channel, inFile, windowSize), inFile);
+        }
+    }
+
+    /**
+     * Restore the contents of a snapshot into a query-generation database.
+     *
+     * @param db		database to update
+     * @param dbd		definition of the database
+     * @param buffer	input for the snapshot
+     * @param inFile	snapshot file name (for error messages)
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    private static void restore(QueryDbInstance db, QueryDbDefinition dbd, SnapshotInput buffer, File inFile)
+            throws IOException, ParseFailureException {
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("File " + inFile + " is not a database snapshot.");
+        int version = readVar(buffer);
+        if (version != VERSION)
+            throw new IOException("Snapshot file " + inFile + " has unsupported version " + version + ".");
+        // Verify the snapshot matches the database definition.
+        List<String> typeNames = db.getTypeNames();
+        final int nTypes = readVar(buffer);
+        List<String> snapTypes = new ArrayList<>(nTypes);
+        for (int t = 0; t < nTypes; t++)
+            snapTypes.add(readString(buffer));
+        if (! snapTypes.equals(typeNames))
+            throw new ParseFailureException("Snapshot file " + inFile + " does not match the database definition.");
+        // Read the string pool.
+        String[] strings = new String[readVar(buffer)];
+        for (int i = 0; i < strings.length; i++)
+            strings[i] = readString(buffer);
+        // Read the value pool.
+        AttributeValue[] values = new AttributeValue[readVar(buffer)];
+        for (int i = 0; i < values.length; i++) {
+            String[] list = new String[readVar(buffer)];
+            for (int j = 0; j < list.length; j++)
+                list[j] = strings[readVar(buffer)];
+            boolean numeric = (buffer.get() != 0);
+            double number = (numeric ? buffer.getDouble() : Double.NaN);
+            values[i] = new AttributeValue(List.of(list), number, numeric);
+        }
+        // Read the entity instances.
+        int entityCount = 0;
+        QueryEntityInstance[][] instances = new QueryEntityInstance[nTypes][];
+        for (int t = 0; t < nTypes; t++) {
+            EntityType type = dbd.findEntityType(typeNames.get(t));
+            QueryEntityInstance[] typeInstances = new QueryEntityInstance[readVar(buffer)];
+            for (int i = 0; i < typeInstances.length; i++) {
+                String id = strings[readVar(buffer)];
+                if (db.getEntity(type, id) == null)
+                    entityCount++;
+                QueryEntityInstance instance = (QueryEntityInstance) db.findEntity(type, id);
+                final int nAttrs = readVar(buffer);
+                for (int a = 0; a < nAttrs; a++) {
+                    String name = strings[readVar(buffer)];
+                    instance.addAttribute(name, values[readVar(buffer)]);
+                }
+                typeInstances[i] = instance;
+            }
+            instances[t] = typeInstances;
+        }
+        // Read the connections.
+        int relCount = 0;
+        for (QueryEntityInstance[] typeInstances : instances) {
+            for (QueryEntityInstance instance : typeInstances) {
+                final int nRels = readVar(buffer);
+                for (int r = 0; r < nRels; r++) {
+                    int targetType = readVar(buffer);
+                    instance.addConnection(new QueryRelationshipInstance(instances[targetType][readVar(buffer)]));
+                }
+                relCount += nRels;
+            }
+        }
+        db.addLoadCounts(entityCount, relCount);
+    }
+
+    /**
+     * Write a non-negative integer as a variable-length quantity.
+     *
+     * @param outStream		output stream
+     * @param value			value to write
+     *
+     * @throws IOException
+     */
+    private static void writeVar(DataOutputStream outStream, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            outStream.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        outStream.writeByte(value);
+    }
+
+    /**
+     * @return a non-negative integer read as a variable-length quantity
+     *
+     * @param buffer	snapshot input
+     *
+     * @throws IOException
+     */
+    private static int readVar(SnapshotInput buffer) throws IOException {
+        int retVal = 0;
+        int shift = 0;
+        int b = buffer.get();
+        while ((b & 0x80) != 0) {
+            retVal |= (b & 0x7F) << shift;
+            shift += 7;
+            b = buffer.get();
+        }
+        retVal |= b << shift;
+        return retVal;
+    }
+
+    /**
+     * Write a string as a length-prefixed sequence of UTF-8 bytes.
+     *
+     * @param outStream		output stream
+     * @param string		string to write
+     *
+     * @throws IOException
+     */
+    private static void writeString(DataOutputStream outStream, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVar(outStream, bytes.length);
+        outStream.write(bytes);
+    }
+
+    /**
+     * @return a string read from the buffer as a length-prefixed sequence of UTF-8 bytes
+     *
+     * @param buffer	snapshot input
+     *
+     * @throws IOException
+     */
+    private static String readString(SnapshotInput buffer) throws IOException {
+        byte[] bytes = new byte[readVar(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
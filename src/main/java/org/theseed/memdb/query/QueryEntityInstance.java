@@ -3,17 +3,17 @@
  */
 package org.theseed.memdb.query;
 
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
-import org.theseed.io.Attribute;
 import org.theseed.memdb.EntityInstance;
 import org.theseed.memdb.EntityType;
 import org.theseed.memdb.query.proposal.ProposalEntity;
 
 /**
- * The query-generation entity instance contains the attribute map and a count of
- * the number of connections to other entity types.
+ * The query-generation entity instance contains a reference to its attribute values and a count of
+ * the number of connections to other entity types.  The attribute values themselves are stored in
+ * the attribute table for the entity type, at the row assigned to this instance.
  *
  * @author Bruce Parrello
  *
@@ -21,10 +21,10 @@ import org.theseed.memdb.query.proposal.ProposalEntity;
 public class QueryEntityInstance extends EntityInstance {
 
     // FIELDS
-    /** map of attribute names to values */
-    private final Map<String, Attribute> attributes;
-    /** default attribute (always false and empty */
-    private static final Attribute NULL_ATTRIBUTE = new Attribute();
+    /** attribute table for this instance's entity type */
+    private final AttributeTable table;
+    /** row index of this instance in the attribute table */
+    private final int row;
 
     /**
      * Create a query-generation entity instance of the specified type with the specified ID.
@@ -35,8 +35,9 @@ public class QueryEntityInstance extends EntityInstance {
      */
     public QueryEntityInstance(EntityType type, String id, QueryDbInstance db) {
         super(type, id, db);
-        // Create the attribute map.
-        this.attributes = new TreeMap<>();
+        // Reserve a row in the attribute table.
+        this.table = db.getAttributeTable(type);
+        this.row = this.table.addRow();
     }
 
     /**
@@ -45,15 +46,47 @@ public class QueryEntityInstance extends EntityInstance {
      * @param name		attrinute name
      * @param attr		attribute value holder
      */
-    protected void addAttribute(String name, Attribute attr) {
-        this.attributes.put(name, attr);
+    protected void addAttribute(String name, AttributeValue attr) {
+        this.table.set(this.row, this.table.findSlot(name), attr);
     }
 
     /**
      * @return an attribute with the specified name
      */
-    public Attribute getAttribute(String name) {
-        return this.attributes.getOrDefault(name, NULL_ATTRIBUTE);
+    public AttributeValue getAttribute(String name) {
+        return this.table.get(this.row, this.table.getSlot(name));
+    }
+
+    /**
+     * @return the attribute in the specified slot of this instance's attribute table
+     *
+     * @param slot		attribute slot, or -1 for a missing attribute
+     */
+    public AttributeValue getAttribute(int slot) {
+        return this.table.get(this.row, slot);
+    }
+
+    /**
+     * @return the numeric value of the attribute in the specified slot, or NaN if it is missing or not numeric
+     *
+     * @param slot		attribute slot, or -1 for a missing attribute
+     */
+    public double getDouble(int slot) {
+        return this.table.getDouble(this.row, slot);
+    }
+
+    /**
+     * @return the attribute table for this instance's entity type
+     */
+    public AttributeTable getAttributeTable() {
+        return this.table;
+    }
+
+    /**
+     * @return the list of attribute name/value pairs for this instance
+     */
+    protected List<Map.Entry<String, AttributeValue>> getAttributeEntries() {
+        return this.table.getEntries(this.row);
     }
 
     /**
@@ -13,9 +13,9 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.FieldInputStream;
 import org.theseed.memdb.AttributeBuilder;
 import org.theseed.memdb.EntityType;
+import org.theseed.memdb.RecordSource;
 
 /**
  * The entity type for a query database will contain a list of attribute names. These
@@ -54,11 +54,23 @@ public class QueryEntityType extends EntityType {
     }
 
     @Override
-    protected Collection<? extends AttributeBuilder> getAttributeBuilders(FieldInputStream instanceStream)
+    protected Collection<? extends AttributeBuilder> getAttributeBuilders(RecordSource instanceStream)
             throws IOException, ParseFailureException {
-        List<QueryAttributeBuilder> retVal = this.attributeNames.stream().map(x -> new QueryAttributeBuilder(instanceStream, x))
+        List<QueryAttributeBuilder> retVal = this.attributeNames.stream().map(x -> new QueryAttributeBuilder(instanceStream, this.getName(), x))
                 .collect(Collectors.toList());
         return retVal;
     }
 
+    /**
+     * @return the names of the attributes for this entity type
+     */
+    public Collection<String> getAttributeNames() {
+        return this.attributeNames;
+    }
+
+    @Override
+    protected Collection<String> getAttributeColumns() {
+        return this.attributeNames;
+    }
+
 }
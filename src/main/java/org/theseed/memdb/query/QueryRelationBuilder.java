@@ -9,11 +9,10 @@ import java.util.List;
 import java.util.Map;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.Attribute;
-import org.theseed.io.FieldInputStream;
-import org.theseed.io.FieldInputStream.Record;
 import org.theseed.memdb.DbInstance;
 import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.InputRecord;
+import org.theseed.memdb.RecordSource;
 import org.theseed.memdb.RelationBuilder;
 import org.theseed.memdb.RelationshipInstance;
 import org.theseed.memdb.RelationshipType;
@@ -39,25 +38,34 @@ public class QueryRelationBuilder extends RelationBuilder {
         private final int colIdx;
         /** target instance attribute name */
         private final String attrName;
+        /** symbol table category for the target attribute */
+        private final String category;
 
         /**
          * Construct a target-field mapping.
          *
          * @param inStream	field input stream containing the data
+         * @param typeName	name of the target entity type
          * @param mapEntry	target value map entry
          *
          * @throws IOException
          */
-        protected Mapping(FieldInputStream inStream, Map.Entry<String, String> mapEntry) throws IOException {
+        protected Mapping(RecordSource inStream, String typeName, Map.Entry<String, String> mapEntry) throws IOException {
             this.colIdx = inStream.findField(mapEntry.getKey());
             this.attrName = mapEntry.getValue();
+            this.category = typeName + "." + this.attrName;
         }
 
         /**
          * Store this mapped field in the target entity instance.
+         *
+         * @param db		database instance being loaded
+         * @param record	input record containing the field
+         * @param target	target entity instance
          */
-        protected void store(FieldInputStream.Record record, QueryEntityInstance target) {
-            Attribute attr = new Attribute(record, this.colIdx);
+        protected void store(DbInstance db, InputRecord record, QueryEntityInstance target) {
+            AttributeValue attr = db.getSymbols().internValue(this.category, record.get(this.colIdx),
+                    x -> AttributeValue.create(record, this.colIdx));
             target.addAttribute(this.attrName, attr);
         }
     }
@@ -71,7 +79,7 @@ public class QueryRelationBuilder extends RelationBuilder {
      * @throws IOException
      * @throws ParseFailureException
      */
-    public QueryRelationBuilder(RelationshipType relType, FieldInputStream inStream)
+    public QueryRelationBuilder(RelationshipType relType, RecordSource inStream)
             throws IOException, ParseFailureException {
         super(relType, inStream);
         QueryRelationshipType qRelType = (QueryRelationshipType) relType;
@@ -79,23 +87,23 @@ public class QueryRelationBuilder extends RelationBuilder {
         Map<String, String> targetMap = qRelType.getValueMap();
         this.valueMap = new ArrayList<>(targetMap.size());
         for (Map.Entry<String, String> targetEntry : targetMap.entrySet()) {
-            Mapping mapping = new Mapping(inStream, targetEntry);
+            Mapping mapping = new Mapping(inStream, relType.getTargetType().getName(), targetEntry);
             this.valueMap.add(mapping);
         }
     }
 
     @Override
-    protected RelationshipInstance getForwardInstance(DbInstance db, Record record, EntityInstance sourceInstance,
+    protected RelationshipInstance getForwardInstance(DbInstance db, InputRecord record, EntityInstance sourceInstance,
             EntityInstance targetInstance) {
         QueryEntityInstance qTarget = (QueryEntityInstance) targetInstance;
         // If there are any target-field mappings, we fill them in here.
         for (Mapping mapping : this.valueMap)
-            mapping.store(record, qTarget);
+            mapping.store(db, record, qTarget);
         return new QueryRelationshipInstance(targetInstance);
     }
 
     @Override
-    protected RelationshipInstance getReverseInstance(DbInstance db, Record record, EntityInstance sourceInstance,
+    protected RelationshipInstance getReverseInstance(DbInstance db, InputRecord record, EntityInstance sourceInstance,
             EntityInstance targetInstance) {
         return new QueryRelationshipInstance(sourceInstance);
     }
@@ -14,17 +14,6 @@ import org.theseed.memdb.RelationshipInstance;
  */
 public class QueryRelationshipInstance extends RelationshipInstance {
 
-    /**
-     * Construct a query-generation relationship instance for a given target entity type
-     * and ID.
-     *
-     * @param destType	target entity instance type
-     * @param id		target entity instance ID
-     */
-    public QueryRelationshipInstance(String destType, String id) {
-        super(destType, id);
-    }
-
     /**
      * Construct a query-generation relationship instance for a given target entity instance.
      *
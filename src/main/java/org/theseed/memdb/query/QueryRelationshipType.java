@@ -4,12 +4,15 @@
 package org.theseed.memdb.query;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.FieldInputStream;
 import org.theseed.memdb.EntityType;
+import org.theseed.memdb.RecordSource;
 import org.theseed.memdb.RelationBuilder;
 import org.theseed.memdb.RelationshipType;
 
@@ -41,11 +44,20 @@ public class QueryRelationshipType extends RelationshipType {
     }
 
     @Override
-    protected RelationBuilder createRelationBuilder(FieldInputStream inStream)
+    protected RelationBuilder createRelationBuilder(RecordSource inStream)
             throws IOException, ParseFailureException {
         return new QueryRelationBuilder(this, inStream);
     }
 
+    @Override
+    public Collection<String> getRequiredColumns() {
+        List<String> retVal = new ArrayList<>(this.targetFieldMap.size() + 2);
+        retVal.add(this.getSourceColName());
+        retVal.add(this.getTargetColName());
+        retVal.addAll(this.targetFieldMap.keySet());
+        return retVal;
+    }
+
     /**
      * Store a mapping from an input field name to a target entity field name.
      *
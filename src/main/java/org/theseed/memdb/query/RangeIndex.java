@@ -0,0 +1,132 @@
+/**
+ *
+ */
+package org.theseed.memdb.query;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.theseed.memdb.EntityInstance;
+
+/**
+ * A range index sorts the entity instances of a single type by the numeric value of an attribute.  Instances
+ * whose attribute value is not numeric are left out.  The index is used to find the instances satisfying
+ * a less-than or greater-than condition without scanning the whole entity type.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class RangeIndex {
+
+    // FIELDS
+    /** sorted array of attribute values */
+    private final double[] values;
+    /** array of entity instances, parallel to the values */
+    private final List<EntityInstance> instances;
+
+    /**
+     * Build a range index for an attribute.
+     *
+     * @param instances		collection of entity instances to index, in the order to use for equal values
+     * @param attrName		name of the attribute to index
+     */
+    public RangeIndex(Collection<EntityInstance> instances, String attrName) {
+        // Collect the numeric instances with their values.
+        EntityInstance[] numerics = new EntityInstance[instances.size()];
+        double[] numbers = new double[numerics.length];
+        int n = 0;
+        for (EntityInstance instance : instances) {
+            QueryEntityInstance qInstance = (QueryEntityInstance) instance;
+            // The numeric form is parsed at load time, and is NaN for a non-numeric value.
+            double number = qInstance.getDouble(qInstance.getAttributeTable().getSlot(attrName));
+            if (! Double.isNaN(number)) {
+                numerics[n] = qInstance;
+                numbers[n] = number;
+                n++;
+            }
+        }
+        // Sort the values, then drop each instance into the next free position in the run for its value.
+        // The instances are placed in their original order, so instances with the same value stay in that order.
+        this.values = Arrays.copyOf(numbers, n);
+        Arrays.sort(this.values);
+        int[] used = new int[n];
+        EntityInstance[] sorted = new EntityInstance[n];
+        for (int i = 0; i < n; i++) {
+            int start = this.findRun(numbers[i]);
+            sorted[start + used[start]] = numerics[i];
+            used[start]++;
+        }
+        this.instances = Arrays.asList(sorted);
+    }
+
+    /**
+     * @return the entity instances whose values are strictly less than the target
+     *
+     * @param target	target value
+     */
+    public List<EntityInstance> getLessThan(double target) {
+        return this.instances.subList(0, this.findFirst(target, false));
+    }
+
+    /**
+     * @return the entity instances whose values are strictly greater than the target
+     *
+     * @param target	target value
+     */
+    public List<EntityInstance> getGreaterThan(double target) {
+        return this.instances.subList(this.findFirst(target, true), this.values.length);
+    }
+
+    /**
+     * Find the start of the run of a value in the value array.  This uses the same total order as the sort,
+     * so negative zero and positive zero have separate runs.
+     *
+     * @param value		value to find, which must be in the array
+     *
+     * @return the index of the first array entry equal to the value
+     */
+    private int findRun(double value) {
+        int lo = 0;
+        int hi = this.values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Double.compare(this.values[mid], value) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Find the first position in the value array past the target.
+     *
+     * @param target	target value
+     * @param strict	TRUE to find the first value greater than the target, FALSE to find the first
+     * 					value greater than or equal to the target
+     *
+     * @return the index of the first qualifying value, or the array length if there is none
+     */
+    private int findFirst(double target, boolean strict) {
+        int lo = 0;
+        int hi = this.values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double value = this.values[mid];
+            if (value < target || strict && value == target)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the number of instances in this index
+     */
+    public int size() {
+        return this.values.length;
+    }
+
+}
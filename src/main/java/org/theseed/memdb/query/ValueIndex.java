@@ -0,0 +1,81 @@
+/**
+ *
+ */
+package org.theseed.memdb.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.theseed.memdb.EntityInstance;
+
+/**
+ * A value index maps the values of a single attribute of an entity type to the entity instances having
+ * those values.  Values are matched without regard to case, and an instance with a list-valued attribute
+ * is indexed under every value in the list.  The index is used to find the instances satisfying an
+ * equality condition without scanning the whole entity type.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ValueIndex {
+
+    // FIELDS
+    /** map of normalized values to entity instances */
+    private final Map<String, List<EntityInstance>> valueMap;
+
+    /**
+     * Build a value index for an attribute.  The instances for each value are kept in the order presented.
+     *
+     * @param instances		collection of entity instances to index
+     * @param attrName		name of the attribute to index
+     */
+    public ValueIndex(Collection<EntityInstance> instances, String attrName) {
+        this.valueMap = new HashMap<>();
+        for (EntityInstance instance : instances) {
+            List<String> values = ((QueryEntityInstance) instance).getAttribute(attrName).getList();
+            for (String value : values) {
+                List<EntityInstance> list = this.valueMap.computeIfAbsent(normalize(value), x -> new ArrayList<>(2));
+                // A list value could repeat an element, but we only want the instance once.
+                if (list.isEmpty() || list.get(list.size() - 1) != instance)
+                    list.add(instance);
+            }
+        }
+    }
+
+    /**
+     * Convert a value to a normal form such that two values have the same normal form if and only if they
+     * are equal without regard to case.  This uses the same character comparison as "String.equalsIgnoreCase".
+     *
+     * @param value		value to normalize
+     *
+     * @return the normal form of the value
+     */
+    public static String normalize(String value) {
+        final int n = value.length();
+        char[] buffer = new char[n];
+        for (int i = 0; i < n; i++)
+            buffer[i] = Character.toLowerCase(Character.toUpperCase(value.charAt(i)));
+        return new String(buffer);
+    }
+
+    /**
+     * @return the entity instances having the specified value, without regard to case
+     *
+     * @param value		value of interest
+     */
+    public List<EntityInstance> get(String value) {
+        return this.valueMap.getOrDefault(normalize(value), Collections.emptyList());
+    }
+
+    /**
+     * @return the number of distinct values in this index
+     */
+    public int size() {
+        return this.valueMap.size();
+    }
+
+}
@@ -3,10 +3,13 @@
  */
 package org.theseed.memdb.query.proposal;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.Attribute;
+import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.RangeIndex;
 import org.theseed.memdb.query.QueryEntityInstance;
 
 /**
@@ -46,9 +49,9 @@ public abstract class BinaryProposalField extends ProposalField {
     @Override
     protected List<String> getValue(QueryEntityInstance instance) {
         List<String> retVal;
-        Attribute instanceVal = instance.getAttribute(this.getName());
-        double actualVal = instanceVal.getDouble();
-        if (this.isSatisfied(actualVal, this.target))
+        // The numeric value was parsed at load time.  A missing or non-numeric value never satisfies the condition.
+        double actualVal = instance.getDouble(this.getSlot(instance));
+        if (! Double.isNaN(actualVal) && this.isSatisfied(actualVal, this.target))
             retVal = valueReturn;
         else
             retVal = ProposalField.EMPTY_LIST;
@@ -63,5 +66,19 @@ public abstract class BinaryProposalField extends ProposalField {
      */
     protected abstract boolean isSatisfied(double actualVal, double targetVal);
 
+    @Override
+    protected Collection<EntityInstance> getCandidates(QueryDbInstance db) {
+        RangeIndex index = db.getRangeIndex(this.getEntityType(), this.getName());
+        return this.getCandidates(index, this.target);
+    }
+
+    /**
+     * @return the instances in a range index that satisfy the proposal condition
+     *
+     * @param index			range index for the proposal's attribute
+     * @param targetVal		relevant target value
+     */
+    protected abstract Collection<EntityInstance> getCandidates(RangeIndex index, double targetVal);
+
 
 }
@@ -6,12 +6,17 @@ package org.theseed.memdb.query.proposal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +31,13 @@ import org.theseed.stats.Shuffler;
  * case, we choose one correct answer and N wrong answers to include in the question text, where N is one
  * less than the total number of responses desired (4 by default).
  *
+ * The wrong answers are drawn from a pool of the output values found in all the response sets for the query.
+ * The pool is built once per computation and reused for every question, so choosing the wrong answers for a
+ * question only requires a few random draws.  It is released when all the questions have been written.  If the
+ * response sets contain no wrong answers, a pool is built from the output attribute of every instance in the
+ * database, and this pool is kept for the life of the query.  If the output values are very numerous, each pool
+ * is a uniform random sample of the distinct values, taken without ever holding more than the pool limit.
+ *
  * @author Bruce Parrello
  *
  */
@@ -36,10 +48,16 @@ public class ChoiceProposalQuery extends ProposalQuery {
     private static final Logger log = LoggerFactory.getLogger(ChoiceProposalQuery.class);
     /** output field descriptor */
     private ExactProposalField outputField;
-    /** randomizer for choosing correct answers */
-    private final Random rand;
     /** database instance for emergencies */
     private final QueryDbInstance db;
+    /** list of response sets from which the distractor pool was built */
+    private List<ProposalResponseSet> poolSource;
+    /** pool of output values from the response sets */
+    private List<String> responsePool;
+    /** pool of output values from the whole database, or NULL if it has not been needed yet */
+    private List<String> dbPool;
+    /** maximum number of values to keep in a distractor pool */
+    public static final int POOL_LIMIT = 10000;
     /** match pattern for field specification */
     private static final Pattern SPEC_PATTERN = Pattern.compile("choice\\s+(.+)");
     /** number of responses to output */
@@ -65,8 +83,10 @@ public class ChoiceProposalQuery extends ProposalQuery {
             throw new ParseFailureException("Invalid choice specification \"" + resultString + "\".");
         else
             this.outputField = new ExactProposalField(m.group(1));
-        this.rand = new Random();
         this.db = qDb;
+        this.poolSource = null;
+        this.responsePool = null;
+        this.dbPool = null;
     }
 
     @Override
@@ -89,35 +109,25 @@ public class ChoiceProposalQuery extends ProposalQuery {
         if (correct.size() <= 0)
             log.warn("No correct responses found in set {}.", response);
         else {
-            // Now get the possible incorrect responses. Note this only works if the reponse sets are for the this query,
-            // and we filter out incorrect responses on the way.
-            Set<String> incorrect = others.stream().flatMap(x -> x.getOutputValues(outEntityType, outEntityAttr).stream())
-                    .filter(x -> ! correct.contains(x)).collect(Collectors.toSet());
             // Select the one correct answer we want to use.
-            int desired = this.rand.nextInt(correct.size());
+            int desired = this.getRandom().nextInt(correct.size());
             String answer1 = Shuffler.selectItem(correct, desired);
-            // Now we need the wrong answers.
-            Collection<String> distractors = new ArrayList<>(NUM_RESPONSES);
-            if (incorrect.size() > (NUM_RESPONSES - 1)) {
-                // The best case: we have enough answers.
-                Collection<String> selected = Shuffler.selectPart(incorrect, NUM_RESPONSES - 1);
-                distractors.addAll(selected);
-            } else if (! incorrect.isEmpty()) {
-                // At least one incorrect answer, but not more than 3.
-                distractors.addAll(incorrect);
-            } else {
+            // Now we need the wrong answers. These come from the pool of output values in the other response sets.
+            // Note this only works if the response sets are for this query.
+            if (others != this.poolSource) {
+                this.responsePool = this.buildPool(others.stream().flatMap(x -> x.getOutputValues(outEntityType, outEntityAttr).stream()));
+                this.poolSource = others;
+                log.debug("Distractor pool for {} contains {} values.", this, this.responsePool.size());
+            }
+            Collection<String> distractors = this.chooseDistractors(this.responsePool, correct);
+            if (distractors.isEmpty()) {
                 // Here we have no incorrect answers, so we need to get some from the whole database.
-                log.warn("Slow method for alternative answers required in {}.", this);
-                incorrect = new HashSet<>();
-                for (var instance : this.db.getAllEntities(outEntityType)) {
-                    QueryEntityInstance qInstance = (QueryEntityInstance) instance;
-                    var values = qInstance.getAttribute(outEntityAttr).getList();
-                    for (String value : values) {
-                        if (! correct.contains(value))
-                            incorrect.add(value);
-                    }
+                if (this.dbPool == null) {
+                    log.warn("Slow method for alternative answers required in {}.", this);
+                    this.dbPool = this.buildPool(this.db.getSortedEntities(outEntityType).stream()
+                            .flatMap(x -> ((QueryEntityInstance) x).getAttribute(outEntityAttr).getList().stream()));
                 }
-                distractors = Shuffler.selectPart(incorrect, NUM_RESPONSES - 1);
+                distractors = this.chooseDistractors(this.dbPool, correct);
             }
             // Write the question.
             reporter.writeQuestion(response.getParameters(), questionText, answer1, distractors);
@@ -126,6 +136,111 @@ public class ChoiceProposalQuery extends ProposalQuery {
         return retVal;
     }
 
+    @Override
+    public void finishResponses() {
+        // Release the distractor pool and the response sets it came from.
+        this.poolSource = null;
+        this.responsePool = null;
+    }
+
+    /**
+     * Build a distractor pool from a stream of output values.  Each distinct value is kept once.  If there are
+     * more than POOL_LIMIT distinct values, a random sample of them is kept instead.  The sample is a bottom-k
+     * sample:  each value is given a hash seeded from the query's seed, and the values with the POOL_LIMIT
+     * smallest hashes are kept.  A value's hash does not depend on how often it occurs, so neither does its
+     * chance of being in the pool, and the pool never holds more than POOL_LIMIT values while it is built.
+     *
+     * @param values	stream of output values
+     *
+     * @return a list of distinct output values, in order of first occurrence
+     */
+    protected List<String> buildPool(Stream<String> values) {
+        final long salt = this.getSeed();
+        // This maps each kept value to its hash, in order of first occurrence.
+        Map<String, Long> kept = new LinkedHashMap<>();
+        // This queue has the kept value with the largest hash at the head.  Ties are broken on the value itself.
+        PriorityQueue<String> worst = new PriorityQueue<>((a, b) -> {
+            int retVal = Long.compare(kept.get(b), kept.get(a));
+            if (retVal == 0)
+                retVal = b.compareTo(a);
+            return retVal;
+        });
+        Iterator<String> iter = values.iterator();
+        while (iter.hasNext()) {
+            String value = iter.next();
+            if (! kept.containsKey(value)) {
+                long hash = sampleHash(value, salt);
+                if (kept.size() < POOL_LIMIT) {
+                    kept.put(value, hash);
+                    worst.add(value);
+                } else {
+                    // The pool is full, so the value only goes in if it beats the largest hash.  A value that was
+                    // evicted earlier is larger than everything left, so it can never come back in.
+                    String head = worst.peek();
+                    long headHash = kept.get(head);
+                    if (hash < headHash || hash == headHash && value.compareTo(head) < 0) {
+                        worst.poll();
+                        kept.remove(head);
+                        kept.put(value, hash);
+                        worst.add(value);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(kept.keySet());
+    }
+
+    /**
+     * @return a 64-bit hash of a value string for sampling
+     *
+     * @param value		value string to hash
+     * @param salt		seed for the hash
+     */
+    private static long sampleHash(String value, long salt) {
+        // This is FNV-1a over the characters, followed by the MurmurHash3 finalizer to spread the bits.
+        long retVal = salt ^ 0xcbf29ce484222325L;
+        final int n = value.length();
+        for (int i = 0; i < n; i++)
+            retVal = (retVal ^ value.charAt(i)) * 0x100000001b3L;
+        retVal ^= retVal >>> 33;
+        retVal *= 0xff51afd7ed558ccdL;
+        retVal ^= retVal >>> 33;
+        retVal *= 0xc4ceb9fe1a85ec53L;
+        retVal ^= retVal >>> 33;
+        return retVal;
+    }
+
+    /**
+     * Choose the wrong answers for a question from a distractor pool.  We make random draws from the pool,
+     * skipping correct answers and repeats.  If that does not find enough, most of the pool must be correct
+     * answers, so we scan the whole pool for the rest.
+     *
+     * @param pool		distractor pool to use
+     * @param correct	set of correct answers to skip
+     *
+     * @return a collection of up to NUM_RESPONSES - 1 distinct wrong answers
+     */
+    protected Collection<String> chooseDistractors(List<String> pool, Set<String> correct) {
+        final int needed = NUM_RESPONSES - 1;
+        List<String> retVal = new ArrayList<>(needed);
+        final int n = pool.size();
+        if (n > 0) {
+            Random rand = this.getRandom();
+            Set<String> chosen = new HashSet<>();
+            for (int tries = needed * 4; tries > 0 && retVal.size() < needed; tries--) {
+                String value = pool.get(rand.nextInt(n));
+                if (! correct.contains(value) && chosen.add(value))
+                    retVal.add(value);
+            }
+            if (retVal.size() < needed) {
+                List<String> remaining = pool.stream().filter(x -> ! correct.contains(x) && ! chosen.contains(x))
+                        .collect(Collectors.toList());
+                retVal.addAll(this.selectSample(remaining, needed - retVal.size()));
+            }
+        }
+        return retVal;
+    }
+
     @Override
     public int getResponseSize(ProposalResponseSet responseSet) {
         // The number of distinct output values is always 1, the one we choose.
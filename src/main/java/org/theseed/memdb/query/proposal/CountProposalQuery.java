@@ -34,7 +34,7 @@ public class CountProposalQuery extends ProposalQuery {
         // Get the question string.
         String questionText = this.computeQuestion(response);
         // Get the answer.
-        int count = response.size();
+        int count = response.getResponseCount();
         // Write it out.
         reporter.writeQuestion(response.getParameters(), questionText, count);
         return 1;
@@ -43,7 +43,19 @@ public class CountProposalQuery extends ProposalQuery {
     @Override
     public int getResponseSize(ProposalResponseSet responseSet) {
         // The number of records in the response set is the output of a count proposal.
-        return responseSet.size();
+        return responseSet.getResponseCount();
+    }
+
+    @Override
+    protected int getSizeLowerBound(ProposalResponseSet responseSet, int limit) {
+        // Responses are never lost after a pruning point, so the count can only grow.
+        return responseSet.getResponseCount();
+    }
+
+    @Override
+    protected boolean isAggregateOnly() {
+        // Only the number of responses is needed, so they do not have to be stored.
+        return true;
     }
 
     @Override
@@ -3,11 +3,14 @@
  */
 package org.theseed.memdb.query.proposal;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.commons.lang3.Strings;
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.Attribute;
+import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.query.AttributeValue;
+import org.theseed.memdb.query.QueryDbInstance;
 import org.theseed.memdb.query.QueryEntityInstance;
 
 /**
@@ -43,7 +46,7 @@ public class EqualProposalField extends ProposalField {
     @Override
     protected List<String> getValue(QueryEntityInstance instance) {
         List<String> retVal;
-        Attribute instanceVal = instance.getAttribute(this.getName());
+        AttributeValue instanceVal = instance.getAttribute(this.getSlot(instance));
         List<String> actualVal = instanceVal.getList();
         boolean found = actualVal.stream().anyMatch(x -> Strings.CI.equals(x, comparand));
         if (found)
@@ -53,4 +56,9 @@ public class EqualProposalField extends ProposalField {
         return retVal;
     }
 
+    @Override
+    protected Collection<EntityInstance> getCandidates(QueryDbInstance db) {
+        return db.getValueIndex(this.getEntityType(), this.getName()).get(this.comparand);
+    }
+
 }
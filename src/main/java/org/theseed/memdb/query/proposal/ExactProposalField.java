@@ -6,7 +6,7 @@ package org.theseed.memdb.query.proposal;
 import java.util.List;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.Attribute;
+import org.theseed.memdb.query.AttributeValue;
 import org.theseed.memdb.query.QueryEntityInstance;
 
 /**
@@ -31,7 +31,7 @@ public class ExactProposalField extends ProposalField {
 
     @Override
     protected List<String> getValue(QueryEntityInstance instance) {
-        Attribute instanceVal = instance.getAttribute(this.getName());
+        AttributeValue instanceVal = instance.getAttribute(this.getSlot(instance));
         return instanceVal.getList();
     }
 
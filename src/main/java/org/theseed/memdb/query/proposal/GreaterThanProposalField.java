@@ -3,7 +3,11 @@
  */
 package org.theseed.memdb.query.proposal;
 
+import java.util.Collection;
+
 import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.query.RangeIndex;
 
 /**
  * This field specification is satisfied when the field value, interpreted numerically, is greater than
@@ -31,4 +35,9 @@ public class GreaterThanProposalField extends BinaryProposalField {
         return (actualVal > targetVal);
     }
 
+    @Override
+    protected Collection<EntityInstance> getCandidates(RangeIndex index, double targetVal) {
+        return index.getGreaterThan(targetVal);
+    }
+
 }
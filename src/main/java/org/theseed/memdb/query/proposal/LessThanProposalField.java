@@ -3,7 +3,11 @@
  */
 package org.theseed.memdb.query.proposal;
 
+import java.util.Collection;
+
 import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.query.RangeIndex;
 
 /**
  * This field proposal is satisfied if the field value, interpreted numerically, is less than the parameter
@@ -31,4 +35,9 @@ public class LessThanProposalField extends BinaryProposalField {
         return (actualVal < targetVal);
     }
 
+    @Override
+    protected Collection<EntityInstance> getCandidates(RangeIndex index, double targetVal) {
+        return index.getLessThan(targetVal);
+    }
+
 }
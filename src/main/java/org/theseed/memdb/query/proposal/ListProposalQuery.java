@@ -3,6 +3,8 @@
  */
 package org.theseed.memdb.query.proposal;
 
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -55,6 +57,26 @@ public class ListProposalQuery extends ProposalQuery {
         return retVal.size();
     }
 
+    @Override
+    protected int getSizeLowerBound(ProposalResponseSet responseSet, int limit) {
+        // Count the distinct output values, stopping when we reach the limit. We don't use the output-value
+        // cache in the response set, since that would hold the values for every response set in memory.
+        String entityType = this.getOutputEntityType();
+        String attrName = this.getOutputAttrName();
+        Set<String> values = new HashSet<>();
+        Iterator<ProposalResponse> iter = responseSet.iterator();
+        while (values.size() < limit && iter.hasNext())
+            values.addAll(iter.next().getValue(entityType, attrName));
+        return values.size();
+    }
+
+    @Override
+    protected boolean isOutputStable(ProposalEntity entity) {
+        // The output value comes from the last instance of the output entity type, so a new instance
+        // of that type would replace it.
+        return ! entity.getName().equals(this.getOutputEntityType());
+    }
+
     /**
      * @return the attribute name of the output field
      */
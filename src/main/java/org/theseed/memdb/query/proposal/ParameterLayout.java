@@ -0,0 +1,74 @@
+/**
+ *
+ */
+package org.theseed.memdb.query.proposal;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A parameter layout describes where each proposal field's value is stored in the parameterizations for
+ * a single query.  Every proposal entity on the query path is assigned a base slot, and its fields occupy
+ * the slots from the base onward in field order, so a parameterization is simply an array of values.
+ *
+ * Parameterizations are ordered, printed, and converted to JSON by entity name, so the layout also keeps the
+ * contributing entities in name order.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ParameterLayout {
+
+    // FIELDS
+    /** list of proposal entities having fields, in path order */
+    private final List<ProposalEntity> entities;
+    /** list of proposal entities having fields, sorted by entity name */
+    private final List<ProposalEntity> sortedEntities;
+    /** total number of value slots */
+    private final int slotCount;
+
+    /**
+     * Construct a parameter layout for a query path.  The slot bases of the proposal entities
+     * are filled in.  All the proposal fields must already be present.
+     *
+     * @param path		list of proposal entities along the query path
+     */
+    public ParameterLayout(List<ProposalEntity> path) {
+        this.entities = new ArrayList<>(path.size());
+        int slot = 0;
+        for (ProposalEntity entity : path) {
+            entity.setSlotBase(slot);
+            final int n = entity.size();
+            if (n > 0) {
+                this.entities.add(entity);
+                slot += n;
+            }
+        }
+        this.slotCount = slot;
+        this.sortedEntities = new ArrayList<>(this.entities);
+        this.sortedEntities.sort(Comparator.comparing(ProposalEntity::getName));
+    }
+
+    /**
+     * @return the total number of value slots in a parameterization
+     */
+    public int size() {
+        return this.slotCount;
+    }
+
+    /**
+     * @return the proposal entities that contribute values, in path order
+     */
+    public List<ProposalEntity> getEntities() {
+        return this.entities;
+    }
+
+    /**
+     * @return the proposal entities that contribute values, sorted by entity name
+     */
+    public List<ProposalEntity> getSortedEntities() {
+        return this.sortedEntities;
+    }
+
+}
@@ -3,15 +3,11 @@
  */
 package org.theseed.memdb.query.proposal;
 
-import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.TreeSet;
 
 import org.apache.commons.lang3.StringUtils;
@@ -24,36 +20,51 @@ import com.github.cliftonlabs.json_simple.JsonObject;
  * A parameterization is a list of strings containing the values for the variable parameters in
  * a proposal set. For each entity type, we have the proposal field values in order.
  *
+ * Parameterizations are used as hash keys for every step of a path expansion, so they are designed
+ * to be cheap to build and compare.  The values are stored in a fixed array whose slot positions are
+ * determined by the query's parameter layout.  The value strings are taken directly from the attribute values
+ * in the database, which were shared by the symbol table at load time, so equal values are usually the same
+ * object and compare by reference.  A parameterization is immutable, and its hash code is computed once at
+ * construction.
+ *
+ * Although the values are stored in path order, parameterizations are compared, printed, and converted to JSON
+ * by entity name, just as they were when the values were kept in a map sorted by entity name.
+ *
  * @author Bruce Parrello
  *
  */
 public class Parameterization implements Comparable<Parameterization> {
 
     // FIELDS
-    /** map from entity type names to value lists */
-    private final SortedMap<String, List<String>> valueMap;
-    /** default empty string list */
-    private static final List<String> EMPTY_LIST = Collections.emptyList();
-    /** default end-of-stream object for comparisons; note entity names must begin with a letter */
-    private static final Map.Entry<String, List<String>> MAX_ENTRY =
-            new AbstractMap.SimpleEntry<>("~~", EMPTY_LIST);
+    /** parameter layout for the parent query */
+    private final ParameterLayout layout;
+    /** array of values, by slot; unfilled slots are NULL */
+    private final String[] values;
+    /** precomputed hash code */
+    private final int hash;
 
     /**
      * Construct a blank parameterization.
+     *
+     * @param layout	parameter layout for the parent query
      */
-    public Parameterization() {
-        this.valueMap = new TreeMap<>();
+    public Parameterization(ParameterLayout layout) {
+        this(layout, new String[layout.size()]);
     }
 
     /**
-     * Create a clone of an existing parameterization.
+     * Construct a parameterization from a value array.  The array becomes owned by this object.
      *
-     * @param source		original parameterization to copy
+     * @param layout	parameter layout for the parent query
+     * @param values	array of values, by slot
      */
-    public Parameterization(Parameterization source) {
-        this.valueMap = new TreeMap<>();
-        for (var valueEntry : source.valueMap.entrySet())
-            this.valueMap.put(valueEntry.getKey(), valueEntry.getValue());
+    private Parameterization(ParameterLayout layout, String[] values) {
+        this.layout = layout;
+        this.values = values;
+        int h = 1;
+        for (String value : values)
+            h = h * 31 + (value == null ? 0 : value.hashCode());
+        this.hash = h;
     }
 
     /**
@@ -64,62 +75,48 @@ public class Parameterization implements Comparable<Parameterization> {
      * @param instance	entity instance of interest
      * @param proposal	query proposal relevant to the entity instance
      *
-     * @return the resulting set of parameterizations, none of which will be this one
+     * @return the resulting set of parameterizations, in sorted order, none of which will be this one
      */
     public Set<Parameterization> addInstance(QueryEntityInstance instance, ProposalEntity proposal) {
-        // Start off returning just this parameterization. This is the most common case.
-        Set<Parameterization> retVal = new TreeSet<>();
-        retVal.add(new Parameterization(this));
-        // Loop through the field proposals.
-        Iterator<ProposalField> iter = proposal.getProposals().iterator();
-        while (iter.hasNext() && retVal != null) {
-            // Get the value for this field.
-            ProposalField fieldProposal = iter.next();
-            List<String> value = fieldProposal.getValue(instance);
-            if (value.isEmpty()) {
-                // We got no values back, so the entity instance is invalid.
-                retVal = null;
-            } else if (value.size() == 1) {
-                // We got one value back. Add it to all our return parameterizations.
-                final String vString = value.get(0);
-                retVal.stream().forEach(x -> x.addValue(proposal, vString));
-            } else {
-                // We have multiple values back. We need to explode each parameterization for
-                // each value.  Loop through the return parameterizations. We'll put the new
-                // parameterizations in here.
-                List<Parameterization> newParms = new ArrayList<>(value.size() * retVal.size());
-                for (Parameterization retParm : retVal) {
-                    // Explode this parameterization, adding all values but the first.
-                    for (int i = 1; i < value.size(); i++) {
-                        Parameterization newParm = new Parameterization(retParm);
-                        newParm.addValue(proposal, value.get(i));
-                        newParms.add(newParm);
-                    }
-                    // Add the first value to the original parameterization.
-                    retParm.addValue(proposal, value.get(0));
-                }
-                // Add the exploded parameterizations to the output set.
-                retVal.addAll(newParms);
-            }
+        Set<Parameterization> retVal;
+        // Get the value lists for all the fields, and count the output parameterizations.
+        List<ProposalField> fields = proposal.getProposals();
+        final int n = fields.size();
+        List<List<String>> valueLists = new ArrayList<>(n);
+        int combos = 1;
+        for (int i = 0; i < n && combos > 0; i++) {
+            List<String> value = fields.get(i).getValue(instance);
+            valueLists.add(value);
+            combos *= value.size();
         }
-        // Convert a failure return to an empty set.
-        if (retVal == null)
+        final int base = proposal.getSlotBase();
+        if (combos == 0) {
+            // Some field had no values, so the entity instance is invalid.
             retVal = Collections.emptySet();
+        } else if (combos == 1) {
+            // Every field has a single value. This is the most common case.
+            String[] newValues = this.values.clone();
+            for (int i = 0; i < n; i++)
+                newValues[base + i] = valueLists.get(i).get(0);
+            retVal = Collections.singleton(new Parameterization(this.layout, newValues));
+        } else {
+            // Here we have list values, and we need a parameterization for each combination. We
+            // step through the combinations using an odometer of value-list positions.
+            retVal = new TreeSet<>();
+            int[] positions = new int[n];
+            for (int c = 0; c < combos; c++) {
+                String[] newValues = this.values.clone();
+                for (int i = 0; i < n; i++)
+                    newValues[base + i] = valueLists.get(i).get(positions[i]);
+                retVal.add(new Parameterization(this.layout, newValues));
+                // Advance the odometer.
+                for (int i = n - 1; i >= 0 && ++positions[i] >= valueLists.get(i).size(); i--)
+                    positions[i] = 0;
+            }
+        }
         return retVal;
     }
 
-       /**
-        * Add a new value to the parameter list for the specified proposal's entity type.
-        *
-     * @param proposal		query proposal for the target entity
-     * @param vString		value to add to its list
-     */
-    private void addValue(ProposalEntity proposal, String vString) {
-        List<String> vList = this.valueMap.computeIfAbsent(proposal.getName(),
-                x -> new ArrayList<String>(proposal.size()));
-        vList.add(vString);
-    }
-
     /**
      * Compute the value to substitute in for this parameterization given an entity and attribute name.
      *
@@ -142,24 +139,15 @@ public class Parameterization implements Comparable<Parameterization> {
             // Invalid attribute name, so just plug in the field spec.
             retVal = fieldSpec;
         } else {
-            // Get the value list for this entity.
-            List<String> parms = this.valueMap.get(parts[0]);
             // Extract the listed parameter.
-            retVal = parms.get(idx);
+            retVal = this.values[entity.getSlotBase() + idx];
         }
         return retVal;
     }
 
     @Override
     public int hashCode() {
-        int retVal = 1;
-        for (var thisEntry : this.valueMap.entrySet()) {
-            retVal = retVal * 31 + thisEntry.getKey().hashCode();
-            List<String> thisList = thisEntry.getValue();
-            for (String value : thisList)
-                retVal = retVal * 29 + value.hashCode();
-        }
-        return retVal;
+        return this.hash;
     }
 
     @Override
@@ -171,98 +159,73 @@ public class Parameterization implements Comparable<Parameterization> {
         if (getClass() != obj.getClass())
             return false;
         Parameterization other = (Parameterization) obj;
-        for (var thisEntry : this.valueMap.entrySet()) {
-            List<String> otherValue = other.valueMap.get(thisEntry.getKey());
-            List<String> thisValue = thisEntry.getValue();
-            if (otherValue == null || otherValue.size() != thisValue.size())
-                return false;
-            for (int i = 0; i < otherValue.size(); i++) {
-                if (! thisValue.get(i).equals(otherValue.get(i)))
-                    return false;
-            }
-        }
-        return true;
+        if (this.hash != other.hash)
+            return false;
+        // Shared values compare by reference inside String.equals, so this is usually a reference check.
+        return Arrays.equals(this.values, other.values);
     }
 
     @Override
     public int compareTo(Parameterization o) {
-        // To compare parameterizations, we compare the value strings by key.  Note that the
-        // key sets are sorted, and we use a standard data-processing merge algorithm.
-        int retVal = 0;
-        var thisIter = this.valueMap.entrySet().iterator();
-        var oIter = o.valueMap.entrySet().iterator();
-        var thisEntry = getNextEntry(thisIter);
-        var oEntry = getNextEntry(oIter);
-        while (retVal == 0 && thisEntry != MAX_ENTRY || oEntry != MAX_ENTRY) {
-            // Compare the keys.
-            retVal = thisEntry.getKey().compareTo(oEntry.getKey());
-            if (retVal == 0) {
-                // Here we have matching keys, so we need to compare the value lists.
-                List<String> thisValue = thisEntry.getValue();
-                List<String> oValue = oEntry.getValue();
-                final int n = (thisValue.size() < oValue.size() ? thisValue.size() : oValue.size());
-                for (int i = 0; retVal == 0 && i < n; i++)
-                    retVal = thisValue.get(i).compareTo(oValue.get(i));
-                // Handle unequal lengths.
-                if (retVal == 0) {
-                    if (n < thisValue.size())
-                        retVal = 1;
-                    else if (n < oValue.size())
-                        retVal = -1;
+        // We compare the value lists entity by entity in name order. If only one parameterization has values
+        // for an entity, it sorts first, since its next entity name is the smaller one.
+        int retVal = this.values.length - o.values.length;
+        List<ProposalEntity> entities = this.layout.getSortedEntities();
+        final int n = entities.size();
+        for (int i = 0; retVal == 0 && i < n; i++) {
+            ProposalEntity entity = entities.get(i);
+            final int base = entity.getSlotBase();
+            final boolean thisFilled = (this.values[base] != null);
+            final boolean oFilled = (o.values[base] != null);
+            if (thisFilled != oFilled)
+                retVal = (thisFilled ? -1 : 1);
+            else if (thisFilled) {
+                final int end = base + entity.size();
+                for (int j = base; retVal == 0 && j < end; j++) {
+                    if (this.values[j] != o.values[j])
+                        retVal = this.values[j].compareTo(o.values[j]);
                 }
             }
-            thisEntry = getNextEntry(thisIter);
-            oEntry = getNextEntry(oIter);
         }
         return retVal;
     }
 
-    /**
-     * Get the next entry in a map iterator, or the trailer entry if the iterator is at the end.
-     *
-     * @param iter		iterator through a map entry set
-     *
-     * @return the next map entry, or a dummy trailer entry if we are at the end
-     */
-    private static Map.Entry<String, List<String>> getNextEntry(Iterator<Map.Entry<String, List<String>>> iter) {
-        Map.Entry<String, List<String>> retVal;
-        if (iter.hasNext())
-            retVal = iter.next();
-        else
-            retVal = MAX_ENTRY;
-        return retVal;
-    }
-
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        for (var entry : this.valueMap.entrySet()) {
-            sb.append(entry.getKey()).append("=[");
-            List<String> values = entry.getValue();
-            for (int i = 0; i < values.size(); i++) {
-                sb.append(values.get(i));
-                if (i < values.size() - 1)
-                    sb.append(", ");
+        for (ProposalEntity entity : this.layout.getSortedEntities()) {
+            final int base = entity.getSlotBase();
+            if (this.values[base] != null) {
+                sb.append(entity.getName()).append("=[");
+                final int n = entity.size();
+                for (int i = 0; i < n; i++) {
+                    sb.append(this.values[base + i]);
+                    if (i < n - 1)
+                        sb.append(", ");
+                }
+                sb.append("] ");
             }
-            sb.append("] ");
         }
         return "P{" + sb.toString().trim() + "}";
     }
 
     /**
      * Convert this parameterization to JSON.
-     * 
+     *
      * @return a JSON object representing this parameterization
      */
     public JsonObject toJson() {
         JsonObject retVal = new JsonObject();
-        for (var entry : this.valueMap.entrySet()) {
-            JsonArray jArray = new JsonArray();
-            jArray.addAll(entry.getValue());
-            retVal.put(entry.getKey(), jArray);
+        for (ProposalEntity entity : this.layout.getSortedEntities()) {
+            final int base = entity.getSlotBase();
+            if (this.values[base] != null) {
+                JsonArray jArray = new JsonArray();
+                for (int i = 0; i < entity.size(); i++)
+                    jArray.add(this.values[base + i]);
+                retVal.put(entity.getName(), jArray);
+            }
         }
         return retVal;
     }
-    
 
 }
@@ -0,0 +1,170 @@
+/**
+ *
+ */
+package org.theseed.memdb.query.proposal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.QueryEntityInstance;
+
+/**
+ * The path planner decides which end of a query path to start from when computing response sets.  Every
+ * relationship in the database is stored in both directions, so the path can be traversed backward, and the
+ * response sets at the end are the same.  The cost of a traversal is estimated as the number of entity instances
+ * visited, using the instance count of the starting type, the mean fan-out of each relationship crossed, and
+ * the yield of each entity's proposal fields.
+ *
+ * The yield of an entity is the mean number of parameterizations produced by one of its instances.  This is less
+ * than 1 for a filtering field and greater than 1 for a list-valued field.  It is estimated from a sample of
+ * the entity type's instances.  If the starting entity has a filtering field with an attribute index, the
+ * number of candidates in the index is used instead.
+ *
+ * If an entity type occurs more than once in the path, the output values for a response depend on the path order,
+ * so the path is always traversed forward.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class PathPlanner {
+
+    // FIELDS
+    /** logging facility */
+    private static final Logger log = LoggerFactory.getLogger(PathPlanner.class);
+    /** database being queried */
+    private final QueryDbInstance db;
+    /** maximum number of instances of the starting entity type to process, or 0 for all */
+    private final int maxLimit;
+    /** map of proposal entities to estimated yields */
+    private final Map<ProposalEntity, Double> yieldMap;
+    /** maximum number of instances to sample when estimating the yield of an entity */
+    public static final int SAMPLE_SIZE = 1000;
+
+    /**
+     * Create a path planner for a database.
+     *
+     * @param db			database being queried
+     * @param maxLimit		maximum number of starting-type instances to process, or 0 for all
+     */
+    public PathPlanner(QueryDbInstance db, int maxLimit) {
+        this.db = db;
+        this.maxLimit = maxLimit;
+        this.yieldMap = new HashMap<>();
+    }
+
+    /**
+     * Choose the order in which to traverse a query path.
+     *
+     * @param query		query whose path is being planned
+     * @param path		list of proposal entities in path order
+     *
+     * @return the path itself if it should be traversed forward, or a reversed copy if it should be
+     * 		   traversed backward
+     */
+    public List<ProposalEntity> plan(ProposalQuery query, List<ProposalEntity> path) {
+        List<ProposalEntity> retVal = path;
+        // Verify that no entity type occurs twice.
+        Set<String> types = new HashSet<>();
+        boolean unique = true;
+        for (ProposalEntity entity : path)
+            unique = types.add(entity.getName()) && unique;
+        if (! unique)
+            log.info("Path for {} has repeated entity types and must be traversed forward.", query);
+        else if (path.size() > 1) {
+            List<ProposalEntity> reversed = new ArrayList<>(path);
+            Collections.reverse(reversed);
+            double forwardCost = this.estimateCost(query, path);
+            double reverseCost = this.estimateCost(query, reversed);
+            log.info("Estimated cost is {} forward and {} reversed.", String.format("%.0f", forwardCost),
+                    String.format("%.0f", reverseCost));
+            if (reverseCost < forwardCost) {
+                log.info("Path will be traversed starting from {}.", reversed.get(0).getName());
+                retVal = reversed;
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Estimate the cost of traversing a path in a particular order.  The cost is the estimated number of
+     * entity instances visited.
+     *
+     * @param query		query whose path is being planned
+     * @param order		list of proposal entities in traversal order
+     *
+     * @return the estimated number of entity instances visited
+     */
+    protected double estimateCost(ProposalQuery query, List<ProposalEntity> order) {
+        ProposalEntity prev = order.get(0);
+        // If the starting entity has an attribute index, only the indexed candidates are visited, and
+        // we assume they all pass.
+        Collection<EntityInstance> candidates = prev.getCandidates(this.db);
+        double visits = (candidates == null ? this.db.getTypeCount(prev.getName()) : candidates.size());
+        if (this.maxLimit > 0 && visits > this.maxLimit)
+            visits = this.maxLimit;
+        double retVal = visits;
+        double responses = (candidates == null ? visits * this.getYield(query, prev) : visits);
+        for (int i = 1; i < order.size(); i++) {
+            ProposalEntity curr = order.get(i);
+            visits = responses * this.db.getFanOut(prev.getName(), curr.getName()).getMean();
+            retVal += visits;
+            responses = visits * this.getYield(query, curr);
+            prev = curr;
+        }
+        return retVal;
+    }
+
+    /**
+     * Compute the yield of a proposal entity, that is, the mean number of parameterizations produced by
+     * one of its instances.
+     *
+     * @param query		query containing the proposal entity
+     * @param entity	proposal entity of interest
+     *
+     * @return the estimated yield of the proposal entity
+     */
+    private double getYield(ProposalQuery query, ProposalEntity entity) {
+        return this.yieldMap.computeIfAbsent(entity, x -> this.estimateYield(query, x));
+    }
+
+    /**
+     * Estimate the yield of a proposal entity from a random sample of its instances.  The sample is taken with
+     * a private generator derived from the query's seed, so planning does not disturb the query's own random
+     * choices, and a planned query that keeps the forward order produces the same output as an unplanned one.
+     *
+     * @param query		query containing the proposal entity
+     * @param entity	proposal entity of interest
+     *
+     * @return the estimated yield of the proposal entity
+     */
+    private double estimateYield(ProposalQuery query, ProposalEntity entity) {
+        double retVal = 1.0;
+        if (entity.size() > 0) {
+            Parameterization blank = query.createParameterization();
+            Random rand = new Random(query.getSeed() * 31 + entity.getName().hashCode());
+            Collection<EntityInstance> sample = this.db.getSomeEntities(entity.getName(), SAMPLE_SIZE, rand);
+            int sampled = 0;
+            int produced = 0;
+            for (EntityInstance instance : sample) {
+                produced += blank.addInstance((QueryEntityInstance) instance, entity).size();
+                sampled++;
+            }
+            if (sampled > 0)
+                retVal = (double) produced / sampled;
+            log.debug("Yield for {} is {}.", entity.getName(), retVal);
+        }
+        return retVal;
+    }
+
+}
@@ -0,0 +1,340 @@
+/**
+ *
+ */
+package org.theseed.memdb.query.proposal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.QueryEntityInstance;
+
+/**
+ * A proposal batch is a group of proposal queries that share the same entity path and response set limit.  Instead of traversing
+ * the path once per query, the batch traverses it once for the whole group.  Each chain of entity instances
+ * along the path is built once, and the proposal fields of every query in the batch are evaluated against
+ * it as it is built.  A branch of the traversal is abandoned as soon as every query has rejected it.  At the
+ * end of the path, each query adds the chain to its own response sets.
+ *
+ * The traversal is depth-first from each instance of the first entity type, so only the chains for one
+ * starting instance are in progress at any time.  Every query in the batch has the same limit, so the starting
+ * instances are sampled exactly as they would be for a single query.  The response set size limit is only applied
+ * to the response sets at the end of the path, since there are no intermediate response sets; and the path is
+ * always traversed forward.  If every query in the batch has an attribute index for the first entity, only
+ * the indexed candidates are traversed.  A batch with a single query simply computes the query's response
+ * sets in the normal way.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ProposalBatch {
+
+    // FIELDS
+    /** logging facility */
+    private static final Logger log = LoggerFactory.getLogger(ProposalBatch.class);
+    /** list of queries in the batch */
+    private final List<ProposalQuery> queries;
+    /** names of the entity types along the path */
+    private final String[] typeNames;
+
+    /**
+     * This object holds the response sets found by a traversal.  In a parallel traversal, each thread builds
+     * its own partial results, and these are merged at the end.
+     */
+    private class Traversal {
+
+        /** map of parameterizations to response sets, for each query */
+        private final List<Map<Parameterization, ProposalResponseSet>> responseMaps;
+        /** number of instance chains abandoned because all the queries rejected them */
+        private int rejectCount;
+        /** number of instance chains rejected by each query's fields */
+        private final long[] queryRejectCounts;
+        /** number of responses added to response sets, for each query */
+        private final long[] newResponseCounts;
+        /** number of responses discarded because their response sets were too big, for each query */
+        private final long[] tooBigCounts;
+
+        /**
+         * Create a new, empty traversal.
+         */
+        protected Traversal() {
+            final int n = ProposalBatch.this.queries.size();
+            this.responseMaps = new ArrayList<>(n);
+            for (int q = 0; q < n; q++)
+                this.responseMaps.add(new HashMap<>());
+            this.rejectCount = 0;
+            this.queryRejectCounts = new long[n];
+            this.newResponseCounts = new long[n];
+            this.tooBigCounts = new long[n];
+        }
+
+        /**
+         * Traverse the query path from an instance of the first entity type.
+         *
+         * @param origin	starting entity instance
+         */
+        protected void traverse(EntityInstance origin) {
+            final List<ProposalQuery> queries = ProposalBatch.this.queries;
+            List<Set<Parameterization>> blanks = new ArrayList<>(queries.size());
+            for (ProposalQuery query : queries)
+                blanks.add(Collections.singleton(query.createParameterization()));
+            this.process(null, (QueryEntityInstance) origin, 0, blanks);
+        }
+
+        /**
+         * Add an entity instance to a chain and evaluate it for every query.  If the chain is at the end of the
+         * path, it is added to the response sets; otherwise, the traversal continues down the path.
+         *
+         * @param prefix		chain for the preceding part of the path, or NULL if this is the first instance
+         * @param instance		entity instance to add
+         * @param step			index of the instance's position on the path
+         * @param parentParms	parameterizations of the prefix for each query, or NULL for a query that
+         * 						has rejected the prefix
+         */
+        private void process(ProposalResponse prefix, QueryEntityInstance instance, int step,
+                List<Set<Parameterization>> parentParms) {
+            final List<ProposalQuery> queries = ProposalBatch.this.queries;
+            final int n = queries.size();
+            // Compute the parameterizations of the new chain for each query.
+            List<Set<Parameterization>> newParms = new ArrayList<>(n);
+            boolean accepted = false;
+            for (int q = 0; q < n; q++) {
+                Set<Parameterization> parms = parentParms.get(q);
+                Set<Parameterization> result = null;
+                if (parms != null) {
+                    ProposalEntity entity = queries.get(q).getPathEntities().get(step);
+                    if (parms.size() == 1)
+                        result = parms.iterator().next().addInstance(instance, entity);
+                    else {
+                        result = new TreeSet<>();
+                        for (Parameterization parm : parms)
+                            result.addAll(parm.addInstance(instance, entity));
+                    }
+                    if (result.isEmpty()) {
+                        result = null;
+                        this.queryRejectCounts[q]++;
+                    } else
+                        accepted = true;
+                }
+                newParms.add(result);
+            }
+            if (! accepted)
+                this.rejectCount++;
+            else if (step < ProposalBatch.this.typeNames.length - 1) {
+                // Here we must continue down the path. Duplicate connections would only produce duplicate
+                // chains, so we remove them.
+                ProposalResponse chain = (prefix == null ? new ProposalResponse(instance) : new ProposalResponse(prefix, instance));
+                final int nextStep = step + 1;
+                Collection<EntityInstance> targets = instance.getTargetsOfType(ProposalBatch.this.typeNames[nextStep]);
+                if (targets.size() > 1)
+                    targets = new LinkedHashSet<>(targets);
+                for (EntityInstance target : targets)
+                    this.process(chain, (QueryEntityInstance) target, nextStep, newParms);
+            } else {
+                // Here we have a complete chain. The chain object is only built if some query needs to store it.
+                ProposalResponse chain = null;
+                for (int q = 0; q < n; q++) {
+                    Set<Parameterization> parms = newParms.get(q);
+                    if (parms != null) {
+                        ProposalQuery query = queries.get(q);
+                        Map<Parameterization, ProposalResponseSet> responseMap = this.responseMaps.get(q);
+                        final boolean aggregate = query.isAggregateOnly();
+                        for (Parameterization parm : parms) {
+                            ProposalResponseSet responses = responseMap.computeIfAbsent(parm, x -> new ProposalResponseSet(x));
+                            if (responses.checkStatus(query.getMaxResponseLimit())) {
+                                if (aggregate)
+                                    responses.addAggregate(query.getAggregateValues(prefix, instance));
+                                else {
+                                    if (chain == null)
+                                        chain = (prefix == null ? new ProposalResponse(instance) : new ProposalResponse(prefix, instance));
+                                    responses.addResponse(chain);
+                                }
+                                this.newResponseCounts[q]++;
+                            } else {
+                                this.tooBigCounts[q]++;
+                                responses.countResponse();
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Merge another partial traversal into this one.
+         *
+         * @param other		other traversal to merge
+         *
+         * @return the merged traversal
+         */
+        protected Traversal merge(Traversal other) {
+            final List<ProposalQuery> queries = ProposalBatch.this.queries;
+            for (int q = 0; q < queries.size(); q++) {
+                final int limit = queries.get(q).getMaxResponseLimit();
+                Map<Parameterization, ProposalResponseSet> responseMap = this.responseMaps.get(q);
+                for (ProposalResponseSet otherSet : other.responseMaps.get(q).values()) {
+                    ProposalResponseSet responses = responseMap.putIfAbsent(otherSet.getParameters(), otherSet);
+                    if (responses != null)
+                        responses.merge(otherSet, limit);
+                }
+            }
+            this.rejectCount += other.rejectCount;
+            for (int q = 0; q < queries.size(); q++) {
+                this.queryRejectCounts[q] += other.queryRejectCounts[q];
+                this.newResponseCounts[q] += other.newResponseCounts[q];
+                this.tooBigCounts[q] += other.tooBigCounts[q];
+            }
+            return this;
+        }
+
+    }
+
+    /**
+     * Create a new, empty proposal batch for a query path.
+     *
+     * @param query		first query in the batch
+     */
+    public ProposalBatch(ProposalQuery query) {
+        this.queries = new ArrayList<>();
+        this.queries.add(query);
+        List<ProposalEntity> path = query.getPathEntities();
+        this.typeNames = new String[path.size()];
+        for (int i = 0; i < this.typeNames.length; i++)
+            this.typeNames[i] = path.get(i).getName();
+    }
+
+    /**
+     * Organize a list of queries into batches by path and response set limit.  The limit also controls the number
+     * of starting instances sampled, so queries with different limits (such as a group query, which never has one)
+     * cannot share a traversal.  The batches are in the order of their first queries, and the queries in each batch
+     * are in their original order.
+     *
+     * @param queries	list of queries to organize
+     *
+     * @return a list of query batches
+     */
+    public static List<ProposalBatch> group(List<ProposalQuery> queries) {
+        Map<String, ProposalBatch> batchMap = new LinkedHashMap<>();
+        for (ProposalQuery query : queries) {
+            String key = query.getPathKey() + "\t" + query.getMaxResponseLimit();
+            ProposalBatch batch = batchMap.get(key);
+            if (batch == null)
+                batchMap.put(key, new ProposalBatch(query));
+            else
+                batch.queries.add(query);
+        }
+        return new ArrayList<>(batchMap.values());
+    }
+
+    /**
+     * @return the list of queries in this batch
+     */
+    public List<ProposalQuery> getQueries() {
+        return this.queries;
+    }
+
+    /**
+     * @return the number of queries in this batch
+     */
+    public int size() {
+        return this.queries.size();
+    }
+
+    /**
+     * Compute the response sets for all the queries in this batch, optionally traversing the path in parallel.
+     * In parallel mode, the starting instances are divided among the threads of the pool, each thread builds
+     * its own response sets, and these are merged at the end.
+     *
+     * @param db	target database instance
+     * @param pool	thread pool for parallel traversal, or NULL to traverse on the current thread
+     *
+     * @return a list of response set lists, one per query in the batch, in query order
+     */
+    public List<List<ProposalResponseSet>> computeSets(QueryDbInstance db, ForkJoinPool pool) {
+        List<List<ProposalResponseSet>> retVal = new ArrayList<>(this.queries.size());
+        if (this.queries.size() == 1)
+            retVal.add(this.queries.get(0).computeSets(db, pool));
+        else {
+            Collection<EntityInstance> originInstances = this.getOriginInstances(db);
+            log.info("Traversing path {} for {} queries from {} instances.", String.join(" ", this.typeNames),
+                    this.queries.size(), originInstances.size());
+            long start = System.nanoTime();
+            Traversal traversal;
+            if (pool == null) {
+                traversal = new Traversal();
+                for (EntityInstance origin : originInstances)
+                    traversal.traverse(origin);
+            } else try {
+                traversal = pool.submit(() -> originInstances.parallelStream().collect(
+                        Collector.of(() -> new Traversal(), Traversal::traverse, Traversal::merge))).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Path traversal interrupted.", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error during parallel path traversal.", e.getCause());
+            }
+            long nanos = System.nanoTime() - start;
+            log.info("Created {} new responses, {} instance chains rejected, {} responses in sets too big.",
+                    Arrays.stream(traversal.newResponseCounts).sum(), traversal.rejectCount,
+                    Arrays.stream(traversal.tooBigCounts).sum());
+            // The traversal time is shared by the whole batch, but the response counts are the query's own.
+            final int n = this.queries.size();
+            for (int q = 0; q < n; q++)
+                retVal.add(this.queries.get(q).finishSets(traversal.responseMaps.get(q), nanos, n,
+                        traversal.newResponseCounts[q], traversal.queryRejectCounts[q], traversal.tooBigCounts[q]));
+        }
+        return retVal;
+    }
+
+    /**
+     * Compute the instances of the first entity type from which to start the traversal.  If every query has
+     * an attribute index for the first entity, the union of the index candidates is used; otherwise, all the
+     * instances are used.  The result is sampled down to the response set limit shared by the queries.
+     *
+     * @param db	target database instance
+     *
+     * @return the starting instances for the traversal
+     */
+    private Collection<EntityInstance> getOriginInstances(QueryDbInstance db) {
+        // The union is kept in ID order, so the sample does not depend on the order of the queries.
+        Set<EntityInstance> candidates = new TreeSet<>(Comparator.comparing(EntityInstance::getId));
+        boolean indexed = true;
+        for (ProposalQuery query : this.queries) {
+            if (indexed) {
+                Collection<EntityInstance> queryCandidates = query.getPathEntities().get(0).getCandidates(db);
+                if (queryCandidates == null)
+                    indexed = false;
+                else
+                    candidates.addAll(queryCandidates);
+            }
+        }
+        // The sample is taken using the first query's limit and random number generator.
+        ProposalQuery first = this.queries.get(0);
+        final int limit = first.getMaxResponseLimit();
+        Collection<EntityInstance> retVal;
+        if (! indexed)
+            retVal = db.getSomeEntities(this.typeNames[0], limit, first.getRandom());
+        else {
+            log.info("{} candidate instances of {} found in attribute indexes.", candidates.size(), this.typeNames[0]);
+            retVal = first.selectSample(candidates, limit);
+        }
+        return retVal;
+    }
+
+}
@@ -4,8 +4,12 @@
 package org.theseed.memdb.query.proposal;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
+import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.query.QueryDbInstance;
+
 /**
  * This object represents a single entity along the query path for a query proposal. It contains
  * the entity name and a list of the attribute proposals.
@@ -20,6 +24,8 @@ public class ProposalEntity {
     private String entityName;
     /** list of attribute proposals */
     private List<ProposalField> fields;
+    /** index of the first parameter slot for this entity's fields */
+    private int slotBase;
 
     /**
      * Construct a new, blank proposal entity.
@@ -27,6 +33,7 @@ public class ProposalEntity {
     public ProposalEntity(String name) {
         this.entityName = name;
         this.fields = new ArrayList<ProposalField>(5);
+        this.slotBase = 0;
     }
 
     /**
@@ -68,4 +75,39 @@ public class ProposalEntity {
         return this.fields.size();
     }
 
+    /**
+     * Use the attribute indexes to find the entity instances that could satisfy this entity proposal.
+     * If more than one field has an index, the smallest candidate set is used.  The candidates must still be
+     * checked against all the fields.
+     *
+     * @param db	database being queried
+     *
+     * @return the candidate instances, or NULL if no field has a useful index
+     */
+    public Collection<EntityInstance> getCandidates(QueryDbInstance db) {
+        Collection<EntityInstance> retVal = null;
+        for (ProposalField field : this.fields) {
+            Collection<EntityInstance> candidates = field.getCandidates(db);
+            if (candidates != null && (retVal == null || candidates.size() < retVal.size()))
+                retVal = candidates;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the index of the first parameter slot for this entity's fields
+     */
+    public int getSlotBase() {
+        return this.slotBase;
+    }
+
+    /**
+     * Specify the index of the first parameter slot for this entity's fields.
+     *
+     * @param slotBase	the slot index to set
+     */
+    protected void setSlotBase(int slotBase) {
+        this.slotBase = slotBase;
+    }
+
 }
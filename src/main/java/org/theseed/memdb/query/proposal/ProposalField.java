@@ -3,12 +3,16 @@
  */
 package org.theseed.memdb.query.proposal;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Strings;
 import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.query.AttributeTable;
+import org.theseed.memdb.query.QueryDbInstance;
 import org.theseed.memdb.query.QueryEntityInstance;
 
 /**
@@ -26,9 +30,35 @@ public abstract class ProposalField {
     private String entityType;
     /** attribute name */
     private String attributeName;
+    /** attribute slot resolved for the most recently used attribute table */
+    private volatile ResolvedSlot resolvedSlot;
     /** empty list, sometimes used as a return value */
     protected static final List<String> EMPTY_LIST = Collections.emptyList();
 
+    /**
+     * This object pairs an attribute table with the slot of this field's attribute in it.  It is immutable,
+     * so it can be replaced safely while other threads are evaluating the field.
+     */
+    private static class ResolvedSlot {
+
+        /** attribute table for which the slot was resolved */
+        private final AttributeTable table;
+        /** slot of the attribute in the table */
+        private final int slot;
+
+        /**
+         * Resolve the slot of an attribute in an attribute table.
+         *
+         * @param table		attribute table of interest
+         * @param attrName	name of the attribute
+         */
+        protected ResolvedSlot(AttributeTable table, String attrName) {
+            this.table = table;
+            this.slot = table.getSlot(attrName);
+        }
+
+    }
+
     /**
      * Construct a proposal for a specified field's use as a parameter.
      *
@@ -60,6 +90,24 @@ public abstract class ProposalField {
         return this.attributeName;
     }
 
+    /**
+     * Compute the slot of this field's attribute in an entity instance's attribute table.  The slot is
+     * resolved once and then reused for every instance sharing the same table.
+     *
+     * @param instance	entity instance of interest
+     *
+     * @return the attribute slot, or -1 if the attribute is not present for the instance's type
+     */
+    protected int getSlot(QueryEntityInstance instance) {
+        AttributeTable table = instance.getAttributeTable();
+        ResolvedSlot resolved = this.resolvedSlot;
+        if (resolved == null || resolved.table != table) {
+            resolved = new ResolvedSlot(table, this.attributeName);
+            this.resolvedSlot = resolved;
+        }
+        return resolved.slot;
+    }
+
     /**
      * Extract the appropriate value for this field proposal from the specified entity instance.
      *
@@ -69,6 +117,19 @@ public abstract class ProposalField {
      */
     protected abstract List<String> getValue(QueryEntityInstance instance);
 
+    /**
+     * Find the entity instances that could satisfy this field proposal using an attribute index. The default
+     * is to return NULL, indicating no index is useful.
+     *
+     * @param db		database being queried
+     *
+     * @return a collection of all the instances that could satisfy this proposal, or NULL if every instance
+     * 		   must be checked
+     */
+    protected Collection<EntityInstance> getCandidates(QueryDbInstance db) {
+        return null;
+    }
+
     /**
      * @return the full name of the target field
      */
@@ -6,18 +6,25 @@ package org.theseed.memdb.query.proposal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.DbInstance;
 import org.theseed.memdb.EntityInstance;
 import org.theseed.memdb.query.QueryDbInstance;
 import org.theseed.memdb.query.QueryEntityInstance;
@@ -44,6 +51,24 @@ public abstract class ProposalQuery {
     private String questionString;
     /** cutoff limit for response set sizes */
     private final int maxResponseLimit;
+    /** parameter slot layout for this query's parameterizations */
+    private final ParameterLayout layout;
+    /** target response size for early pruning, or 0 if pruning is turned off */
+    private int targetSize;
+    /** number of response sets pruned in the last computation */
+    private int prunedSets;
+    /** number of responses discarded by pruning in the last computation */
+    private long prunedResponses;
+    /** number of response sets pruned before the end of the path in the last computation */
+    private int earlyPrunedSets;
+    /** TRUE if the path planner should choose the traversal direction */
+    private boolean planning;
+    /** seed for the random number generator */
+    private long seed;
+    /** random number generator for sampling and answer selection */
+    private Random rand;
+    /** cost metrics for the last computation, or NULL if there has been none */
+    private QueryMetrics.TemplateMetrics metrics;
     /** pattern for finding attribute substitution elements */
     private static final Pattern FIELD_PATTERN = Pattern.compile("\\{\\{([=<>?])?(\\w+\\.\\w+)(?::([^{}]+))?\\}\\}");
 
@@ -91,7 +116,81 @@ public abstract class ProposalQuery {
         }
         // Save the response set size cutoff.
         this.maxResponseLimit = maxLimit;
+        // Now that all the fields are known, we can assign the parameter slots.
+        this.layout = new ParameterLayout(this.path);
+        // Denote there is no pruning and the path is traversed forward.
+        this.targetSize = 0;
+        this.planning = false;
+        this.setSeed(new Random().nextLong());
+        this.metrics = null;
+    }
+
+    /**
+     * Specify the random number seed for this query.  All the random choices made while computing and
+     * writing the responses (sampling the starting instances, shuffling, and choosing answers) come from a
+     * generator with this seed, so a fixed seed makes the output reproducible.
+     *
+     * @param seed		random number seed to use
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        this.rand = new Random(seed);
+    }
+
+    /**
+     * @return the random number seed for this query
+     */
+    public long getSeed() {
+        return this.seed;
+    }
 
+    /**
+     * @return the random number generator for this query
+     */
+    public Random getRandom() {
+        return this.rand;
+    }
+
+    /**
+     * Select a random sample of items using this query's random number generator.  A random-access list
+     * is sampled in place; any other collection must be copied first.
+     *
+     * @param items		collection of items to sample
+     * @param limit		maximum number of items to select, or 0 for all of them
+     *
+     * @return the original collection if it is within the limit, else a list of randomly-selected items
+     */
+    protected <T> Collection<T> selectSample(Collection<T> items, int limit) {
+        Collection<T> retVal = items;
+        if (limit > 0 && items.size() > limit) {
+            List<T> list = (items instanceof List<T> itemList && items instanceof RandomAccess ? itemList
+                    : new ArrayList<>(items));
+            retVal = DbInstance.selectSample(list, limit, this.rand);
+        }
+        return retVal;
+    }
+
+    /**
+     * Specify whether or not the path planner should choose the traversal direction. If planning is turned off
+     * (the default), the path is always traversed forward.  A planned traversal produces the same response sets
+     * only if there is no response set limit, since otherwise the limit is applied to different intermediate sets
+     * and the starting instances may be sampled from a different entity type.
+     *
+     * @param planning	TRUE to plan the traversal direction, FALSE to always traverse forward
+     */
+    public void setPlanning(boolean planning) {
+        this.planning = planning;
+    }
+
+    /**
+     * Specify the target response size for early pruning.  If a response set's output is known to be larger
+     * than the target, it is discarded as soon as this is discovered, rather than expanded to the end of the
+     * path.  A response set is only pruned if it would certainly fail the target after a complete expansion.
+     *
+     * @param targetSize	maximum desirable response size, or 0 to turn off pruning
+     */
+    public void setTargetSize(int targetSize) {
+        this.targetSize = targetSize;
     }
 
     /**
@@ -101,6 +200,142 @@ public abstract class ProposalQuery {
         return this.path.size();
     }
 
+    /**
+     * @return the list of entity proposals along the query path
+     */
+    protected List<ProposalEntity> getPathEntities() {
+        return this.path;
+    }
+
+    /**
+     * @return a string identifying the entity types along the query path
+     */
+    public String getPathKey() {
+        return this.path.stream().map(x -> x.getName()).collect(Collectors.joining(" "));
+    }
+
+    /**
+     * @return the cutoff limit for response set sizes, or 0 if there is none
+     */
+    public int getMaxResponseLimit() {
+        return this.maxResponseLimit;
+    }
+
+    /**
+     * This object holds the results of expanding response sets to the next entity on the query path. In
+     * a parallel expansion, each thread builds its own partial expansion, and these are merged at the end
+     * of the path step.
+     */
+    private class Expansion {
+
+        /** map of parameterizations to new response sets */
+        private Map<Parameterization, ProposalResponseSet> responseMap;
+        /** number of new responses created */
+        private int newResponseCount;
+        /** number of responses rejected */
+        private int rejectCount;
+        /** number of responses discarded because their sets were too big */
+        private int tooBigCount;
+        /** proposal for the entity being added */
+        private final ProposalEntity currEntity;
+        /** TRUE if the new responses should be tallied instead of stored */
+        private final boolean aggregate;
+
+        /**
+         * Create a new, empty expansion.
+         *
+         * @param entity	proposal for the entity being added to the responses
+         * @param aggregate	TRUE if the new responses should be tallied instead of stored
+         */
+        protected Expansion(ProposalEntity entity, boolean aggregate) {
+            this.responseMap = new HashMap<>();
+            this.newResponseCount = 0;
+            this.rejectCount = 0;
+            this.tooBigCount = 0;
+            this.currEntity = entity;
+            this.aggregate = aggregate;
+        }
+
+        /**
+         * Expand the responses in a response set to include the current entity, and store the results in
+         * this expansion's response map.
+         *
+         * @param responseSet	response set to expand
+         */
+        protected void expand(ProposalResponseSet responseSet) {
+            // Get this response set's parameterization.
+            Parameterization mainParms = responseSet.getParameters();
+            for (ProposalResponse response : responseSet.getResponses()) {
+                // Here we have a response containing instances of all the previous entities on
+                // the path. Get all the new entity instances further down the path.
+                QueryEntityInstance endInstance = response.getLastEntity();
+                Collection<EntityInstance> newInstances = endInstance.getTargetsOfType(this.currEntity.getName());
+                // Tallied responses cannot be de-duplicated by the response set, so we remove duplicate targets here.
+                if (this.aggregate && newInstances.size() > 1)
+                    newInstances = new LinkedHashSet<>(newInstances);
+                for (var newInstance : newInstances) {
+                    // Create a response that has the new entity instance in it.
+                    QueryEntityInstance queryInstance = (QueryEntityInstance) newInstance;
+                    // Get the parameterizations for this new response.
+                    Set<Parameterization> newParms = mainParms.addInstance(queryInstance, this.currEntity);
+                    if (newParms.isEmpty()) {
+                        this.rejectCount++;
+                        log.debug("Rejecting response {} with new instance {}.", response, queryInstance);
+                    } else {
+                        log.debug("Accepting response {} with {} parameterizations and new instance {}.",
+                        response, newParms.size(), queryInstance);
+                    }
+                    // Put them in the map.
+                    for (Parameterization parms : newParms) {
+                        ProposalResponseSet responses = this.responseMap.computeIfAbsent(parms, x -> new ProposalResponseSet(x));
+                        // If this response set is acceptable, add the new response.
+                        if (responses.isActive()) {
+                            if (responses.checkStatus(ProposalQuery.this.maxResponseLimit)) {
+                                if (this.aggregate)
+                                    responses.addAggregate(ProposalQuery.this.getAggregateValues(response, queryInstance));
+                                else
+                                    responses.addResponse(new ProposalResponse(response, queryInstance));
+                                this.newResponseCount++;
+                            } else {
+                                this.tooBigCount++;
+                                responses.countResponse();
+                            }
+                        } else
+                            responses.countResponse();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Merge another partial expansion into this one. Response sets with the same parameterization are
+         * combined, and the size limit is re-applied to the combined sets.
+         *
+         * @param other		other expansion to merge
+         *
+         * @return the merged expansion
+         */
+        protected Expansion merge(Expansion other) {
+            // Merge the smaller map into the larger one.
+            if (this.responseMap.size() < other.responseMap.size()) {
+                var temp = this.responseMap;
+                this.responseMap = other.responseMap;
+                other.responseMap = temp;
+            }
+            final int limit = ProposalQuery.this.maxResponseLimit;
+            for (ProposalResponseSet otherSet : other.responseMap.values()) {
+                ProposalResponseSet responses = this.responseMap.putIfAbsent(otherSet.getParameters(), otherSet);
+                if (responses != null)
+                    responses.merge(otherSet, limit);
+            }
+            this.newResponseCount += other.newResponseCount;
+            this.rejectCount += other.rejectCount;
+            this.tooBigCount += other.tooBigCount;
+            return this;
+        }
+
+    }
+
     /**
      * Compute good response sets for this proposal against the specified database instance.
      *
@@ -109,25 +344,68 @@ public abstract class ProposalQuery {
      * @return a list of proposal response sets containing valid answers
      */
     public List<ProposalResponseSet> computeSets(QueryDbInstance db) {
+        return this.computeSets(db, null);
+    }
+
+    /**
+     * Compute good response sets for this proposal against the specified database instance, optionally
+     * expanding the response sets in parallel.  In parallel mode, each path step is divided among the threads
+     * of the pool, each thread expands its response sets into a private map, and the maps are merged when the
+     * step is complete.
+     *
+     * @param db	target database instance
+     * @param pool	thread pool for parallel expansion, or NULL to expand on the current thread
+     *
+     * @return a list of proposal response sets containing valid answers
+     */
+    public List<ProposalResponseSet> computeSets(QueryDbInstance db, ForkJoinPool pool) {
         // Create a map of parameterizations to response sets.
         Map<Parameterization, ProposalResponseSet> currentMap = new HashMap<>();
         // Compute the response entity type.
         ProposalEntity responseEntity = this.getResponseEntity();
-        // We start with the first entity in the query and process all its records into response sets.
-        ProposalEntity originEntity = this.path.get(0);
-        // Get the instances for that entity.
-        Collection<EntityInstance> originInstances = db.getSomeEntities(originEntity.getName(), this.maxResponseLimit);
-        log.info("Processing entity {} (1 of {}). {} instances.", originEntity.getName(), this.path.size(), originInstances.size());
+        // Choose the traversal order for the path.
+        List<ProposalEntity> order = this.path;
+        if (this.planning)
+            order = new PathPlanner(db, this.maxResponseLimit).plan(this, this.path);
+        final boolean reversed = (order != this.path);
+        // We start with the first entity in the traversal and process all its records into response sets.
+        ProposalEntity originEntity = order.get(0);
+        // If this query only needs aggregate information, the responses for the last entity are tallied
+        // instead of stored.
+        final int lastStep = order.size() - 1;
+        final boolean aggregate = this.isAggregateOnly();
+        // Determine the steps after which we can prune response sets that are too big.
+        this.prunedSets = 0;
+        this.prunedResponses = 0;
+        this.earlyPrunedSets = 0;
+        this.metrics = new QueryMetrics.TemplateMetrics(this);
+        long start = System.nanoTime();
+        boolean[] prunable = this.computePrunableSteps(db, order);
+        // Get the instances for that entity. If an attribute index can narrow them down, we use it.
+        Collection<EntityInstance> originInstances = originEntity.getCandidates(db);
+        if (originInstances == null)
+            originInstances = db.getSomeEntities(originEntity.getName(), this.maxResponseLimit, this.rand);
+        else {
+            log.info("{} candidate instances of {} found in attribute index.", originInstances.size(), originEntity.getName());
+            if (this.maxResponseLimit > 0)
+                originInstances = this.selectSample(originInstances, this.maxResponseLimit);
+        }
+        log.info("Processing entity {} (1 of {}). {} instances.", originEntity.getName(), order.size(), originInstances.size());
+        long created = 0;
+        long rejected = 0;
+        long tooBig = 0;
         for (var originInstance : originInstances) {
             // Get this instance as a query entity instance.
             QueryEntityInstance queryInstance = (QueryEntityInstance) originInstance;
             // Compute all its parameterizations.
-            Parameterization instanceParms = new Parameterization();
+            Parameterization instanceParms = this.createParameterization();
             Set<Parameterization> allInstanceParms = instanceParms.addInstance(queryInstance, originEntity);
             if (log.isDebugEnabled() && originEntity.equals(responseEntity)) {
                 String action = (allInstanceParms.isEmpty() ? "Rejecting" : "Accepting");
                 log.debug("{} instance {}.", action, queryInstance);
             }
+            if (allInstanceParms.isEmpty())
+                rejected++;
             // Now we have all the parameterizations for which this entity instance should be included in a
             // proposal response set. It's possible this could be zero. It is usually one. We need to add it
             // to any pre-existing response set with the same parameters, or create a new response set if there
@@ -135,61 +413,46 @@ public abstract class ProposalQuery {
             for (Parameterization parms : allInstanceParms) {
                 ProposalResponseSet responses = currentMap.computeIfAbsent(parms, x -> new ProposalResponseSet(x));
                 // If this response set is acceptable, add the new response.
-                if (responses.checkStatus(this.maxResponseLimit))
-                    responses.addResponse(new ProposalResponse(queryInstance));
+                if (responses.checkStatus(this.maxResponseLimit)) {
+                    if (aggregate && lastStep == 0)
+                        responses.addAggregate(this.getAggregateValues(null, queryInstance));
+                    else
+                        responses.addResponse(new ProposalResponse(queryInstance));
+                    created++;
+                } else
+                    tooBig++;
             }
         }
-        // Now we need to add records for the remaining entities of the path. We will build these in this
-        // new map.
-        for (int i = 1; i < this.path.size(); i++) {
-            Map<Parameterization, ProposalResponseSet> newMap = new HashMap<>();
-            ProposalEntity currEntity = this.path.get(i);
-            log.info("Processing entity {} ({} of {}). {} sets in map.", currEntity.getName(), i + 1, this.path.size(), currentMap.size());
+        int pruned = (prunable[0] ? this.pruneSets(currentMap, 0, lastStep) : 0);
+        long now = System.nanoTime();
+        this.metrics.addStep(originEntity.getName(), now - start, created, rejected, tooBig, currentMap.size(), pruned);
+        start = now;
+        // Now we need to add records for the remaining entities of the path. Each step builds a new map.
+        for (int i = 1; i < order.size(); i++) {
+            final ProposalEntity currEntity = order.get(i);
+            final boolean aggregateStep = (aggregate && i == lastStep);
+            log.info("Processing entity {} ({} of {}). {} sets in map.", currEntity.getName(), i + 1, order.size(), currentMap.size());
             // We need to process each response. Note that a response is a sequence of entity instances along the
             // path. For each response, we cross the relationship of interest and parameterize the entity instances
-            // found there. We'll count the number of new responses created and the number rejected.
-            int newResponseCount = 0;
-            int rejectCount = 0;
-            int tooBigCount = 0;
-            for (ProposalResponseSet responseSet : currentMap.values()) {
-                // Get this response set's parameterization.
-                Parameterization mainParms = responseSet.getParameters();
-                for (ProposalResponse response : responseSet.getResponses()) {
-                    // Here we have a response containing instances of all the previous entities on
-                    // the path. Get all the new entity instances further down the path.
-                    QueryEntityInstance endInstance = response.getLastEntity();
-                    Collection<EntityInstance> newInstances = endInstance.getTargetsOfType(db, currEntity.getName());
-                    for (var newInstance : newInstances) {
-                        // Create a response that has the new entity instance in it.
-                        QueryEntityInstance queryInstance = (QueryEntityInstance) newInstance;
-                        // Get the parameterizations for this new response.
-                        Set<Parameterization> newParms = mainParms.addInstance(queryInstance, currEntity);
-                        if (newParms.isEmpty()) {
-                            rejectCount++;
-                            log.debug("Rejecting response {} with new instance {}.", response, queryInstance);
-                        } else {
-                            log.debug("Accepting response {} with {} parameterizations and new instance {}.", 
-                            response, newParms.size(), queryInstance);
-                        }
-                        // Put them in the map.
-                        for (Parameterization parms : newParms) {
-                            ProposalResponseSet responses = newMap.computeIfAbsent(parms, x -> new ProposalResponseSet(x));
-                            // If this response set is acceptable, add the new response.
-                            if (responses.isActive()) {
-                                if (responses.checkStatus(this.maxResponseLimit)) {
-                                    responses.addResponse(new ProposalResponse(response, queryInstance));
-                                    newResponseCount++;
-                                } else {
-                                    tooBigCount++;
-                                    responses.countResponse();
-                                }
-                            } else
-                                responses.countResponse();
-                        }
-                    }
-                }
+            // found there. The expansion counts the number of new responses created and the number rejected.
+            Expansion expansion;
+            final Collection<ProposalResponseSet> responseSets = currentMap.values();
+            if (pool == null) {
+                expansion = new Expansion(currEntity, aggregateStep);
+                for (ProposalResponseSet responseSet : responseSets)
+                    expansion.expand(responseSet);
+            } else try {
+                expansion = pool.submit(() -> responseSets.parallelStream().collect(
+                        Collector.of(() -> new Expansion(currEntity, aggregateStep), Expansion::expand, Expansion::merge))).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Path expansion interrupted.", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error during parallel path expansion.", e.getCause());
             }
-            log.info("Created {} new responses, {} rejected, {} sets too big.", newResponseCount, rejectCount, tooBigCount);
+            Map<Parameterization, ProposalResponseSet> newMap = expansion.responseMap;
+            log.info("Created {} new responses, {} rejected, {} sets too big.", expansion.newResponseCount,
+                    expansion.rejectCount, expansion.tooBigCount);
             if (log.isInfoEnabled()) {
                 // Here we want to determine the number of inactive response sets and their average size.
                 int inactiveCount = 0;
@@ -205,14 +468,203 @@ public abstract class ProposalQuery {
                     log.info("{} inactive sets with an average size of {}.", inactiveCount, String.format("%.1f", avgSize));
                 }
             }
+            pruned = (prunable[i] ? this.pruneSets(newMap, i, lastStep) : 0);
+            now = System.nanoTime();
+            this.metrics.addStep(currEntity.getName(), now - start, expansion.newResponseCount, expansion.rejectCount,
+                    expansion.tooBigCount, newMap.size(), pruned);
+            start = now;
             // Discard the old map and use the new one next time.
             currentMap = newMap;
         }
+        if (this.prunedSets > 0)
+            log.info("{} response sets pruned for exceeding target size {}, {} before the end of the path. {} responses discarded.",
+                    this.prunedSets, this.targetSize, this.earlyPrunedSets, this.prunedResponses);
+        // If we traversed backward, put the responses back in path order.
+        if (reversed) {
+            for (ProposalResponseSet responseSet : currentMap.values()) {
+                if (responseSet.isActive())
+                    responseSet.reverseResponses();
+            }
+        }
         // Return a list of the response sets found.
         List<ProposalResponseSet> retVal = currentMap.values().stream().filter(x -> x.isActive()).collect(Collectors.toList());
         return retVal;
     }
 
+    /**
+     * Determine the path steps after which response sets can be pruned for exceeding the target size.  We can
+     * always prune at the end of the path.  Before that, we can only prune if the size of a response set
+     * can never shrink during the rest of the expansion.  This is true if each remaining entity has no proposal
+     * fields (so the response sets are not split or filtered), every instance of each entity type along the
+     * rest of the path connects to at least one instance of the next (so no response is lost), and none
+     * of the remaining entities can change the output values.
+     *
+     * @param db		target database instance
+     * @param order		list of proposal entities in traversal order
+     *
+     * @return an array of flags, one per path step, that are TRUE if pruning is possible after the step
+     */
+    private boolean[] computePrunableSteps(QueryDbInstance db, List<ProposalEntity> order) {
+        final int n = order.size();
+        boolean[] retVal = new boolean[n];
+        if (this.targetSize > 0) {
+            retVal[n - 1] = true;
+            for (int i = n - 2; i >= 0 && retVal[i + 1]; i--) {
+                ProposalEntity next = order.get(i + 1);
+                retVal[i] = (next.size() == 0 && this.isOutputStable(next)
+                        && db.getMinFanOut(order.get(i).getName(), next.getName()) > 0);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Remove the response sets whose output is already too big for the target size.  The sets are marked
+     * inactive, so they are not expanded further.
+     *
+     * @param responseMap	map of parameterizations to response sets for the current step
+     * @param step			index of the current path step
+     * @param lastStep		index of the last path step
+     *
+     * @return the number of response sets pruned
+     */
+    private int pruneSets(Map<Parameterization, ProposalResponseSet> responseMap, int step, int lastStep) {
+        int count = 0;
+        long responseCount = 0;
+        for (ProposalResponseSet responseSet : responseMap.values()) {
+            if (responseSet.isActive() && this.getSizeLowerBound(responseSet, this.targetSize + 1) > this.targetSize) {
+                count++;
+                responseCount += responseSet.getResponseCount();
+                responseSet.setInactive();
+            }
+        }
+        if (count > 0) {
+            log.info("{} response sets pruned after step {}.", count, step + 1);
+            this.prunedSets += count;
+            this.prunedResponses += responseCount;
+            if (step < lastStep)
+                this.earlyPrunedSets += count;
+        }
+        return count;
+    }
+
+    /**
+     * Complete a set of response maps computed outside of this query, as is done for a batch of queries sharing
+     * the same path.  The final pruning is applied and the active response sets are returned.  The metrics for
+     * the computation contain a single step for the whole traversal.  The traversal time is shared by all the
+     * queries in the batch, but the response counts are for this query alone.
+     *
+     * @param responseMap	map of parameterizations to response sets for the end of the path
+     * @param nanos			nanoseconds spent on the traversal
+     * @param batchSize		number of queries sharing the traversal
+     * @param created		number of responses created for this query
+     * @param rejected		number of instance chains rejected by this query's fields
+     * @param tooBig		number of responses discarded for this query because their response sets were too big
+     *
+     * @return a list of proposal response sets containing valid answers
+     */
+    protected List<ProposalResponseSet> finishSets(Map<Parameterization, ProposalResponseSet> responseMap, long nanos,
+            int batchSize, long created, long rejected, long tooBig) {
+        this.prunedSets = 0;
+        this.prunedResponses = 0;
+        this.earlyPrunedSets = 0;
+        int pruned = 0;
+        if (this.targetSize > 0) {
+            final int lastStep = this.path.size() - 1;
+            pruned = this.pruneSets(responseMap, lastStep, lastStep);
+        }
+        this.metrics = new QueryMetrics.TemplateMetrics(this);
+        this.metrics.setBatchSize(batchSize);
+        this.metrics.addStep(this.getPathKey(), nanos, created, rejected, tooBig, responseMap.size(), pruned);
+        List<ProposalResponseSet> retVal = responseMap.values().stream().filter(x -> x.isActive()).collect(Collectors.toList());
+        return retVal;
+    }
+
+    /**
+     * Compute a lower bound for the output size of a response set.  This is used to prune response sets that
+     * are too big.  The default is to return 0, which means pruning will never occur.
+     *
+     * @param responseSet	response set to check
+     * @param limit			size beyond which the precise bound is not needed
+     *
+     * @return a number no greater than the response set's final output size
+     */
+    protected int getSizeLowerBound(ProposalResponseSet responseSet, int limit) {
+        return 0;
+    }
+
+    /**
+     * Determine whether adding an instance of the specified entity to a response can change the response's
+     * output values.  This is used to determine whether early pruning is possible.  The default is TRUE,
+     * since most queries only care about the number of responses.
+     *
+     * @param entity	proposal for an entity further down the path
+     *
+     * @return TRUE if extending a response to the entity leaves its output values unchanged
+     */
+    protected boolean isOutputStable(ProposalEntity entity) {
+        return true;
+    }
+
+    /**
+     * @return the number of response sets pruned in the last computation
+     */
+    public int getPrunedSets() {
+        return this.prunedSets;
+    }
+
+    /**
+     * @return the number of response sets pruned before the end of the path in the last computation
+     */
+    public int getEarlyPrunedSets() {
+        return this.earlyPrunedSets;
+    }
+
+    /**
+     * @return the number of responses discarded by pruning in the last computation
+     */
+    public long getPrunedResponses() {
+        return this.prunedResponses;
+    }
+
+    /**
+     * @return the cost metrics for the last computation, or NULL if there has been none
+     */
+    public QueryMetrics.TemplateMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @return a blank parameterization for this query
+     */
+    public Parameterization createParameterization() {
+        return new Parameterization(this.layout);
+    }
+
+    /**
+     * Determine whether this query only needs aggregate information about its responses. If so, the
+     * responses at the end of the path are tallied in their response sets instead of being stored.
+     * The default is FALSE.
+     *
+     * @return TRUE if the responses at the end of the path need not be stored
+     */
+    protected boolean isAggregateOnly() {
+        return false;
+    }
+
+    /**
+     * Compute the output values to tally for an aggregate response. The default is to tally no values,
+     * so only the response count is kept.
+     *
+     * @param prefix	response for the path before the last entity, or NULL if the path has only one entity
+     * @param instance	entity instance at the end of the path
+     *
+     * @return the output values for the response, or NULL if only the response count is needed
+     */
+    protected List<String> getAggregateValues(ProposalResponse prefix, QueryEntityInstance instance) {
+        return null;
+    }
+
     /**
      * @return the proposal for the entity relevant to the response
      */
@@ -311,6 +763,13 @@ public abstract class ProposalQuery {
         return this.writeResponseDetails(correctResponse, reporter, responses);
     }
 
+    /**
+     * Release any resources held for writing this query's responses.  This is called after all the responses
+     * from a computation have been written.  The default does nothing.
+     */
+    public void finishResponses() {
+    }
+
     /**
      * @return the question template string
      */
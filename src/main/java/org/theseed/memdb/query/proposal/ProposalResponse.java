@@ -8,11 +8,13 @@ import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
-import org.theseed.io.Attribute;
+import org.theseed.memdb.query.AttributeValue;
 import org.theseed.memdb.query.QueryEntityInstance;
 
 /**
  * This is a list of entity instances representing a possible answer to a query proposal.
+ * The list is stored as a chain of responses, each holding the last entity instance of its path and
+ * a pointer to the response for the rest of the path, so that extending a response does not copy it.
  * Proposal responses are organized into response sets. Our goal is to get a response set
  * smaller than the target size.
  *
@@ -22,8 +24,14 @@ import org.theseed.memdb.query.QueryEntityInstance;
 public class ProposalResponse {
 
     // FIELDS
-    /** sequence of related entity instances for this response */
-    private final List<QueryEntityInstance> instancePath;
+    /** response for the preceding part of the path, or NULL if this is the first instance */
+    private final ProposalResponse parent;
+    /** entity instance at the end of the path */
+    private final QueryEntityInstance instance;
+    /** number of entity instances in the path */
+    private final int size;
+    /** precomputed hash code */
+    private final int hash;
     /** empty string for failure case */
     private static List<String> EMPTY_LIST = Collections.emptyList();
 
@@ -33,34 +41,38 @@ public class ProposalResponse {
      * @param instance	first entity instance in the path
      */
     public ProposalResponse(QueryEntityInstance instance) {
-        this.instancePath = List.of(instance);
+        this.parent = null;
+        this.instance = instance;
+        this.size = 1;
+        this.hash = 31 + instance.hashCode();
     }
 
     /**
-     * Construct a proposal response with an additional entity instance.
+     * Construct a proposal response with an additional entity instance. The new response shares the
+     * old response as its path prefix, so no copying is needed.
      *
      * @param oldResponse	previous response
      * @param instance		instance to add at the end of the path
      */
     public ProposalResponse(ProposalResponse oldResponse, QueryEntityInstance instance) {
-        this.instancePath = new ArrayList<>(oldResponse.size() + 1);
-        this.instancePath.addAll(oldResponse.instancePath);
-        this.instancePath.add(instance);
+        this.parent = oldResponse;
+        this.instance = instance;
+        this.size = oldResponse.size + 1;
+        this.hash = 31 * oldResponse.hash + instance.hashCode();
     }
 
     /**
      * @return the number of entity instances in the path
      */
     public int size() {
-        return this.instancePath.size();
+        return this.size;
     }
 
     /**
      * @return the instance of the last entity in the path.
      */
     public QueryEntityInstance getLastEntity() {
-        final int n = this.instancePath.size() - 1;
-        return this.instancePath.get(n);
+        return this.instance;
     }
 
     /**
@@ -71,36 +83,42 @@ public class ProposalResponse {
      */
     public List<String> getValue(String entityName, String attrName) {
         List<String> retVal;
-        QueryEntityInstance entityInstance = null;
-        for (QueryEntityInstance qInstance : this.instancePath) {
-            if (entityName.equals(qInstance.getType()))
-                entityInstance = qInstance;
-        }
-        if (entityInstance == null)
+        // We want the last instance of the entity in the path, so we search backward from the end.
+        ProposalResponse curr = this;
+        while (curr != null && ! entityName.equals(curr.instance.getType()))
+            curr = curr.parent;
+        if (curr == null)
             retVal = EMPTY_LIST;
         else {
-            Attribute attr = entityInstance.getAttribute(attrName);
+            AttributeValue attr = curr.instance.getAttribute(attrName);
             retVal = attr.getList();
         }
         return retVal;
     }
 
+    /**
+     * @return a response containing the same entity instances in the opposite order
+     */
+    public ProposalResponse reverse() {
+        ProposalResponse retVal = new ProposalResponse(this.instance);
+        for (ProposalResponse curr = this.parent; curr != null; curr = curr.parent)
+            retVal = new ProposalResponse(retVal, curr.instance);
+        return retVal;
+    }
+
     @Override
     public String toString() {
-        String retVal;
-        if (this.instancePath.isEmpty())
-            retVal = "<null>";
-        else
-            retVal = this.instancePath.stream().map(x -> x.toString()).collect(Collectors.joining(",", "Response:", ""));
-        return retVal;
+        // Collect the instances in path order.
+        List<String> names = new ArrayList<>(this.size);
+        for (ProposalResponse curr = this; curr != null; curr = curr.parent)
+            names.add(curr.instance.toString());
+        Collections.reverse(names);
+        return names.stream().collect(Collectors.joining(",", "Response:", ""));
     }
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int retVal = 1;
-        retVal = prime * retVal + ((instancePath == null) ? 0 : instancePath.hashCode());
-        return retVal;
+        return this.hash;
     }
 
     @Override
@@ -112,11 +130,16 @@ public class ProposalResponse {
         if (getClass() != obj.getClass())
             return false;
         ProposalResponse other = (ProposalResponse) obj;
-        if (instancePath == null) {
-            if (other.instancePath != null)
-                return false;
-        } else if (!instancePath.equals(other.instancePath))
+        if (this.hash != other.hash || this.size != other.size)
             return false;
+        // Walk back through both paths until they share a prefix.
+        ProposalResponse curr = this;
+        while (curr != null && curr != other) {
+            if (! curr.instance.equals(other.instance))
+                return false;
+            curr = curr.parent;
+            other = other.parent;
+        }
         return true;
     }
 
@@ -3,6 +3,7 @@
  */
 package org.theseed.memdb.query.proposal;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -10,11 +11,17 @@ import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.theseed.counters.CountMap;
+
 /**
  * This object contains a set of proposal responses. The responses are associated with specific
  * parameter values for all the proposal fields. A response set can be marked as "inactive", which\
  * means we've decided to give up on it and will not add any more responses to it.
  *
+ * For queries that only need aggregate information about their responses (counts, or counts of output
+ * values), the responses at the end of the path can be tallied instead of stored.  These aggregate
+ * responses count toward the size limit just like stored ones.
+ *
  * @author Bruce Parrello
  *
  */
@@ -31,6 +38,10 @@ public class ProposalResponseSet implements Iterable<ProposalResponse> {
     private Set<String> outputValues;
     /** number of responses in this set */
     private int responseCount;
+    /** number of aggregate responses tallied but not stored */
+    private int aggregateCount;
+    /** counts of output values for aggregate responses, or NULL if none have been tallied */
+    private CountMap<String> valueCounts;
 
     /**
      * Create a new, empty proposal response set for a query proposal.
@@ -41,6 +52,8 @@ public class ProposalResponseSet implements Iterable<ProposalResponse> {
         this.activeFlag = true;
         this.outputValues = null;
         this.responseCount = 0;
+        this.aggregateCount = 0;
+        this.valueCounts = null;
     }
 
     /**
@@ -51,10 +64,36 @@ public class ProposalResponseSet implements Iterable<ProposalResponse> {
     public void addResponse(ProposalResponse response) {
         if (this.activeFlag) {
             this.responses.add(response);
-            this.responseCount = this.responses.size();
+            this.responseCount = this.responses.size() + this.aggregateCount;
+        }
+    }
+
+    /**
+     * Tally an aggregate response in this set. The response itself is not stored, but it is counted, and its
+     * output values (if any) are counted as well.
+     *
+     * @param values	output values for the response, or NULL if only the response count is needed
+     */
+    public void addAggregate(List<String> values) {
+        if (this.activeFlag) {
+            this.aggregateCount++;
+            this.responseCount++;
+            if (values != null) {
+                if (this.valueCounts == null)
+                    this.valueCounts = new CountMap<>();
+                for (String value : values)
+                    this.valueCounts.count(value);
+            }
         }
     }
 
+    /**
+     * @return the counts of the output values for the aggregate responses, or NULL if none were tallied
+     */
+    public CountMap<String> getValueCounts() {
+        return this.valueCounts;
+    }
+
     /**
      * Count a new response in this set. This is used when the set has been marked inactive
      * and we want to keep track of how many responses we would have had if it had been kept.
@@ -121,10 +160,11 @@ public class ProposalResponseSet implements Iterable<ProposalResponse> {
     /**
      * Mark this response set as inactive.
      */
-    private void setInactive() {
+    protected void setInactive() {
         this.activeFlag = false;
         // Delete all the responses to save memory.
         this.responses.clear();
+        this.valueCounts = null;
     }
 
     /**
@@ -144,12 +184,54 @@ public class ProposalResponseSet implements Iterable<ProposalResponse> {
      */
     public boolean checkStatus(int maxResponseLimit) {
         if (this.activeFlag) {
-            if (maxResponseLimit > 0 && this.responses.size() >= maxResponseLimit)
+            if (maxResponseLimit > 0 && this.responses.size() + this.aggregateCount >= maxResponseLimit)
                 this.setInactive();
         }
         return this.activeFlag;
     }
 
+    /**
+     * Merge another response set with the same parameterization into this one.  This is used to combine the
+     * partial results of a parallel path expansion.  If either set is inactive, or the combined responses exceed
+     * the size limit, the merged set is inactive, just as it would have been had all the responses been added
+     * to a single set.
+     *
+     * @param other				other response set to merge in
+     * @param maxResponseLimit	maximum permissible intermediate response set size, or 0 if there is no maximum
+     */
+    protected void merge(ProposalResponseSet other, int maxResponseLimit) {
+        if (this.activeFlag && other.activeFlag) {
+            this.responses.addAll(other.responses);
+            this.aggregateCount += other.aggregateCount;
+            if (other.valueCounts != null) {
+                if (this.valueCounts == null)
+                    this.valueCounts = other.valueCounts;
+                else {
+                    for (String value : other.valueCounts.keys())
+                        this.valueCounts.count(value, other.valueCounts.getCount(value));
+                }
+            }
+            this.responseCount = this.responses.size() + this.aggregateCount;
+            if (maxResponseLimit > 0 && this.responseCount > maxResponseLimit)
+                this.setInactive();
+        } else {
+            this.responseCount += other.responseCount;
+            this.setInactive();
+        }
+    }
+
+    /**
+     * Reverse the order of the entity instances in all the responses of this set. This is used when the
+     * responses were built by traversing the query path backward.
+     */
+    protected void reverseResponses() {
+        List<ProposalResponse> reversed = new ArrayList<>(this.responses.size());
+        for (ProposalResponse response : this.responses)
+            reversed.add(response.reverse());
+        this.responses.clear();
+        this.responses.addAll(reversed);
+    }
+
     @Override
     public String toString() {
         return String.format("ProposalResponseSet (size=%d) [parameters=%s]", this.responses.size(), this.parameters);
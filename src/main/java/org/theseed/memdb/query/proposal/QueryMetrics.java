@@ -0,0 +1,438 @@
+/**
+ *
+ */
+package org.theseed.memdb.query.proposal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.theseed.memdb.LoadMetrics;
+
+import com.github.cliftonlabs.json_simple.JsonArray;
+import com.github.cliftonlabs.json_simple.JsonObject;
+import com.github.cliftonlabs.json_simple.Jsoner;
+
+/**
+ * This object collects cost metrics for query templates, so that the expensive templates can be found.  There is
+ * one set of metrics for each template, containing the metrics for each step of the path traversal.  The metrics
+ * can be written as a tab-delimited report or a JSON report.
+ *
+ * For each step, we record the time spent, the number of responses created, the number rejected by the proposal
+ * fields, the number discarded because their response sets were too big, the number of response sets in the map
+ * after the step, and the number of response sets pruned.  The steps are in traversal order, which is reversed if
+ * the path planner chose to start from the end of the path.  For a template evaluated in a batch, there is a
+ * single step for the whole traversal.  The response counts are the template's own, but the traversal time is
+ * shared by every template in the batch, so it is repeated for each of them.  The batch size is included in the
+ * reports as a marker:  the templates in a batch all have the same path, and a template with a batch size of 1
+ * was not batched.  To total the time for a run, the compute time of a batched template should be counted once
+ * per batch.
+ *
+ * The heap figure is the largest amount of used heap memory observed after a step.  It is only approximate, since
+ * it is affected by garbage collection and by any other templates being evaluated at the same time.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class QueryMetrics {
+
+    // FIELDS
+    /** list of metrics for the individual templates */
+    private final List<TemplateMetrics> templates;
+    /** column headers for the tab-delimited report */
+    private static final String TSV_HEADER = "level\ttemplate_num\ttemplate\tpath\tbatch\tstep\tentity_type\tms\t"
+            + "created\trejected\ttoo_big\tsets\tpruned\tpeak_sets\theap_used\tquestions";
+
+    /**
+     * This object contains the metrics for a single step of a path traversal.
+     */
+    public static class StepMetrics {
+
+        /** name of the entity type added by the step */
+        private final String typeName;
+        /** nanoseconds spent on the step */
+        private final long nanos;
+        /** number of responses created */
+        private final long created;
+        /** number of responses rejected by the proposal fields */
+        private final long rejected;
+        /** number of responses discarded because their response sets were too big */
+        private final long tooBig;
+        /** number of response sets after the step */
+        private final int sets;
+        /** number of response sets pruned after the step */
+        private final int pruned;
+
+        /**
+         * Create the metrics for a traversal step.
+         *
+         * @param typeName		name of the entity type added by the step
+         * @param nanos			nanoseconds spent on the step
+         * @param created		number of responses created
+         * @param rejected		number of responses rejected by the proposal fields
+         * @param tooBig		number of responses discarded because their response sets were too big
+         * @param sets			number of response sets after the step
+         * @param pruned		number of response sets pruned after the step
+         */
+        protected StepMetrics(String typeName, long nanos, long created, long rejected, long tooBig, int sets, int pruned) {
+            this.typeName = typeName;
+            this.nanos = nanos;
+            this.created = created;
+            this.rejected = rejected;
+            this.tooBig = tooBig;
+            this.sets = sets;
+            this.pruned = pruned;
+        }
+
+        /**
+         * @return the name of the entity type added by the step
+         */
+        public String getTypeName() {
+            return this.typeName;
+        }
+
+        /**
+         * @return the milliseconds spent on the step
+         */
+        public double getMs() {
+            return this.nanos / 1e6;
+        }
+
+        /**
+         * @return the number of responses created
+         */
+        public long getCreated() {
+            return this.created;
+        }
+
+        /**
+         * @return the number of responses rejected by the proposal fields
+         */
+        public long getRejected() {
+            return this.rejected;
+        }
+
+        /**
+         * @return the number of responses discarded because their response sets were too big
+         */
+        public long getTooBig() {
+            return this.tooBig;
+        }
+
+        /**
+         * @return the number of response sets after the step
+         */
+        public int getSets() {
+            return this.sets;
+        }
+
+        /**
+         * @return the number of response sets pruned after the step
+         */
+        public int getPruned() {
+            return this.pruned;
+        }
+
+        /**
+         * @return a JSON object for these metrics
+         */
+        protected JsonObject toJson() {
+            JsonObject retVal = new JsonObject();
+            retVal.put("entity_type", this.typeName);
+            retVal.put("ms", this.getMs());
+            retVal.put("created", this.created);
+            retVal.put("rejected", this.rejected);
+            retVal.put("too_big", this.tooBig);
+            retVal.put("sets", this.sets);
+            retVal.put("pruned", this.pruned);
+            return retVal;
+        }
+
+    }
+
+    /**
+     * This object contains the metrics for a single query template.
+     */
+    public static class TemplateMetrics {
+
+        /** position of the template in the input (1-based), or 0 if it has not been written */
+        private int templateNum;
+        /** question template string */
+        private final String template;
+        /** entity types along the query path */
+        private final String path;
+        /** number of templates sharing the path traversal (1 if the template was not batched) */
+        private int batchSize;
+        /** list of step metrics, in traversal order */
+        private final List<StepMetrics> steps;
+        /** largest number of response sets after a step */
+        private int peakSets;
+        /** largest number of used heap bytes observed after a step */
+        private long heapUsed;
+        /** number of questions written */
+        private int questions;
+        /** nanoseconds spent writing the questions */
+        private long writeNanos;
+
+        /**
+         * Create empty metrics for a query template.
+         *
+         * @param query		query for the template
+         */
+        protected TemplateMetrics(ProposalQuery query) {
+            this.templateNum = 0;
+            this.template = query.getRawQuestion();
+            this.path = query.getPathKey();
+            this.batchSize = 1;
+            this.steps = new ArrayList<>(query.getPathSize());
+            this.peakSets = 0;
+            this.heapUsed = 0;
+            this.questions = 0;
+            this.writeNanos = 0;
+        }
+
+        /**
+         * Record the metrics for a traversal step.
+         *
+         * @param typeName		name of the entity type added by the step
+         * @param nanos			nanoseconds spent on the step
+         * @param created		number of responses created
+         * @param rejected		number of responses rejected by the proposal fields
+         * @param tooBig		number of responses discarded because their response sets were too big
+         * @param sets			number of response sets after the step
+         * @param pruned		number of response sets pruned after the step
+         */
+        protected void addStep(String typeName, long nanos, long created, long rejected, long tooBig, int sets, int pruned) {
+            this.steps.add(new StepMetrics(typeName, nanos, created, rejected, tooBig, sets, pruned));
+            if (sets > this.peakSets)
+                this.peakSets = sets;
+            long heap = LoadMetrics.usedHeap();
+            if (heap > this.heapUsed)
+                this.heapUsed = heap;
+        }
+
+        /**
+         * Specify the number of templates sharing the path traversal.
+         *
+         * @param batchSize		number of templates in the template's batch
+         */
+        protected void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Record the output of the template.
+         *
+         * @param templateNum	position of the template in the input (1-based)
+         * @param questions		number of questions written
+         * @param writeNanos	nanoseconds spent writing the questions
+         */
+        public void setOutput(int templateNum, int questions, long writeNanos) {
+            this.templateNum = templateNum;
+            this.questions = questions;
+            this.writeNanos = writeNanos;
+        }
+
+        /**
+         * @return the position of the template in the input (1-based), or 0 if it has not been written
+         */
+        public int getTemplateNum() {
+            return this.templateNum;
+        }
+
+        /**
+         * @return the question template string
+         */
+        public String getTemplate() {
+            return this.template;
+        }
+
+        /**
+         * @return the entity types along the query path
+         */
+        public String getPath() {
+            return this.path;
+        }
+
+        /**
+         * @return the number of templates sharing the path traversal (1 if the template was not batched)
+         */
+        public int getBatchSize() {
+            return this.batchSize;
+        }
+
+        /**
+         * @return the list of step metrics, in traversal order
+         */
+        public List<StepMetrics> getSteps() {
+            return this.steps;
+        }
+
+        /**
+         * @return the milliseconds spent computing the response sets
+         */
+        public double getComputeMs() {
+            return this.steps.stream().mapToLong(x -> x.nanos).sum() / 1e6;
+        }
+
+        /**
+         * @return the milliseconds spent writing the questions
+         */
+        public double getWriteMs() {
+            return this.writeNanos / 1e6;
+        }
+
+        /**
+         * @return the total number of responses created
+         */
+        public long getCreated() {
+            return this.steps.stream().mapToLong(x -> x.created).sum();
+        }
+
+        /**
+         * @return the total number of responses rejected by the proposal fields
+         */
+        public long getRejected() {
+            return this.steps.stream().mapToLong(x -> x.rejected).sum();
+        }
+
+        /**
+         * @return the total number of responses discarded because their response sets were too big
+         */
+        public long getTooBig() {
+            return this.steps.stream().mapToLong(x -> x.tooBig).sum();
+        }
+
+        /**
+         * @return the total number of response sets pruned
+         */
+        public int getPruned() {
+            return this.steps.stream().mapToInt(x -> x.pruned).sum();
+        }
+
+        /**
+         * @return the largest number of response sets after a step
+         */
+        public int getPeakSets() {
+            return this.peakSets;
+        }
+
+        /**
+         * @return the largest number of used heap bytes observed after a step
+         */
+        public long getHeapUsed() {
+            return this.heapUsed;
+        }
+
+        /**
+         * @return the number of questions written
+         */
+        public int getQuestions() {
+            return this.questions;
+        }
+
+        /**
+         * @return a JSON object for these metrics
+         */
+        protected JsonObject toJson() {
+            JsonObject retVal = new JsonObject();
+            retVal.put("template_num", this.templateNum);
+            retVal.put("template", this.template);
+            retVal.put("path", this.path);
+            retVal.put("batch_size", this.batchSize);
+            retVal.put("compute_ms", this.getComputeMs());
+            retVal.put("write_ms", this.getWriteMs());
+            retVal.put("created", this.getCreated());
+            retVal.put("rejected", this.getRejected());
+            retVal.put("too_big", this.getTooBig());
+            retVal.put("pruned", this.getPruned());
+            retVal.put("peak_sets", this.peakSets);
+            retVal.put("heap_used", this.heapUsed);
+            retVal.put("questions", this.questions);
+            JsonArray stepList = new JsonArray();
+            for (StepMetrics step : this.steps)
+                stepList.add(step.toJson());
+            retVal.put("steps", stepList);
+            return retVal;
+        }
+
+    }
+
+    /**
+     * Create an empty metrics collection.
+     */
+    public QueryMetrics() {
+        this.templates = new ArrayList<>();
+    }
+
+    /**
+     * Record the metrics for a query template.  The templates should be recorded in input order.
+     *
+     * @param metrics	metrics to record
+     */
+    public synchronized void record(TemplateMetrics metrics) {
+        this.templates.add(metrics);
+    }
+
+    /**
+     * @return the list of metrics for the individual templates
+     */
+    public synchronized List<TemplateMetrics> getTemplates() {
+        return new ArrayList<>(this.templates);
+    }
+
+    /**
+     * Write the metrics as a tab-delimited report.  For each template, there is one line per traversal step
+     * followed by a line with the totals for the template.
+     *
+     * @param writer	output print writer
+     */
+    public void writeTsv(PrintWriter writer) {
+        writer.println(TSV_HEADER);
+        for (TemplateMetrics metrics : this.getTemplates()) {
+            String prefix = metrics.templateNum + "\t" + metrics.template + "\t" + metrics.path + "\t" + metrics.batchSize;
+            int stepNum = 0;
+            for (StepMetrics step : metrics.steps) {
+                stepNum++;
+                writer.println(String.format("step\t%s\t%d\t%s\t%.1f\t%d\t%d\t%d\t%d\t%d\t\t\t", prefix, stepNum,
+                        step.typeName, step.getMs(), step.created, step.rejected, step.tooBig, step.sets, step.pruned));
+            }
+            writer.println(String.format("template\t%s\t\t\t%.1f\t%d\t%d\t%d\t\t%d\t%d\t%d\t%d", prefix,
+                    metrics.getComputeMs() + metrics.getWriteMs(), metrics.getCreated(), metrics.getRejected(),
+                    metrics.getTooBig(), metrics.getPruned(), metrics.peakSets, metrics.heapUsed, metrics.questions));
+        }
+    }
+
+    /**
+     * @return the metrics as a JSON object
+     */
+    public JsonObject toJson() {
+        JsonObject retVal = new JsonObject();
+        JsonArray templateList = new JsonArray();
+        for (TemplateMetrics metrics : this.getTemplates())
+            templateList.add(metrics.toJson());
+        retVal.put("templates", templateList);
+        return retVal;
+    }
+
+    /**
+     * Write the metrics report to a file.  If the file name ends in ".json", a JSON report is written;
+     * otherwise, the report is tab-delimited.
+     *
+     * @param outFile	output file for the report
+     *
+     * @throws IOException
+     */
+    public void save(File outFile) throws IOException {
+        try (PrintWriter writer = new PrintWriter(outFile, StandardCharsets.UTF_8)) {
+            if (outFile.getName().endsWith(".json"))
+                writer.println(Jsoner.prettyPrint(Jsoner.serialize(this.toJson())));
+            else
+                this.writeTsv(writer);
+        }
+    }
+
+}
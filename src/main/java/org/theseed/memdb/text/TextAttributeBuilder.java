@@ -7,11 +7,12 @@ import java.io.IOException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.FieldInputStream;
 import org.theseed.io.template.LineTemplate;
 import org.theseed.memdb.AttributeBuilder;
 import org.theseed.memdb.DbInstance;
 import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.InputRecord;
+import org.theseed.memdb.RecordSource;
 import org.theseed.memdb.walk.WalkDbInstance;
 
 /**
@@ -40,16 +41,17 @@ public class TextAttributeBuilder extends AttributeBuilder {
      * @throws IOException
      *
      */
-    public TextAttributeBuilder(TextEntityType type, String attributeString, FieldInputStream instanceStream)
+    public TextAttributeBuilder(TextEntityType type, String attributeString, RecordSource instanceStream)
             throws IOException, ParseFailureException {
         // Create and save the template.
-        this.template = new LineTemplate(instanceStream, attributeString, null);
+        this.template = new LineTemplate(instanceStream.getStream(), attributeString, null);
         this.entityType = type;
     }
 
     @Override
-    protected void processAttribute(DbInstance db, FieldInputStream.Record record, EntityInstance instance) {
-        String attribute = template.apply(record);
+    protected int processAttribute(DbInstance db, InputRecord record, EntityInstance instance) {
+        int retVal = 0;
+        String attribute = template.apply(record.getRecord());
         // Only process the attribute if it is non-blank. Some attributes are empty for certain entity instances
         // (for example, a genome with a missing family taxon).
         if (! StringUtils.isBlank(attribute)) {
@@ -58,7 +60,9 @@ public class TextAttributeBuilder extends AttributeBuilder {
             WalkDbInstance walkDb = (WalkDbInstance) db;
             long count = walkDb.countTokens(attribute);
             this.entityType.countTokens(count);
+            retVal = 1;
         }
+        return retVal;
     }
 
 }
@@ -102,7 +102,7 @@ public class TextEntityInstance extends WalkEntityInstance {
             writer.println(rel.getSentence());
             // Get the target entity instance.  This could be NULL if the entity
             // is already exhausted.
-            retVal = (WalkEntityInstance) rel.getTarget(db);
+            retVal = (WalkEntityInstance) rel.getTarget();
             // Delete the relationship from the entity instance.
             connections.remove(lastN);
         }
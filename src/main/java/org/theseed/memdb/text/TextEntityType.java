@@ -9,8 +9,8 @@ import java.util.Collection;
 import java.util.List;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.FieldInputStream;
 import org.theseed.memdb.AttributeBuilder;
+import org.theseed.memdb.RecordSource;
 import org.theseed.memdb.walk.WalkEntityType;
 
 /**
@@ -42,7 +42,7 @@ public class TextEntityType extends WalkEntityType {
     }
 
     @Override
-    protected Collection<? extends AttributeBuilder> getAttributeBuilders(FieldInputStream instanceStream)
+    protected Collection<? extends AttributeBuilder> getAttributeBuilders(RecordSource instanceStream)
             throws IOException, ParseFailureException {
         List<TextAttributeBuilder> retVal = new ArrayList<>(this.attributeStrings.size());
         // Convert each attribute string into an attribute builder.
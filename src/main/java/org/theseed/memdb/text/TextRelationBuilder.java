@@ -6,10 +6,11 @@ package org.theseed.memdb.text;
 import java.io.IOException;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.FieldInputStream;
 import org.theseed.io.template.LineTemplate;
 import org.theseed.memdb.DbInstance;
 import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.InputRecord;
+import org.theseed.memdb.RecordSource;
 import org.theseed.memdb.RelationBuilder;
 import org.theseed.memdb.RelationshipInstance;
 
@@ -34,21 +35,21 @@ public class TextRelationBuilder extends RelationBuilder {
      * @param relType	relationship type of interest
      * @param inStream	input stream containing records from which the relationship is built
      */
-    public TextRelationBuilder(TextRelationshipType relType, FieldInputStream inStream) throws IOException, ParseFailureException {
+    public TextRelationBuilder(TextRelationshipType relType, RecordSource inStream) throws IOException, ParseFailureException {
         super(relType, inStream);
         // Compile the two templates.
-        this.forwardTemplate = new LineTemplate(inStream, relType.getForwardString(), null);
-        this.reverseTemplate = new LineTemplate(inStream, relType.getReverseString(), null);
+        this.forwardTemplate = new LineTemplate(inStream.getStream(), relType.getForwardString(), null);
+        this.reverseTemplate = new LineTemplate(inStream.getStream(), relType.getReverseString(), null);
     }
 
     @Override
-    protected RelationshipInstance getForwardInstance(DbInstance db, FieldInputStream.Record record, EntityInstance sourceInstance,
+    protected RelationshipInstance getForwardInstance(DbInstance db, InputRecord record, EntityInstance sourceInstance,
             EntityInstance targetInstance) {
         return this.buildInstance(db, this.forwardTemplate, record, targetInstance);
     }
 
     @Override
-    protected RelationshipInstance getReverseInstance(DbInstance db, FieldInputStream.Record record, EntityInstance sourceInstance,
+    protected RelationshipInstance getReverseInstance(DbInstance db, InputRecord record, EntityInstance sourceInstance,
             EntityInstance targetInstance) {
         return this.buildInstance(db, this.reverseTemplate, record, sourceInstance);
     }
@@ -62,9 +63,9 @@ public class TextRelationBuilder extends RelationBuilder {
      *
      * @return the relationship instance built
      */
-    private RelationshipInstance buildInstance(DbInstance db, LineTemplate template, FieldInputStream.Record record,
+    private RelationshipInstance buildInstance(DbInstance db, LineTemplate template, InputRecord record,
             EntityInstance target) {
-        String crossingText = template.apply(record);
+        String crossingText = template.apply(record.getRecord());
         TextDbInstance textDb = (TextDbInstance) db;
         textDb.countTokens(crossingText);
         return new TextRelationshipInstance(crossingText, target);
@@ -19,18 +19,6 @@ public class TextRelationshipInstance extends RelationshipInstance {
     /** text for the relationship crossing */
     private final String crossingText;
 
-    /**
-     * Construct a relationship instance for a text-walk crossing.
-     *
-     * @param templateString	template string for the crossing in this direction
-     * @param destType			type name for the target entity
-     * @param id				ID of the target entity
-     */
-    public TextRelationshipInstance(String templateString, String destType, String id) {
-        super(destType, id);
-        this.crossingText = templateString;
-    }
-
     /**
      * Construct a relationship instance for a text-walk crossing.
      *
@@ -6,8 +6,8 @@ package org.theseed.memdb.text;
 import java.io.IOException;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.FieldInputStream;
 import org.theseed.memdb.EntityType;
+import org.theseed.memdb.RecordSource;
 import org.theseed.memdb.RelationBuilder;
 import org.theseed.memdb.RelationshipType;
 
@@ -58,7 +58,7 @@ public class TextRelationshipType extends RelationshipType {
     }
 
     @Override
-    protected RelationBuilder createRelationBuilder(FieldInputStream inStream) throws IOException, ParseFailureException {
+    protected RelationBuilder createRelationBuilder(RecordSource inStream) throws IOException, ParseFailureException {
         return new TextRelationBuilder(this, inStream);
     }
 
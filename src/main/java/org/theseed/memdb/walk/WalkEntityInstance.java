@@ -38,6 +38,7 @@ public abstract class WalkEntityInstance extends EntityInstance {
     /**
      * @return TRUE if this entity instance is deleted
      */
+    @Override
     public boolean isDeleted() {
         return this.deleted;
     }
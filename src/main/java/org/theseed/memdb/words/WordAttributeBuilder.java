@@ -3,12 +3,12 @@ package org.theseed.memdb.words;
 import java.io.IOException;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.FieldInputStream;
-import org.theseed.io.FieldInputStream.Record;
 import org.theseed.io.template.LineTemplate;
 import org.theseed.memdb.AttributeBuilder;
 import org.theseed.memdb.DbInstance;
 import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.InputRecord;
+import org.theseed.memdb.RecordSource;
 import org.theseed.memdb.walk.WalkDbInstance;
 
 /**
@@ -37,15 +37,16 @@ public class WordAttributeBuilder extends AttributeBuilder {
      *
      */
     public WordAttributeBuilder(WordEntityType wordEntityType, String attributeString,
-            FieldInputStream instanceStream) throws IOException, ParseFailureException {
-        this.template = new LineTemplate(instanceStream, attributeString, null);
+            RecordSource instanceStream) throws IOException, ParseFailureException {
+        this.template = new LineTemplate(instanceStream.getStream(), attributeString, null);
         this.entityType = wordEntityType;
     }
 
     @Override
-    protected void processAttribute(DbInstance db, Record record, EntityInstance instance) {
+    protected int processAttribute(DbInstance db, InputRecord record, EntityInstance instance) {
+        int retVal = 0;
         // Get the attribute value from the template. This is a word or phrase that will be added to the instance's attribute list.
-        String attribute = template.apply(record);
+        String attribute = template.apply(record.getRecord());
         // Only process the attribute if it is non-blank. Some attributes are empty for certain entity instances
         // (for example, a genome with a missing family taxon).
         if (attribute != null && ! attribute.isBlank()) {
@@ -54,7 +55,9 @@ public class WordAttributeBuilder extends AttributeBuilder {
             WalkDbInstance walkDb = (WalkDbInstance) db;
             long count = walkDb.countTokens(attribute);
             this.entityType.countTokens(count);
+            retVal = 1;
         }
+        return retVal;
     }
 
 }
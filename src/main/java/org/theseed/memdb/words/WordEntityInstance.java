@@ -71,7 +71,7 @@ public class WordEntityInstance extends WalkEntityInstance {
             wdb.emitPhrase(writer, rel.getTargetId());
             // Get the target entity instance.  This could be NULL if the entity
             // is already exhausted.
-            retVal = (WalkEntityInstance) rel.getTarget(db);
+            retVal = (WalkEntityInstance) rel.getTarget();
             // Delete the relationship from the entity instance.
             connections.remove(lastN);
         }
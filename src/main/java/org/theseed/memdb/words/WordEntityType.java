@@ -6,8 +6,8 @@ import java.util.Collection;
 import java.util.List;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.FieldInputStream;
 import org.theseed.memdb.AttributeBuilder;
+import org.theseed.memdb.RecordSource;
 import org.theseed.memdb.walk.WalkEntityType;
 
 public class WordEntityType extends WalkEntityType {
@@ -27,7 +27,7 @@ public class WordEntityType extends WalkEntityType {
     }
 
     @Override
-    protected Collection<? extends AttributeBuilder> getAttributeBuilders(FieldInputStream instanceStream)
+    protected Collection<? extends AttributeBuilder> getAttributeBuilders(RecordSource instanceStream)
             throws IOException, ParseFailureException {
                 List<WordAttributeBuilder> retVal = new ArrayList<>(this.attributeTemplates.size());
         for (String attributeString : this.attributeTemplates) {
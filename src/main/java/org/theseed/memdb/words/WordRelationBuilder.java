@@ -3,13 +3,14 @@ package org.theseed.memdb.words;
 import java.io.IOException;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.FieldInputStream;
-import org.theseed.io.FieldInputStream.Record;
 import org.theseed.io.template.LineTemplate;
 import org.theseed.memdb.DbInstance;
 import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.InputRecord;
+import org.theseed.memdb.RecordSource;
 import org.theseed.memdb.RelationBuilder;
 import org.theseed.memdb.RelationshipInstance;
+import org.theseed.memdb.SymbolTable;
 import org.theseed.memdb.walk.WalkDbInstance;
 
 public class WordRelationBuilder extends RelationBuilder {
@@ -22,30 +23,34 @@ public class WordRelationBuilder extends RelationBuilder {
     /** target line template */
     private final LineTemplate targetTemplate;
 
-    public WordRelationBuilder(WordRelationshipType relType, FieldInputStream inStream) throws IOException, ParseFailureException {
+    public WordRelationBuilder(WordRelationshipType relType, RecordSource inStream) throws IOException, ParseFailureException {
         super(relType, inStream);
         // Compile the three templates.
-        this.sourceTemplate = new LineTemplate(inStream, relType.getSourceString(), null);
-        this.nameTemplate = new LineTemplate(inStream, relType.getNameString(), null);
-        this.targetTemplate = new LineTemplate(inStream, relType.getTargetString(), null);
+        this.sourceTemplate = new LineTemplate(inStream.getStream(), relType.getSourceString(), null);
+        this.nameTemplate = new LineTemplate(inStream.getStream(), relType.getNameString(), null);
+        this.targetTemplate = new LineTemplate(inStream.getStream(), relType.getTargetString(), null);
     }
 
     @Override
-    protected RelationshipInstance getForwardInstance(DbInstance db, Record record, EntityInstance sourceInstance,
+    protected RelationshipInstance getForwardInstance(DbInstance db, InputRecord record, EntityInstance sourceInstance,
             EntityInstance targetInstance) {
-        String sourceId = this.sourceTemplate.apply(record);
-        String name = this.nameTemplate.apply(record);
-        String targetId = this.targetTemplate.apply(record);
+        // The ID and name strings repeat across many relationship instances, so we share them.
+        SymbolTable symbols = db.getSymbols();
+        String sourceId = symbols.intern(this.sourceTemplate.apply(record.getRecord()));
+        String name = symbols.intern(this.nameTemplate.apply(record.getRecord()));
+        String targetId = symbols.intern(this.targetTemplate.apply(record.getRecord()));
         this.countTokens(db, name, targetId);
         return new WordRelationshipInstance(sourceId, name, targetId, targetInstance);
     }
 
     @Override
-    protected RelationshipInstance getReverseInstance(DbInstance db, Record record, EntityInstance sourceInstance,
+    protected RelationshipInstance getReverseInstance(DbInstance db, InputRecord record, EntityInstance sourceInstance,
             EntityInstance targetInstance) {
-        String sourceId = this.sourceTemplate.apply(record);
-        String name = this.nameTemplate.apply(record);
-        String targetId = this.targetTemplate.apply(record);
+        // The ID and name strings repeat across many relationship instances, so we share them.
+        SymbolTable symbols = db.getSymbols();
+        String sourceId = symbols.intern(this.sourceTemplate.apply(record.getRecord()));
+        String name = symbols.intern(this.nameTemplate.apply(record.getRecord()));
+        String targetId = symbols.intern(this.targetTemplate.apply(record.getRecord()));
         this.countTokens(db, name, sourceId);
         return new WordRelationshipInstance(targetId, name, sourceId, sourceInstance);
     }
@@ -3,8 +3,8 @@ package org.theseed.memdb.words;
 import java.io.IOException;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.io.FieldInputStream;
 import org.theseed.memdb.EntityType;
+import org.theseed.memdb.RecordSource;
 import org.theseed.memdb.RelationBuilder;
 import org.theseed.memdb.RelationshipType;
 
@@ -34,7 +34,7 @@ public class WordRelationshipType extends RelationshipType {
     }
 
     @Override
-    protected RelationBuilder createRelationBuilder(FieldInputStream inStream)
+    protected RelationBuilder createRelationBuilder(RecordSource inStream)
             throws IOException, ParseFailureException {
         return new WordRelationBuilder(this, inStream);
     }
@@ -16,23 +16,28 @@ import com.github.cliftonlabs.json_simple.JsonObject;
  * This report generates JSON text in a conversational format. Each conversation is coded as a list of hashes, each hash
  * having a "role" and "content" member. The question has a role of "user" and the expected response has a role of "assistant".
  * Currently, each output question will be a single conversation with one user and one assistant entry.
+ * Each conversation is written as soon as it is built, either as an element of a JSON list or as a line of a
+ * JSON Lines file.
  *
  * @author Bruce Parrello
  *
  */
 public class ConvoQueryGenReporter extends QueryGenReporter {
 
-    // FIELDS
-    /** output json list */
-    private JsonArray jsonList;
-
-    public ConvoQueryGenReporter(IParms processor) {
+    /**
+     * Initialize this report.
+     *
+     * @param processor		controlling command processor
+     * @param jsonLines		TRUE to write in JSON Lines format, FALSE to write a JSON list
+     */
+    public ConvoQueryGenReporter(IParms processor, boolean jsonLines) {
         super(processor);
+        this.setJsonLines(jsonLines);
     }
 
     @Override
     protected void startReport() {
-        this.jsonList = new JsonArray();
+        this.startJsonList();
     }
 
     @Override
@@ -77,8 +82,8 @@ public class ConvoQueryGenReporter extends QueryGenReporter {
         answerObject.put("content", answerJson);
         // Add it to the conversation.
         convoJson.add(answerObject);
-        // Save the conversation.
-        this.jsonList.add(convoJson);
+        // Write the conversation.
+        this.writeJsonElement(convoJson.toJson());
     }
 
     /**
@@ -96,8 +101,7 @@ public class ConvoQueryGenReporter extends QueryGenReporter {
 
     @Override
     public void finishReport() {
-        // This is the point where we write out all the JSON.
-        this.outputAllJson(this.jsonList);
+        this.finishJsonList();
     }
 
 }
@@ -12,8 +12,8 @@ import com.github.cliftonlabs.json_simple.JsonArray;
 import com.github.cliftonlabs.json_simple.JsonObject;
 
 /**
- * This generates standard JSON output for test questions and answers. We build the question objects in memory and
- * then write them at the end.
+ * This generates standard JSON output for test questions and answers. Each question object is written as soon
+ * as it is built, either as an element of a JSON list or as a line of a JSON Lines file.
  *
  * There are certain constant fields required in every question object. These are provided by the controlling
  * command processor and copied to each question's JSON object.
@@ -26,26 +26,24 @@ public class JsonQueryGenReporter extends QueryGenReporter {
     // FIELDS
     /** map of additional properties */
     private final JsonObject constantJson;
-    /** number of JSON objects written */
-    private int outCount;
 
     /**
      * Initialize this report.
      *
      * @param processor		controlling command processor
+     * @param jsonLines		TRUE to write in JSON Lines format, FALSE to write a JSON list
      */
-    public JsonQueryGenReporter(IParms processor) {
+    public JsonQueryGenReporter(IParms processor, boolean jsonLines) {
         super(processor);
         // Store the constants required for every output question.
         this.constantJson = processor.getConstantJson();
-        // Denote we have not written any objects yet.
-        this.outCount = 0;
+        this.setJsonLines(jsonLines);
     }
 
     @Override
     protected void startReport() {
         // Start the output json list.
-        this.write("[");        
+        this.startJsonList();
     }
 
     /**
@@ -75,14 +73,14 @@ public class JsonQueryGenReporter extends QueryGenReporter {
         JsonArray answerList = new JsonArray();
         answerList.addAll(answers);
         outputJson.put("correct_answers", answerList);
-        this.writeJson(outputJson);
+        this.writeJsonElement(outputJson.toJson());
     }
 
     @Override
     public void writeQuestion(Parameterization parms, String questionText, int answer) {
         JsonObject outputJson = this.getNewJson(questionText, parms);
         outputJson.put("correct_answer", answer);
-        this.writeJson(outputJson);
+        this.writeJsonElement(outputJson.toJson());
     }
 
     @Override
@@ -92,30 +90,13 @@ public class JsonQueryGenReporter extends QueryGenReporter {
         JsonArray wrongList = new JsonArray();
         wrongList.addAll(distractors);
         outputJson.put("distractors", wrongList);
-        this.writeJson(outputJson);
-    }
-
-    /**
-     * Write a JSON object to the output.
-     * 
-     * @param outputJson    JSON object to write
-     */
-    private void writeJson(JsonObject outputJson) {
-        // If this is not the first object, we need a comma and a new-line first.
-        if (this.outCount > 0)
-            this.write(",");
-        String jsonString = outputJson.toJson();
-        this.writeNoNL("    " + jsonString);
-        this.outCount++;
+        this.writeJsonElement(outputJson.toJson());
     }
 
     @Override
     public void finishReport() {
-        // If we wrote something, we need a new line before the closing bracket.
-        if (this.outCount > 0)
-            this.write("");
         // Close the JSON list.
-        this.write("]");
+        this.finishJsonList();
     }
 
 }
@@ -10,17 +10,24 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
-import org.theseed.json.JsonFileDir;
 import org.theseed.memdb.query.proposal.Parameterization;
 import org.theseed.memdb.query.proposal.ProposalQuery;
 
-import com.github.cliftonlabs.json_simple.JsonArray;
 import com.github.cliftonlabs.json_simple.JsonObject;
 
 /**
  * This is the report writer for query generation. Query reports are generally designed to be read by
  * other software, so they are not as structured as a normal report.
  *
+ * JSON reports are written one element at a time, so memory use does not grow with the number of questions
+ * and the output is on disk as soon as it is flushed.  A JSON report can be written either as a single JSON
+ * list with one element per line, or in JSON Lines format, with one element per line and no enclosing list.
+ * A JSON Lines file is valid up to its last complete line even if the run is interrupted.
+ *
+ * The output for a template can be recorded as a list of elements (JSON strings for a JSON report, or lines for a
+ * text report), and the recorded elements can be replayed later to reproduce the output.  This is used to restore
+ * the output of templates completed in an interrupted run.
+ *
  * @author Bruce Parrello
  *
  */
@@ -33,6 +40,14 @@ public abstract class QueryGenReporter {
     private final Random rand;
     /** saved proposal query */
     private ProposalQuery query;
+    /** TRUE if JSON elements are written in JSON Lines format */
+    private boolean jsonLines;
+    /** number of JSON elements written */
+    private int jsonCount;
+    /** TRUE if the output consists of JSON elements */
+    private boolean jsonOutput;
+    /** list of output elements being recorded, or NULL if we are not recording */
+    private List<String> recording;
 
     /**
      * This enumeration selects the different report types.
@@ -49,14 +64,28 @@ public abstract class QueryGenReporter {
         JSON {
             @Override
             public QueryGenReporter create(IParms processor) {
-                return new JsonQueryGenReporter(processor);
+                return new JsonQueryGenReporter(processor, false);
+            }
+        },
+        /** standard json-format questions and answers in JSON Lines format */
+        JSONL {
+            @Override
+            public QueryGenReporter create(IParms processor) {
+                return new JsonQueryGenReporter(processor, true);
             }
         },
         /** conversational json-format questions and answers */
         CONVO {
             @Override
             public QueryGenReporter create(IParms processor) {
-                return new ConvoQueryGenReporter(processor);
+                return new ConvoQueryGenReporter(processor, false);
+            }
+        },
+        /** conversational json-format questions and answers in JSON Lines format */
+        CONVOL {
+            @Override
+            public QueryGenReporter create(IParms processor) {
+                return new ConvoQueryGenReporter(processor, true);
             }
         };
 
@@ -88,6 +117,19 @@ public abstract class QueryGenReporter {
      */
     public QueryGenReporter(IParms processor) {
         this.rand = new Random();
+        this.jsonLines = false;
+        this.jsonCount = 0;
+        this.jsonOutput = false;
+        this.recording = null;
+    }
+
+    /**
+     * Specify whether JSON elements should be written in JSON Lines format.
+     *
+     * @param jsonLines		TRUE for JSON Lines format, FALSE for a JSON list
+     */
+    protected void setJsonLines(boolean jsonLines) {
+        this.jsonLines = jsonLines;
     }
 
     /**
@@ -161,6 +203,8 @@ public abstract class QueryGenReporter {
      * @param line	text to write
      */
     public void write(String line) {
+        if (this.recording != null && ! this.jsonOutput)
+            this.recording.add(line);
         this.writer.println(line);
     }
 
@@ -189,7 +233,8 @@ public abstract class QueryGenReporter {
 
     /**
      * This is a utility method that randomizes the correct answer and the distractors
-     * in a multiple-choice question.
+     * in a multiple-choice question.  If a query template has been saved, its random number
+     * generator is used, so the output is reproducible from the template seeds.
      *
      * @param answer		correct answers
      * @param distractors	alternate answers
@@ -200,17 +245,82 @@ public abstract class QueryGenReporter {
         ArrayList<String> choices = new ArrayList<>(distractors.size() + 1);
         choices.add(answer);
         choices.addAll(distractors);
-        Collections.shuffle(choices, this.rand);
+        Random choiceRand = (this.query == null ? this.rand : this.query.getRandom());
+        Collections.shuffle(choices, choiceRand);
         return choices;
     }
 
     /**
-     * This is a utility method that outputs a JSON array.
+     * Start the output of a stream of JSON elements.
+     */
+    protected void startJsonList() {
+        this.jsonCount = 0;
+        this.jsonOutput = true;
+        if (! this.jsonLines)
+            this.write("[");
+    }
+
+    /**
+     * Write a single element to the JSON output.  Each element is on a line by itself.
+     *
+     * @param jsonString	JSON string for the element
+     */
+    protected void writeJsonElement(String jsonString) {
+        if (this.recording != null)
+            this.recording.add(jsonString);
+        if (this.jsonLines)
+            this.write(jsonString);
+        else {
+            // If this is not the first element, we need a comma and a new-line first.
+            if (this.jsonCount > 0)
+                this.write(",");
+            this.writeNoNL("    " + jsonString);
+        }
+        this.jsonCount++;
+    }
+
+    /**
+     * Finish the output of a stream of JSON elements.
+     */
+    protected void finishJsonList() {
+        if (! this.jsonLines) {
+            // If we wrote something, we need a new line before the closing bracket.
+            if (this.jsonCount > 0)
+                this.write("");
+            this.write("]");
+        }
+    }
+
+    /**
+     * Start recording the output elements.
+     */
+    public void startRecording() {
+        this.recording = new ArrayList<>();
+    }
+
+    /**
+     * Stop recording the output elements.
+     *
+     * @return the list of output elements written since recording started
+     */
+    public List<String> stopRecording() {
+        List<String> retVal = this.recording;
+        this.recording = null;
+        return (retVal == null ? Collections.emptyList() : retVal);
+    }
+
+    /**
+     * Write previously-recorded output elements.
      *
-     * @param outJson	JSON array to output
+     * @param elements	list of output elements to write
      */
-    protected void outputAllJson(JsonArray outJson) {
-        JsonFileDir.writeJson(outJson, this.writer);
+    public void replay(List<String> elements) {
+        for (String element : elements) {
+            if (this.jsonOutput)
+                this.writeJsonElement(element);
+            else
+                this.write(element);
+        }
     }
 
     /**
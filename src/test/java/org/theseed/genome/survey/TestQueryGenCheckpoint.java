@@ -0,0 +1,97 @@
+package org.theseed.genome.survey;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+
+public class TestQueryGenCheckpoint {
+
+    /** run settings for the test checkpoints */
+    private static final String SETTINGS = "target=20 limit=50";
+
+    @Test
+    public void testCheckpointResume() throws IOException, ParseFailureException {
+        File ckptFile = File.createTempFile("queryGen", ".ckpt");
+        ckptFile.deleteOnExit();
+        try (QueryGenCheckpoint ckpt = QueryGenCheckpoint.create(ckptFile, 12345L, "JSONL", SETTINGS)) {
+            ckpt.save(0, "What is {{Genome.name}}?", "Genome", "list Genome.name", 2,
+                    List.of("{\"q\":1}", "{\"q\":2}"));
+            ckpt.save(1, "How many {{Feature.id}}?", "Feature", "count", 0, List.of());
+        }
+        // Simulate a run interrupted while saving the third template.
+        try (PrintWriter writer = new PrintWriter(new FileWriter(ckptFile, true))) {
+            writer.println("template\t2\t1\t1\tWhich {{Role.name}}?\tRole\tcount");
+            writer.println("{\"q\":3}");
+        }
+        try (QueryGenCheckpoint ckpt = QueryGenCheckpoint.resume(ckptFile, "JSONL", SETTINGS)) {
+            assertThat(ckpt.getSeed(), equalTo(12345L));
+            assertThat(ckpt.size(), equalTo(2));
+            QueryGenCheckpoint.Entry entry = ckpt.get(0, "What is {{Genome.name}}?", "Genome", "list Genome.name");
+            assertThat(entry.getQuestions(), equalTo(2));
+            assertThat(entry.getPath(), equalTo("Genome"));
+            assertThat(entry.getResult(), equalTo("list Genome.name"));
+            assertThat(entry.getElements(), contains("{\"q\":1}", "{\"q\":2}"));
+            entry = ckpt.get(1, "How many {{Feature.id}}?", "Feature", "count");
+            assertThat(entry.getQuestions(), equalTo(0));
+            assertThat(entry.getElements().size(), equalTo(0));
+            assertThat(ckpt.get(2, "Which {{Role.name}}?", "Role", "count"), nullValue());
+            // The template, path, and result must all match.
+            assertThrows(ParseFailureException.class,
+                    () -> ckpt.get(0, "What is {{Genome.id}}?", "Genome", "list Genome.name"));
+            assertThrows(ParseFailureException.class,
+                    () -> ckpt.get(0, "What is {{Genome.name}}?", "Genome Feature", "list Genome.name"));
+            assertThrows(ParseFailureException.class,
+                    () -> ckpt.get(1, "How many {{Feature.id}}?", "Feature", "list Feature.id"));
+            ckpt.save(2, "Which {{Role.name}}?", "Role", "count", 1, List.of("{\"q\":3}"));
+        }
+        // The rewritten file should have all three templates.
+        try (QueryGenCheckpoint ckpt = QueryGenCheckpoint.resume(ckptFile, "JSONL", SETTINGS)) {
+            assertThat(ckpt.size(), equalTo(3));
+            assertThat(ckpt.get(2, "Which {{Role.name}}?", "Role", "count").getElements(), contains("{\"q\":3}"));
+        }
+        // A run with a different format or different settings cannot be resumed.
+        assertThrows(ParseFailureException.class, () -> QueryGenCheckpoint.resume(ckptFile, "TEXT", SETTINGS));
+        assertThrows(ParseFailureException.class,
+                () -> QueryGenCheckpoint.resume(ckptFile, "JSONL", "target=20 limit=10"));
+    }
+
+    @Test
+    public void testMultiLineElements() throws IOException, ParseFailureException {
+        File ckptFile = File.createTempFile("queryGen", ".ckpt");
+        ckptFile.deleteOnExit();
+        // A text answer can span several lines, and the elements can contain backslashes and non-ASCII characters.
+        List<String> first = List.of("Which genomes?", "* Correct answer:\n    Genome 1\n    Genome 2\r\n",
+                "C:\\data\\n is not a new-line", "\\", "Gen\u00f4me \u2014 \\\n");
+        List<String> second = List.of("", "\n\n", "last");
+        try (QueryGenCheckpoint ckpt = QueryGenCheckpoint.create(ckptFile, 42L, "TEXT", SETTINGS)) {
+            ckpt.save(0, "Which {{Genome.genus}} genomes?", "Genome", "list Genome.name", 1, first);
+            ckpt.save(1, "How many?", "Genome", "count", 1, second);
+        }
+        try (QueryGenCheckpoint ckpt = QueryGenCheckpoint.resume(ckptFile, "TEXT", SETTINGS)) {
+            assertThat(ckpt.size(), equalTo(2));
+            assertThat(ckpt.get(0, "Which {{Genome.genus}} genomes?", "Genome", "list Genome.name").getElements(),
+                    equalTo(first));
+            assertThat(ckpt.get(1, "How many?", "Genome", "count").getElements(), equalTo(second));
+            ckpt.save(2, "Last?", "Feature", "count", 0, List.of("a\nb"));
+        }
+        // A second resume reads the records from the rewritten file.
+        try (QueryGenCheckpoint ckpt = QueryGenCheckpoint.resume(ckptFile, "TEXT", SETTINGS)) {
+            assertThat(ckpt.size(), equalTo(3));
+            assertThat(ckpt.get(0, "Which {{Genome.genus}} genomes?", "Genome", "list Genome.name").getElements(),
+                    equalTo(first));
+            assertThat(ckpt.get(1, "How many?", "Genome", "count").getElements(), equalTo(second));
+            assertThat(ckpt.get(2, "Last?", "Feature", "count").getElements(), equalTo(List.of("a\nb")));
+        }
+    }
+
+}
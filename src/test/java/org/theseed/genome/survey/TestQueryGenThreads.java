@@ -0,0 +1,151 @@
+package org.theseed.genome.survey;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.query.QueryDbSnapshot;
+import org.theseed.memdb.query.SampleQueryDb;
+
+public class TestQueryGenThreads {
+
+    /** query templates to generate: question, path, and result for each */
+    private static final String[] TEMPLATES = new String[] {
+            "How many {{Genome.genus}} features make {{Feature.product}}?", "Genome Feature", "count",
+            "What {{Feature.feature_type}} features are in {{Genome.genome_name}}?", "Genome Feature", "Feature.patric_id",
+            "What is the product of a feature in {{Genome.genome_name}}?", "Genome Feature", "choice Feature.product",
+            "How many {{Genome.genus}} genomes have a GC content over {{>Genome.gc_content:50}}?", "Genome", "count",
+            "What genomes have a {{Feature.product}} with a role?", "Feature Genome Role", "Genome.genome_name",
+            "What {{Genome.genus}} features have roles?", "Genome Feature Role", "Feature.patric_id"
+    };
+
+    @Test
+    public void testThreadCounts() throws Exception {
+        File workDir = Files.createTempDirectory("queryGen").toFile();
+        try {
+            File snapshot = new File(workDir, "db.ser");
+            QueryDbSnapshot.save(SampleQueryDb.create(), snapshot);
+            File templates = new File(workDir, "templates.txt");
+            try (PrintWriter writer = new PrintWriter(templates)) {
+                for (String line : TEMPLATES)
+                    writer.println(line);
+            }
+            // The output for a seed must not depend on the number of template threads, in normal or batch mode.
+            byte[] expected = runQueryGen(workDir, snapshot, templates, "--threads", "1");
+            assertThat(expected.length > 0, equalTo(true));
+            assertThat(runQueryGen(workDir, snapshot, templates, "--threads", "4"), equalTo(expected));
+            assertThat(runQueryGen(workDir, snapshot, templates, "--threads", "3", "--para", "2"), equalTo(expected));
+            byte[] batched = runQueryGen(workDir, snapshot, templates, "--batch", "--threads", "1");
+            assertThat(runQueryGen(workDir, snapshot, templates, "--batch", "--threads", "4"), equalTo(batched));
+        } finally {
+            FileUtils.deleteDirectory(workDir);
+        }
+    }
+
+    @Test
+    public void testBatchResume() throws Exception {
+        File workDir = Files.createTempDirectory("queryGen").toFile();
+        try {
+            File snapshot = new File(workDir, "db.ser");
+            QueryDbSnapshot.save(SampleQueryDb.create(), snapshot);
+            File templates = new File(workDir, "templates.txt");
+            try (PrintWriter writer = new PrintWriter(templates)) {
+                for (String line : TEMPLATES)
+                    writer.println(line);
+            }
+            File ckptFile = new File(workDir, "queryGen.ckpt");
+            byte[] expected = runQueryGen(workDir, snapshot, templates, "--batch", "--format", "TEXT",
+                    "--checkpoint", ckptFile.toString());
+            // Simulate an interruption after the second template, in the middle of the third template's record.
+            // The first two templates are in the same batch as the third, which has to be recomputed.
+            List<String> lines = Files.readAllLines(ckptFile.toPath());
+            int ends = 0;
+            int keep = 0;
+            while (ends < 2) {
+                if (lines.get(keep).startsWith("end\t"))
+                    ends++;
+                keep++;
+            }
+            try (PrintWriter writer = new PrintWriter(ckptFile)) {
+                for (String line : lines.subList(0, keep + 2))
+                    writer.println(line);
+            }
+            // The resumed run must produce the same output as the uninterrupted one.
+            assertThat(runQueryGen(workDir, snapshot, templates, "--batch", "--format", "TEXT",
+                    "--checkpoint", ckptFile.toString(), "--resume"), equalTo(expected));
+        } finally {
+            FileUtils.deleteDirectory(workDir);
+        }
+    }
+
+    @Test
+    public void testThreadResume() throws Exception {
+        File workDir = Files.createTempDirectory("queryGen").toFile();
+        try {
+            File snapshot = new File(workDir, "db.ser");
+            QueryDbSnapshot.save(SampleQueryDb.create(), snapshot);
+            File templates = new File(workDir, "templates.txt");
+            try (PrintWriter writer = new PrintWriter(templates)) {
+                for (String line : TEMPLATES)
+                    writer.println(line);
+            }
+            File ckptFile = new File(workDir, "queryGen.ckpt");
+            byte[] expected = runQueryGen(workDir, snapshot, templates, "--threads", "4", "--format", "TEXT",
+                    "--checkpoint", ckptFile.toString());
+            // Simulate an interruption after the third template, in the middle of the fourth template's record.
+            List<String> lines = Files.readAllLines(ckptFile.toPath());
+            int ends = 0;
+            int keep = 0;
+            while (ends < 3) {
+                if (lines.get(keep).startsWith("end\t"))
+                    ends++;
+                keep++;
+            }
+            try (PrintWriter writer = new PrintWriter(ckptFile)) {
+                for (String line : lines.subList(0, keep + 2))
+                    writer.println(line);
+            }
+            // The restored templates are replayed while the others are computed concurrently, and the output must
+            // still be in template order and the same as for the uninterrupted run.
+            assertThat(runQueryGen(workDir, snapshot, templates, "--threads", "4", "--format", "TEXT",
+                    "--checkpoint", ckptFile.toString(), "--resume"), equalTo(expected));
+        } finally {
+            FileUtils.deleteDirectory(workDir);
+        }
+    }
+
+    /**
+     * Run the query generator on the sample database with a fixed seed.
+     *
+     * @param workDir		working directory for the output
+     * @param snapshot		snapshot file for the sample database
+     * @param templates		query template file
+     * @param options		additional command-line options
+     *
+     * @return the bytes of the output file
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    private static byte[] runQueryGen(File workDir, File snapshot, File templates, String... options)
+            throws IOException, ParseFailureException {
+        File outFile = new File(workDir, "questions.json");
+        List<String> args = new ArrayList<>(List.of("-i", templates.toString(), "-o", outFile.toString(),
+                "--snapshot", snapshot.toString(), "--seed", "12345", "--target", "20", "--limit", "50"));
+        args.addAll(List.of(options));
+        args.add(new File("data", "querydbd.txt").toString());
+        QueryGenerateProcessor processor = new QueryGenerateProcessor();
+        processor.parseCommand(args.toArray(String[]::new));
+        processor.run();
+        return Files.readAllBytes(outFile.toPath());
+    }
+
+}
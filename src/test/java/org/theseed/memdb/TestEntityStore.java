@@ -0,0 +1,205 @@
+package org.theseed.memdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.query.QueryDbDefinition;
+import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.QueryRelationshipInstance;
+import org.theseed.memdb.text.TextDbInstance;
+import org.theseed.memdb.text.TextEntityInstance;
+import org.theseed.memdb.text.TextRelationshipInstance;
+
+public class TestEntityStore {
+
+    @Test
+    public void testTypeIndices() throws IOException, ParseFailureException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        List<String> typeNames = dbDef.getEntityNameList();
+        for (int i = 0; i < typeNames.size(); i++)
+            assertThat(typeNames.get(i), dbDef.findEntityType(typeNames.get(i)).getTypeIdx(), equalTo(i));
+        QueryDbInstance db = new QueryDbInstance(typeNames);
+        EntityType gType = dbDef.findEntityType("Genome");
+        EntityType fType = dbDef.findEntityType("Feature");
+        EntityInstance g1 = db.findEntity(gType, "g1");
+        assertThat(db.findEntity(gType, "g1"), sameInstance(g1));
+        assertThat(db.getEntity("Genome", "g1"), sameInstance(g1));
+        assertThat(db.getEntity(gType, "g1"), sameInstance(g1));
+        assertThat(db.getEntity("Feature", "g1"), nullValue());
+        assertThat(db.getEntity("Frog", "g1"), nullValue());
+        EntityInstance f1 = db.findEntity(fType, "g1");
+        assertThat(f1.equals(g1), is(false));
+        assertThat(db.getTypeCount("Genome"), equalTo(1));
+        assertThat(db.getTypeCount("Feature"), equalTo(1));
+        assertThat(db.getTypeCount("Frog"), equalTo(0));
+        assertThat(db.getAllEntities("Frog").isEmpty(), is(true));
+    }
+
+    @Test
+    public void testConcurrentCreate() throws IOException, ParseFailureException, InterruptedException, ExecutionException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        QueryDbInstance db = new QueryDbInstance(dbDef.getEntityNameList());
+        EntityType fType = dbDef.findEntityType("Feature");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<EntityInstance>>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    List<EntityInstance> found = new ArrayList<>(1000);
+                    for (int i = 0; i < 1000; i++)
+                        found.add(db.findEntity(fType, "f" + i));
+                    return found;
+                }));
+            }
+            List<EntityInstance> first = futures.get(0).get();
+            for (Future<List<EntityInstance>> future : futures) {
+                List<EntityInstance> found = future.get();
+                for (int i = 0; i < 1000; i++)
+                    assertThat(found.get(i), sameInstance(first.get(i)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(db.getTypeCount("Feature"), equalTo(1000));
+    }
+
+    @Test
+    public void testDirectTargets() throws IOException, ParseFailureException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        QueryDbInstance db = new QueryDbInstance(dbDef.getEntityNameList());
+        EntityType gType = dbDef.findEntityType("Genome");
+        EntityType fType = dbDef.findEntityType("Feature");
+        EntityInstance g1 = db.findEntity(gType, "g1");
+        EntityInstance f1 = db.findEntity(fType, "f1");
+        EntityInstance f2 = db.findEntity(fType, "f2");
+        g1.addConnection(new QueryRelationshipInstance(f1));
+        g1.addConnection(new QueryRelationshipInstance(f2));
+        f1.addConnection(new QueryRelationshipInstance(g1));
+        List<EntityInstance> targets = g1.getTargetsOfType("Feature");
+        assertThat(targets.size(), equalTo(2));
+        assertThat(targets.get(0), sameInstance(f1));
+        assertThat(targets.get(1), sameInstance(f2));
+        assertThat(g1.getTargetsOfType("Genome").isEmpty(), is(true));
+        assertThat(f1.getTargetsOfType("Genome").get(0), sameInstance(g1));
+        // Deleted targets in a walk database are tombstoned.
+        TextDbInstance walkDb = new TextDbInstance(dbDef.getEntityNameList());
+        TextEntityInstance wg1 = new TextEntityInstance(gType, "g1", walkDb);
+        TextEntityInstance wf1 = new TextEntityInstance(fType, "f1", walkDb);
+        RelationshipInstance rel = new TextRelationshipInstance("g1 contains f1", wf1);
+        wg1.addConnection(rel);
+        assertThat(rel.getTarget(), sameInstance(wf1));
+        assertThat(rel.getTargetType(), equalTo("Feature"));
+        wf1.setDeleted();
+        assertThat(rel.getTarget(), nullValue());
+        assertThat(wg1.getTargetsOfType("Feature").isEmpty(), is(true));
+    }
+
+    @Test
+    public void testFreeze() throws IOException, ParseFailureException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        QueryDbInstance db = new QueryDbInstance(dbDef.getEntityNameList());
+        EntityType gType = dbDef.findEntityType("Genome");
+        EntityType fType = dbDef.findEntityType("Feature");
+        EntityType cType = dbDef.findEntityType("Contig");
+        EntityInstance g1 = db.findEntity(gType, "g1");
+        EntityInstance c1 = db.findEntity(cType, "c1");
+        List<EntityInstance> features = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            EntityInstance f = db.findEntity(fType, "f" + i);
+            features.add(f);
+            g1.addConnection(new QueryRelationshipInstance(f));
+            if (i % 3 == 0)
+                g1.addConnection(new QueryRelationshipInstance(c1));
+        }
+        List<EntityInstance> unfrozen = g1.getTargetsOfType("Feature");
+        db.freeze();
+        assertThat(g1.isFrozen(), is(true));
+        assertThat(c1.isFrozen(), is(true));
+        List<EntityInstance> frozen = g1.getTargetsOfType("Feature");
+        assertThat(frozen, equalTo(unfrozen));
+        assertThat(frozen, equalTo(features));
+        assertThat(g1.getTargetsOfType("Contig").size(), equalTo(4));
+        assertThat(g1.getTargetsOfType("Role").isEmpty(), is(true));
+        assertThat(c1.getTargetsOfType("Genome").isEmpty(), is(true));
+        assertThat(g1.getRelationships().size(), equalTo(14));
+        assertThrows(IllegalStateException.class, () -> g1.addConnection(new QueryRelationshipInstance(c1)));
+    }
+
+    @Test
+    public void testSampling() throws IOException, ParseFailureException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        QueryDbInstance db = new QueryDbInstance(dbDef.getEntityNameList());
+        EntityType fType = dbDef.findEntityType("Feature");
+        for (int i = 0; i < 100; i++)
+            db.findEntity(fType, "f" + i);
+        // Sample before the freeze.
+        Collection<EntityInstance> sample = db.getSomeEntities("Feature", 10, new Random(42));
+        assertThat(sample.size(), equalTo(10));
+        assertThat(new HashSet<>(sample).size(), equalTo(10));
+        assertThat(db.getSomeEntities("Feature", 0, new Random(42)).size(), equalTo(100));
+        assertThat(db.getSomeEntities("Feature", 200, new Random(42)).size(), equalTo(100));
+        // Sample after the freeze.  The same seed must produce the same sample.
+        db.freeze();
+        List<EntityInstance> sample1 = new ArrayList<>(db.getSomeEntities("Feature", 10, new Random(42)));
+        List<EntityInstance> sample2 = new ArrayList<>(db.getSomeEntities("Feature", 10, new Random(42)));
+        assertThat(sample1.size(), equalTo(10));
+        assertThat(new HashSet<>(sample1).size(), equalTo(10));
+        assertThat(sample2, equalTo(sample1));
+        assertThat(db.getSomeEntities("Feature", 0, new Random(42)).size(), equalTo(100));
+        assertThat(db.getSomeEntities("Genome", 10, new Random(42)).isEmpty(), is(true));
+        // A full sample is a view of the frozen array, so it must not be writable.
+        List<EntityInstance> full = (List<EntityInstance>) db.getSomeEntities("Feature", 200, new Random(42));
+        assertThrows(UnsupportedOperationException.class, () -> full.set(0, full.get(1)));
+        assertThrows(UnsupportedOperationException.class, () -> full.sort(null));
+    }
+
+    @Test
+    public void testSymbolTable() {
+        SymbolTable symbols = new SymbolTable();
+        String a1 = new String("genome.1");
+        String a2 = new String("genome.1");
+        assertThat(symbols.intern(a1), sameInstance(a1));
+        assertThat(symbols.intern(a2), sameInstance(a1));
+        assertThat(symbols.intern(null), nullValue());
+        assertThat(symbols.getBytesSaved(), equalTo(SymbolTable.estimateBytes(a1)));
+        // Categorical values are shared.
+        List<String> shared = new ArrayList<>();
+        for (int i = 0; i < 30000; i++)
+            shared.add(symbols.internValue("Genome.domain", (i % 2 == 0 ? "Bacteria" : "Archaea"), x -> new String(x)));
+        assertThat(shared.get(29998), sameInstance(shared.get(0)));
+        assertThat(shared.get(29999), sameInstance(shared.get(1)));
+        // Unique values stop being shared after the sample is taken.
+        String u1 = symbols.internValue("Feature.product", "product 1", x -> new String(x));
+        assertThat(symbols.internValue("Feature.product", "product 1", x -> new String(x)), sameInstance(u1));
+        for (int i = 2; i <= 20000; i++)
+            symbols.internValue("Feature.product", "product " + i, x -> new String(x));
+        String u2 = symbols.internValue("Feature.product", "product 1", x -> new String(x));
+        assertThat(u2 == u1, is(false));
+        symbols.release();
+        String a3 = new String("genome.1");
+        assertThat(symbols.intern(a3), sameInstance(a3));
+    }
+
+}
@@ -0,0 +1,225 @@
+package org.theseed.memdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.io.FieldInputStream;
+import org.theseed.memdb.query.AttributeValue;
+import org.theseed.memdb.query.QueryDbDefinition;
+
+public class TestJsonRecordSource {
+
+    @Test
+    public void testProjection() throws IOException {
+        File jsonFile = File.createTempFile("records", ".json");
+        jsonFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(jsonFile)) {
+            writer.println("[");
+            writer.println("  { \"id\": \"a1\", \"skip\": { \"x\": [1, \"]}\", {\"y\": null}] }, \"name\": \"Alpha \\\"one\\\"\",");
+            writer.println("    \"count\": 12.5, \"list\": [\"p\", \"q\\u0041\"], \"flag\": true },");
+            writer.println("  {\"name\":null,\"id\":\"a2\",\"extra\":\"a,b}c\",\"list\":[]},");
+            writer.println("  {}");
+            writer.println("]");
+        }
+        List<InputRecord> records = new ArrayList<>();
+        try (JsonRecordSource source = new JsonRecordSource(jsonFile, List.of("id", "name", "count", "list", "flag"))) {
+            int idIdx = source.findField("id");
+            assertThat(idIdx, equalTo(0));
+            assertThat(source.findField("list"), equalTo(3));
+            assertThrows(IOException.class, () -> source.findField("skip"));
+            assertThat(source.getStream(), nullValue());
+            for (InputRecord record : source)
+                records.add(record);
+            assertThat(source.getRecordCount(), equalTo(3));
+        }
+        assertThat(records.size(), equalTo(3));
+        InputRecord r1 = records.get(0);
+        assertThat(r1.get(0), equalTo("a1"));
+        assertThat(r1.get(1), equalTo("Alpha \"one\""));
+        assertThat(r1.get(2), equalTo("12.5"));
+        assertThat(r1.getList(3), equalTo(List.of("p", "qA")));
+        assertThat(r1.get(4), equalTo("true"));
+        assertThat(r1.getRecord(), nullValue());
+        InputRecord r2 = records.get(1);
+        assertThat(r2.get(0), equalTo("a2"));
+        assertThat(r2.get(1), equalTo(""));
+        assertThat(r2.getList(1).isEmpty(), is(true));
+        assertThat(r2.getList(3).isEmpty(), is(true));
+        assertThat(r2.get(4), equalTo(""));
+        InputRecord r3 = records.get(2);
+        assertThat(r3.get(0), equalTo(""));
+    }
+
+    @Test
+    public void testEmptyAndInvalid() throws IOException {
+        File jsonFile = File.createTempFile("records", ".json");
+        jsonFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(jsonFile)) {
+            writer.println(" [ ] ");
+        }
+        try (JsonRecordSource source = new JsonRecordSource(jsonFile, List.of("id"))) {
+            Iterator<InputRecord> iter = source.iterator();
+            assertThat(iter.hasNext(), is(false));
+        }
+        try (PrintWriter writer = new PrintWriter(jsonFile)) {
+            writer.println("[ {\"id\": \"x\" \"name\": 1} ]");
+        }
+        try (JsonRecordSource source = new JsonRecordSource(jsonFile, List.of("id"))) {
+            Iterator<InputRecord> iter = source.iterator();
+            assertThrows(RuntimeException.class, () -> iter.next());
+        }
+    }
+
+    @Test
+    public void testParity() throws IOException {
+        // Here we load the same records with the projecting reader and the field input stream, and verify that
+        // the raw field strings and the attribute values are the same.  Every record has every field, since the
+        // field input stream takes its headers from the first record.
+        File jsonFile = File.createTempFile("records", ".json");
+        jsonFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(jsonFile)) {
+            writer.println("[");
+            writer.println("  { \"id\": \"fig|83333.1.peg.4\", \"name\": \"Alpha \\\"one\\\"\", \"count\": 12, \"list\": [\"p\", \"q\"],");
+            writer.println("    \"flag\": true, \"nested\": { \"a\": [1, 2] } },");
+            writer.println("  { \"id\": \"r\\u00e92\", \"name\": \"tab\\there \\u00e9 back\\\\slash\", \"count\": -4.25, \"list\": [],");
+            writer.println("    \"flag\": false, \"nested\": null },");
+            writer.println("  { \"id\": \"r3\", \"name\": null, \"count\": 1.0e3, \"list\": [\"only\", [1, 2.50]],");
+            writer.println("    \"flag\": null, \"nested\": {} },");
+            writer.println("  { \"id\": \"r4\", \"name\": \"50.5\", \"count\": -0, \"list\": [3, 4.5, \"x\", {\"k\": \"v\"}],");
+            writer.println("    \"flag\": true, \"nested\": [[1E2], {\"b\": \"\\u00e9\"}] },");
+            writer.println("  { \"id\": \"12\", \"name\": \"\", \"count\": 0.0000001, \"list\": null,");
+            writer.println("    \"flag\": false, \"nested\": \"text\" }");
+            writer.println("]");
+        }
+        List<String> columns = List.of("id", "name", "count", "list", "flag", "nested");
+        final int n = 5;
+        List<List<String>> projectedRaw = readStrings(new JsonRecordSource(jsonFile, columns), columns);
+        List<List<String>> streamedRaw = readStrings(new StreamRecordSource(FieldInputStream.create(jsonFile)), columns);
+        assertThat(projectedRaw.size(), equalTo(n));
+        assertThat(streamedRaw.size(), equalTo(n));
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < columns.size(); c++) {
+                String label = "record " + r + " " + columns.get(c);
+                assertThat(label, projectedRaw.get(r).get(c), equalTo(streamedRaw.get(r).get(c)));
+            }
+        }
+        List<List<AttributeValue>> projected = readValues(new JsonRecordSource(jsonFile, columns), columns);
+        List<List<AttributeValue>> streamed = readValues(new StreamRecordSource(FieldInputStream.create(jsonFile)), columns);
+        assertThat(projected.size(), equalTo(n));
+        assertThat(streamed.size(), equalTo(n));
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < columns.size(); c++) {
+                AttributeValue pValue = projected.get(r).get(c);
+                AttributeValue sValue = streamed.get(r).get(c);
+                String label = "record " + r + " " + columns.get(c);
+                assertThat(label, pValue.isNumeric(), equalTo(sValue.isNumeric()));
+                if (pValue.isNumeric())
+                    assertThat(label, pValue.getDouble(), equalTo(sValue.getDouble()));
+                assertThat(label, pValue.getList(), equalTo(sValue.getList()));
+            }
+        }
+        // Spot-check the interpreted values.
+        assertThat(projectedRaw.get(0).get(0), equalTo("fig|83333.1.peg.4"));
+        assertThat(projectedRaw.get(1).get(0), equalTo("r\u00e92"));
+        assertThat(projectedRaw.get(2).get(2), equalTo("1.0E+3"));
+        assertThat(projectedRaw.get(3).get(2), equalTo("0"));
+        assertThat(projectedRaw.get(4).get(2), equalTo("1E-7"));
+        assertThat(projectedRaw.get(1).get(5), equalTo(""));
+        assertThat(projectedRaw.get(4).get(3), equalTo(""));
+        assertThat(projected.get(0).get(1).getList(), equalTo(List.of("Alpha \"one\"")));
+        assertThat(projected.get(1).get(1).getList(), equalTo(List.of("tab\there \u00e9 back\\slash")));
+        assertThat(projected.get(1).get(2).getDouble(), equalTo(-4.25));
+        assertThat(projected.get(2).get(1).getList().isEmpty(), is(true));
+        assertThat(projected.get(2).get(2).getDouble(), equalTo(1000.0));
+        assertThat(projected.get(3).get(1).getDouble(), equalTo(50.5));
+        assertThat(projected.get(3).get(3).getList().subList(0, 3), equalTo(List.of("3", "4.5", "x")));
+    }
+
+    /**
+     * Read the raw field strings for the specified columns from a record source, and close it.
+     *
+     * @param source	record source to read
+     * @param columns	names of the columns to read
+     *
+     * @return a list of field string lists, one per record, in column order
+     *
+     * @throws IOException
+     */
+    private static List<List<String>> readStrings(RecordSource source, List<String> columns) throws IOException {
+        List<List<String>> retVal = new ArrayList<>();
+        try (source) {
+            int[] idxes = new int[columns.size()];
+            for (int c = 0; c < idxes.length; c++)
+                idxes[c] = source.findField(columns.get(c));
+            for (InputRecord record : source) {
+                List<String> values = new ArrayList<>(idxes.length);
+                for (int idx : idxes)
+                    values.add(record.get(idx));
+                retVal.add(values);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Read the attribute values for the specified columns from a record source, and close it.
+     *
+     * @param source	record source to read
+     * @param columns	names of the columns to read
+     *
+     * @return a list of attribute value lists, one per record, in column order
+     *
+     * @throws IOException
+     */
+    private static List<List<AttributeValue>> readValues(RecordSource source, List<String> columns) throws IOException {
+        List<List<AttributeValue>> retVal = new ArrayList<>();
+        try (source) {
+            int[] idxes = new int[columns.size()];
+            for (int c = 0; c < idxes.length; c++)
+                idxes[c] = source.findField(columns.get(c));
+            for (InputRecord record : source) {
+                List<AttributeValue> values = new ArrayList<>(idxes.length);
+                for (int idx : idxes)
+                    values.add(AttributeValue.create(record, idx));
+                retVal.add(values);
+            }
+        }
+        return retVal;
+    }
+
+    @Test
+    public void testNotList() throws IOException {
+        File jsonFile = File.createTempFile("records", ".json");
+        jsonFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(jsonFile)) {
+            writer.println("{ \"id\": \"x\" }");
+        }
+        assertThrows(IOException.class, () -> new JsonRecordSource(jsonFile, List.of("id")));
+    }
+
+    @Test
+    public void testRequiredColumns() throws IOException, ParseFailureException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        Set<String> columns = dbDef.findEntityType("Feature").getRequiredColumns();
+        assertThat(columns, equalTo(Set.of("patric_id", "feature_type", "na_length", "aa_length", "product", "gene",
+                "accession", "genome_id")));
+        columns = dbDef.findEntityType("SubsystemCell").getRequiredColumns();
+        assertThat(columns, equalTo(Set.of("genome_id", "subsystem_name", "patric_id", "role_name")));
+        columns = dbDef.findEntityType("Participation").getRequiredColumns();
+        assertThat(columns, equalTo(Set.of("reaction_id", "cname")));
+    }
+
+}
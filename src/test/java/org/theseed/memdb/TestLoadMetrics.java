@@ -0,0 +1,88 @@
+package org.theseed.memdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.query.QueryDbDefinition;
+
+import com.github.cliftonlabs.json_simple.JsonObject;
+
+public class TestLoadMetrics {
+
+    @Test
+    public void testLoadCounts() throws IOException, ParseFailureException {
+        File inDir = Files.createTempDirectory("metrics").toFile();
+        try {
+            try (PrintWriter writer = new PrintWriter(new File(inDir, "genome.json"))) {
+                writer.println("[");
+                writer.println("  { \"genome_id\": \"g1\", \"genome_name\": \"Alpha\", \"genus\": \"Escherichia\", \"gc_content\": 50.5 },");
+                writer.println("  { \"genome_id\": \"g2\", \"genome_name\": \"Beta\", \"species\": null }");
+                writer.println("]");
+            }
+            try (PrintWriter writer = new PrintWriter(new File(inDir, "genome_feature.json"))) {
+                writer.println("[");
+                writer.println("  { \"patric_id\": \"f1\", \"genome_id\": \"g1\", \"accession\": \"c1\", \"product\": \"kinase\",");
+                writer.println("    \"gene\": \"abc\", \"feature_type\": [\"CDS\", \"mRNA\"] },");
+                writer.println("  { \"patric_id\": \"f2\", \"genome_id\": \"g1\", \"accession\": \"c1\" },");
+                writer.println("  { \"patric_id\": \"f3\", \"genome_id\": \"g2\", \"product\": \"ligase\" }");
+                writer.println("]");
+            }
+            QueryDbDefinition dbDef = new QueryDbDefinition(new File("data", "querydbd.txt"));
+            dbDef.readDatabase(inDir);
+            LoadMetrics metrics = dbDef.getLoadMetrics();
+            List<LoadMetrics.FileMetrics> files = metrics.getFiles();
+            assertThat(files.size(), equalTo(2));
+            Map<String, LoadMetrics.FileMetrics> types = metrics.getTypeTotals();
+            assertThat(types.keySet(), equalTo(Set.of("Genome", "Feature")));
+            // The attribute count is the number of values stored, so missing and null fields do not count,
+            // and each element of a list counts separately.
+            LoadMetrics.FileMetrics genomes = types.get("Genome");
+            assertThat(genomes.getRecords(), equalTo(2));
+            assertThat(genomes.getInstances(), equalTo(2));
+            assertThat(genomes.getAttributes(), equalTo(6));
+            assertThat(genomes.getRelationships(), equalTo(0));
+            LoadMetrics.FileMetrics features = types.get("Feature");
+            assertThat(features.getRecords(), equalTo(3));
+            assertThat(features.getInstances(), equalTo(3));
+            assertThat(features.getAttributes(), equalTo(8));
+            // Each relationship is stored in both directions, and f3 has no contig.
+            assertThat(features.getRelationships(), equalTo(10));
+            LoadMetrics.FileMetrics totals = metrics.getTotals();
+            assertThat(totals.getTypeName(), equalTo(null));
+            assertThat(totals.getRecords(), equalTo(5));
+            assertThat(totals.getAttributes(), equalTo(14));
+            assertThat(totals.getRelationships(), equalTo(10));
+            // Verify the reports.
+            StringWriter buffer = new StringWriter();
+            try (PrintWriter writer = new PrintWriter(buffer)) {
+                metrics.writeTsv(writer);
+            }
+            String[] lines = buffer.toString().split("\\R");
+            assertThat(lines.length, equalTo(6));
+            assertThat(lines[0], startsWith("level\tentity_type\tfile\trecords\tinstances\tattributes\t"));
+            for (String line : lines)
+                assertThat(line, line.split("\t", -1).length, equalTo(11));
+            assertThat(lines[5], startsWith("total\t\t\t5\t5\t14\t10\t"));
+            JsonObject json = metrics.toJson();
+            JsonObject jsonTotal = (JsonObject) json.get("total");
+            assertThat(((Number) jsonTotal.get("attributes")).intValue(), equalTo(14));
+            assertThat(((List<?>) json.get("files")).size(), equalTo(2));
+            assertThat(((List<?>) json.get("types")).size(), equalTo(2));
+        } finally {
+            FileUtils.deleteDirectory(inDir);
+        }
+    }
+
+}
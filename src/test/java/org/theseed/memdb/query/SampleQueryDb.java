@@ -0,0 +1,139 @@
+package org.theseed.memdb.query;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.EntityType;
+import org.theseed.memdb.RelationshipInstance;
+
+/**
+ * This class contains utilities for building small query databases in tests outside this package.  Attribute
+ * values can only be stored from inside the package, so the tests for the proposal engine go through here.
+ *
+ * The sample database uses the "data/querydbd.txt" definition.  The genomes are spread over four genera with
+ * very different feature counts, so a modest response set limit leaves some response sets active and makes
+ * others inactive.  Every feature has exactly one role, named for its product.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SampleQueryDb {
+
+    /** genus names, by genome index modulo 4 */
+    public static final String[] GENERA = new String[] { "Escherichia", "Bacillus", "Vibrio", "Listeria" };
+    /** features per genome, by genome index modulo 4 */
+    public static final int[] FEATURE_COUNTS = new int[] { 1, 3, 6, 12 };
+    /** feature products */
+    public static final String[] PRODUCTS = new String[] { "kinase", "ligase", "synthase", "permease", "hypothetical" };
+    /** number of genomes in the sample database */
+    public static final int GENOMES = 60;
+
+    /**
+     * Create the sample database.  Genome "gNN" has genus GENERA[NN % 4] and FEATURE_COUNTS[NN % 4] features.
+     * Feature J of genome I is "fig|I.peg.J", has product PRODUCTS[(I + J) % 5], and is an "rna" if J is a
+     * multiple of 3 and a "CDS" otherwise.
+     *
+     * @return a frozen sample query database
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    public static QueryDbInstance create() throws IOException, ParseFailureException {
+        QueryDbDefinition dbDef = new QueryDbDefinition(new File("data", "querydbd.txt"));
+        QueryDbInstance retVal = new QueryDbInstance(dbDef.getEntityNameList());
+        EntityType gType = dbDef.findEntityType("Genome");
+        EntityType fType = dbDef.findEntityType("Feature");
+        EntityType rType = dbDef.findEntityType("Role");
+        for (int i = 0; i < GENOMES; i++) {
+            QueryEntityInstance genome = (QueryEntityInstance) retVal.findEntity(gType, String.format("g%02d", i));
+            setAttribute(genome, "genome_name", "Genome " + i);
+            setAttribute(genome, "genus", GENERA[i % 4]);
+            // The GC contents repeat, so the range index has ties.
+            setNumber(genome, "gc_content", 30.0 + (i * 7) % 40);
+            final int n = FEATURE_COUNTS[i % 4];
+            for (int j = 0; j < n; j++) {
+                QueryEntityInstance feature = (QueryEntityInstance) retVal.findEntity(fType, "fig|" + i + ".peg." + j);
+                String product = PRODUCTS[(i + j) % PRODUCTS.length];
+                setAttribute(feature, "patric_id", feature.getId());
+                setAttribute(feature, "product", product);
+                setAttribute(feature, "feature_type", (j % 3 == 0 ? "rna" : "CDS"));
+                connect(genome, feature);
+                QueryEntityInstance role = (QueryEntityInstance) retVal.findEntity(rType, product);
+                connect(feature, role);
+            }
+        }
+        retVal.freeze();
+        return retVal;
+    }
+
+    /**
+     * Describe the contents of a query database, so that two databases can be compared.  For each entity
+     * instance, the description lists its attributes in name order and its connections in order.
+     *
+     * @param db	database to describe
+     *
+     * @return a sorted map of instance keys ("type:id") to instance descriptions
+     */
+    public static Map<String, String> describe(QueryDbInstance db) {
+        Map<String, String> retVal = new TreeMap<>();
+        for (String typeName : db.getTypeNames()) {
+            for (EntityInstance instance : db.getAllEntities(typeName)) {
+                StringBuilder buffer = new StringBuilder();
+                List<Map.Entry<String, AttributeValue>> attributes = new ArrayList<>(((QueryEntityInstance) instance).getAttributeEntries());
+                attributes.sort(Map.Entry.comparingByKey());
+                for (Map.Entry<String, AttributeValue> attribute : attributes) {
+                    AttributeValue value = attribute.getValue();
+                    buffer.append(attribute.getKey()).append('=').append(value.getList());
+                    if (value.isNumeric())
+                        buffer.append('#').append(value.getDouble());
+                    buffer.append("; ");
+                }
+                buffer.append("->");
+                for (RelationshipInstance rel : instance.getRelationships())
+                    buffer.append(' ').append(rel.getTargetType()).append(':').append(rel.getTarget().getId());
+                retVal.put(typeName + ":" + instance.getId(), buffer.toString());
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Connect two entity instances in both directions.
+     *
+     * @param source	first entity instance
+     * @param target	second entity instance
+     */
+    private static void connect(QueryEntityInstance source, QueryEntityInstance target) {
+        source.addConnection(new QueryRelationshipInstance(target));
+        target.addConnection(new QueryRelationshipInstance(source));
+    }
+
+    /**
+     * Store a non-numeric attribute value in an entity instance.
+     *
+     * @param instance	entity instance to update
+     * @param name		attribute name
+     * @param values	string values of the attribute
+     */
+    public static void setAttribute(QueryEntityInstance instance, String name, String... values) {
+        instance.addAttribute(name, new AttributeValue(List.of(values), Double.NaN, false));
+    }
+
+    /**
+     * Store a numeric attribute value in an entity instance.
+     *
+     * @param instance	entity instance to update
+     * @param name		attribute name
+     * @param value		numeric value of the attribute
+     */
+    public static void setNumber(QueryEntityInstance instance, String name, double value) {
+        instance.addAttribute(name, new AttributeValue(List.of(Double.toString(value)), value, true));
+    }
+
+}
@@ -0,0 +1,114 @@
+package org.theseed.memdb.query;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.EntityType;
+
+public class TestAttributeIndexes {
+
+    @Test
+    public void testIndexes() throws IOException, ParseFailureException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        QueryDbInstance db = new QueryDbInstance(dbDef.getEntityNameList());
+        EntityType gType = dbDef.findEntityType("Genome");
+        String[] genera = new String[] { "Escherichia", "escherichia", "Bacillus", "Vibrio", "Bacillus" };
+        String[] gcs = new String[] { "50.5", "38", "43.2", "none", "50.5" };
+        for (int i = 0; i < genera.length; i++) {
+            QueryEntityInstance g = (QueryEntityInstance) db.findEntity(gType, "g" + i);
+            g.addAttribute("genus", new AttributeValue(List.of(genera[i], "all"), Double.NaN, false));
+            String gc = gcs[i];
+            if (gc.equals("none"))
+                g.addAttribute("gc_content", new AttributeValue(List.of(gc), Double.NaN, false));
+            else
+                g.addAttribute("gc_content", new AttributeValue(List.of(gc), Double.parseDouble(gc), true));
+        }
+        ValueIndex vIndex = db.getValueIndex("Genome", "genus");
+        assertThat(vIndex.size(), equalTo(4));
+        assertThat(ids(vIndex.get("ESCHERICHIA")), equalTo(Set.of("g0", "g1")));
+        assertThat(ids(vIndex.get("bacillus")), equalTo(Set.of("g2", "g4")));
+        assertThat(vIndex.get("All").size(), equalTo(5));
+        assertThat(vIndex.get("Salmonella").isEmpty(), is(true));
+        assertThat(db.getValueIndex("Genome", "genus") == vIndex, is(true));
+        RangeIndex rIndex = db.getRangeIndex("Genome", "gc_content");
+        assertThat(rIndex.size(), equalTo(4));
+        assertThat(ids(rIndex.getLessThan(50.5)), equalTo(Set.of("g1", "g2")));
+        assertThat(ids(rIndex.getGreaterThan(43.2)), equalTo(Set.of("g0", "g4")));
+        assertThat(ids(rIndex.getGreaterThan(20.0)), equalTo(Set.of("g0", "g1", "g2", "g4")));
+        assertThat(rIndex.getLessThan(38.0).isEmpty(), is(true));
+        assertThat(rIndex.getGreaterThan(50.5).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testIndexOrder() throws IOException, ParseFailureException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        EntityType gType = dbDef.findEntityType("Genome");
+        // Build the same genomes in two databases, inserting them in opposite orders, and freeze only one.
+        List<String> expectedAll = new ArrayList<>();
+        QueryDbInstance[] dbs = new QueryDbInstance[] { new QueryDbInstance(dbDef.getEntityNameList()),
+                new QueryDbInstance(dbDef.getEntityNameList()) };
+        final int n = 40;
+        for (int i = 0; i < n; i++) {
+            expectedAll.add(String.format("g%02d", i));
+            for (int d = 0; d < dbs.length; d++) {
+                int idx = (d == 0 ? i : n - 1 - i);
+                QueryEntityInstance g = (QueryEntityInstance) dbs[d].findEntity(gType, String.format("g%02d", idx));
+                g.addAttribute("genus", new AttributeValue(List.of(idx % 2 == 0 ? "Escherichia" : "Bacillus", "all"),
+                        Double.NaN, false));
+                g.addAttribute("gc_content", new AttributeValue(List.of(Integer.toString(idx % 4)), idx % 4, true));
+            }
+        }
+        dbs[0].freeze();
+        Collections.sort(expectedAll);
+        for (QueryDbInstance db : dbs) {
+            assertThat(idList(db.getSortedEntities("Genome")), equalTo(expectedAll));
+            // The value index lists are in ID order.
+            assertThat(idList(db.getValueIndex("Genome", "genus").get("all")), equalTo(expectedAll));
+            List<String> bacillus = idList(db.getValueIndex("Genome", "genus").get("bacillus"));
+            assertThat(bacillus.size(), equalTo(n / 2));
+            assertThat(bacillus, equalTo(bacillus.stream().sorted().collect(Collectors.toList())));
+            // The range index lists are in value order, with equal values in ID order.
+            List<String> greater = idList(db.getRangeIndex("Genome", "gc_content").getGreaterThan(1.5));
+            List<String> expected = new ArrayList<>();
+            for (int v = 2; v < 4; v++) {
+                for (String id : expectedAll) {
+                    if (Integer.parseInt(id.substring(1)) % 4 == v)
+                        expected.add(id);
+                }
+            }
+            assertThat(greater, equalTo(expected));
+        }
+    }
+
+    /**
+     * @return the list of IDs for a list of entity instances, in order
+     *
+     * @param instances		list of entity instances
+     */
+    private static List<String> idList(List<EntityInstance> instances) {
+        return instances.stream().map(x -> x.getId()).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the set of IDs for a collection of entity instances
+     *
+     * @param instances		collection of entity instances
+     */
+    private static Set<String> ids(List<EntityInstance> instances) {
+        return instances.stream().map(x -> x.getId()).collect(Collectors.toSet());
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.theseed.memdb.query;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.EntityType;
+
+public class TestAttributeTable {
+
+    @Test
+    public void testAttributeTable() throws IOException, ParseFailureException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        QueryDbInstance db = new QueryDbInstance(dbDef.getEntityNameList());
+        EntityType gType = dbDef.findEntityType("Genome");
+        QueryEntityInstance g0 = (QueryEntityInstance) db.findEntity(gType, "g0");
+        QueryEntityInstance g1 = (QueryEntityInstance) db.findEntity(gType, "g1");
+        AttributeTable table = g0.getAttributeTable();
+        assertThat(g1.getAttributeTable() == table, is(true));
+        assertThat(table.size(), equalTo(2));
+        int gcSlot = table.getSlot("gc_content");
+        assertThat(gcSlot >= 0, is(true));
+        assertThat(table.getSlot("mystery"), equalTo(-1));
+        g0.addAttribute("gc_content", new AttributeValue(List.of("50.5"), 50.5, true));
+        g1.addAttribute("gc_content", new AttributeValue(List.of("high"), Double.NaN, false));
+        g1.addAttribute("mystery", new AttributeValue(List.of("x"), Double.NaN, false));
+        assertThat(g0.getDouble(gcSlot), equalTo(50.5));
+        assertThat(Double.isNaN(g1.getDouble(gcSlot)), is(true));
+        assertThat(g1.getAttribute(gcSlot).getList(), equalTo(List.of("high")));
+        assertThat(g1.getAttribute("mystery").getList(), equalTo(List.of("x")));
+        assertThat(g0.getAttribute("mystery").getList().isEmpty(), is(true));
+        assertThat(g0.getAttribute(-1).getList().isEmpty(), is(true));
+        assertThat(g0.getAttributeEntries().size(), equalTo(1));
+        assertThat(g1.getAttributeEntries().size(), equalTo(2));
+        // Add enough rows to force the columns to grow.
+        for (int i = 2; i < 100; i++) {
+            QueryEntityInstance g = (QueryEntityInstance) db.findEntity(gType, "g" + i);
+            g.addAttribute("gc_content", new AttributeValue(List.of(Integer.toString(i)), i, true));
+        }
+        QueryEntityInstance g99 = (QueryEntityInstance) db.getEntity(gType, "g99");
+        assertThat(g99.getDouble(gcSlot), equalTo(99.0));
+        assertThat(g0.getDouble(gcSlot), equalTo(50.5));
+        assertThat(db.getRangeIndex("Genome", "gc_content").size(), equalTo(99));
+    }
+
+}
@@ -0,0 +1,133 @@
+package org.theseed.memdb.query;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+
+public class TestQueryDbCache {
+
+    @Test
+    public void testCache() throws IOException, ParseFailureException {
+        File workDir = Files.createTempDirectory("dbCache").toFile();
+        try {
+            File dbdFile = new File(workDir, "querydbd.txt");
+            FileUtils.copyFile(new File("data", "querydbd.txt"), dbdFile);
+            QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+            File cacheDir = new File(workDir, "cache");
+            File[] dirs = new File[3];
+            for (int d = 0; d < dirs.length; d++) {
+                dirs[d] = new File(workDir, "dir" + d);
+                writeDir(dirs[d], d, "kinase");
+            }
+            // The first load parses everything.  The changed directories are parsed concurrently.
+            dbDef.setLoadThreads(3);
+            QueryDbCache cache = new QueryDbCache(dbdFile, dbDef, cacheDir);
+            QueryDbInstance db = cache.load(dirs);
+            assertThat(cache.getParseCount(), equalTo(3));
+            assertThat(cache.getReuseCount(), equalTo(0));
+            assertThat(fragmentCount(cacheDir), equalTo(3));
+            Map<String, String> expected = SampleQueryDb.describe((QueryDbInstance) dbDef.readDatabase(dirs));
+            assertThat(SampleQueryDb.describe(db), equalTo(expected));
+            // Features in different directories share a contig, so the fragments really are merged.
+            assertThat(db.getEntity("Contig", "c1").getTargetsOfType("Feature").size(), equalTo(9));
+            // A reload with no changes reuses every fragment.
+            dbDef.setLoadThreads(1);
+            cache = new QueryDbCache(dbdFile, dbDef, cacheDir);
+            assertThat(SampleQueryDb.describe(cache.load(dirs)), equalTo(expected));
+            assertThat(cache.getParseCount(), equalTo(0));
+            assertThat(cache.getReuseCount(), equalTo(3));
+            // A file with a new modification time and the same content is still reused.
+            File touched = new File(dirs[1], "genome.json");
+            touched.setLastModified(touched.lastModified() + 10000);
+            assertThat(SampleQueryDb.describe(cache.load(dirs)), equalTo(expected));
+            assertThat(cache.getParseCount(), equalTo(0));
+            assertThat(cache.getReuseCount(), equalTo(3));
+            // If one directory changes, only it is parsed, and the result is the same as a full load.
+            writeDir(dirs[2], 2, "synthase");
+            db = cache.load(dirs);
+            assertThat(cache.getParseCount(), equalTo(1));
+            assertThat(cache.getReuseCount(), equalTo(2));
+            expected = SampleQueryDb.describe((QueryDbInstance) dbDef.readDatabase(dirs));
+            assertThat(SampleQueryDb.describe(db), equalTo(expected));
+            assertThat(((QueryEntityInstance) db.getEntity("Feature", "fig|2.peg.0")).getAttribute("product").getList().get(0),
+                    equalTo("synthase"));
+            // If a directory is dropped, its fragment is deleted and its entities are gone.
+            File[] remaining = new File[] { dirs[1], dirs[2] };
+            db = cache.load(remaining);
+            assertThat(cache.getParseCount(), equalTo(0));
+            assertThat(cache.getReuseCount(), equalTo(2));
+            assertThat(fragmentCount(cacheDir), equalTo(2));
+            assertThat(db.getEntity("Genome", "g0"), nullValue());
+            assertThat(db.getEntity("Feature", "fig|0.peg.0"), nullValue());
+            assertThat(db.getEntity("Contig", "c1").getTargetsOfType("Feature").size(), equalTo(7));
+            expected = SampleQueryDb.describe((QueryDbInstance) dbDef.readDatabase(remaining));
+            assertThat(SampleQueryDb.describe(db), equalTo(expected));
+            // If the database definition file is edited, every directory is parsed again.
+            try (PrintWriter writer = new PrintWriter(new FileWriter(dbdFile, true))) {
+                writer.println("#Entity Extra id 1");
+            }
+            dbDef.setLoadThreads(2);
+            cache = new QueryDbCache(dbdFile, dbDef, cacheDir);
+            assertThat(SampleQueryDb.describe(cache.load(remaining)), equalTo(expected));
+            assertThat(cache.getParseCount(), equalTo(2));
+            assertThat(cache.getReuseCount(), equalTo(0));
+            // The manifest now has the new definition hash.
+            cache = new QueryDbCache(dbdFile, dbDef, cacheDir);
+            cache.load(remaining);
+            assertThat(cache.getReuseCount(), equalTo(2));
+        } finally {
+            FileUtils.deleteDirectory(workDir);
+        }
+    }
+
+    /**
+     * Write the dump files for an input directory.  Directory D contains genome "gD" with D + 2 features, all on
+     * contig "c1", which is shared by every directory.
+     *
+     * @param inDir		input directory to write
+     * @param d			index of the directory
+     * @param product	product for the directory's features
+     *
+     * @throws IOException
+     */
+    private static void writeDir(File inDir, int d, String product) throws IOException {
+        inDir.mkdirs();
+        try (PrintWriter writer = new PrintWriter(new File(inDir, "genome.json"))) {
+            writer.println("[");
+            writer.println("  { \"genome_id\": \"g" + d + "\", \"genome_name\": \"Genome " + d + "\", \"gc_content\": "
+                    + (40 + d) + ".5 }");
+            writer.println("]");
+        }
+        try (PrintWriter writer = new PrintWriter(new File(inDir, "genome_feature.json"))) {
+            writer.println("[");
+            final int n = d + 2;
+            for (int i = 0; i < n; i++) {
+                writer.print("  { \"patric_id\": \"fig|" + d + ".peg." + i + "\", \"genome_id\": \"g" + d
+                        + "\", \"accession\": \"c1\", \"product\": \"" + product + "\" }");
+                writer.println(i < n - 1 ? "," : "");
+            }
+            writer.println("]");
+        }
+    }
+
+    /**
+     * @return the number of fragment files in the cache directory
+     *
+     * @param cacheDir	cache directory to check
+     */
+    private static int fragmentCount(File cacheDir) {
+        File[] fragments = cacheDir.listFiles((dir, name) -> name.endsWith(".ser"));
+        return fragments.length;
+    }
+
+}
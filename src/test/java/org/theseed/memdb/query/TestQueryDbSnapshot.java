@@ -0,0 +1,122 @@
+package org.theseed.memdb.query;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.EntityType;
+
+public class TestQueryDbSnapshot {
+
+    @Test
+    public void testRoundTrip() throws IOException, ParseFailureException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        QueryDbInstance db = new QueryDbInstance(dbDef.getEntityNameList());
+        EntityType gType = dbDef.findEntityType("Genome");
+        EntityType fType = dbDef.findEntityType("Feature");
+        QueryEntityInstance g1 = (QueryEntityInstance) db.findEntity(gType, "g1");
+        AttributeValue bacteria = new AttributeValue(List.of("Bacteria"), Double.NaN, false);
+        g1.addAttribute("domain", bacteria);
+        g1.addAttribute("gc_content", new AttributeValue(List.of("51.5"), 51.5, true));
+        for (int i = 0; i < 5; i++) {
+            QueryEntityInstance f = (QueryEntityInstance) db.findEntity(fType, "f" + i);
+            f.addAttribute("product", new AttributeValue(List.of("role " + i, "role x"), Double.NaN, false));
+            g1.addConnection(new QueryRelationshipInstance(f));
+            f.addConnection(new QueryRelationshipInstance(g1));
+        }
+        db.addLoadCounts(6, 10);
+        db.freeze();
+        File snapFile = File.createTempFile("snapshot", ".ser");
+        snapFile.deleteOnExit();
+        QueryDbSnapshot.save(db, snapFile);
+        QueryDbInstance db2 = QueryDbSnapshot.load(dbDef, snapFile);
+        assertThat(db2.getEntityCount(), equalTo(6));
+        assertThat(db2.getTypeCount("Genome"), equalTo(1));
+        assertThat(db2.getTypeCount("Feature"), equalTo(5));
+        QueryEntityInstance g1b = (QueryEntityInstance) db2.getEntity("Genome", "g1");
+        assertThat(g1b.isFrozen(), is(true));
+        assertThat(g1b.getAttribute("domain").getList(), equalTo(List.of("Bacteria")));
+        assertThat(g1b.getAttribute("gc_content").getDouble(), equalTo(51.5));
+        assertThrows(NumberFormatException.class, () -> g1b.getAttribute("domain").getDouble());
+        assertThat(g1b.getAttribute("frog").getList().isEmpty(), is(true));
+        List<EntityInstance> features = g1b.getTargetsOfType("Feature");
+        assertThat(features.size(), equalTo(5));
+        for (int i = 0; i < 5; i++) {
+            QueryEntityInstance f = (QueryEntityInstance) features.get(i);
+            assertThat(f, sameInstance(db2.getEntity("Feature", f.getId())));
+            String oldProduct = ((QueryEntityInstance) db.getEntity("Feature", f.getId())).getAttribute("product").getList().get(0);
+            assertThat(f.getAttribute("product").getList(), equalTo(List.of(oldProduct, "role x")));
+            assertThat(f.getTargetsOfType("Genome").get(0), sameInstance(g1b));
+        }
+    }
+
+    @Test
+    public void testMerge() throws IOException, ParseFailureException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        EntityType gType = dbDef.findEntityType("Genome");
+        EntityType fType = dbDef.findEntityType("Feature");
+        // Build two fragments that share a genome.
+        File[] fragFiles = new File[2];
+        for (int d = 0; d < 2; d++) {
+            QueryDbInstance db = new QueryDbInstance(dbDef.getEntityNameList());
+            QueryEntityInstance g1 = (QueryEntityInstance) db.findEntity(gType, "g1");
+            g1.addAttribute("name", new AttributeValue(List.of("name " + d), Double.NaN, false));
+            QueryEntityInstance f = (QueryEntityInstance) db.findEntity(fType, "f" + d);
+            g1.addConnection(new QueryRelationshipInstance(f));
+            f.addConnection(new QueryRelationshipInstance(g1));
+            db.freeze();
+            fragFiles[d] = File.createTempFile("fragment", ".ser");
+            fragFiles[d].deleteOnExit();
+            QueryDbSnapshot.save(db, fragFiles[d]);
+        }
+        QueryDbInstance merged = new QueryDbInstance(dbDef.getEntityNameList());
+        for (File fragFile : fragFiles)
+            QueryDbSnapshot.loadInto(merged, dbDef, fragFile);
+        merged.freeze();
+        assertThat(merged.getEntityCount(), equalTo(3));
+        QueryEntityInstance g1 = (QueryEntityInstance) merged.getEntity("Genome", "g1");
+        assertThat(g1.getAttribute("name").getList(), equalTo(List.of("name 1")));
+        List<EntityInstance> features = g1.getTargetsOfType("Feature");
+        assertThat(features.size(), equalTo(2));
+        assertThat(features.get(0).getId(), equalTo("f0"));
+        assertThat(features.get(1).getId(), equalTo("f1"));
+    }
+
+    @Test
+    public void testWindows() throws IOException, ParseFailureException {
+        QueryDbDefinition dbDef = new QueryDbDefinition(new File("data", "querydbd.txt"));
+        QueryDbInstance db = SampleQueryDb.create();
+        File snapFile = File.createTempFile("snapshot", ".ser");
+        snapFile.deleteOnExit();
+        QueryDbSnapshot.save(db, snapFile);
+        Map<String, String> expected = SampleQueryDb.describe(db);
+        assertThat(SampleQueryDb.describe(QueryDbSnapshot.load(dbDef, snapFile)), equalTo(expected));
+        // With tiny windows, numbers and strings are split across window boundaries.
+        for (long windowSize : new long[] { 8, 13, 64 }) {
+            QueryDbInstance db2 = new QueryDbInstance(dbDef.getEntityNameList());
+            QueryDbSnapshot.loadInto(db2, dbDef, snapFile, windowSize);
+            db2.freeze();
+            assertThat("window " + windowSize, SampleQueryDb.describe(db2), equalTo(expected));
+        }
+        // A truncated file is detected.
+        File badFile = File.createTempFile("snapshot", ".ser");
+        badFile.deleteOnExit();
+        byte[] bytes = Files.readAllBytes(snapFile.toPath());
+        Files.write(badFile.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+        assertThrows(IOException.class, () -> QueryDbSnapshot.load(dbDef, badFile));
+    }
+
+}
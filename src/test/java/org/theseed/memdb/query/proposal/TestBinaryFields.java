@@ -0,0 +1,80 @@
+package org.theseed.memdb.query.proposal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.EntityInstance;
+import org.theseed.memdb.EntityType;
+import org.theseed.memdb.query.QueryDbDefinition;
+import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.QueryEntityInstance;
+import org.theseed.memdb.query.RangeIndex;
+import org.theseed.memdb.query.SampleQueryDb;
+
+public class TestBinaryFields {
+
+    @Test
+    public void testNonNumeric() throws IOException, ParseFailureException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        QueryDbInstance db = new QueryDbInstance(dbDef.getEntityNameList());
+        EntityType gType = dbDef.findEntityType("Genome");
+        QueryEntityInstance low = (QueryEntityInstance) db.findEntity(gType, "g0");
+        SampleQueryDb.setNumber(low, "gc_content", 30.0);
+        QueryEntityInstance high = (QueryEntityInstance) db.findEntity(gType, "g1");
+        SampleQueryDb.setNumber(high, "gc_content", 60.0);
+        QueryEntityInstance text = (QueryEntityInstance) db.findEntity(gType, "g2");
+        SampleQueryDb.setAttribute(text, "gc_content", "unknown");
+        QueryEntityInstance missing = (QueryEntityInstance) db.findEntity(gType, "g3");
+        SampleQueryDb.setAttribute(missing, "genus", "Escherichia");
+        db.freeze();
+        // A non-numeric or missing value satisfies neither a less-than nor a greater-than condition.
+        BinaryProposalField less = new LessThanProposalField("Genome.gc_content", "50");
+        BinaryProposalField greater = new GreaterThanProposalField("Genome.gc_content", "50");
+        assertThat(less.getValue(low), equalTo(List.of("50")));
+        assertThat(less.getValue(high).isEmpty(), is(true));
+        assertThat(greater.getValue(high), equalTo(List.of("50")));
+        assertThat(greater.getValue(low).isEmpty(), is(true));
+        for (QueryEntityInstance instance : List.of(text, missing)) {
+            assertThat(instance.getId(), less.getValue(instance).isEmpty(), is(true));
+            assertThat(instance.getId(), greater.getValue(instance).isEmpty(), is(true));
+        }
+        assertThat(ids(less.getCandidates(db)), equalTo(Set.of("g0")));
+        assertThat(ids(greater.getCandidates(db)), equalTo(Set.of("g1")));
+        // This holds even for a condition that a NaN comparison would satisfy.
+        BinaryProposalField notLess = new BinaryProposalField("Genome.gc_content", "50") {
+            @Override
+            protected boolean isSatisfied(double actualVal, double targetVal) {
+                return ! (actualVal < targetVal);
+            }
+
+            @Override
+            protected Collection<EntityInstance> getCandidates(RangeIndex index, double targetVal) {
+                return index.getGreaterThan(targetVal);
+            }
+        };
+        assertThat(notLess.getValue(high), equalTo(List.of("50")));
+        assertThat(notLess.getValue(low).isEmpty(), is(true));
+        assertThat(notLess.getValue(text).isEmpty(), is(true));
+        assertThat(notLess.getValue(missing).isEmpty(), is(true));
+    }
+
+    /**
+     * @return the set of IDs for a collection of entity instances
+     *
+     * @param instances		collection of entity instances
+     */
+    private static Set<String> ids(Collection<EntityInstance> instances) {
+        return instances.stream().map(x -> x.getId()).collect(Collectors.toSet());
+    }
+
+}
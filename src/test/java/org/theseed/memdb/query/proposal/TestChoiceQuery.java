@@ -0,0 +1,98 @@
+package org.theseed.memdb.query.proposal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.SampleQueryDb;
+
+public class TestChoiceQuery {
+
+    @Test
+    public void testPool() throws IOException, ParseFailureException {
+        ChoiceProposalQuery query = createQuery(SampleQueryDb.create());
+        // A small pool keeps each distinct value once, in order of first occurrence.
+        List<String> pool = query.buildPool(Stream.of("b", "a", "b", "c", "a", "d"));
+        assertThat(pool, equalTo(List.of("b", "a", "c", "d")));
+        // A large pool is a sample of the distinct values. The sample is the same no matter how often the values
+        // recur.
+        final int n = ChoiceProposalQuery.POOL_LIMIT * 3 / 2;
+        List<String> distinct = new ArrayList<>(n);
+        List<String> repeated = new ArrayList<>(n * 3);
+        for (int i = 0; i < n; i++) {
+            String value = "v" + i;
+            distinct.add(value);
+            repeated.add(value);
+            // Every tenth value occurs many more times.
+            if (i % 10 == 0) {
+                for (int j = 0; j < 20; j++)
+                    repeated.add(value);
+            }
+        }
+        query.setSeed(100);
+        List<String> expected = query.buildPool(distinct.stream());
+        assertThat(expected.size(), equalTo(ChoiceProposalQuery.POOL_LIMIT));
+        assertThat(new HashSet<>(expected).size(), equalTo(ChoiceProposalQuery.POOL_LIMIT));
+        assertThat(distinct.containsAll(expected), is(true));
+        query.setSeed(100);
+        assertThat(query.buildPool(repeated.stream()), equalTo(expected));
+        // The sample is in order of first occurrence, and it depends on the seed.
+        List<String> ordered = new ArrayList<>(distinct);
+        ordered.retainAll(new HashSet<>(expected));
+        assertThat(expected, equalTo(ordered));
+        query.setSeed(101);
+        assertThat(query.buildPool(distinct.stream()).equals(expected), is(false));
+    }
+
+    @Test
+    public void testDistractors() throws IOException, ParseFailureException {
+        ChoiceProposalQuery query = createQuery(SampleQueryDb.create());
+        query.setSeed(200);
+        List<String> pool = List.of("a", "b", "c", "d", "e", "f", "g", "h");
+        Set<String> correct = Set.of("a", "c");
+        for (int i = 0; i < 20; i++) {
+            Collection<String> distractors = query.chooseDistractors(pool, correct);
+            assertThat(distractors.size(), equalTo(3));
+            assertThat(new HashSet<>(distractors).size(), equalTo(3));
+            for (String distractor : distractors) {
+                assertThat(distractor, pool.contains(distractor), is(true));
+                assertThat(distractor, correct.contains(distractor), is(false));
+            }
+        }
+        // If almost every pool value is correct, the random draws will usually miss the wrong ones, so the
+        // rest of the pool is scanned.
+        List<String> crowded = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            crowded.add("c" + i);
+        crowded.add("wrong1");
+        crowded.add("wrong2");
+        Set<String> allCorrect = new HashSet<>(crowded.subList(0, 100));
+        assertThat(new HashSet<>(query.chooseDistractors(crowded, allCorrect)), equalTo(Set.of("wrong1", "wrong2")));
+        // A pool with no wrong answers produces no distractors.
+        assertThat(query.chooseDistractors(List.of("a", "c"), correct).isEmpty(), is(true));
+        assertThat(query.chooseDistractors(List.of(), correct).isEmpty(), is(true));
+    }
+
+    /**
+     * @return a choice query for the sample database
+     *
+     * @param db	sample database
+     *
+     * @throws ParseFailureException
+     */
+    private static ChoiceProposalQuery createQuery(QueryDbInstance db) throws ParseFailureException {
+        return new ChoiceProposalQuery("What is the product of a feature in {{Genome.genome_name}}?", "Genome Feature", 0,
+                "choice Feature.product", db);
+    }
+
+}
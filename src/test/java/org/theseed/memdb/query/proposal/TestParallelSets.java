@@ -0,0 +1,128 @@
+package org.theseed.memdb.query.proposal;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.SampleQueryDb;
+
+public class TestParallelSets {
+
+    @Test
+    public void testParallelExpansion() throws IOException, ParseFailureException {
+        QueryDbInstance db = SampleQueryDb.create();
+        List<ProposalQuery> queries = List.of(
+                new CountProposalQuery("How many {{Genome.genus}} features make {{Feature.product}}?", "Genome Feature", 60),
+                new CountProposalQuery("How many {{Genome.genus}} features are there?", "Genome Feature", 60),
+                new CountProposalQuery("How many {{Genome.genus}} features are there?", "Genome Feature", 20),
+                new ListProposalQuery("What {{Genome.genus}} features have type {{Feature.feature_type}}?", "Genome Feature", 0,
+                        "Feature.patric_id"),
+                new ListProposalQuery("What features in {{Genome.genome_name}} have roles?", "Genome Feature Role", 0,
+                        "Feature.patric_id"));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (ProposalQuery query : queries) {
+                query.setPlanning(false);
+                Map<String, String> expected = compute(query, db, null);
+                assertThat(query.toString(), compute(query, db, pool), equalTo(expected));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        // Verify that the limited query really has inactive sets. With a limit of 60, all 15 genomes of each genus
+        // are in the sample, so only Listeria (180 features) and Vibrio (90 features) are too big.
+        Map<String, String> sets = compute(queries.get(1), db, null);
+        assertThat(sets.keySet(), equalTo(new TreeSet<>(List.of("P{Genome=[Bacillus]}", "P{Genome=[Escherichia]}"))));
+    }
+
+    @Test
+    public void testParallelBatch() throws IOException, ParseFailureException {
+        QueryDbInstance db = SampleQueryDb.create();
+        // All 60 genomes are used as origins. Listeria has 15 genomes with 4 RNAs and 8 CDSs each, and Vibrio has
+        // 15 genomes with 2 RNAs and 4 CDSs each, so two of the feature type sets are exactly at the limit of 60 and
+        // the Listeria CDS set is over it. The parallel traversal splits the genomes among the threads, so these sets are assembled by
+        // merging partial sets that are each within the limit.
+        List<ProposalQuery> queries = List.of(
+                new ListProposalQuery("What {{Genome.genus}} features have type {{Feature.feature_type}}?", "Genome Feature", 60,
+                        "Feature.patric_id"),
+                new CountProposalQuery("How many {{Genome.genus}} features make {{Feature.product}}?", "Genome Feature", 60),
+                new CountProposalQuery("How many {{Genome.genus}} features are there?", "Genome Feature", 60));
+        List<ProposalBatch> batches = ProposalBatch.group(queries);
+        assertThat(batches.size(), equalTo(1));
+        ProposalBatch batch = batches.get(0);
+        List<Map<String, String>> expected = this.computeBatch(batch, db, null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int i = 0; i < 3; i++)
+                assertThat(this.computeBatch(batch, db, pool), equalTo(expected));
+        } finally {
+            pool.shutdown();
+        }
+        Map<String, String> typeSets = expected.get(0);
+        assertThat(typeSets.get("P{Feature=[rna] Genome=[Listeria]}").startsWith("60 "), equalTo(true));
+        assertThat(typeSets.get("P{Feature=[CDS] Genome=[Vibrio]}").startsWith("60 "), equalTo(true));
+        assertThat(typeSets.get("P{Feature=[CDS] Genome=[Listeria]}"), nullValue());
+        assertThat(typeSets.size(), equalTo(6));
+        assertThat(expected.get(1).size(), equalTo(20));
+        assertThat(expected.get(2).keySet(), equalTo(new TreeSet<>(List.of("P{Genome=[Bacillus]}", "P{Genome=[Escherichia]}"))));
+    }
+
+    /**
+     * Compute the response sets for a query with a fixed random seed, so that the origin sample is the same
+     * every time.
+     *
+     * @param query		query to compute
+     * @param db		database to query
+     * @param pool		thread pool for parallel expansion, or NULL
+     *
+     * @return the active response sets, summarized
+     */
+    private static Map<String, String> compute(ProposalQuery query, QueryDbInstance db, ForkJoinPool pool) {
+        query.setSeed(1234);
+        return summarize(query.computeSets(db, pool));
+    }
+
+    /**
+     * Compute the response sets for a batch with a fixed random seed.
+     *
+     * @param batch		batch to compute
+     * @param db		database to query
+     * @param pool		thread pool for parallel traversal, or NULL
+     *
+     * @return the active response sets for each query, summarized
+     */
+    private List<Map<String, String>> computeBatch(ProposalBatch batch, QueryDbInstance db, ForkJoinPool pool) {
+        batch.getQueries().get(0).setSeed(1234);
+        return batch.computeSets(db, pool).stream().map(x -> summarize(x)).collect(Collectors.toList());
+    }
+
+    /**
+     * Summarize a list of response sets so they can be compared.  The summary maps each parameterization
+     * string to the response count followed by the sorted response strings.
+     *
+     * @param responseSets	list of response sets to summarize
+     *
+     * @return a sorted map of parameterization strings to response set descriptions
+     */
+    protected static Map<String, String> summarize(List<ProposalResponseSet> responseSets) {
+        Map<String, String> retVal = new TreeMap<>();
+        for (ProposalResponseSet responseSet : responseSets) {
+            TreeSet<String> responses = new TreeSet<>();
+            for (ProposalResponse response : responseSet)
+                responses.add(response.toString());
+            retVal.put(responseSet.getParameters().toString(), responseSet.getResponseCount() + " " + responses);
+        }
+        return retVal;
+    }
+
+}
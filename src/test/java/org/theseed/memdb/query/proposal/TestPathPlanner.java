@@ -0,0 +1,76 @@
+package org.theseed.memdb.query.proposal;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.SampleQueryDb;
+
+public class TestPathPlanner {
+
+    @Test
+    public void testPlannedSets() throws IOException, ParseFailureException {
+        QueryDbInstance db = SampleQueryDb.create();
+        // Each of these queries filters on the genus at the end of the path, so it is cheaper to start there.
+        List<ProposalQuery> queries = List.of(
+                new ListProposalQuery("What features are in {{=Genome.genus:Escherichia}} genomes?", "Feature Genome", 0,
+                        "Feature.patric_id"),
+                new CountProposalQuery("How many {{Feature.product}} features are in {{=Genome.genus:Listeria}} genomes?",
+                        "Feature Genome", 0),
+                new ListProposalQuery("What {{Feature.feature_type}} features with roles are in {{=Genome.genus:Vibrio}} genomes?",
+                        "Role Feature Genome", 0, "Feature.patric_id"));
+        for (ProposalQuery query : queries) {
+            List<ProposalEntity> path = query.getPathEntities();
+            assertThat(query.toString(), new PathPlanner(db, 0).plan(query, path), not(sameInstance(path)));
+            // Without a response set limit, the planned traversal must find the same response sets.
+            query.setPlanning(false);
+            Map<String, String> expected = TestParallelSets.summarize(query.computeSets(db));
+            assertThat(query.toString(), expected.isEmpty(), equalTo(false));
+            query.setPlanning(true);
+            assertThat(query.toString(), TestParallelSets.summarize(query.computeSets(db)), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void testForwardDefault() throws IOException, ParseFailureException {
+        QueryDbInstance db = SampleQueryDb.create();
+        // Planning is off unless requested, so a limited query samples the first entity type on the path.
+        ProposalQuery query = new CountProposalQuery("How many features are in {{=Genome.genus:Bacillus}} genomes?",
+                "Feature Genome", 100);
+        query.setSeed(42);
+        List<ProposalResponseSet> sets = query.computeSets(db);
+        assertThat(query.getMetrics().getSteps().get(0).getTypeName(), equalTo("Feature"));
+        assertThat(sets.size(), equalTo(1));
+        query.setPlanning(true);
+        query.computeSets(db);
+        assertThat(query.getMetrics().getSteps().get(0).getTypeName(), equalTo("Genome"));
+    }
+
+    @Test
+    public void testForwardPlanSame() throws IOException, ParseFailureException {
+        QueryDbInstance db = SampleQueryDb.create();
+        // This query is cheaper forward, so the planner keeps the order.  Its yield samples must not disturb
+        // the query's own sample of features, so the limited output is the same as an unplanned run.
+        final String template = "How many {{Feature.feature_type}} features are in {{Genome.genus}} genomes?";
+        ProposalQuery unplanned = new CountProposalQuery(template, "Feature Genome", 10);
+        unplanned.setSeed(42);
+        Map<String, String> expected = TestParallelSets.summarize(unplanned.computeSets(db));
+        assertThat(expected.isEmpty(), equalTo(false));
+        ProposalQuery planned = new CountProposalQuery(template, "Feature Genome", 10);
+        planned.setSeed(42);
+        planned.setPlanning(true);
+        Map<String, String> actual = TestParallelSets.summarize(planned.computeSets(db));
+        assertThat(planned.getMetrics().getSteps().get(0).getTypeName(), equalTo("Feature"));
+        assertThat(actual, equalTo(expected));
+        // The generators are also in the same state afterward, for the answer choices.
+        assertThat(planned.getRandom().nextLong(), equalTo(unplanned.getRandom().nextLong()));
+    }
+
+}
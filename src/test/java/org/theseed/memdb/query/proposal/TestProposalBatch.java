@@ -0,0 +1,236 @@
+package org.theseed.memdb.query.proposal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.genome.survey.QueryGenerateProcessor;
+import org.theseed.memdb.query.QueryDbDefinition;
+import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.QueryEntityInstance;
+import org.theseed.memdb.query.QueryEntityType;
+import org.theseed.memdb.query.QueryRelationshipInstance;
+import org.theseed.memdb.query.SampleQueryDb;
+
+public class TestProposalBatch {
+
+    @Test
+    public void testBatch() throws IOException, ParseFailureException {
+        QueryDbInstance db = createDb();
+        List<ProposalQuery> queries = createQueries();
+        List<ProposalBatch> batches = ProposalBatch.group(queries);
+        assertThat(batches.size(), equalTo(2));
+        assertThat(batches.get(0).getQueries(), equalTo(List.of(queries.get(0), queries.get(2))));
+        assertThat(batches.get(1).size(), equalTo(1));
+        // Compare the batch results to the individual results.
+        List<List<ProposalResponseSet>> results = batches.get(0).computeSets(db, null);
+        assertThat(results.size(), equalTo(2));
+        for (int q = 0; q < 2; q++) {
+            ProposalQuery query = batches.get(0).getQueries().get(q);
+            query.setPlanning(false);
+            Map<String, Integer> expected = responseCounts(query.computeSets(db));
+            assertThat(query.toString(), responseCounts(results.get(q)), equalTo(expected));
+        }
+        Map<String, Integer> counts = responseCounts(results.get(1));
+        assertThat(counts.size(), equalTo(6));
+        assertThat(counts.get("P{Feature=[kinase] Genome=[Escherichia]}"), equalTo(4));
+        assertThat(counts.get("P{Feature=[ligase] Genome=[Bacillus]}"), equalTo(2));
+    }
+
+    @Test
+    public void testMixedLimits() throws IOException, ParseFailureException {
+        QueryDbInstance db = SampleQueryDb.create();
+        // A group template never has a limit, so it must not share a traversal with limited templates.
+        List<ProposalQuery> queries = List.of(
+                QueryGenerateProcessor.createProposal("How many {{Genome.genus}} features make {{Feature.product}}?",
+                        "Genome Feature", "count", 8, db),
+                QueryGenerateProcessor.createProposal("What products are made by {{Genome.genus}} features?",
+                        "Genome Feature", "group Feature.product", 8, db),
+                QueryGenerateProcessor.createProposal("How many {{Genome.genus}} features have type {{Feature.feature_type}}?",
+                        "Genome Feature", "count", 8, db));
+        assertThat(queries.get(1).getMaxResponseLimit(), equalTo(0));
+        for (ProposalQuery query : queries)
+            query.setSeed(42);
+        List<ProposalBatch> batches = ProposalBatch.group(queries);
+        assertThat(batches.size(), equalTo(2));
+        assertThat(batches.get(0).getQueries(), equalTo(List.of(queries.get(0), queries.get(2))));
+        assertThat(batches.get(1).getQueries(), equalTo(List.of(queries.get(1))));
+        // The limited batch samples its genomes just as each of its templates would alone.
+        List<List<ProposalResponseSet>> results = batches.get(0).computeSets(db, null);
+        String[] templates = new String[] { "How many {{Genome.genus}} features make {{Feature.product}}?",
+                "How many {{Genome.genus}} features have type {{Feature.feature_type}}?" };
+        for (int q = 0; q < templates.length; q++) {
+            ProposalQuery single = QueryGenerateProcessor.createProposal(templates[q], "Genome Feature", "count", 8, db);
+            single.setSeed(42);
+            assertThat(templates[q], responseCounts(results.get(q)), equalTo(responseCounts(single.computeSets(db))));
+        }
+        // Only eight genomes are sampled, so not every feature is counted.
+        int total = responseCounts(results.get(0)).values().stream().mapToInt(x -> x).sum();
+        assertThat(total > 0 && total < 330, equalTo(true));
+        // The group template still sees every feature.
+        results = batches.get(1).computeSets(db, null);
+        assertThat(responseCounts(results.get(0)).values().stream().mapToInt(x -> x).sum(), equalTo(330));
+    }
+
+    @Test
+    public void testBatchMetrics() throws IOException, ParseFailureException {
+        QueryDbInstance db = createDb();
+        List<ProposalQuery> queries = createQueries();
+        ProposalQuery bacillus = new CountProposalQuery("How many {{=Genome.genus:Bacillus}} features make {{Feature.product}}?",
+                "Genome Feature", 100);
+        List<ProposalBatch> batches = ProposalBatch.group(List.of(queries.get(0), queries.get(2), bacillus));
+        assertThat(batches.size(), equalTo(1));
+        batches.get(0).computeSets(db, null);
+        // A batched query has a single metrics step for the whole traversal.  The time is shared by the batch, but
+        // the response counts are the query's own.
+        QueryMetrics.TemplateMetrics listMetrics = queries.get(0).getMetrics();
+        QueryMetrics.TemplateMetrics countMetrics = queries.get(2).getMetrics();
+        QueryMetrics.TemplateMetrics bacillusMetrics = bacillus.getMetrics();
+        for (QueryMetrics.TemplateMetrics metrics : List.of(listMetrics, countMetrics, bacillusMetrics)) {
+            assertThat(metrics.getTemplate(), metrics.getBatchSize(), equalTo(3));
+            assertThat(metrics.getTemplate(), metrics.getSteps().size(), equalTo(1));
+            assertThat(metrics.getTemplate(), metrics.getSteps().get(0).getTypeName(), equalTo("Genome Feature"));
+            assertThat(metrics.getTemplate(), metrics.getComputeMs(), equalTo(listMetrics.getComputeMs()));
+            assertThat(metrics.getTemplate(), metrics.getTooBig(), equalTo(0L));
+        }
+        assertThat(listMetrics.getCreated(), equalTo(12L));
+        assertThat(listMetrics.getRejected(), equalTo(0L));
+        assertThat(listMetrics.getPeakSets(), equalTo(6));
+        assertThat(countMetrics.getCreated(), equalTo(12L));
+        assertThat(countMetrics.getRejected(), equalTo(0L));
+        // Only the Bacillus genome is accepted by the third query, and it has four features.
+        assertThat(bacillusMetrics.getCreated(), equalTo(4L));
+        assertThat(bacillusMetrics.getRejected(), equalTo(2L));
+        assertThat(bacillusMetrics.getPeakSets(), equalTo(3));
+        // The batch size is in the report.
+        listMetrics.setOutput(1, 6, 1000L);
+        String[] lines = tsvLines(listMetrics);
+        assertThat(lines.length, equalTo(3));
+        assertThat(lines[0].split("\t")[4], equalTo("batch"));
+        assertThat(lines[1], startsWith("step\t1\t"));
+        assertThat(lines[2], startsWith("template\t1\t"));
+        for (int i = 1; i < lines.length; i++)
+            assertThat(lines[i], lines[i].split("\t", -1)[4], equalTo("3"));
+        assertThat(listMetrics.toJson().get("batch_size"), equalTo(3));
+    }
+
+    @Test
+    public void testQueryMetrics() throws IOException, ParseFailureException {
+        QueryDbInstance db = createDb();
+        ProposalQuery query = createQueries().get(2);
+        query.setPlanning(false);
+        query.computeSets(db);
+        // An unbatched query has one metrics step per entity on the path.
+        QueryMetrics.TemplateMetrics metrics = query.getMetrics();
+        assertThat(metrics.getBatchSize(), equalTo(1));
+        List<QueryMetrics.StepMetrics> steps = metrics.getSteps();
+        assertThat(steps.size(), equalTo(2));
+        assertThat(steps.get(0).getTypeName(), equalTo("Genome"));
+        assertThat(steps.get(0).getCreated(), equalTo(3L));
+        assertThat(steps.get(0).getSets(), equalTo(2));
+        assertThat(steps.get(1).getTypeName(), equalTo("Feature"));
+        assertThat(steps.get(1).getCreated(), equalTo(12L));
+        assertThat(steps.get(1).getSets(), equalTo(6));
+        assertThat(metrics.getCreated(), equalTo(15L));
+        assertThat(metrics.getRejected(), equalTo(0L));
+        assertThat(metrics.getPeakSets(), equalTo(6));
+        assertThat(metrics.getTooBig(), equalTo(0L));
+        assertThat(metrics.getTemplateNum(), equalTo(0));
+        metrics.setOutput(3, 5, 2000000L);
+        assertThat(metrics.getTemplateNum(), equalTo(3));
+        assertThat(metrics.getQuestions(), equalTo(5));
+        assertThat(metrics.getWriteMs(), equalTo(2.0));
+        String[] lines = tsvLines(metrics);
+        assertThat(lines.length, equalTo(4));
+        assertThat(lines[1], startsWith("step\t3\t"));
+        assertThat(lines[2], startsWith("step\t3\t"));
+        assertThat(lines[3], startsWith("template\t3\t"));
+        assertThat(lines[3], endsWith("\t5"));
+        for (int i = 1; i < lines.length; i++)
+            assertThat(lines[i], lines[i].split("\t", -1)[4], equalTo("1"));
+    }
+
+    /**
+     * @return the lines of a tab-delimited metrics report for a single template
+     *
+     * @param metrics	metrics for the template
+     */
+    private static String[] tsvLines(QueryMetrics.TemplateMetrics metrics) {
+        QueryMetrics report = new QueryMetrics();
+        report.record(metrics);
+        StringWriter buffer = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(buffer)) {
+            report.writeTsv(writer);
+        }
+        String[] retVal = buffer.toString().split("\\R");
+        for (String line : retVal)
+            assertThat(line, line.split("\t", -1).length, equalTo(16));
+        return retVal;
+    }
+
+    /**
+     * @return a small database with three genomes, two of them Escherichia, and twelve features
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    private static QueryDbInstance createDb() throws IOException, ParseFailureException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        QueryDbInstance db = new QueryDbInstance(dbDef.getEntityNameList());
+        QueryEntityType gType = (QueryEntityType) dbDef.findEntityType("Genome");
+        QueryEntityType fType = (QueryEntityType) dbDef.findEntityType("Feature");
+        String[] genera = new String[] { "Escherichia", "Bacillus", "Escherichia" };
+        String[] products = new String[] { "kinase", "ligase", "kinase", "hypothetical", "ligase" };
+        int fNum = 0;
+        for (int g = 0; g < genera.length; g++) {
+            QueryEntityInstance genome = (QueryEntityInstance) db.findEntity(gType, "g" + g);
+            SampleQueryDb.setAttribute(genome, "genus", genera[g]);
+            for (int i = 0; i <= g + 2; i++) {
+                QueryEntityInstance feature = (QueryEntityInstance) db.findEntity(fType, "f" + fNum);
+                SampleQueryDb.setAttribute(feature, "product", products[fNum % products.length]);
+                SampleQueryDb.setAttribute(feature, "patric_id", "f" + fNum);
+                genome.addConnection(new QueryRelationshipInstance(feature));
+                feature.addConnection(new QueryRelationshipInstance(genome));
+                fNum++;
+            }
+        }
+        db.freeze();
+        return db;
+    }
+
+    /**
+     * @return the test queries:  two on the genome-to-feature path and one in the other direction
+     *
+     * @throws ParseFailureException
+     */
+    private static List<ProposalQuery> createQueries() throws ParseFailureException {
+        return List.of(
+                new ListProposalQuery("What {{Genome.genus}} features make {{Feature.product}}?", "Genome Feature", 100, "Feature.patric_id"),
+                new CountProposalQuery("How many features make {{=Feature.product:kinase}}?", "Feature Genome", 100),
+                new CountProposalQuery("How many {{Genome.genus}} features make {{Feature.product}}?", "Genome Feature", 100));
+    }
+
+    /**
+     * @return a map of parameterization strings to response counts for a list of response sets
+     *
+     * @param responseSets	list of response sets to check
+     */
+    private static Map<String, Integer> responseCounts(List<ProposalResponseSet> responseSets) {
+        Map<String, Integer> retVal = new HashMap<>();
+        for (ProposalResponseSet responseSet : responseSets)
+            retVal.put(responseSet.getParameters().toString(), responseSet.getResponseCount());
+        return retVal;
+    }
+
+}
@@ -2,24 +2,31 @@ package org.theseed.memdb.query.proposal;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 import org.junit.jupiter.api.Test;
 import org.theseed.basic.ParseFailureException;
 import org.theseed.memdb.query.QueryDbDefinition;
 import org.theseed.memdb.query.QueryDbInstance;
 import org.theseed.memdb.query.QueryEntityInstance;
 import org.theseed.memdb.query.QueryEntityType;
+import org.theseed.memdb.query.SampleQueryDb;
 
 
 public class TestProposalSets {
 
     @Test
     public void testCounts() {
-        Parameterization parms = new Parameterization();
+        Parameterization parms = new Parameterization(new ParameterLayout(Collections.emptyList()));
         ProposalResponseSet pSet = new ProposalResponseSet(parms);
         assertThat(pSet.isActive(), is(true));
         assertThat(pSet.size(), is(0));
@@ -33,6 +40,125 @@ public class TestProposalSets {
         assertThat(pSet.size(), is(0));
     }
 
+    @Test
+    public void testAggregates() {
+        Parameterization parms = new Parameterization(new ParameterLayout(Collections.emptyList()));
+        ProposalResponseSet pSet = new ProposalResponseSet(parms);
+        for (int i = 0; i < 3; i++) {
+            assertThat(pSet.checkStatus(4), is(true));
+            pSet.addAggregate(null);
+        }
+        assertThat(pSet.size(), equalTo(0));
+        assertThat(pSet.getResponseCount(), equalTo(3));
+        assertThat(pSet.getValueCounts(), nullValue());
+        ProposalResponseSet pSet2 = new ProposalResponseSet(parms);
+        pSet2.addAggregate(null);
+        pSet.merge(pSet2, 4);
+        assertThat(pSet.isActive(), is(true));
+        assertThat(pSet.getResponseCount(), equalTo(4));
+        assertThat(pSet.checkStatus(4), is(false));
+        assertThat(pSet.isActive(), is(false));
+    }
+
+    @Test
+    public void testLayout() throws ParseFailureException {
+        ProposalQuery query = new CountProposalQuery("How many {{Feature.product}} in {{Genome.genome_name}} at {{>Genome.gc_content:50}}?",
+                "Genome Feature Contig", 1000);
+        ProposalEntity genome = query.getEntity("Genome");
+        ProposalEntity feature = query.getEntity("Feature");
+        ProposalEntity contig = query.getEntity("Contig");
+        assertThat(genome.getSlotBase(), equalTo(0));
+        assertThat(feature.getSlotBase(), equalTo(2));
+        assertThat(contig.getSlotBase(), equalTo(3));
+        assertThat(contig.size(), equalTo(0));
+        Parameterization p1 = query.createParameterization();
+        Parameterization p2 = query.createParameterization();
+        assertThat(p1.hashCode(), equalTo(p2.hashCode()));
+        assertThat(p1.equals(p2), is(true));
+        assertThat(p1.compareTo(p2), equalTo(0));
+        assertThat(p1.toString(), equalTo("P{}"));
+        assertThat(p1.toJson().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testOrdering() throws IOException, ParseFailureException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        QueryDbInstance db = new QueryDbInstance(dbDef.getEntityNameList());
+        QueryEntityType gType = (QueryEntityType) dbDef.findEntityType("Genome");
+        QueryEntityType fType = (QueryEntityType) dbDef.findEntityType("Feature");
+        QueryEntityInstance alpha = new QueryEntityInstance(gType, "g1", db);
+        SampleQueryDb.setAttribute(alpha, "genome_name", "Alpha");
+        QueryEntityInstance zeta = new QueryEntityInstance(gType, "g2", db);
+        SampleQueryDb.setAttribute(zeta, "genome_name", "Zeta");
+        QueryEntityInstance kinase = new QueryEntityInstance(fType, "f1", db);
+        SampleQueryDb.setAttribute(kinase, "product", "kinase");
+        QueryEntityInstance ligase = new QueryEntityInstance(fType, "f2", db);
+        SampleQueryDb.setAttribute(ligase, "product", "ligase");
+        QueryEntityInstance multi = new QueryEntityInstance(fType, "f3", db);
+        SampleQueryDb.setAttribute(multi, "product", "synthase", "kinase", "ligase");
+        ProposalQuery query = new CountProposalQuery("How many {{Feature.product}} in {{Genome.genome_name}}?",
+                "Genome Feature", 1000);
+        ProposalEntity genome = query.getEntity("Genome");
+        ProposalEntity feature = query.getEntity("Feature");
+        Parameterization blank = query.createParameterization();
+        Parameterization pAlpha = blank.addInstance(alpha, genome).iterator().next();
+        Parameterization pZeta = blank.addInstance(zeta, genome).iterator().next();
+        Parameterization pKinase = blank.addInstance(kinase, feature).iterator().next();
+        // Parameterizations are ordered and printed by entity name, not path position.
+        Parameterization pAlphaLigase = pAlpha.addInstance(ligase, feature).iterator().next();
+        Parameterization pZetaKinase = pZeta.addInstance(kinase, feature).iterator().next();
+        assertThat(pAlphaLigase.toString(), equalTo("P{Feature=[ligase] Genome=[Alpha]}"));
+        assertThat(pZetaKinase.compareTo(pAlphaLigase) < 0, is(true));
+        assertThat(pAlphaLigase.compareTo(pZetaKinase) > 0, is(true));
+        // A parameterization with values for an earlier entity name sorts first.
+        assertThat(pKinase.compareTo(pAlpha) < 0, is(true));
+        assertThat(pAlpha.compareTo(pKinase) > 0, is(true));
+        assertThat(pAlpha.compareTo(pAlpha.addInstance(alpha, genome).iterator().next()), equalTo(0));
+        // A list value produces its parameterizations in sorted order.
+        List<String> products = new ArrayList<>();
+        for (Parameterization parms : pAlpha.addInstance(multi, feature))
+            products.add(parms.getValue(query, "Feature.product"));
+        assertThat(products, equalTo(List.of("kinase", "ligase", "synthase")));
+    }
+
+    @Test
+    public void testMerge() throws IOException, ParseFailureException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        QueryDbInstance db = new QueryDbInstance(dbDef.getEntityNameList());
+        QueryEntityType gType = (QueryEntityType) dbDef.findEntityType("Genome");
+        ProposalResponse[] r = new ProposalResponse[5];
+        for (int i = 0; i < r.length; i++)
+            r[i] = new ProposalResponse(new QueryEntityInstance(gType, "g" + i, db));
+        Parameterization parms = new Parameterization(new ParameterLayout(Collections.emptyList()));
+        // Two small sets merge into one active set, with duplicates removed.
+        ProposalResponseSet set1 = new ProposalResponseSet(parms);
+        set1.addResponse(r[0]);
+        set1.addResponse(r[1]);
+        ProposalResponseSet set2 = new ProposalResponseSet(parms);
+        set2.addResponse(r[1]);
+        set2.addResponse(r[2]);
+        set1.merge(set2, 4);
+        assertThat(set1.isActive(), is(true));
+        assertThat(set1.size(), equalTo(3));
+        assertThat(set1.getResponseCount(), equalTo(3));
+        // Going over the limit makes the merged set inactive.
+        ProposalResponseSet set3 = new ProposalResponseSet(parms);
+        set3.addResponse(r[3]);
+        set3.addResponse(r[4]);
+        set1.merge(set3, 4);
+        assertThat(set1.isActive(), is(false));
+        assertThat(set1.size(), equalTo(0));
+        assertThat(set1.getResponseCount(), equalTo(5));
+        // Merging with an inactive set always produces an inactive set.
+        ProposalResponseSet set4 = new ProposalResponseSet(parms);
+        set4.addResponse(r[0]);
+        set4.merge(set1, 4);
+        assertThat(set4.isActive(), is(false));
+        assertThat(set4.getResponseCount(), equalTo(6));
+    }
+
     @Test
     public void testCompares() throws IOException, ParseFailureException {
         // Get a DB definition.
@@ -71,6 +197,62 @@ public class TestProposalSets {
         assertThat(r1Af1.equals(r1Bf1), is(true));
         assertThat(r1Af0.hashCode(), not(equalTo(r1Af1.hashCode())));
         assertThat(r1Af0.equals(r1Af1), is(false));
+        // Verify that reversal works.
+        ProposalResponse f1r1A = new ProposalResponse(new ProposalResponse(f1), g1A);
+        assertThat(r1Af1.reverse(), equalTo(f1r1A));
+        assertThat(f1r1A.reverse(), equalTo(r1Bf1));
+        assertThat(r1Af1.reverse().getLastEntity(), equalTo(g1A));
+        assertThat(r0.reverse(), equalTo(r0));
+    }
+
+    @Test
+    public void testChainEquality() throws IOException, ParseFailureException {
+        File dbdFile = new File("data", "querydbd.txt");
+        QueryDbDefinition dbDef = new QueryDbDefinition(dbdFile);
+        QueryDbInstance db = new QueryDbInstance(dbDef.getEntityNameList());
+        QueryEntityType gType = (QueryEntityType) dbDef.findEntityType("Genome");
+        QueryEntityType fType = (QueryEntityType) dbDef.findEntityType("Feature");
+        QueryEntityType rType = (QueryEntityType) dbDef.findEntityType("Role");
+        QueryEntityInstance g0 = new QueryEntityInstance(gType, "g0", db);
+        QueryEntityInstance g1 = new QueryEntityInstance(gType, "g1", db);
+        QueryEntityInstance f0 = new QueryEntityInstance(fType, "f0", db);
+        QueryEntityInstance f1 = new QueryEntityInstance(fType, "f1", db);
+        QueryEntityInstance role = new QueryEntityInstance(rType, "kinase", db);
+        // Build responses that share prefix objects, as a path expansion does.
+        ProposalResponse g0Chain = new ProposalResponse(g0);
+        ProposalResponse g0f0Chain = new ProposalResponse(g0Chain, f0);
+        ProposalResponse g0f1Chain = new ProposalResponse(g0Chain, f1);
+        List<ProposalResponse> chained = List.of(new ProposalResponse(g0f0Chain, role), new ProposalResponse(g0f1Chain, role),
+                new ProposalResponse(new ProposalResponse(new ProposalResponse(g1), f0), role));
+        // Build the same responses from scratch, with copies of the instances, so no objects are shared.
+        List<List<QueryEntityInstance>> paths = List.of(List.of(g0, f0, role), List.of(g0, f1, role), List.of(g1, f0, role));
+        Set<ProposalResponse> responses = new HashSet<>(chained);
+        for (int i = 0; i < paths.size(); i++) {
+            List<QueryEntityInstance> path = paths.get(i);
+            ProposalResponse flat = null;
+            for (QueryEntityInstance instance : path) {
+                QueryEntityInstance copy = new QueryEntityInstance((QueryEntityType) dbDef.findEntityType(instance.getType()),
+                        instance.getId(), db);
+                flat = (flat == null ? new ProposalResponse(copy) : new ProposalResponse(flat, copy));
+            }
+            ProposalResponse chain = chained.get(i);
+            assertThat(flat.equals(chain), is(true));
+            assertThat(chain.equals(flat), is(true));
+            assertThat(flat.hashCode(), equalTo(chain.hashCode()));
+            // The hash code is the same as the hash code of a list of the instances.
+            assertThat(chain.hashCode(), equalTo(path.hashCode()));
+            assertThat(flat.toString(), equalTo(chain.toString()));
+            assertThat(responses.contains(flat), is(true));
+            // Responses that differ in any position are not equal.
+            for (int j = 0; j < paths.size(); j++) {
+                if (j != i)
+                    assertThat(flat.equals(chained.get(j)), is(false));
+            }
+        }
+        assertThat(responses.size(), equalTo(3));
+        // A prefix is not equal to a response that extends it.
+        assertThat(g0f0Chain.equals(chained.get(0)), is(false));
+        assertThat(chained.get(0).equals(g0f0Chain), is(false));
     }
 
 }
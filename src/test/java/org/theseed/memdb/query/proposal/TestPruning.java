@@ -0,0 +1,92 @@
+package org.theseed.memdb.query.proposal;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.query.QueryDbInstance;
+import org.theseed.memdb.query.SampleQueryDb;
+
+public class TestPruning {
+
+    /** target sizes to test:  the Escherichia sets have 15 features and the Bacillus sets 45 */
+    private static final int[] TARGETS = new int[] { 14, 15, 16, 44, 45, 46 };
+
+    @Test
+    public void testCountPruning() throws IOException, ParseFailureException {
+        QueryDbInstance db = SampleQueryDb.create();
+        // After the first step, each genus set has 15 genomes, and every genome has at least one feature, so the
+        // count can be pruned early if the target is less than 15.
+        ProposalQuery query = new CountProposalQuery("How many {{Genome.genus}} features are there?", "Genome Feature", 0);
+        this.checkPruning(query, db);
+        query.setTargetSize(14);
+        query.computeSets(db);
+        assertThat(query.getPrunedSets(), equalTo(4));
+        assertThat(query.getEarlyPrunedSets(), equalTo(4));
+        query.setTargetSize(15);
+        query.computeSets(db);
+        assertThat(query.getPrunedSets(), equalTo(3));
+        assertThat(query.getEarlyPrunedSets(), equalTo(0));
+        query.setTargetSize(16);
+        query.computeSets(db);
+        assertThat(query.getPrunedSets(), equalTo(3));
+        assertThat(query.getEarlyPrunedSets(), equalTo(0));
+    }
+
+    @Test
+    public void testListPruning() throws IOException, ParseFailureException {
+        QueryDbInstance db = SampleQueryDb.create();
+        // Every feature has a role, and roles do not change the output, so the sets can be pruned after the
+        // feature step. At that point the lower bound is the final size: 15, 45, 90, and 180 features.
+        ProposalQuery query = new ListProposalQuery("What features with roles are in {{Genome.genus}} genomes?",
+                "Genome Feature Role", 0, "Feature.patric_id");
+        this.checkPruning(query, db);
+        query.setTargetSize(44);
+        query.computeSets(db);
+        assertThat(query.getPrunedSets(), equalTo(3));
+        assertThat(query.getEarlyPrunedSets(), equalTo(3));
+        query.setTargetSize(45);
+        query.computeSets(db);
+        assertThat(query.getPrunedSets(), equalTo(2));
+        assertThat(query.getEarlyPrunedSets(), equalTo(2));
+        // Here the feature type splits the sets at the last step, so they can only be pruned at the end.
+        query = new ListProposalQuery("What {{Genome.genus}} features have type {{Feature.feature_type}}?", "Genome Feature", 0,
+                "Feature.patric_id");
+        this.checkPruning(query, db);
+        query.setTargetSize(15);
+        query.computeSets(db);
+        assertThat(query.getPrunedSets(), equalTo(5));
+        assertThat(query.getEarlyPrunedSets(), equalTo(0));
+    }
+
+    /**
+     * Verify that pruning for each of the test target sizes produces the same response sets as computing the sets
+     * without pruning and then discarding the ones bigger than the target, as queryGen does.
+     *
+     * @param query		query to test
+     * @param db		database to query
+     */
+    private void checkPruning(ProposalQuery query, QueryDbInstance db) {
+        query.setPlanning(false);
+        query.setTargetSize(0);
+        List<ProposalResponseSet> unpruned = query.computeSets(db);
+        assertThat(query.getPrunedSets(), equalTo(0));
+        for (int target : TARGETS) {
+            List<ProposalResponseSet> expected = unpruned.stream().filter(x -> query.getResponseSize(x) <= target)
+                    .collect(Collectors.toList());
+            query.setTargetSize(target);
+            List<ProposalResponseSet> pruned = query.computeSets(db);
+            Map<String, String> actual = TestParallelSets.summarize(pruned.stream().filter(x -> query.getResponseSize(x) <= target)
+                    .collect(Collectors.toList()));
+            assertThat(query.toString() + " target " + target, actual, equalTo(TestParallelSets.summarize(expected)));
+            // Only sets too big for the target are pruned.
+            assertThat(query.toString() + " target " + target, pruned.size(), equalTo(expected.size()));
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+package org.theseed.reports;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.memdb.query.proposal.CountProposalQuery;
+import org.theseed.memdb.query.proposal.Parameterization;
+import org.theseed.memdb.query.proposal.ProposalQuery;
+
+import com.github.cliftonlabs.json_simple.JsonArray;
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.cliftonlabs.json_simple.JsonObject;
+import com.github.cliftonlabs.json_simple.Jsoner;
+
+public class TestQueryGenReporter {
+
+    /** JSON report types that write a single list */
+    private static final List<QueryGenReporter.Type> LIST_TYPES = List.of(QueryGenReporter.Type.JSON,
+            QueryGenReporter.Type.CONVO);
+    /** JSON report types that write JSON Lines */
+    private static final List<QueryGenReporter.Type> LINE_TYPES = List.of(QueryGenReporter.Type.JSONL,
+            QueryGenReporter.Type.CONVOL);
+
+    @Test
+    public void testJsonList() throws ParseFailureException, JsonException {
+        for (QueryGenReporter.Type type : LIST_TYPES) {
+            for (int n : new int[] { 0, 1, 6 }) {
+                String label = type + " with " + n + " questions";
+                Object json = Jsoner.deserialize(this.runReport(type, n));
+                assertThat(label, json, instanceOf(JsonArray.class));
+                JsonArray list = (JsonArray) json;
+                assertThat(label, list.size(), equalTo(n));
+                for (Object element : list)
+                    checkElement(type, element);
+            }
+        }
+    }
+
+    @Test
+    public void testJsonLines() throws ParseFailureException, JsonException {
+        for (QueryGenReporter.Type type : LINE_TYPES) {
+            assertThat(type.toString(), this.runReport(type, 0), equalTo(""));
+            String[] lines = this.runReport(type, 6).split("\\R");
+            assertThat(type.toString(), lines.length, equalTo(6));
+            for (String line : lines)
+                checkElement(type, Jsoner.deserialize(line));
+        }
+    }
+
+    @Test
+    public void testReplay() throws ParseFailureException {
+        for (QueryGenReporter.Type type : QueryGenReporter.Type.values()) {
+            // Write a report while recording part of it, then write a second report that replays the recording
+            // in the same place.  The two reports must be identical.
+            StringWriter buffer = new StringWriter();
+            QueryGenReporter reporter = this.openReport(type, buffer);
+            writeQuestions(reporter, 0, 2);
+            reporter.startRecording();
+            writeQuestions(reporter, 2, 5);
+            List<String> recorded = reporter.stopRecording();
+            assertThat(type.toString(), recorded.isEmpty(), equalTo(false));
+            // The recorded range ends with the only multiple-choice question, so the questions after it do not
+            // depend on the state of the template's random number generator.
+            writeQuestions(reporter, 6, 8);
+            reporter.close();
+            StringWriter replayBuffer = new StringWriter();
+            QueryGenReporter replayer = this.openReport(type, replayBuffer);
+            writeQuestions(replayer, 0, 2);
+            replayer.replay(recorded);
+            writeQuestions(replayer, 6, 8);
+            replayer.close();
+            assertThat(type.toString(), replayBuffer.toString(), equalTo(buffer.toString()));
+        }
+    }
+
+    /**
+     * Write a complete report.
+     *
+     * @param type	type of report to write
+     * @param n		number of questions to write
+     *
+     * @return the report text
+     *
+     * @throws ParseFailureException
+     */
+    private String runReport(QueryGenReporter.Type type, int n) throws ParseFailureException {
+        StringWriter buffer = new StringWriter();
+        QueryGenReporter reporter = this.openReport(type, buffer);
+        writeQuestions(reporter, 0, n);
+        reporter.close();
+        return buffer.toString();
+    }
+
+    /**
+     * Open a report on a string buffer.  The report has a saved template with a fixed seed.
+     *
+     * @param type		type of report to open
+     * @param buffer	buffer to receive the output
+     *
+     * @return the open report
+     *
+     * @throws ParseFailureException
+     */
+    private QueryGenReporter openReport(QueryGenReporter.Type type, StringWriter buffer) throws ParseFailureException {
+        JsonObject constants = new JsonObject();
+        constants.put("source", "test");
+        QueryGenReporter retVal = type.create(() -> constants);
+        ProposalQuery query = new CountProposalQuery("How many {{Genome.genus}} features are there?", "Genome Feature", 0);
+        query.setSeed(12);
+        retVal.saveTemplate(query);
+        retVal.open(new PrintWriter(buffer));
+        return retVal;
+    }
+
+    /**
+     * Write a range of test questions.  The questions cycle through the three question types, and the question
+     * text contains characters that must be escaped.
+     *
+     * @param reporter	report to receive the questions
+     * @param start		index of the first question
+     * @param end		index past the last question
+     */
+    private static void writeQuestions(QueryGenReporter reporter, int start, int end) {
+        ProposalQuery template = reporter.getQuery();
+        for (int i = start; i < end; i++) {
+            String text = "Question " + i + " has \"quotes\",\na new-line and \u00e9?";
+            Parameterization parms = template.createParameterization();
+            switch (i % 3) {
+            case 0 -> reporter.writeQuestion(parms, text, List.of("a" + i, "b" + i));
+            case 1 -> reporter.writeQuestion(parms, text, i * 10);
+            default -> reporter.writeQuestion(parms, text, "right", List.of("wrong1", "wrong2", "wrong3"));
+            }
+        }
+    }
+
+    /**
+     * Verify that a report element has the right structure for its report type.
+     *
+     * @param type		type of report
+     * @param element	parsed report element
+     */
+    private static void checkElement(QueryGenReporter.Type type, Object element) {
+        if (type == QueryGenReporter.Type.JSON || type == QueryGenReporter.Type.JSONL) {
+            assertThat(type.toString(), element, instanceOf(JsonObject.class));
+            JsonObject question = (JsonObject) element;
+            assertThat(question.get("source"), equalTo("test"));
+            assertThat(((String) question.get("question")).startsWith("Question "), equalTo(true));
+            assertThat(question.get("result"), equalTo("count"));
+        } else {
+            // A conversation is a user entry followed by an assistant entry.
+            assertThat(type.toString(), element, instanceOf(JsonArray.class));
+            JsonArray convo = (JsonArray) element;
+            assertThat(convo.size(), equalTo(2));
+            assertThat(((JsonObject) convo.get(0)).get("role"), equalTo("user"));
+            assertThat(((JsonObject) convo.get(1)).get("role"), equalTo("assistant"));
+        }
+    }
+
+}